@@ -17,19 +17,26 @@
 package org.springframework.cloud.gcp.autoconfigure.pubsub;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.CredentialsProvider;
 import com.google.api.gax.core.ExecutorProvider;
 import com.google.api.gax.core.FixedExecutorProvider;
 import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.retrying.RetrySettings;
 import com.google.api.gax.rpc.HeaderProvider;
 import com.google.api.gax.rpc.TransportChannelProvider;
 import com.google.cloud.pubsub.v1.SubscriptionAdminClient;
 import com.google.cloud.pubsub.v1.SubscriptionAdminSettings;
 import com.google.cloud.pubsub.v1.TopicAdminClient;
 import com.google.cloud.pubsub.v1.TopicAdminSettings;
+import org.threeten.bp.Duration;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -43,9 +50,18 @@ import org.springframework.cloud.gcp.core.UsageTrackingHeaderProvider;
 import org.springframework.cloud.gcp.pubsub.PubSubAdmin;
 import org.springframework.cloud.gcp.pubsub.core.PubSubException;
 import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.core.PublishFlowControl;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.support.AdaptiveFlowControlSettings;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheck;
 import org.springframework.cloud.gcp.pubsub.support.DefaultPublisherFactory;
 import org.springframework.cloud.gcp.pubsub.support.DefaultSubscriberFactory;
+import org.springframework.cloud.gcp.pubsub.support.DeflatePayloadCodec;
+import org.springframework.cloud.gcp.pubsub.support.GzipPayloadCodec;
+import org.springframework.cloud.gcp.pubsub.support.PayloadCodec;
+import org.springframework.cloud.gcp.pubsub.support.PayloadCompressor;
 import org.springframework.cloud.gcp.pubsub.support.PublisherFactory;
+import org.springframework.cloud.gcp.pubsub.support.PublisherTopicSettings;
 import org.springframework.cloud.gcp.pubsub.support.SubscriberFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -61,6 +77,30 @@ import org.springframework.context.annotation.Configuration;
 @EnableConfigurationProperties(GcpPubSubProperties.class)
 public class GcpPubSubAutoConfiguration {
 
+	/**
+	 * Batching defaults of the Google Cloud Java Client for Pub/Sub publisher, for the unset
+	 * properties of partially configured topic settings.
+	 */
+	static final BatchingSettings DEFAULT_BATCHING_SETTINGS = BatchingSettings.newBuilder()
+			.setElementCountThreshold(100L)
+			.setRequestByteThreshold(1000L)
+			.setDelayThreshold(Duration.ofMillis(1))
+			.build();
+
+	/**
+	 * Retry defaults of the Google Cloud Java Client for Pub/Sub publisher, for the unset
+	 * properties of partially configured topic settings.
+	 */
+	static final RetrySettings DEFAULT_RETRY_SETTINGS = RetrySettings.newBuilder()
+			.setTotalTimeout(Duration.ofSeconds(10))
+			.setInitialRetryDelay(Duration.ofMillis(5))
+			.setRetryDelayMultiplier(2.0)
+			.setMaxRetryDelay(Duration.ofMillis(Long.MAX_VALUE))
+			.setInitialRpcTimeout(Duration.ofSeconds(10))
+			.setRpcTimeoutMultiplier(2.0)
+			.setMaxRpcTimeout(Duration.ofSeconds(10))
+			.build();
+
 	private final GcpPubSubProperties gcpPubSubProperties;
 
 	private final GcpProjectIdProvider finalProjectIdProvider;
@@ -98,8 +138,48 @@ public class GcpPubSubAutoConfiguration {
 	@Bean
 	@ConditionalOnMissingBean
 	public PubSubTemplate pubSubTemplate(PublisherFactory publisherFactory,
-			SubscriberFactory subscriberFactory) {
-		return new PubSubTemplate(publisherFactory, subscriberFactory);
+			SubscriberFactory subscriberFactory, ObjectProvider<PubSubMetrics> pubSubMetrics,
+			ObjectProvider<ClaimCheck> claimCheck, ObjectProvider<PayloadCompressor> payloadCompressor) {
+		PubSubTemplate pubSubTemplate = new PubSubTemplate(publisherFactory, subscriberFactory);
+		PubSubMetrics metrics = pubSubMetrics.getIfAvailable();
+		if (metrics != null) {
+			pubSubTemplate.setMetrics(metrics);
+		}
+		pubSubTemplate.setClaimCheck(claimCheck.getIfAvailable());
+		pubSubTemplate.setPayloadCompressor(payloadCompressor.getIfAvailable());
+		pubSubTemplate.setDrainTimeout(TimeUnit.SECONDS.toMillis(
+				this.gcpPubSubProperties.getSubscriber().getDrainTimeoutSeconds()));
+
+		GcpPubSubProperties.Publisher publisherProperties = this.gcpPubSubProperties.getPublisher();
+		if (publisherProperties.getFlowControl().isConfigured()) {
+			pubSubTemplate.setPublishFlowControl(publishFlowControl(publisherProperties.getFlowControl()));
+		}
+		publisherProperties.getTopics().forEach((topic, topicProperties) -> {
+			if (topicProperties.getFlowControl().isConfigured()) {
+				pubSubTemplate.setPublishFlowControl(topic, publishFlowControl(topicProperties.getFlowControl()));
+			}
+		});
+
+		return pubSubTemplate;
+	}
+
+	/**
+	 * The compressor of the template, a bean so that the native memory of its codecs is
+	 * released when the context is closed.
+	 * @return the payload compressor
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.gcp.pubsub.compression.enabled")
+	public PayloadCompressor pubSubPayloadCompressor() {
+		GcpPubSubProperties.Compression compression = this.gcpPubSubProperties.getCompression();
+		PayloadCodec codec = compression.getEncoding() == GcpPubSubProperties.Compression.Encoding.DEFLATE
+				? new DeflatePayloadCodec(compression.getLevel())
+				: new GzipPayloadCodec(compression.getLevel());
+		PayloadCompressor payloadCompressor = new PayloadCompressor(codec);
+		payloadCompressor.setMinSize(compression.getMinSizeBytes());
+		payloadCompressor.setMaxDecodedSize(compression.getMaxDecodedSizeBytes());
+		return payloadCompressor;
 	}
 
 	@Bean
@@ -112,6 +192,12 @@ public class GcpPubSubAutoConfiguration {
 		factory.setHeaderProvider(this.headerProvider);
 		factory.setChannelProvider(transportChannelProvider());
 
+		GcpPubSubProperties.AdaptiveFlowControl adaptiveFlowControl =
+				this.gcpPubSubProperties.getSubscriber().getAdaptiveFlowControl();
+		if (adaptiveFlowControl.isEnabled()) {
+			factory.setAdaptiveFlowControlSettings(adaptiveFlowControlSettings(adaptiveFlowControl));
+		}
+
 		return factory;
 	}
 
@@ -124,6 +210,14 @@ public class GcpPubSubAutoConfiguration {
 		factory.setCredentialsProvider(this.finalCredentialsProvider);
 		factory.setHeaderProvider(this.headerProvider);
 		factory.setChannelProvider(transportChannelProvider());
+		factory.setTopicSettings(publisherTopicSettings());
+
+		GcpPubSubProperties.Publisher publisherProperties = this.gcpPubSubProperties.getPublisher();
+		if (publisherProperties.getMaxCachedPublishers() != null) {
+			factory.setMaxCachedPublishers(publisherProperties.getMaxCachedPublishers());
+		}
+		factory.setIdleTimeout(Duration.ofSeconds(publisherProperties.getIdleTimeoutSeconds()));
+		factory.setShutdownTimeout(Duration.ofSeconds(publisherProperties.getShutdownTimeoutSeconds()));
 		return factory;
 	}
 
@@ -172,4 +266,97 @@ public class GcpPubSubAutoConfiguration {
 	public TransportChannelProvider transportChannelProvider() {
 		return InstantiatingGrpcChannelProvider.newBuilder().build();
 	}
+
+	private Map<String, PublisherTopicSettings> publisherTopicSettings() {
+		Map<String, PublisherTopicSettings> topicSettings = new HashMap<>();
+
+		this.gcpPubSubProperties.getPublisher().getTopics().forEach((topic, topicProperties) -> {
+			PublisherTopicSettings settings = new PublisherTopicSettings();
+
+			if (topicProperties.getExecutorThreads() != null) {
+				settings.setExecutorProvider(FixedExecutorProvider.create(
+						Executors.newScheduledThreadPool(topicProperties.getExecutorThreads())));
+			}
+
+			if (topicProperties.getBatching().isConfigured()) {
+				settings.setBatchingSettings(batchingSettings(topicProperties.getBatching()));
+			}
+
+			if (topicProperties.getRetry().isConfigured()) {
+				settings.setRetrySettings(retrySettings(topicProperties.getRetry()));
+			}
+
+			topicSettings.put(topic, settings);
+		});
+
+		return topicSettings;
+	}
+
+	private static BatchingSettings batchingSettings(GcpPubSubProperties.Batching batching) {
+		BatchingSettings.Builder builder = DEFAULT_BATCHING_SETTINGS.toBuilder();
+
+		if (batching.getElementCountThreshold() != null) {
+			builder.setElementCountThreshold(batching.getElementCountThreshold());
+		}
+		if (batching.getRequestByteThreshold() != null) {
+			builder.setRequestByteThreshold(batching.getRequestByteThreshold());
+		}
+		if (batching.getDelayThresholdMillis() != null) {
+			builder.setDelayThreshold(Duration.ofMillis(batching.getDelayThresholdMillis()));
+		}
+		return builder.build();
+	}
+
+	private static RetrySettings retrySettings(GcpPubSubProperties.Retry retry) {
+		RetrySettings.Builder builder = DEFAULT_RETRY_SETTINGS.toBuilder();
+
+		if (retry.getTotalTimeoutSeconds() != null) {
+			builder.setTotalTimeout(Duration.ofSeconds(retry.getTotalTimeoutSeconds()));
+		}
+		if (retry.getInitialRetryDelayMillis() != null) {
+			builder.setInitialRetryDelay(Duration.ofMillis(retry.getInitialRetryDelayMillis()));
+		}
+		if (retry.getRetryDelayMultiplier() != null) {
+			builder.setRetryDelayMultiplier(retry.getRetryDelayMultiplier());
+		}
+		if (retry.getMaxRetryDelayMillis() != null) {
+			builder.setMaxRetryDelay(Duration.ofMillis(retry.getMaxRetryDelayMillis()));
+		}
+		if (retry.getInitialRpcTimeoutSeconds() != null) {
+			Duration initialRpcTimeout = Duration.ofSeconds(retry.getInitialRpcTimeoutSeconds());
+			builder.setInitialRpcTimeout(initialRpcTimeout);
+			// The maximum RPC timeout can't be shorter than the initial one.
+			if (retry.getMaxRpcTimeoutSeconds() == null
+					&& builder.getMaxRpcTimeout().compareTo(initialRpcTimeout) < 0) {
+				builder.setMaxRpcTimeout(initialRpcTimeout);
+			}
+		}
+		if (retry.getRpcTimeoutMultiplier() != null) {
+			builder.setRpcTimeoutMultiplier(retry.getRpcTimeoutMultiplier());
+		}
+		if (retry.getMaxRpcTimeoutSeconds() != null) {
+			builder.setMaxRpcTimeout(Duration.ofSeconds(retry.getMaxRpcTimeoutSeconds()));
+		}
+		return builder.build();
+	}
+
+	private static PublishFlowControl publishFlowControl(GcpPubSubProperties.FlowControl flowControlProperties) {
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingMessages(flowControlProperties.getMaxOutstandingMessages());
+		flowControl.setMaxOutstandingBytes(flowControlProperties.getMaxOutstandingBytes());
+		flowControl.setLimitExceededBehavior(flowControlProperties.getLimitExceededBehavior());
+		return flowControl;
+	}
+
+	private static AdaptiveFlowControlSettings adaptiveFlowControlSettings(
+			GcpPubSubProperties.AdaptiveFlowControl adaptiveFlowControl) {
+		AdaptiveFlowControlSettings settings = new AdaptiveFlowControlSettings();
+		settings.setMinOutstandingMessages(adaptiveFlowControl.getMinOutstandingMessages());
+		settings.setMaxOutstandingMessages(adaptiveFlowControl.getMaxOutstandingMessages());
+		settings.setMinOutstandingBytes(adaptiveFlowControl.getMinOutstandingBytes());
+		settings.setMaxOutstandingBytes(adaptiveFlowControl.getMaxOutstandingBytes());
+		settings.setAckDeadlineSeconds(adaptiveFlowControl.getAckDeadlineSeconds());
+		settings.setTargetDeadlineUtilization(adaptiveFlowControl.getTargetDeadlineUtilization());
+		return settings;
+	}
 }
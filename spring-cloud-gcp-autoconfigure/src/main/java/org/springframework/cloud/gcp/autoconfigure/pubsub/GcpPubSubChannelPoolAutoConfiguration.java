@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.pubsub.v1.TopicAdminSettings;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.gcp.core.UsageTrackingHeaderProvider;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.support.GrpcChannelPool;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * A {@link GrpcChannelPool} shared by all the auto-configured Google Cloud Pub/Sub clients,
+ * if enabled and no {@link TransportChannelProvider} is provided, e.g., for the emulator.
+ */
+@Configuration
+@AutoConfigureAfter(GcpPubSubEmulatorConfiguration.class)
+@AutoConfigureBefore(GcpPubSubAutoConfiguration.class)
+@ConditionalOnProperty("spring.cloud.gcp.pubsub.channel-pool.enabled")
+@ConditionalOnClass(PubSubTemplate.class)
+@ConditionalOnMissingBean(TransportChannelProvider.class)
+@EnableConfigurationProperties(GcpPubSubProperties.class)
+public class GcpPubSubChannelPoolAutoConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public GrpcChannelPool pubSubChannelPool(GcpPubSubProperties gcpPubSubProperties) {
+		GcpPubSubProperties.ChannelPool channelPoolProperties = gcpPubSubProperties.getChannelPool();
+
+		Metadata headers = new Metadata();
+		Map<String, String> usageTrackingHeaders = new UsageTrackingHeaderProvider(this.getClass()).getHeaders();
+		usageTrackingHeaders.forEach((name, value) ->
+				headers.put(Metadata.Key.of(name, Metadata.ASCII_STRING_MARSHALLER), value));
+
+		return new GrpcChannelPool(channelPoolProperties.getChannelCount(), () -> {
+			ManagedChannelBuilder<?> builder = ManagedChannelBuilder
+					.forTarget(TopicAdminSettings.getDefaultEndpoint())
+					.maxInboundMessageSize(channelPoolProperties.getMaxInboundMessageSizeBytes())
+					.intercept(MetadataUtils.newAttachHeadersInterceptor(headers));
+			if (channelPoolProperties.getKeepAliveTimeSeconds() != null) {
+				builder.keepAliveTime(channelPoolProperties.getKeepAliveTimeSeconds(), TimeUnit.SECONDS)
+						.keepAliveTimeout(channelPoolProperties.getKeepAliveTimeoutSeconds(), TimeUnit.SECONDS);
+			}
+			return builder.build();
+		});
+	}
+
+	@Bean
+	public TransportChannelProvider transportChannelProvider(GrpcChannelPool pubSubChannelPool) {
+		return pubSubChannelPool.getTransportChannelProvider();
+	}
+}
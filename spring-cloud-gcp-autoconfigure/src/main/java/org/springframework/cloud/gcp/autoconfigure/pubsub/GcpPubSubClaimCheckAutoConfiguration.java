@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import com.google.cloud.storage.Storage;
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.gcp.autoconfigure.storage.GcpStorageAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.storage.GoogleStorageClaimCheckStore;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheck;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Offloading of large Google Cloud Pub/Sub payloads to Google Cloud Storage, if enabled and a
+ * {@link Storage} client is available. The {@link ClaimCheck} is applied to the
+ * auto-configured {@link PubSubTemplate}.
+ */
+@Configuration
+@AutoConfigureAfter(GcpStorageAutoConfiguration.class)
+@ConditionalOnProperty("spring.cloud.gcp.pubsub.claim-check.enabled")
+@ConditionalOnClass({ PubSubTemplate.class, GoogleStorageClaimCheckStore.class, Storage.class })
+@ConditionalOnBean(Storage.class)
+@EnableConfigurationProperties(GcpPubSubProperties.class)
+public class GcpPubSubClaimCheckAutoConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public ClaimCheck pubSubClaimCheck(Storage storage, GcpPubSubProperties gcpPubSubProperties) {
+		GcpPubSubProperties.ClaimCheck claimCheckProperties = gcpPubSubProperties.getClaimCheck();
+
+		GoogleStorageClaimCheckStore store =
+				new GoogleStorageClaimCheckStore(storage, claimCheckProperties.getBucket());
+		store.setObjectNamePrefix(claimCheckProperties.getObjectNamePrefix());
+
+		ClaimCheck claimCheck = new ClaimCheck(store);
+		claimCheck.setThreshold(claimCheckProperties.getThresholdBytes());
+		claimCheck.setDeleteAfterAck(claimCheckProperties.isDeleteAfterAck());
+		return claimCheck;
+	}
+}
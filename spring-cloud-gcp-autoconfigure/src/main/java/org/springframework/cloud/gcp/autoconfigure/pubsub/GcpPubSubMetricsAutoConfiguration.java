@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.metrics.GrpcChannelPoolMeterBinder;
+import org.springframework.cloud.gcp.pubsub.metrics.MicrometerPubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubTemplateMeterBinder;
+import org.springframework.cloud.gcp.pubsub.support.GrpcChannelPool;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Micrometer metrics of Google Cloud Pub/Sub, if a {@link MeterRegistry} is available.
+ */
+@Configuration
+@AutoConfigureAfter(value = GcpPubSubAutoConfiguration.class, name = {
+		"org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+		"org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration" })
+@ConditionalOnProperty(value = "spring.cloud.gcp.pubsub.enabled", matchIfMissing = true)
+@ConditionalOnClass({ MeterRegistry.class, PubSubTemplate.class })
+@ConditionalOnBean(MeterRegistry.class)
+public class GcpPubSubMetricsAutoConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public PubSubMetrics pubSubMetrics(MeterRegistry meterRegistry) {
+		return new MicrometerPubSubMetrics(meterRegistry);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnBean(PubSubTemplate.class)
+	public PubSubTemplateMeterBinder pubSubTemplateMeterBinder(PubSubTemplate pubSubTemplate) {
+		return new PubSubTemplateMeterBinder(pubSubTemplate);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnBean(GrpcChannelPool.class)
+	public GrpcChannelPoolMeterBinder grpcChannelPoolMeterBinder(GrpcChannelPool grpcChannelPool) {
+		return new GrpcChannelPoolMeterBinder(grpcChannelPool);
+	}
+}
@@ -16,11 +16,15 @@
 
 package org.springframework.cloud.gcp.autoconfigure.pubsub;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.cloud.gcp.core.Credentials;
 import org.springframework.cloud.gcp.core.CredentialsSupplier;
 import org.springframework.cloud.gcp.core.GcpScope;
+import org.springframework.cloud.gcp.pubsub.core.PublishFlowControl;
 
 /**
  * @author João André Martins
@@ -47,6 +51,21 @@ public class GcpPubSubProperties implements CredentialsSupplier {
 	@NestedConfigurationProperty
 	private final Credentials credentials = new Credentials(GcpScope.PUBSUB.getUrl());
 
+	/** Publisher settings. */
+	private final Publisher publisher = new Publisher();
+
+	/** Subscriber settings. */
+	private final Subscriber subscriber = new Subscriber();
+
+	/** Compression of the payloads of published messages. */
+	private final Compression compression = new Compression();
+
+	/** Offloading of large payloads of published messages to Google Cloud Storage. */
+	private final ClaimCheck claimCheck = new ClaimCheck();
+
+	/** Pool of gRPC channels shared by all the Pub/Sub clients. */
+	private final ChannelPool channelPool = new ChannelPool();
+
 	public int getSubscriberExecutorThreads() {
 		return this.subscriberExecutorThreads;
 	}
@@ -82,4 +101,620 @@ public class GcpPubSubProperties implements CredentialsSupplier {
 	public void setEmulatorHost(String emulatorHost) {
 		this.emulatorHost = emulatorHost;
 	}
+
+	public Publisher getPublisher() {
+		return this.publisher;
+	}
+
+	public Subscriber getSubscriber() {
+		return this.subscriber;
+	}
+
+	public Compression getCompression() {
+		return this.compression;
+	}
+
+	public ClaimCheck getClaimCheck() {
+		return this.claimCheck;
+	}
+
+	public ChannelPool getChannelPool() {
+		return this.channelPool;
+	}
+
+	/**
+	 * Publisher settings.
+	 */
+	public static class Publisher {
+
+		/**
+		 * Settings of the publishers of specific topics, by topic name or topic name pattern,
+		 * e.g., {@code telemetry-*}. Names containing characters other than lowercase letters,
+		 * digits and dashes, such as patterns, must be in brackets, e.g.,
+		 * {@code spring.cloud.gcp.pubsub.publisher.topics[telemetry-*].executor-threads}.
+		 * Unset batching and retry settings keep the defaults of the client library.
+		 */
+		private final Map<String, Topic> topics = new HashMap<>();
+
+		/** Maximum number of cached publishers. Unbounded if not set. */
+		private Integer maxCachedPublishers;
+
+		/** Time in seconds after which an unused publisher is shut down. Never if 0. */
+		private long idleTimeoutSeconds;
+
+		/**
+		 * Maximum time in seconds to wait for publishers to publish their outstanding messages
+		 * on shutdown.
+		 */
+		private long shutdownTimeoutSeconds = 10;
+
+		/** Limits on the unconfirmed messages published to all topics. */
+		private final FlowControl flowControl = new FlowControl();
+
+		public Map<String, Topic> getTopics() {
+			return this.topics;
+		}
+
+		public FlowControl getFlowControl() {
+			return this.flowControl;
+		}
+
+		public Integer getMaxCachedPublishers() {
+			return this.maxCachedPublishers;
+		}
+
+		public void setMaxCachedPublishers(Integer maxCachedPublishers) {
+			this.maxCachedPublishers = maxCachedPublishers;
+		}
+
+		public long getIdleTimeoutSeconds() {
+			return this.idleTimeoutSeconds;
+		}
+
+		public void setIdleTimeoutSeconds(long idleTimeoutSeconds) {
+			this.idleTimeoutSeconds = idleTimeoutSeconds;
+		}
+
+		public long getShutdownTimeoutSeconds() {
+			return this.shutdownTimeoutSeconds;
+		}
+
+		public void setShutdownTimeoutSeconds(long shutdownTimeoutSeconds) {
+			this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+		}
+	}
+
+	/**
+	 * Subscriber settings.
+	 */
+	public static class Subscriber {
+
+		/** Adaptive flow control of the subscribers. */
+		private final AdaptiveFlowControl adaptiveFlowControl = new AdaptiveFlowControl();
+
+		/**
+		 * Maximum time in seconds to wait on shutdown for subscribers to stop and for the
+		 * messages they received to be processed.
+		 */
+		private long drainTimeoutSeconds = 10;
+
+		public AdaptiveFlowControl getAdaptiveFlowControl() {
+			return this.adaptiveFlowControl;
+		}
+
+		public long getDrainTimeoutSeconds() {
+			return this.drainTimeoutSeconds;
+		}
+
+		public void setDrainTimeoutSeconds(long drainTimeoutSeconds) {
+			this.drainTimeoutSeconds = drainTimeoutSeconds;
+		}
+	}
+
+	/**
+	 * Compression of the payloads of published messages, which are decompressed when received.
+	 */
+	public static class Compression {
+
+		/**
+		 * Whether payloads of published messages are compressed, and payloads of received
+		 * messages decompressed.
+		 */
+		private boolean enabled;
+
+		/** Encoding of compressed payloads. */
+		private Encoding encoding = Encoding.GZIP;
+
+		/** Compression level, from 0 to 9, or -1 for the default level. */
+		private int level = -1;
+
+		/** Size in bytes below which payloads are published uncompressed. */
+		private int minSizeBytes = 1024;
+
+		/** Size in bytes above which decompressed payloads of received messages are rejected. */
+		private int maxDecodedSizeBytes = 100 * 1024 * 1024;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Encoding getEncoding() {
+			return this.encoding;
+		}
+
+		public void setEncoding(Encoding encoding) {
+			this.encoding = encoding;
+		}
+
+		public int getLevel() {
+			return this.level;
+		}
+
+		public void setLevel(int level) {
+			this.level = level;
+		}
+
+		public int getMinSizeBytes() {
+			return this.minSizeBytes;
+		}
+
+		public void setMinSizeBytes(int minSizeBytes) {
+			this.minSizeBytes = minSizeBytes;
+		}
+
+		public int getMaxDecodedSizeBytes() {
+			return this.maxDecodedSizeBytes;
+		}
+
+		public void setMaxDecodedSizeBytes(int maxDecodedSizeBytes) {
+			this.maxDecodedSizeBytes = maxDecodedSizeBytes;
+		}
+
+		/**
+		 * Encodings of compressed payloads.
+		 */
+		public enum Encoding {
+
+			/** The gzip format. */
+			GZIP,
+
+			/** The zlib format. */
+			DEFLATE
+		}
+	}
+
+	/**
+	 * Offloading of large payloads of published messages to Google Cloud Storage, which are
+	 * read back when received.
+	 */
+	public static class ClaimCheck {
+
+		/**
+		 * Whether large payloads of published messages are offloaded to Google Cloud Storage,
+		 * and offloaded payloads of received messages read back.
+		 */
+		private boolean enabled;
+
+		/** Name of the bucket the payloads are stored in. */
+		private String bucket;
+
+		/** Prefix of the names of the objects storing payloads. */
+		private String objectNamePrefix = "pubsub-claim-check/";
+
+		/** Size in bytes above which payloads are offloaded. */
+		private int thresholdBytes = 1024 * 1024;
+
+		/** Whether stored payloads are deleted once their message is acked. */
+		private boolean deleteAfterAck;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getBucket() {
+			return this.bucket;
+		}
+
+		public void setBucket(String bucket) {
+			this.bucket = bucket;
+		}
+
+		public String getObjectNamePrefix() {
+			return this.objectNamePrefix;
+		}
+
+		public void setObjectNamePrefix(String objectNamePrefix) {
+			this.objectNamePrefix = objectNamePrefix;
+		}
+
+		public int getThresholdBytes() {
+			return this.thresholdBytes;
+		}
+
+		public void setThresholdBytes(int thresholdBytes) {
+			this.thresholdBytes = thresholdBytes;
+		}
+
+		public boolean isDeleteAfterAck() {
+			return this.deleteAfterAck;
+		}
+
+		public void setDeleteAfterAck(boolean deleteAfterAck) {
+			this.deleteAfterAck = deleteAfterAck;
+		}
+	}
+
+	/**
+	 * Pool of gRPC channels shared by all the publishers, subscribers and admin clients,
+	 * instead of each of them opening its own connection.
+	 */
+	public static class ChannelPool {
+
+		/** Whether all the Pub/Sub clients share a pool of gRPC channels. */
+		private boolean enabled;
+
+		/** Number of channels of the pool. */
+		private int channelCount = 4;
+
+		/** Time in seconds without activity after which a channel sends a keepalive ping. Never if not set. */
+		private Long keepAliveTimeSeconds;
+
+		/** Time in seconds a channel waits for the reply to a keepalive ping before closing. */
+		private long keepAliveTimeoutSeconds = 20;
+
+		/** Maximum size in bytes of the messages received by a channel. */
+		private int maxInboundMessageSizeBytes = 20 * 1024 * 1024;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getChannelCount() {
+			return this.channelCount;
+		}
+
+		public void setChannelCount(int channelCount) {
+			this.channelCount = channelCount;
+		}
+
+		public Long getKeepAliveTimeSeconds() {
+			return this.keepAliveTimeSeconds;
+		}
+
+		public void setKeepAliveTimeSeconds(Long keepAliveTimeSeconds) {
+			this.keepAliveTimeSeconds = keepAliveTimeSeconds;
+		}
+
+		public long getKeepAliveTimeoutSeconds() {
+			return this.keepAliveTimeoutSeconds;
+		}
+
+		public void setKeepAliveTimeoutSeconds(long keepAliveTimeoutSeconds) {
+			this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+		}
+
+		public int getMaxInboundMessageSizeBytes() {
+			return this.maxInboundMessageSizeBytes;
+		}
+
+		public void setMaxInboundMessageSizeBytes(int maxInboundMessageSizeBytes) {
+			this.maxInboundMessageSizeBytes = maxInboundMessageSizeBytes;
+		}
+	}
+
+	/**
+	 * Bounds and target of the limits on the messages being processed by subscribers, which
+	 * adapt to the processing latency.
+	 */
+	public static class AdaptiveFlowControl {
+
+		/** Whether the subscribers adapt their limits to the processing latency. */
+		private boolean enabled;
+
+		/** Lowest limit on the number of messages being processed. */
+		private int minOutstandingMessages = 1;
+
+		/** Highest limit on the number of messages being processed. */
+		private int maxOutstandingMessages = 1000;
+
+		/** Lowest limit on the total size in bytes of the messages being processed. */
+		private long minOutstandingBytes = 1024L * 1024L;
+
+		/** Highest limit on the total size in bytes of the messages being processed. */
+		private long maxOutstandingBytes = 100L * 1024L * 1024L;
+
+		/** Acknowledgement deadline of the subscriptions, in seconds. */
+		private int ackDeadlineSeconds = 10;
+
+		/** Fraction of the acknowledgement deadline that processing a message should take. */
+		private double targetDeadlineUtilization = 0.5;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMinOutstandingMessages() {
+			return this.minOutstandingMessages;
+		}
+
+		public void setMinOutstandingMessages(int minOutstandingMessages) {
+			this.minOutstandingMessages = minOutstandingMessages;
+		}
+
+		public int getMaxOutstandingMessages() {
+			return this.maxOutstandingMessages;
+		}
+
+		public void setMaxOutstandingMessages(int maxOutstandingMessages) {
+			this.maxOutstandingMessages = maxOutstandingMessages;
+		}
+
+		public long getMinOutstandingBytes() {
+			return this.minOutstandingBytes;
+		}
+
+		public void setMinOutstandingBytes(long minOutstandingBytes) {
+			this.minOutstandingBytes = minOutstandingBytes;
+		}
+
+		public long getMaxOutstandingBytes() {
+			return this.maxOutstandingBytes;
+		}
+
+		public void setMaxOutstandingBytes(long maxOutstandingBytes) {
+			this.maxOutstandingBytes = maxOutstandingBytes;
+		}
+
+		public int getAckDeadlineSeconds() {
+			return this.ackDeadlineSeconds;
+		}
+
+		public void setAckDeadlineSeconds(int ackDeadlineSeconds) {
+			this.ackDeadlineSeconds = ackDeadlineSeconds;
+		}
+
+		public double getTargetDeadlineUtilization() {
+			return this.targetDeadlineUtilization;
+		}
+
+		public void setTargetDeadlineUtilization(double targetDeadlineUtilization) {
+			this.targetDeadlineUtilization = targetDeadlineUtilization;
+		}
+	}
+
+	/**
+	 * Settings of the publisher of a topic. Settings that aren't set use the defaults of the
+	 * Google Cloud Java Client for Pub/Sub.
+	 */
+	public static class Topic {
+
+		/**
+		 * Number of threads used by the topic's {@link com.google.cloud.pubsub.v1.Publisher}. If not
+		 * set, the executor shared by every publisher is used.
+		 */
+		private Integer executorThreads;
+
+		/** Batching settings of the topic's publisher. */
+		private final Batching batching = new Batching();
+
+		/** Retry settings of the topic's publisher. */
+		private final Retry retry = new Retry();
+
+		/** Limits on the unconfirmed messages published to the topic. */
+		private final FlowControl flowControl = new FlowControl();
+
+		public Integer getExecutorThreads() {
+			return this.executorThreads;
+		}
+
+		public void setExecutorThreads(Integer executorThreads) {
+			this.executorThreads = executorThreads;
+		}
+
+		public Batching getBatching() {
+			return this.batching;
+		}
+
+		public Retry getRetry() {
+			return this.retry;
+		}
+
+		public FlowControl getFlowControl() {
+			return this.flowControl;
+		}
+	}
+
+	/**
+	 * Limits on the published messages that haven't been confirmed by Google Cloud Pub/Sub yet.
+	 */
+	public static class FlowControl {
+
+		/** Maximum number of outstanding messages. Not limited if not set. */
+		private Long maxOutstandingMessages;
+
+		/** Maximum total size in bytes of outstanding messages. Not limited if not set. */
+		private Long maxOutstandingBytes;
+
+		/** What happens when publishing a message would exceed a limit. */
+		private PublishFlowControl.LimitExceededBehavior limitExceededBehavior =
+				PublishFlowControl.LimitExceededBehavior.BLOCK;
+
+		public Long getMaxOutstandingMessages() {
+			return this.maxOutstandingMessages;
+		}
+
+		public void setMaxOutstandingMessages(Long maxOutstandingMessages) {
+			this.maxOutstandingMessages = maxOutstandingMessages;
+		}
+
+		public Long getMaxOutstandingBytes() {
+			return this.maxOutstandingBytes;
+		}
+
+		public void setMaxOutstandingBytes(Long maxOutstandingBytes) {
+			this.maxOutstandingBytes = maxOutstandingBytes;
+		}
+
+		public PublishFlowControl.LimitExceededBehavior getLimitExceededBehavior() {
+			return this.limitExceededBehavior;
+		}
+
+		public void setLimitExceededBehavior(PublishFlowControl.LimitExceededBehavior limitExceededBehavior) {
+			this.limitExceededBehavior = limitExceededBehavior;
+		}
+
+		boolean isConfigured() {
+			return this.maxOutstandingMessages != null || this.maxOutstandingBytes != null;
+		}
+	}
+
+	/**
+	 * Publisher batching settings. A batch is sent as soon as any of the thresholds is reached.
+	 */
+	public static class Batching {
+
+		/** Number of messages that triggers sending a batch. */
+		private Long elementCountThreshold;
+
+		/** Number of payload bytes that triggers sending a batch. */
+		private Long requestByteThreshold;
+
+		/** Time in milliseconds to wait for a batch to fill up before sending it. */
+		private Long delayThresholdMillis;
+
+		public Long getElementCountThreshold() {
+			return this.elementCountThreshold;
+		}
+
+		public void setElementCountThreshold(Long elementCountThreshold) {
+			this.elementCountThreshold = elementCountThreshold;
+		}
+
+		public Long getRequestByteThreshold() {
+			return this.requestByteThreshold;
+		}
+
+		public void setRequestByteThreshold(Long requestByteThreshold) {
+			this.requestByteThreshold = requestByteThreshold;
+		}
+
+		public Long getDelayThresholdMillis() {
+			return this.delayThresholdMillis;
+		}
+
+		public void setDelayThresholdMillis(Long delayThresholdMillis) {
+			this.delayThresholdMillis = delayThresholdMillis;
+		}
+
+		boolean isConfigured() {
+			return this.elementCountThreshold != null || this.requestByteThreshold != null
+					|| this.delayThresholdMillis != null;
+		}
+	}
+
+	/**
+	 * Publisher retry settings.
+	 */
+	public static class Retry {
+
+		/** Total time in seconds a publish call is retried for. */
+		private Long totalTimeoutSeconds;
+
+		/** Delay in milliseconds before the first retry. */
+		private Long initialRetryDelayMillis;
+
+		/** Multiplier applied to the delay between consecutive retries. */
+		private Double retryDelayMultiplier;
+
+		/** Maximum delay in milliseconds between retries. */
+		private Long maxRetryDelayMillis;
+
+		/** Timeout in seconds of the first publish call. */
+		private Long initialRpcTimeoutSeconds;
+
+		/** Multiplier applied to the timeout of consecutive publish calls. */
+		private Double rpcTimeoutMultiplier;
+
+		/** Maximum timeout in seconds of a publish call. */
+		private Long maxRpcTimeoutSeconds;
+
+		public Long getTotalTimeoutSeconds() {
+			return this.totalTimeoutSeconds;
+		}
+
+		public void setTotalTimeoutSeconds(Long totalTimeoutSeconds) {
+			this.totalTimeoutSeconds = totalTimeoutSeconds;
+		}
+
+		public Long getInitialRetryDelayMillis() {
+			return this.initialRetryDelayMillis;
+		}
+
+		public void setInitialRetryDelayMillis(Long initialRetryDelayMillis) {
+			this.initialRetryDelayMillis = initialRetryDelayMillis;
+		}
+
+		public Double getRetryDelayMultiplier() {
+			return this.retryDelayMultiplier;
+		}
+
+		public void setRetryDelayMultiplier(Double retryDelayMultiplier) {
+			this.retryDelayMultiplier = retryDelayMultiplier;
+		}
+
+		public Long getMaxRetryDelayMillis() {
+			return this.maxRetryDelayMillis;
+		}
+
+		public void setMaxRetryDelayMillis(Long maxRetryDelayMillis) {
+			this.maxRetryDelayMillis = maxRetryDelayMillis;
+		}
+
+		public Long getInitialRpcTimeoutSeconds() {
+			return this.initialRpcTimeoutSeconds;
+		}
+
+		public void setInitialRpcTimeoutSeconds(Long initialRpcTimeoutSeconds) {
+			this.initialRpcTimeoutSeconds = initialRpcTimeoutSeconds;
+		}
+
+		public Double getRpcTimeoutMultiplier() {
+			return this.rpcTimeoutMultiplier;
+		}
+
+		public void setRpcTimeoutMultiplier(Double rpcTimeoutMultiplier) {
+			this.rpcTimeoutMultiplier = rpcTimeoutMultiplier;
+		}
+
+		public Long getMaxRpcTimeoutSeconds() {
+			return this.maxRpcTimeoutSeconds;
+		}
+
+		public void setMaxRpcTimeoutSeconds(Long maxRpcTimeoutSeconds) {
+			this.maxRpcTimeoutSeconds = maxRpcTimeoutSeconds;
+		}
+
+		boolean isConfigured() {
+			return this.totalTimeoutSeconds != null || this.initialRetryDelayMillis != null
+					|| this.retryDelayMultiplier != null || this.maxRetryDelayMillis != null
+					|| this.initialRpcTimeoutSeconds != null || this.rpcTimeoutMultiplier != null
+					|| this.maxRpcTimeoutSeconds != null;
+		}
+	}
 }
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Test;
+import org.threeten.bp.Duration;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gcp.autoconfigure.core.GcpContextAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.PubSubAdmin;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.support.PayloadCompressor;
+import org.springframework.cloud.gcp.pubsub.support.PublisherFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link GcpPubSubAutoConfiguration} tests.
+ */
+public class GcpPubSubAutoConfigurationTests {
+
+	private ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withPropertyValues("spring.cloud.gcp.pubsub.emulatorHost=localhost:8085",
+					"spring.cloud.gcp.projectId=test-project")
+			.withConfiguration(AutoConfigurations.of(GcpPubSubEmulatorConfiguration.class,
+					GcpContextAutoConfiguration.class,
+					GcpPubSubAutoConfiguration.class));
+
+	@Test
+	public void testBeansCreated() {
+		this.contextRunner.run(context -> {
+			PubSubTemplate pubSubTemplate = context.getBean(PubSubTemplate.class);
+			assertSame(context.getBean(PublisherFactory.class), pubSubTemplate.getPublisherFactory());
+			assertNotNull(context.getBean(PubSubAdmin.class));
+			assertNull(ReflectionTestUtils.getField(pubSubTemplate, "payloadCompressor"));
+		});
+	}
+
+	@Test
+	public void testTopicSettings_patternInBrackets() {
+		this.contextRunner
+				.withPropertyValues(
+						"spring.cloud.gcp.pubsub.publisher.topics[telemetry-*].batching.element-count-threshold=500",
+						"spring.cloud.gcp.pubsub.publisher.topics.orders.batching.delay-threshold-millis=50")
+				.run(context -> {
+					PublisherFactory publisherFactory = context.getBean(PublisherFactory.class);
+
+					BatchingSettings telemetry =
+							publisherFactory.createPublisher("telemetry-cpu").getBatchingSettings();
+					assertEquals(Long.valueOf(500), telemetry.getElementCountThreshold());
+
+					BatchingSettings orders = publisherFactory.createPublisher("orders").getBatchingSettings();
+					assertEquals(Duration.ofMillis(50), orders.getDelayThreshold());
+				});
+	}
+
+	@Test
+	public void testTopicSettings_unsetBatchingSettingsKeepLibraryDefaults() {
+		this.contextRunner
+				.withPropertyValues(
+						"spring.cloud.gcp.pubsub.publisher.topics.orders.batching.element-count-threshold=1")
+				.run(context -> {
+					PublisherFactory publisherFactory = context.getBean(PublisherFactory.class);
+
+					BatchingSettings defaults = publisherFactory.createPublisher("other").getBatchingSettings();
+					BatchingSettings orders = publisherFactory.createPublisher("orders").getBatchingSettings();
+
+					assertEquals(Long.valueOf(1), orders.getElementCountThreshold());
+					assertEquals(defaults.getRequestByteThreshold(), orders.getRequestByteThreshold());
+					assertEquals(defaults.getDelayThreshold(), orders.getDelayThreshold());
+				});
+	}
+
+	@Test
+	public void testTopicSettings_defaultsMatchClientLibrary() {
+		// Fails when an upgrade of the client library changes its publisher defaults.
+		assertEquals(ReflectionTestUtils.getField(Publisher.Builder.class, "DEFAULT_BATCHING_SETTINGS"),
+				GcpPubSubAutoConfiguration.DEFAULT_BATCHING_SETTINGS);
+		assertEquals(ReflectionTestUtils.getField(Publisher.Builder.class, "DEFAULT_RETRY_SETTINGS"),
+				GcpPubSubAutoConfiguration.DEFAULT_RETRY_SETTINGS);
+
+		this.contextRunner.run(context -> assertEquals(GcpPubSubAutoConfiguration.DEFAULT_BATCHING_SETTINGS,
+				context.getBean(PublisherFactory.class).createPublisher("topic").getBatchingSettings()));
+	}
+
+	@Test
+	public void testCompressionEnabled() {
+		AtomicReference<Collection<?>> pool = new AtomicReference<>();
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.compression.enabled=true")
+				.run(context -> {
+					PayloadCompressor payloadCompressor = context.getBean(PayloadCompressor.class);
+					assertSame(payloadCompressor,
+							ReflectionTestUtils.getField(context.getBean(PubSubTemplate.class), "payloadCompressor"));
+
+					Object codec = ReflectionTestUtils.getField(payloadCompressor, "codec");
+					pool.set((Collection<?>) ReflectionTestUtils.getField(codec, "pool"));
+					payloadCompressor.compress(PubsubMessage.newBuilder()
+							.setData(ByteString.copyFrom(new byte[4096])).build());
+					assertEquals(1, pool.get().size());
+				});
+
+		// Closing the context releases the pooled resources of the codecs.
+		assertTrue(pool.get().isEmpty());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gcp.autoconfigure.core.GcpContextAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.support.GrpcChannelPool;
+import org.springframework.cloud.gcp.pubsub.support.PublisherFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link GcpPubSubChannelPoolAutoConfiguration} tests.
+ */
+public class GcpPubSubChannelPoolAutoConfigurationTests {
+
+	private ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withPropertyValues("spring.cloud.gcp.projectId=test-project")
+			.withUserConfiguration(CredentialsConfiguration.class)
+			.withConfiguration(AutoConfigurations.of(GcpPubSubEmulatorConfiguration.class,
+					GcpPubSubChannelPoolAutoConfiguration.class,
+					GcpContextAutoConfiguration.class,
+					GcpPubSubAutoConfiguration.class));
+
+	@Test
+	public void testChannelPool_disabledByDefault() {
+		this.contextRunner.run(context ->
+				assertTrue(context.getBeansOfType(GrpcChannelPool.class).isEmpty()));
+	}
+
+	@Test
+	public void testChannelPool_usedByClients() {
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.channel-pool.enabled=true",
+						"spring.cloud.gcp.pubsub.channel-pool.channel-count=2")
+				.run(context -> {
+					assertEquals(2, context.getBean(GrpcChannelPool.class).getChannelCount());
+
+					TransportChannelProvider transportChannelProvider =
+							context.getBean(TransportChannelProvider.class);
+					assertTrue(transportChannelProvider instanceof FixedTransportChannelProvider);
+					assertSame(transportChannelProvider, ReflectionTestUtils.getField(
+							context.getBean(PublisherFactory.class), "channelProvider"));
+				});
+	}
+
+	@Test
+	public void testChannelPool_backsOffForEmulator() {
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.channel-pool.enabled=true",
+						"spring.cloud.gcp.pubsub.emulatorHost=localhost:8085")
+				.run(context -> {
+					assertTrue(context.getBeansOfType(GrpcChannelPool.class).isEmpty());
+					assertTrue(context.getBean(TransportChannelProvider.class)
+							instanceof FixedTransportChannelProvider);
+				});
+	}
+
+	@Test
+	public void testChannelPool_backsOffForUserTransportChannelProvider() {
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.channel-pool.enabled=true")
+				.withUserConfiguration(TransportChannelProviderConfiguration.class)
+				.run(context -> {
+					assertTrue(context.getBeansOfType(GrpcChannelPool.class).isEmpty());
+					TransportChannelProvider userTransportChannelProvider =
+							context.getBean(TransportChannelProviderConfiguration.class).transportChannelProvider;
+					assertSame(userTransportChannelProvider, context.getBean(TransportChannelProvider.class));
+				});
+	}
+
+	@Configuration
+	static class CredentialsConfiguration {
+
+		@Bean
+		public CredentialsProvider credentialsProvider() {
+			return NoCredentialsProvider.create();
+		}
+	}
+
+	@Configuration
+	static class TransportChannelProviderConfiguration {
+
+		private final TransportChannelProvider transportChannelProvider =
+				InstantiatingGrpcChannelProvider.newBuilder().build();
+
+		@Bean
+		public TransportChannelProvider transportChannelProvider() {
+			return this.transportChannelProvider;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import com.google.cloud.storage.Storage;
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gcp.autoconfigure.core.GcpContextAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheck;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link GcpPubSubClaimCheckAutoConfiguration} tests.
+ */
+public class GcpPubSubClaimCheckAutoConfigurationTests {
+
+	private ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withPropertyValues("spring.cloud.gcp.pubsub.emulatorHost=localhost:8085",
+					"spring.cloud.gcp.projectId=test-project")
+			.withConfiguration(AutoConfigurations.of(GcpPubSubEmulatorConfiguration.class,
+					GcpContextAutoConfiguration.class,
+					GcpPubSubAutoConfiguration.class,
+					GcpPubSubClaimCheckAutoConfiguration.class));
+
+	@Test
+	public void testClaimCheck_wiredIntoTemplate() {
+		this.contextRunner
+				.withUserConfiguration(StorageConfiguration.class)
+				.withPropertyValues("spring.cloud.gcp.pubsub.claim-check.enabled=true",
+						"spring.cloud.gcp.pubsub.claim-check.bucket=claims",
+						"spring.cloud.gcp.pubsub.claim-check.object-name-prefix=offloaded/",
+						"spring.cloud.gcp.pubsub.claim-check.threshold-bytes=2048",
+						"spring.cloud.gcp.pubsub.claim-check.delete-after-ack=true")
+				.run(context -> {
+					ClaimCheck claimCheck = context.getBean(ClaimCheck.class);
+					assertSame(claimCheck,
+							ReflectionTestUtils.getField(context.getBean(PubSubTemplate.class), "claimCheck"));
+					assertEquals(2048, ReflectionTestUtils.getField(claimCheck, "threshold"));
+					assertEquals(true, ReflectionTestUtils.getField(claimCheck, "deleteAfterAck"));
+
+					Object store = ReflectionTestUtils.getField(claimCheck, "store");
+					assertSame(context.getBean(Storage.class), ReflectionTestUtils.getField(store, "storage"));
+					assertEquals("claims", ReflectionTestUtils.getField(store, "bucketName"));
+					assertEquals("offloaded/", ReflectionTestUtils.getField(store, "objectNamePrefix"));
+				});
+	}
+
+	@Test
+	public void testClaimCheck_disabledByDefault() {
+		this.contextRunner
+				.withUserConfiguration(StorageConfiguration.class)
+				.run(context -> {
+					assertTrue(context.getBeansOfType(ClaimCheck.class).isEmpty());
+					assertNull(ReflectionTestUtils.getField(context.getBean(PubSubTemplate.class), "claimCheck"));
+				});
+	}
+
+	@Test
+	public void testClaimCheck_backsOffWithoutStorage() {
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.claim-check.enabled=true",
+						"spring.cloud.gcp.pubsub.claim-check.bucket=claims")
+				.run(context -> assertTrue(context.getBeansOfType(ClaimCheck.class).isEmpty()));
+	}
+
+	@Configuration
+	static class StorageConfiguration {
+
+		@Bean
+		public Storage storage() {
+			return mock(Storage.class);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gcp.autoconfigure.core.GcpContextAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.metrics.GrpcChannelPoolMeterBinder;
+import org.springframework.cloud.gcp.pubsub.metrics.MicrometerPubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubTemplateMeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link GcpPubSubMetricsAutoConfiguration} tests.
+ */
+public class GcpPubSubMetricsAutoConfigurationTests {
+
+	private ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withPropertyValues("spring.cloud.gcp.pubsub.emulatorHost=localhost:8085",
+					"spring.cloud.gcp.projectId=test-project")
+			.withConfiguration(AutoConfigurations.of(GcpPubSubEmulatorConfiguration.class,
+					GcpContextAutoConfiguration.class,
+					GcpPubSubAutoConfiguration.class,
+					GcpPubSubMetricsAutoConfiguration.class));
+
+	@Test
+	public void testMetrics_wiredIntoTemplate() {
+		this.contextRunner
+				.withUserConfiguration(MeterRegistryConfiguration.class)
+				.run(context -> {
+					PubSubMetrics pubSubMetrics = context.getBean(PubSubMetrics.class);
+					assertTrue(pubSubMetrics instanceof MicrometerPubSubMetrics);
+					assertSame(pubSubMetrics,
+							ReflectionTestUtils.getField(context.getBean(PubSubTemplate.class), "metrics"));
+					assertNotNull(context.getBean(PubSubTemplateMeterBinder.class));
+					// The channel pool isn't used with the emulator.
+					assertTrue(context.getBeansOfType(GrpcChannelPoolMeterBinder.class).isEmpty());
+				});
+	}
+
+	@Test
+	public void testMetrics_backsOffWithoutMeterRegistry() {
+		this.contextRunner.run(context -> {
+			assertTrue(context.getBeansOfType(PubSubMetrics.class).isEmpty());
+			assertSame(PubSubMetrics.NO_OP,
+					ReflectionTestUtils.getField(context.getBean(PubSubTemplate.class), "metrics"));
+		});
+	}
+
+	@Test
+	public void testMetrics_backsOffWhenPubSubDisabled() {
+		this.contextRunner
+				.withUserConfiguration(MeterRegistryConfiguration.class)
+				.withPropertyValues("spring.cloud.gcp.pubsub.enabled=false")
+				.run(context -> assertTrue(context.getBeansOfType(PubSubMetrics.class).isEmpty()));
+	}
+
+	@Configuration
+	static class MeterRegistryConfiguration {
+
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+}
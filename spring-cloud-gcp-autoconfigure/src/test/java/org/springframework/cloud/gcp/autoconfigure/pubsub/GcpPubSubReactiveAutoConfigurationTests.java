@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.autoconfigure.pubsub;
+
+import org.junit.Test;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.cloud.gcp.autoconfigure.core.GcpContextAutoConfiguration;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.reactive.PubSubReactiveFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link GcpPubSubReactiveAutoConfiguration} tests.
+ */
+public class GcpPubSubReactiveAutoConfigurationTests {
+
+	private ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+			.withPropertyValues("spring.cloud.gcp.pubsub.emulatorHost=localhost:8085",
+					"spring.cloud.gcp.projectId=test-project")
+			.withConfiguration(AutoConfigurations.of(GcpPubSubEmulatorConfiguration.class,
+					GcpContextAutoConfiguration.class,
+					GcpPubSubAutoConfiguration.class,
+					GcpPubSubReactiveAutoConfiguration.class));
+
+	@Test
+	public void testReactiveFactory_wrapsTemplate() {
+		this.contextRunner.run(context -> {
+			PubSubReactiveFactory reactiveFactory = context.getBean(PubSubReactiveFactory.class);
+			assertSame(context.getBean(PubSubTemplate.class),
+					ReflectionTestUtils.getField(reactiveFactory, "pubSubOperations"));
+		});
+	}
+
+	@Test
+	public void testReactiveFactory_backsOffWhenPubSubDisabled() {
+		this.contextRunner
+				.withPropertyValues("spring.cloud.gcp.pubsub.enabled=false")
+				.run(context -> assertTrue(context.getBeansOfType(PubSubReactiveFactory.class).isEmpty()));
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.cloud.pubsub.v1.stub.SubscriberStub;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.gcp.pubsub.support.SubscriberFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Collects acknowledgements and acknowledgement deadline modifications of pulled messages and
+ * sends them to Google Cloud Pub/Sub in batches.
+ *
+ * <p>Pending operations are flushed as soon as their number reaches the batch size, or when
+ * the flush interval elapses after the first pending operation was added, whichever comes first.
+ * Once the batcher is destroyed, operations are sent right away, on the calling thread.
+ */
+class AcknowledgementBatcher {
+
+	private static final Log LOGGER = LogFactory.getLog(AcknowledgementBatcher.class);
+
+	static final int DEFAULT_BATCH_SIZE = 1000;
+
+	static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+	private final SubscriberFactory subscriberFactory;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Ack IDs waiting to be acknowledged, by subscription.
+	 */
+	private Map<String, List<String>> pendingAcks = new HashMap<>();
+
+	/**
+	 * Ack IDs waiting for their deadline to be modified, by subscription and deadline.
+	 */
+	private Map<String, Map<Integer, List<String>>> pendingDeadlineModifications = new HashMap<>();
+
+	private int pendingCount;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+	private ScheduledExecutorService scheduler;
+
+	private ScheduledFuture<?> scheduledFlush;
+
+	private boolean destroyed;
+
+	AcknowledgementBatcher(SubscriberFactory subscriberFactory) {
+		this.subscriberFactory = subscriberFactory;
+	}
+
+	void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The acknowledgement batch size must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	void setFlushIntervalMillis(long flushIntervalMillis) {
+		Assert.isTrue(flushIntervalMillis > 0, "The acknowledgement flush interval must be positive.");
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	void acknowledge(String subscription, String ackId) {
+		synchronized (this.lock) {
+			this.pendingAcks.computeIfAbsent(subscription, key -> new ArrayList<>()).add(ackId);
+		}
+		pendingOperationAdded();
+	}
+
+	void modifyAckDeadline(String subscription, String ackId, int ackDeadlineSeconds) {
+		synchronized (this.lock) {
+			this.pendingDeadlineModifications.computeIfAbsent(subscription, key -> new HashMap<>())
+					.computeIfAbsent(ackDeadlineSeconds, key -> new ArrayList<>())
+					.add(ackId);
+		}
+		pendingOperationAdded();
+	}
+
+	/**
+	 * Send all pending operations to Google Cloud Pub/Sub.
+	 */
+	void flush() {
+		Map<String, List<String>> acks;
+		Map<String, Map<Integer, List<String>>> deadlineModifications;
+
+		synchronized (this.lock) {
+			if (this.scheduledFlush != null) {
+				this.scheduledFlush.cancel(false);
+				this.scheduledFlush = null;
+			}
+
+			if (this.pendingCount == 0) {
+				return;
+			}
+
+			acks = this.pendingAcks;
+			deadlineModifications = this.pendingDeadlineModifications;
+			this.pendingAcks = new HashMap<>();
+			this.pendingDeadlineModifications = new HashMap<>();
+			this.pendingCount = 0;
+		}
+
+		SubscriberStub subscriberStub = this.subscriberFactory.createSubscriberStub(null);
+
+		acks.forEach((subscription, ackIds) -> {
+			for (List<String> batch : partition(ackIds)) {
+				try {
+					subscriberStub.acknowledgeCallable().call(AcknowledgeRequest.newBuilder()
+							.setSubscription(subscription)
+							.addAllAckIds(batch)
+							.build());
+				}
+				catch (RuntimeException re) {
+					LOGGER.warn("Failed to acknowledge " + batch.size() + " messages from "
+							+ subscription + ". They will be redelivered.", re);
+				}
+			}
+		});
+
+		deadlineModifications.forEach((subscription, ackIdsByDeadline) ->
+				ackIdsByDeadline.forEach((ackDeadlineSeconds, ackIds) -> {
+					for (List<String> batch : partition(ackIds)) {
+						try {
+							subscriberStub.modifyAckDeadlineCallable().call(ModifyAckDeadlineRequest.newBuilder()
+									.setSubscription(subscription)
+									.setAckDeadlineSeconds(ackDeadlineSeconds)
+									.addAllAckIds(batch)
+									.build());
+						}
+						catch (RuntimeException re) {
+							LOGGER.warn("Failed to modify the acknowledgement deadline of " + batch.size()
+									+ " messages from " + subscription + ".", re);
+						}
+					}
+				}));
+	}
+
+	/**
+	 * Flush all pending operations and release the flushing thread. Operations added afterwards
+	 * are flushed synchronously.
+	 */
+	void destroy() {
+		synchronized (this.lock) {
+			this.destroyed = true;
+		}
+
+		flush();
+
+		synchronized (this.lock) {
+			if (this.scheduler != null) {
+				this.scheduler.shutdown();
+				this.scheduler = null;
+			}
+		}
+	}
+
+	private void pendingOperationAdded() {
+		boolean flushNow = false;
+
+		synchronized (this.lock) {
+			this.pendingCount++;
+
+			if (this.destroyed || this.pendingCount >= this.batchSize) {
+				flushNow = true;
+			}
+			else if (this.scheduledFlush == null) {
+				this.scheduledFlush = getScheduler().schedule(
+						this::flush, this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if (flushNow) {
+			flush();
+		}
+	}
+
+	private ScheduledExecutorService getScheduler() {
+		if (this.scheduler == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-ack-batcher-");
+			threadFactory.setDaemon(true);
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		}
+		return this.scheduler;
+	}
+
+	private List<List<String>> partition(List<String> ackIds) {
+		List<List<String>> batches = new ArrayList<>();
+		for (int i = 0; i < ackIds.size(); i += this.batchSize) {
+			batches.add(ackIds.subList(i, Math.min(i + this.batchSize, ackIds.size())));
+		}
+		return batches;
+	}
+}
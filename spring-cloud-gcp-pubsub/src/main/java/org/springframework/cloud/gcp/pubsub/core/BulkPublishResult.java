@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of publishing a number of messages to a topic in bulk.
+ *
+ * <p>Message IDs and failures are indexed by the position of the message in the published
+ * collection.
+ */
+public class BulkPublishResult {
+
+	private final String topic;
+
+	private final List<String> messageIds;
+
+	private final Map<Integer, Throwable> failures;
+
+	public BulkPublishResult(String topic, List<String> messageIds, Map<Integer, Throwable> failures) {
+		this.topic = topic;
+		this.messageIds = Collections.unmodifiableList(messageIds);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	public String getTopic() {
+		return this.topic;
+	}
+
+	/**
+	 * Return the IDs assigned by Google Cloud Pub/Sub to the published messages.
+	 * @return the message IDs, in the order the messages were published, with {@code null}
+	 * entries for messages that failed to be published
+	 */
+	public List<String> getMessageIds() {
+		return this.messageIds;
+	}
+
+	/**
+	 * Return the errors that caused messages to fail to be published.
+	 * @return the errors, by position of the message that failed to be published
+	 */
+	public Map<Integer, Throwable> getFailures() {
+		return this.failures;
+	}
+
+	public boolean hasFailures() {
+		return !this.failures.isEmpty();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+/**
+ * Tracks the messages published to a scope, i.e., a topic or all topics, that haven't been
+ * confirmed yet, and enforces the {@link PublishFlowControl} limits of that scope.
+ */
+class OutstandingPublishLimiter {
+
+	private final PublishFlowControl flowControl;
+
+	private long messageCount;
+
+	private long byteCount;
+
+	/**
+	 * Create a limiter.
+	 * @param flowControl the limits to enforce, or {@code null} to only track outstanding
+	 * messages
+	 */
+	OutstandingPublishLimiter(PublishFlowControl flowControl) {
+		this.flowControl = flowControl;
+	}
+
+	/**
+	 * Reserve room for a message about to be published.
+	 * @param topic the topic the message is published to, for error messages
+	 * @param bytes the serialized size of the message
+	 * @return {@code true} if the message can be published, {@code false} if it should be
+	 * dropped
+	 * @throws PubSubException if the limits are exceeded and the behavior is
+	 * {@link PublishFlowControl.LimitExceededBehavior#FAIL_FAST}, or if the thread is interrupted
+	 * while blocked
+	 */
+	synchronized boolean reserve(String topic, long bytes) {
+		while (exceedsLimits(bytes)) {
+			switch (this.flowControl.getLimitExceededBehavior()) {
+				case DROP:
+					return false;
+				case FAIL_FAST:
+					throw new PubSubException("Publishing to " + topic + " topic would exceed the flow "
+							+ "control limits of " + this.messageCount + " outstanding messages and "
+							+ this.byteCount + " outstanding bytes.");
+				default:
+					awaitRelease(topic);
+			}
+		}
+
+		this.messageCount++;
+		this.byteCount += bytes;
+		return true;
+	}
+
+	synchronized void release(long bytes) {
+		this.messageCount--;
+		this.byteCount -= bytes;
+		notifyAll();
+	}
+
+	synchronized long getMessageCount() {
+		return this.messageCount;
+	}
+
+	synchronized long getByteCount() {
+		return this.byteCount;
+	}
+
+	private boolean exceedsLimits(long bytes) {
+		if (this.flowControl == null || this.messageCount == 0) {
+			return false;
+		}
+
+		Long maxMessages = this.flowControl.getMaxOutstandingMessages();
+		Long maxBytes = this.flowControl.getMaxOutstandingBytes();
+
+		return (maxMessages != null && this.messageCount + 1 > maxMessages)
+				|| (maxBytes != null && this.byteCount + bytes > maxBytes);
+	}
+
+	private void awaitRelease(String topic) {
+		try {
+			wait();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new PubSubException("Interrupted while waiting to publish to " + topic + " topic.", ie);
+		}
+	}
+}
@@ -17,6 +17,7 @@
 package org.springframework.cloud.gcp.pubsub.core;
 
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +27,7 @@ import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
 import org.springframework.util.concurrent.ListenableFuture;
 
 /**
@@ -40,7 +42,7 @@ public interface PubSubOperations {
 	/**
 	 * Send a message to Pub/Sub.
 	 * @param topic the name of an existing topic
-	 * @param payload the message String payload
+	 * @param payload the message String payload, encoded in UTF-8
 	 * @param headers map of String to String headers
 	 * @return the listenable future of the call
 	 */
@@ -59,6 +61,10 @@ public interface PubSubOperations {
 
 	/**
 	 * Send a message to Pub/Sub.
+	 *
+	 * <p>The payload is copied. To avoid the copy, wrap a payload that won't be modified with
+	 * {@link com.google.protobuf.UnsafeByteOperations#unsafeWrap(byte[])} and publish it as a
+	 * {@link ByteString}.
 	 * @param topic the name of an existing topic
 	 * @param payload the message payload in bytes
 	 * @param headers map of String to String headers
@@ -83,6 +89,31 @@ public interface PubSubOperations {
 	 */
 	ListenableFuture<String> publish(String topic, PubsubMessage pubsubMessage);
 
+	/**
+	 * Send a number of messages to a Pub/Sub topic in bulk.
+	 *
+	 * <p>The returned future completes once every message has either been published or failed
+	 * to be published. It doesn't fail on individual message failures, which are reported in the
+	 * {@link BulkPublishResult} instead.
+	 * @param topic the name of an existing topic
+	 * @param pubsubMessages the Google Cloud Pub/Sub API messages to publish
+	 * @return the listenable future of the aggregated result of all the calls
+	 */
+	ListenableFuture<BulkPublishResult> publishAll(String topic, Collection<PubsubMessage> pubsubMessages);
+
+	/**
+	 * Send a number of messages to a number of Pub/Sub topics in bulk.
+	 *
+	 * <p>The returned future completes once every message has either been published or failed
+	 * to be published. It doesn't fail on individual message failures, which are reported in the
+	 * {@link BulkPublishResult} of each topic instead.
+	 * @param pubsubMessages map of topic name to the Google Cloud Pub/Sub API messages to publish
+	 * to that topic
+	 * @return the listenable future of the aggregated result of all the calls, by topic name
+	 */
+	ListenableFuture<Map<String, BulkPublishResult>> publishAll(
+			Map<String, ? extends Collection<PubsubMessage>> pubsubMessages);
+
 	/**
 	 * Add a callback method to an existing subscription.
 	 *
@@ -105,6 +136,22 @@ public interface PubSubOperations {
 	List<PubsubMessage> pull(String subscription, Integer maxMessages,
 			Boolean returnImmediately, RetrySettings retrySettings);
 
+	/**
+	 * Pull a number of messages from a Google Cloud Pub/Sub subscription without acknowledging
+	 * them.
+	 *
+	 * <p>The returned messages are to be acknowledged, nacked or have their acknowledgement
+	 * deadline modified by the caller, once processed.
+	 * @param subscription the subscription name
+	 * @param maxMessages the maximum number of pulled messages
+	 * @param returnImmediately returns immediately even if subscription doesn't contain enough
+	 * messages to satisfy {@code maxMessages}
+	 * @param retrySettings the timeout and retry setting for the pull request
+	 * @return the list of received messages, along with their acknowledgement handles
+	 */
+	List<AcknowledgeablePubsubMessage> pullAcknowledgeable(String subscription, Integer maxMessages,
+			Boolean returnImmediately, RetrySettings retrySettings);
+
 	/**
 	 * Pull and auto-acknowledge a message from a Google Cloud Pub/Sub subscription.
 	 * @param subscription the subscription name
@@ -17,17 +17,30 @@
 package org.springframework.cloud.gcp.pubsub.core;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.google.api.core.ApiFuture;
 import com.google.api.core.ApiFutureCallback;
 import com.google.api.core.ApiFutures;
+import com.google.api.core.ApiService;
 import com.google.api.gax.retrying.RetrySettings;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
 import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Publisher;
 import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.cloud.pubsub.v1.stub.SubscriberStub;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.AcknowledgeRequest;
 import com.google.pubsub.v1.PubsubMessage;
@@ -37,10 +50,17 @@ import com.google.pubsub.v1.ReceivedMessage;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheck;
+import org.springframework.cloud.gcp.pubsub.support.KeyOrderedMessageReceiver;
+import org.springframework.cloud.gcp.pubsub.support.PayloadCompressor;
 import org.springframework.cloud.gcp.pubsub.support.PublisherFactory;
 import org.springframework.cloud.gcp.pubsub.support.SubscriberFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.SettableListenableFuture;
 
@@ -54,14 +74,34 @@ import org.springframework.util.concurrent.SettableListenableFuture;
  * @author João André Martins
  * @author Mike Eltsufin
  */
-public class PubSubTemplate implements PubSubOperations, InitializingBean {
+public class PubSubTemplate implements PubSubOperations, InitializingBean, DisposableBean {
 
 	private static final Log LOGGER = LogFactory.getLog(PubSubTemplate.class);
 
+	private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 10000;
+
 	private final PublisherFactory publisherFactory;
 
 	private final SubscriberFactory subscriberFactory;
 
+	private final AcknowledgementBatcher acknowledgementBatcher;
+
+	private final Map<String, PublishFlowControl> topicFlowControl = new LinkedHashMap<>();
+
+	private final Map<String, OutstandingPublishLimiter> topicPublishLimiters = new ConcurrentHashMap<>();
+
+	private volatile OutstandingPublishLimiter publishLimiter = new OutstandingPublishLimiter(null);
+
+	private final SubscriberRegistry subscriberRegistry = new SubscriberRegistry();
+
+	private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+
+	private PubSubMetrics metrics = PubSubMetrics.NO_OP;
+
+	private PayloadCompressor payloadCompressor;
+
+	private ClaimCheck claimCheck;
+
 	/**
 	 * Default {@link PubSubTemplate} constructor.
 	 *
@@ -73,18 +113,149 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 	public PubSubTemplate(PublisherFactory publisherFactory, SubscriberFactory subscriberFactory) {
 		this.publisherFactory = publisherFactory;
 		this.subscriberFactory = subscriberFactory;
+		this.acknowledgementBatcher = new AcknowledgementBatcher(subscriberFactory);
+	}
+
+	/**
+	 * Set the maximum number of pending acknowledgements and acknowledgement deadline
+	 * modifications of messages returned by {@link #pullAcknowledgeable} that are sent to
+	 * Google Cloud Pub/Sub in a single batch. Defaults to 1000.
+	 * @param ackBatchSize the maximum number of operations in a batch
+	 */
+	public void setAckBatchSize(int ackBatchSize) {
+		this.acknowledgementBatcher.setBatchSize(ackBatchSize);
+	}
+
+	/**
+	 * Set the maximum time in milliseconds acknowledgements and acknowledgement deadline
+	 * modifications of messages returned by {@link #pullAcknowledgeable} wait before being
+	 * sent to Google Cloud Pub/Sub. Defaults to 100 milliseconds.
+	 * @param ackFlushIntervalMillis the flush interval in milliseconds
+	 */
+	public void setAckFlushInterval(long ackFlushIntervalMillis) {
+		this.acknowledgementBatcher.setFlushIntervalMillis(ackFlushIntervalMillis);
+	}
+
+	/**
+	 * Set the maximum time in milliseconds to wait on shutdown for the subscribers created by
+	 * this template to stop and for the messages they received to be acked or nacked. Defaults
+	 * to 10 seconds.
+	 * @param drainTimeoutMillis the drain timeout in milliseconds
+	 * @see SubscriberRegistry#drain(long, Runnable)
+	 */
+	public void setDrainTimeout(long drainTimeoutMillis) {
+		Assert.isTrue(drainTimeoutMillis >= 0, "The drain timeout can't be negative.");
+		this.drainTimeoutMillis = drainTimeoutMillis;
+	}
+
+	/**
+	 * Set the metrics that record the latency and outcome of publishing messages, and the size
+	 * of bulk publishes. Nothing is recorded by default.
+	 * @param metrics the metrics
+	 */
+	public void setMetrics(PubSubMetrics metrics) {
+		Assert.notNull(metrics, "The metrics can't be null.");
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the compressor of the payloads of published messages, which also decompresses the
+	 * payloads of received and pulled messages. Payloads aren't compressed by default.
+	 * Messages whose payload can't be decompressed are nacked, so that they are redelivered,
+	 * and aren't passed to subscribers or returned by pulls.
+	 * @param payloadCompressor the payload compressor, or null not to compress payloads
+	 */
+	public void setPayloadCompressor(PayloadCompressor payloadCompressor) {
+		this.payloadCompressor = payloadCompressor;
+	}
+
+	/**
+	 * Set the claim check that offloads the large payloads of published messages to a store,
+	 * and reads them back when messages are received or pulled. Payloads aren't offloaded by
+	 * default. Messages whose payload can't be read back are nacked, so that they are
+	 * redelivered, and aren't passed to subscribers or returned by pulls.
+	 * @param claimCheck the claim check, or null not to offload payloads
+	 */
+	public void setClaimCheck(ClaimCheck claimCheck) {
+		this.claimCheck = claimCheck;
+	}
+
+	/**
+	 * Set the limits on the messages published to all topics that haven't been confirmed by
+	 * Google Cloud Pub/Sub yet. Not limited by default.
+	 * @param flowControl the limits and the behavior when they are exceeded
+	 */
+	public void setPublishFlowControl(PublishFlowControl flowControl) {
+		Assert.notNull(flowControl, "The publish flow control can't be null.");
+		this.publishLimiter = new OutstandingPublishLimiter(flowControl);
+	}
+
+	/**
+	 * Set the limits on the messages published to specific topics that haven't been confirmed
+	 * by Google Cloud Pub/Sub yet. These limits apply in addition to the ones of
+	 * {@link #setPublishFlowControl(PublishFlowControl)}, and should be set before publishing
+	 * to the matching topics.
+	 * @param topicPattern the topic name, or a simple pattern such as {@code telemetry-*}.
+	 * An exact topic name takes precedence over patterns, which are matched in the order they
+	 * are set.
+	 * @param flowControl the limits and the behavior when they are exceeded
+	 */
+	public void setPublishFlowControl(String topicPattern, PublishFlowControl flowControl) {
+		Assert.hasText(topicPattern, "The topic pattern can't be null or empty.");
+		Assert.notNull(flowControl, "The publish flow control can't be null.");
+		synchronized (this.topicFlowControl) {
+			this.topicFlowControl.put(topicPattern, flowControl);
+		}
+	}
+
+	/**
+	 * Return the number of published messages that haven't been confirmed yet, for all topics.
+	 * @return the number of outstanding messages
+	 */
+	public long getOutstandingMessageCount() {
+		return this.publishLimiter.getMessageCount();
+	}
+
+	/**
+	 * Return the total serialized size of the published messages that haven't been confirmed
+	 * yet, for all topics.
+	 * @return the number of outstanding bytes
+	 */
+	public long getOutstandingByteCount() {
+		return this.publishLimiter.getByteCount();
+	}
+
+	/**
+	 * Return the number of messages published to a topic that haven't been confirmed yet.
+	 * @param topic the topic name
+	 * @return the number of outstanding messages
+	 */
+	public long getOutstandingMessageCount(String topic) {
+		OutstandingPublishLimiter limiter = this.topicPublishLimiters.get(topic);
+		return limiter != null ? limiter.getMessageCount() : 0;
+	}
+
+	/**
+	 * Return the total serialized size of the messages published to a topic that haven't been
+	 * confirmed yet.
+	 * @param topic the topic name
+	 * @return the number of outstanding bytes
+	 */
+	public long getOutstandingByteCount(String topic) {
+		OutstandingPublishLimiter limiter = this.topicPublishLimiters.get(topic);
+		return limiter != null ? limiter.getByteCount() : 0;
 	}
 
 	@Override
 	public ListenableFuture<String> publish(final String topic, String payload,
 			Map<String, String> headers) {
-		return publish(topic, payload, headers, Charset.defaultCharset());
+		return publish(topic, ByteString.copyFromUtf8(payload), headers);
 	}
 
 	@Override
 	public ListenableFuture<String> publish(final String topic, String payload,
 			Map<String, String> headers, Charset charset) {
-		return publish(topic, payload.getBytes(charset), headers);
+		return publish(topic, ByteString.copyFrom(payload, charset), headers);
 	}
 
 	@Override
@@ -108,7 +279,7 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 	@Override
 	public ListenableFuture<String> publish(final String topic, PubsubMessage pubsubMessage) {
 		ApiFuture<String> publishFuture =
-				this.publisherFactory.createPublisher(topic).publish(pubsubMessage);
+				publishWithFlowControl(topic, this.publisherFactory.createPublisher(topic), pubsubMessage);
 
 		final SettableListenableFuture<String> settableFuture = new SettableListenableFuture<>();
 		ApiFutures.addCallback(publishFuture, new ApiFutureCallback<String>() {
@@ -133,21 +304,254 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 		return settableFuture;
 	}
 
+	@Override
+	public ListenableFuture<BulkPublishResult> publishAll(String topic,
+			Collection<PubsubMessage> pubsubMessages) {
+		SettableListenableFuture<BulkPublishResult> settableFuture = new SettableListenableFuture<>();
+
+		publishAll(Collections.singletonMap(topic, pubsubMessages)).addCallback(
+				results -> settableFuture.set(results.get(topic)), settableFuture::setException);
+
+		return settableFuture;
+	}
+
+	@Override
+	public ListenableFuture<Map<String, BulkPublishResult>> publishAll(
+			Map<String, ? extends Collection<PubsubMessage>> pubsubMessages) {
+		Assert.notNull(pubsubMessages, "The messages to publish can't be null.");
+
+		BulkPublishAggregator aggregator = new BulkPublishAggregator(pubsubMessages);
+
+		// Failures are recorded per message rather than thrown, so that the outcome of the
+		// messages already handed to the publishers is still reported.
+		pubsubMessages.forEach((topic, messages) -> {
+			this.metrics.bulkPublished(topic, messages.size());
+			Publisher publisher = null;
+			RuntimeException publisherFailure = null;
+			try {
+				publisher = this.publisherFactory.createPublisher(topic);
+			}
+			catch (RuntimeException re) {
+				publisherFailure = re;
+			}
+
+			int index = 0;
+			for (PubsubMessage pubsubMessage : messages) {
+				ApiFuture<String> publishFuture;
+				if (publisherFailure != null) {
+					publishFuture = ApiFutures.immediateFailedFuture(publisherFailure);
+				}
+				else {
+					try {
+						publishFuture = publishWithFlowControl(topic, publisher, pubsubMessage);
+					}
+					catch (RuntimeException re) {
+						publishFuture = ApiFutures.immediateFailedFuture(re);
+					}
+				}
+				aggregator.track(topic, index, publishFuture);
+				index++;
+			}
+		});
+
+		return aggregator.getFuture();
+	}
+
+	/**
+	 * Publish a message within the flow control limits, and record the outcome in the metrics.
+	 */
+	private ApiFuture<String> publishWithFlowControl(String topic, Publisher publisher,
+			PubsubMessage pubsubMessage) {
+		long start = System.nanoTime();
+		ApiFuture<String> publishFuture;
+		try {
+			publishFuture = publishWithinLimits(topic, publisher, pubsubMessage);
+		}
+		catch (RuntimeException re) {
+			this.metrics.publishCompleted(topic, System.nanoTime() - start, false);
+			throw re;
+		}
+
+		if (this.metrics != PubSubMetrics.NO_OP) {
+			ApiFutures.addCallback(publishFuture, new ApiFutureCallback<String>() {
+
+				@Override
+				public void onFailure(Throwable throwable) {
+					PubSubTemplate.this.metrics.publishCompleted(topic, System.nanoTime() - start, false);
+				}
+
+				@Override
+				public void onSuccess(String messageId) {
+					PubSubTemplate.this.metrics.publishCompleted(topic, System.nanoTime() - start, true);
+				}
+			});
+		}
+
+		return publishFuture;
+	}
+
+	/**
+	 * Publish a message once the flow control limits allow it, and keep track of it until it
+	 * is confirmed. The room for the message is reserved before its payload is compressed and
+	 * offloaded, so that messages held back by the limits don't consume any resources yet.
+	 */
+	private ApiFuture<String> publishWithinLimits(String topic, Publisher publisher,
+			PubsubMessage pubsubMessage) {
+		OutstandingPublishLimiter topicLimiter = this.topicPublishLimiters.computeIfAbsent(
+				topic, key -> new OutstandingPublishLimiter(getPublishFlowControl(key)));
+		OutstandingPublishLimiter globalLimiter = this.publishLimiter;
+		long bytes = pubsubMessage.getSerializedSize();
+
+		if (!reserve(topic, bytes, topicLimiter, globalLimiter)) {
+			return ApiFutures.immediateFailedFuture(new PubSubException("Message to " + topic
+					+ " topic dropped because publishing it would exceed the flow control limits."));
+		}
+
+		PubsubMessage publishedMessage = null;
+		ApiFuture<String> publishFuture;
+		try {
+			publishedMessage = toPublishedMessage(topic, pubsubMessage);
+			publishFuture = publishOnLivePublisher(topic, publisher, publishedMessage);
+		}
+		catch (RuntimeException re) {
+			topicLimiter.release(bytes);
+			globalLimiter.release(bytes);
+			if (publishedMessage != null && this.claimCheck != null) {
+				this.claimCheck.publishFailed(pubsubMessage, publishedMessage);
+			}
+			throw re;
+		}
+
+		publishFuture.addListener(() -> {
+			topicLimiter.release(bytes);
+			globalLimiter.release(bytes);
+		}, MoreExecutors.directExecutor());
+
+		if (this.claimCheck != null) {
+			deleteCheckedInPayloadOnFailure(publishFuture, pubsubMessage, publishedMessage);
+		}
+
+		return publishFuture;
+	}
+
+	private void deleteCheckedInPayloadOnFailure(ApiFuture<String> publishFuture, PubsubMessage pubsubMessage,
+			PubsubMessage publishedMessage) {
+		ClaimCheck claimCheck = this.claimCheck;
+		ApiFutures.addCallback(publishFuture, new ApiFutureCallback<String>() {
+
+			@Override
+			public void onFailure(Throwable throwable) {
+				claimCheck.publishFailed(pubsubMessage, publishedMessage);
+			}
+
+			@Override
+			public void onSuccess(String messageId) {
+				// The stored payload is read by the subscribers.
+			}
+		});
+	}
+
+	/**
+	 * Publish a message, retrying once with a fresh {@link Publisher} if the given one was shut
+	 * down, e.g., because the publisher factory evicted it concurrently.
+	 */
+	private ApiFuture<String> publishOnLivePublisher(String topic, Publisher publisher,
+			PubsubMessage pubsubMessage) {
+		try {
+			return publisher.publish(pubsubMessage);
+		}
+		catch (IllegalStateException ise) {
+			Publisher freshPublisher = this.publisherFactory.createPublisher(topic);
+			if (freshPublisher == publisher) {
+				throw ise;
+			}
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("The publisher of the " + topic + " topic was shut down; retrying with a new one.");
+			}
+			return freshPublisher.publish(pubsubMessage);
+		}
+	}
+
+	private boolean reserve(String topic, long bytes, OutstandingPublishLimiter topicLimiter,
+			OutstandingPublishLimiter globalLimiter) {
+		if (!topicLimiter.reserve(topic, bytes)) {
+			return false;
+		}
+
+		boolean reserved = false;
+		try {
+			reserved = globalLimiter.reserve(topic, bytes);
+		}
+		finally {
+			if (!reserved) {
+				topicLimiter.release(bytes);
+			}
+		}
+		return reserved;
+	}
+
+	private PublishFlowControl getPublishFlowControl(String topic) {
+		synchronized (this.topicFlowControl) {
+			PublishFlowControl flowControl = this.topicFlowControl.get(topic);
+			if (flowControl == null) {
+				flowControl = this.topicFlowControl.entrySet().stream()
+						.filter(entry -> PatternMatchUtils.simpleMatch(entry.getKey(), topic))
+						.map(Map.Entry::getValue)
+						.findFirst()
+						.orElse(null);
+			}
+			return flowControl;
+		}
+	}
+
 	@Override
 	public Subscriber subscribe(String subscription, MessageReceiver messageHandler) {
-		Subscriber subscriber = this.subscriberFactory.createSubscriber(subscription, messageHandler);
+		Subscriber subscriber = createRegisteredSubscriber(subscription, messageHandler);
+		subscriber.startAsync();
+		return subscriber;
+	}
+
+	/**
+	 * Subscribe to a subscription and process messages with the same key in the order they are
+	 * received, and messages with different keys in parallel, with a
+	 * {@link KeyOrderedMessageReceiver}. Its lanes are shut down once the subscriber terminates.
+	 * @param subscription the name of an existing subscription
+	 * @param messageHandler the callback method triggered when new messages arrive
+	 * @param keyAttribute the name of the attribute holding the key of a message
+	 * @param laneCount the number of lanes, i.e., the maximum number of messages processed in
+	 * parallel
+	 * @param laneQueueCapacity the maximum number of messages waiting in each lane
+	 * @return subscriber listening to new messages
+	 */
+	public Subscriber subscribe(String subscription, MessageReceiver messageHandler, String keyAttribute,
+			int laneCount, int laneQueueCapacity) {
+		KeyOrderedMessageReceiver keyOrderedReceiver =
+				new KeyOrderedMessageReceiver(messageHandler, keyAttribute, laneCount, laneQueueCapacity);
+
+		Subscriber subscriber = createRegisteredSubscriber(subscription, keyOrderedReceiver);
+		subscriber.addListener(new ApiService.Listener() {
+
+			@Override
+			public void terminated(ApiService.State from) {
+				keyOrderedReceiver.shutdown();
+			}
+
+			@Override
+			public void failed(ApiService.State from, Throwable failure) {
+				keyOrderedReceiver.shutdown();
+			}
+		}, MoreExecutors.directExecutor());
 		subscriber.startAsync();
 		return subscriber;
 	}
 
 	/**
 	 * Pulls messages synchronously, on demand, using the pull request in argument.
-	 *
-	 * <p>This method acknowledges all received messages.
 	 * @param pullRequest pull request containing the subscription name
-	 * @return the list of {@link PubsubMessage} containing the headers and payload
+	 * @param retrySettings the timeout and retry setting for the pull request
+	 * @return the list of {@link ReceivedMessage} containing the messages and their ack IDs
 	 */
-	private List<PubsubMessage> pull(PullRequest pullRequest, RetrySettings retrySettings) {
+	private List<ReceivedMessage> pull(PullRequest pullRequest, RetrySettings retrySettings) {
 		Assert.notNull(pullRequest, "The pull request cannot be null.");
 
 		try {
@@ -156,23 +560,7 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 
 			PullResponse pullResponse =	subscriber.pullCallable().call(pullRequest);
 
-			// Ack received messages.
-			if (pullResponse.getReceivedMessagesCount() > 0) {
-				List<String> ackIds = pullResponse.getReceivedMessagesList().stream()
-						.map(ReceivedMessage::getAckId)
-						.collect(Collectors.toList());
-
-				AcknowledgeRequest acknowledgeRequest = AcknowledgeRequest.newBuilder()
-						.setSubscription(pullRequest.getSubscription())
-						.addAllAckIds(ackIds)
-						.build();
-
-				subscriber.acknowledgeCallable().call(acknowledgeRequest);
-			}
-
-			return pullResponse.getReceivedMessagesList().stream()
-					.map(ReceivedMessage::getMessage)
-					.collect(Collectors.toList());
+			return pullResponse.getReceivedMessagesList();
 		}
 		catch (Exception ioe) {
 			throw new PubSubException("Error pulling messages from subscription "
@@ -180,11 +568,85 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 		}
 	}
 
+	/**
+	 * Pulls messages synchronously and acknowledges all received messages right away. Messages
+	 * whose payload can't be resolved, e.g., read back from the claim check store, are nacked
+	 * and left out, so that they are redelivered.
+	 */
 	@Override
 	public List<PubsubMessage> pull(String subscription, Integer maxMessages, Boolean returnImmediately,
 			RetrySettings retrySettings) {
-		return pull(this.subscriberFactory.createPullRequest(subscription, maxMessages, returnImmediately),
-				retrySettings);
+		PullRequest pullRequest =
+				this.subscriberFactory.createPullRequest(subscription, maxMessages, returnImmediately);
+		List<ReceivedMessage> receivedMessages = pull(pullRequest, retrySettings);
+
+		// Resolve the payloads before acking, so that messages that can't be resolved aren't lost.
+		List<ReceivedMessage> resolvedMessages = new ArrayList<>(receivedMessages.size());
+		List<PubsubMessage> pubsubMessages = new ArrayList<>(receivedMessages.size());
+		for (ReceivedMessage receivedMessage : receivedMessages) {
+			PubsubMessage pubsubMessage = toReceivedMessage(pullRequest.getSubscription(), receivedMessage);
+			if (pubsubMessage != null) {
+				resolvedMessages.add(receivedMessage);
+				pubsubMessages.add(pubsubMessage);
+			}
+		}
+
+		// Ack received messages.
+		if (!resolvedMessages.isEmpty()) {
+			List<String> ackIds = resolvedMessages.stream()
+					.map(ReceivedMessage::getAckId)
+					.collect(Collectors.toList());
+
+			AcknowledgeRequest acknowledgeRequest = AcknowledgeRequest.newBuilder()
+					.setSubscription(pullRequest.getSubscription())
+					.addAllAckIds(ackIds)
+					.build();
+
+			try {
+				this.subscriberFactory.createSubscriberStub(retrySettings)
+						.acknowledgeCallable().call(acknowledgeRequest);
+			}
+			catch (Exception e) {
+				throw new PubSubException("Error acknowledging messages from subscription "
+						+ pullRequest.getSubscription() + ".", e);
+			}
+		}
+
+		if (this.claimCheck != null) {
+			resolvedMessages.forEach(receivedMessage -> this.claimCheck.acknowledged(receivedMessage.getMessage()));
+		}
+
+		return pubsubMessages;
+	}
+
+	/**
+	 * Pulls messages synchronously, to be acknowledged later. Messages whose payload can't be
+	 * resolved, e.g., read back from the claim check store, are nacked and left out, so that
+	 * they are redelivered.
+	 */
+	@Override
+	public List<AcknowledgeablePubsubMessage> pullAcknowledgeable(String subscription, Integer maxMessages,
+			Boolean returnImmediately, RetrySettings retrySettings) {
+		PullRequest pullRequest =
+				this.subscriberFactory.createPullRequest(subscription, maxMessages, returnImmediately);
+
+		List<AcknowledgeablePubsubMessage> messages = new ArrayList<>();
+		for (ReceivedMessage receivedMessage : pull(pullRequest, retrySettings)) {
+			PubsubMessage pubsubMessage = toReceivedMessage(pullRequest.getSubscription(), receivedMessage);
+			if (pubsubMessage != null) {
+				messages.add(new PulledAcknowledgeablePubsubMessage(
+						pullRequest.getSubscription(), receivedMessage, pubsubMessage));
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * Immediately send all pending acknowledgements and acknowledgement deadline modifications
+	 * of messages returned by {@link #pullAcknowledgeable} to Google Cloud Pub/Sub.
+	 */
+	public void flushAcknowledgements() {
+		this.acknowledgementBatcher.flush();
 	}
 
 	@Override
@@ -198,6 +660,16 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 	public void afterPropertiesSet() throws Exception {
 	}
 
+	/**
+	 * Stop the subscribers created by this template, wait up to the drain timeout for the
+	 * messages they received to be processed, then flush pending acknowledgements.
+	 */
+	@Override
+	public void destroy() {
+		this.subscriberRegistry.drain(this.drainTimeoutMillis, this.acknowledgementBatcher::flush);
+		this.acknowledgementBatcher.destroy();
+	}
+
 	public PublisherFactory getPublisherFactory() {
 		return this.publisherFactory;
 	}
@@ -205,4 +677,218 @@ public class PubSubTemplate implements PubSubOperations, InitializingBean {
 	public SubscriberFactory getSubscriberFactory() {
 		return this.subscriberFactory;
 	}
+
+	/**
+	 * Return the registry of the subscribers created by this template, which exposes their
+	 * in-flight messages and the progress of draining them on shutdown.
+	 * @return the subscriber registry
+	 */
+	public SubscriberRegistry getSubscriberRegistry() {
+		return this.subscriberRegistry;
+	}
+
+	private Subscriber createRegisteredSubscriber(String subscription, MessageReceiver messageHandler) {
+		ClaimCheck subscriberClaimCheck = this.claimCheck;
+		MessageReceiver receiver = messageHandler;
+		if (subscriberClaimCheck != null || this.payloadCompressor != null) {
+			receiver = (message, consumer) ->
+					receiveResolvedMessage(subscription, messageHandler, subscriberClaimCheck, message, consumer);
+		}
+		Subscriber subscriber = this.subscriberFactory.createSubscriber(subscription,
+				this.subscriberRegistry.trackInFlightMessages(receiver));
+		this.subscriberRegistry.register(subscription, subscriber);
+		return subscriber;
+	}
+
+	/**
+	 * Compress the payload of a message to publish, then offload it to the claim check store
+	 * if it is still too large.
+	 */
+	private PubsubMessage toPublishedMessage(String topic, PubsubMessage pubsubMessage) {
+		PubsubMessage message = pubsubMessage;
+		if (this.payloadCompressor != null) {
+			message = this.payloadCompressor.compress(message);
+		}
+		if (this.claimCheck != null) {
+			message = this.claimCheck.checkIn(topic, message);
+		}
+		return message;
+	}
+
+	/**
+	 * Pass a message received by a subscriber to the handler once its payload is resolved, or
+	 * nack it if it can't be.
+	 */
+	private void receiveResolvedMessage(String subscription, MessageReceiver messageHandler,
+			ClaimCheck subscriberClaimCheck, PubsubMessage message, AckReplyConsumer consumer) {
+		PubsubMessage receivedMessage;
+		try {
+			receivedMessage = toReceivedMessage(message);
+		}
+		catch (PubSubException pse) {
+			LOGGER.warn("Nacking message " + message.getMessageId() + " from " + subscription
+					+ " subscription, whose payload could not be resolved.", pse);
+			consumer.nack();
+			return;
+		}
+
+		messageHandler.receiveMessage(receivedMessage, subscriberClaimCheck != null
+				? subscriberClaimCheck.deleteOnAck(message, consumer)
+				: consumer);
+	}
+
+	/**
+	 * Resolve the payload of a pulled message, or nack the message if it can't be.
+	 * @return the message with its payload, or {@code null} if it was nacked
+	 */
+	private PubsubMessage toReceivedMessage(String subscriptionName, ReceivedMessage receivedMessage) {
+		try {
+			return toReceivedMessage(receivedMessage.getMessage());
+		}
+		catch (PubSubException pse) {
+			LOGGER.warn("Nacking message " + receivedMessage.getMessage().getMessageId() + " from "
+					+ subscriptionName + ", whose payload could not be resolved.", pse);
+			this.acknowledgementBatcher.modifyAckDeadline(subscriptionName, receivedMessage.getAckId(), 0);
+			return null;
+		}
+	}
+
+	/**
+	 * Read the payload of a received message back from the claim check store, then decompress
+	 * it.
+	 * @throws PubSubException if the payload can't be read back or decompressed
+	 */
+	private PubsubMessage toReceivedMessage(PubsubMessage pubsubMessage) {
+		PubsubMessage message = pubsubMessage;
+		if (this.claimCheck != null) {
+			message = this.claimCheck.checkOut(message);
+		}
+		if (this.payloadCompressor != null) {
+			message = this.payloadCompressor.decompress(message);
+		}
+		return message;
+	}
+
+	/**
+	 * An {@link AcknowledgeablePubsubMessage} whose acknowledgements are batched by the
+	 * template.
+	 */
+	private class PulledAcknowledgeablePubsubMessage implements AcknowledgeablePubsubMessage {
+
+		private final String subscriptionName;
+
+		private final String ackId;
+
+		private final PubsubMessage receivedPubsubMessage;
+
+		private final PubsubMessage pubsubMessage;
+
+		PulledAcknowledgeablePubsubMessage(String subscriptionName, ReceivedMessage receivedMessage,
+				PubsubMessage pubsubMessage) {
+			this.subscriptionName = subscriptionName;
+			this.ackId = receivedMessage.getAckId();
+			this.receivedPubsubMessage = receivedMessage.getMessage();
+			this.pubsubMessage = pubsubMessage;
+		}
+
+		@Override
+		public PubsubMessage getPubsubMessage() {
+			return this.pubsubMessage;
+		}
+
+		@Override
+		public String getAckId() {
+			return this.ackId;
+		}
+
+		@Override
+		public String getSubscriptionName() {
+			return this.subscriptionName;
+		}
+
+		@Override
+		public void ack() {
+			PubSubTemplate.this.acknowledgementBatcher.acknowledge(this.subscriptionName, getAckId());
+			if (PubSubTemplate.this.claimCheck != null) {
+				PubSubTemplate.this.claimCheck.acknowledged(this.receivedPubsubMessage);
+			}
+		}
+
+		@Override
+		public void nack() {
+			modifyAckDeadline(0);
+		}
+
+		@Override
+		public void modifyAckDeadline(int ackDeadlineSeconds) {
+			PubSubTemplate.this.acknowledgementBatcher.modifyAckDeadline(
+					this.subscriptionName, getAckId(), ackDeadlineSeconds);
+		}
+	}
+
+	/**
+	 * Collects the outcome of every message published by a bulk publish call, and completes a
+	 * single future once all of them are known.
+	 */
+	private static class BulkPublishAggregator {
+
+		private final Map<String, String[]> messageIds = new HashMap<>();
+
+		private final Map<String, Map<Integer, Throwable>> failures = new HashMap<>();
+
+		private final AtomicInteger remaining = new AtomicInteger();
+
+		private final SettableListenableFuture<Map<String, BulkPublishResult>> future =
+				new SettableListenableFuture<>();
+
+		BulkPublishAggregator(Map<String, ? extends Collection<PubsubMessage>> pubsubMessages) {
+			pubsubMessages.forEach((topic, messages) -> {
+				this.messageIds.put(topic, new String[messages.size()]);
+				this.failures.put(topic, new ConcurrentHashMap<>());
+				this.remaining.addAndGet(messages.size());
+			});
+
+			if (this.remaining.get() == 0) {
+				complete();
+			}
+		}
+
+		void track(String topic, int index, ApiFuture<String> publishFuture) {
+			publishFuture.addListener(() -> {
+				try {
+					this.messageIds.get(topic)[index] = publishFuture.get();
+				}
+				catch (ExecutionException ee) {
+					this.failures.get(topic).put(index, ee.getCause());
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					this.failures.get(topic).put(index, ie);
+				}
+
+				if (this.remaining.decrementAndGet() == 0) {
+					complete();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		ListenableFuture<Map<String, BulkPublishResult>> getFuture() {
+			return this.future;
+		}
+
+		private void complete() {
+			Map<String, BulkPublishResult> results = new HashMap<>();
+
+			this.messageIds.forEach((topic, ids) -> {
+				Map<Integer, Throwable> topicFailures = this.failures.get(topic);
+				if (!topicFailures.isEmpty()) {
+					LOGGER.warn("Publishing " + topicFailures.size() + " out of " + ids.length
+							+ " messages to " + topic + " topic failed.");
+				}
+				results.put(topic, new BulkPublishResult(topic, Arrays.asList(ids), topicFailures));
+			});
+
+			this.future.set(results);
+		}
+	}
 }
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import org.springframework.util.Assert;
+
+/**
+ * Limits on the messages published by {@link PubSubTemplate} that haven't been confirmed by
+ * Google Cloud Pub/Sub yet, and the behavior when publishing a message would exceed them.
+ *
+ * <p>Limits left {@code null} aren't enforced. A single message is always accepted when no
+ * other message is outstanding, even if it exceeds the byte limit by itself.
+ */
+public class PublishFlowControl {
+
+	private Long maxOutstandingMessages;
+
+	private Long maxOutstandingBytes;
+
+	private LimitExceededBehavior limitExceededBehavior = LimitExceededBehavior.BLOCK;
+
+	public Long getMaxOutstandingMessages() {
+		return this.maxOutstandingMessages;
+	}
+
+	/**
+	 * Set the maximum number of outstanding messages.
+	 */
+	public void setMaxOutstandingMessages(Long maxOutstandingMessages) {
+		Assert.isTrue(maxOutstandingMessages == null || maxOutstandingMessages > 0,
+				"The maximum number of outstanding messages must be positive.");
+		this.maxOutstandingMessages = maxOutstandingMessages;
+	}
+
+	public Long getMaxOutstandingBytes() {
+		return this.maxOutstandingBytes;
+	}
+
+	/**
+	 * Set the maximum total serialized size in bytes of outstanding messages.
+	 */
+	public void setMaxOutstandingBytes(Long maxOutstandingBytes) {
+		Assert.isTrue(maxOutstandingBytes == null || maxOutstandingBytes > 0,
+				"The maximum number of outstanding bytes must be positive.");
+		this.maxOutstandingBytes = maxOutstandingBytes;
+	}
+
+	public LimitExceededBehavior getLimitExceededBehavior() {
+		return this.limitExceededBehavior;
+	}
+
+	/**
+	 * Set what happens when publishing a message would exceed a limit. Defaults to
+	 * {@link LimitExceededBehavior#BLOCK}.
+	 */
+	public void setLimitExceededBehavior(LimitExceededBehavior limitExceededBehavior) {
+		Assert.notNull(limitExceededBehavior, "The limit exceeded behavior can't be null.");
+		this.limitExceededBehavior = limitExceededBehavior;
+	}
+
+	/**
+	 * What happens when publishing a message would exceed a flow control limit.
+	 */
+	public enum LimitExceededBehavior {
+
+		/**
+		 * The publishing thread waits until enough outstanding messages are confirmed.
+		 */
+		BLOCK,
+
+		/**
+		 * The publish call throws a {@link PubSubException}.
+		 */
+		FAIL_FAST,
+
+		/**
+		 * The message is discarded, and the future returned by the publish call fails with a
+		 * {@link PubSubException}.
+		 */
+		DROP
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.api.core.ApiService;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Tracks the {@link Subscriber}s created by a {@link PubSubTemplate} and the messages they are
+ * processing, and drains them on shutdown.
+ *
+ * <p>Draining happens in phases: every subscriber is told to stop pulling messages, then the
+ * messages already received are given until the timeout to be acked or nacked, and finally
+ * pending acknowledgements are flushed. Messages still being processed when the timeout
+ * elapses are redelivered once their acknowledgement deadline expires.
+ */
+public class SubscriberRegistry {
+
+	private static final Log LOGGER = LogFactory.getLog(SubscriberRegistry.class);
+
+	private final Map<Subscriber, String> subscribers = new ConcurrentHashMap<>();
+
+	private final Object inFlightLock = new Object();
+
+	private int inFlightMessages;
+
+	private volatile DrainPhase drainPhase = DrainPhase.RUNNING;
+
+	private volatile boolean drainTimedOut;
+
+	/**
+	 * Wrap a receiver to keep track of the messages it is processing, i.e., that it received
+	 * and didn't ack or nack yet.
+	 * @param receiver the receiver to wrap
+	 * @return the tracking receiver
+	 */
+	public MessageReceiver trackInFlightMessages(MessageReceiver receiver) {
+		return (message, consumer) -> {
+			AtomicBoolean done = new AtomicBoolean();
+			Runnable complete = () -> {
+				if (done.compareAndSet(false, true)) {
+					inFlightMessageCompleted();
+				}
+			};
+
+			synchronized (this.inFlightLock) {
+				this.inFlightMessages++;
+			}
+
+			try {
+				receiver.receiveMessage(message, new AckReplyConsumer() {
+
+					@Override
+					public void ack() {
+						complete.run();
+						consumer.ack();
+					}
+
+					@Override
+					public void nack() {
+						complete.run();
+						consumer.nack();
+					}
+				});
+			}
+			catch (RuntimeException re) {
+				// The subscriber nacks messages whose receiver throws.
+				complete.run();
+				throw re;
+			}
+		};
+	}
+
+	/**
+	 * Register a subscriber, which is unregistered once it terminates.
+	 * @param subscription the name of the subscription of the subscriber
+	 * @param subscriber the subscriber, which must not have been started yet
+	 */
+	public void register(String subscription, Subscriber subscriber) {
+		Assert.state(this.drainPhase == DrainPhase.RUNNING,
+				"Subscribers can't be registered once draining has started.");
+
+		this.subscribers.put(subscriber, subscription);
+		subscriber.addListener(new ApiService.Listener() {
+
+			@Override
+			public void terminated(ApiService.State from) {
+				SubscriberRegistry.this.subscribers.remove(subscriber);
+			}
+
+			@Override
+			public void failed(ApiService.State from, Throwable failure) {
+				SubscriberRegistry.this.subscribers.remove(subscriber);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Stop every registered subscriber, wait for the messages being processed, then flush
+	 * pending acknowledgements.
+	 * @param timeoutMillis the maximum time to wait for subscribers to stop and messages to be
+	 * processed
+	 * @param acknowledgementFlusher sends pending acknowledgements to Google Cloud Pub/Sub
+	 * @return true if everything was drained in time, false if the timeout elapsed first
+	 */
+	public boolean drain(long timeoutMillis, Runnable acknowledgementFlusher) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		this.drainPhase = DrainPhase.STOPPING;
+		List<Subscriber> stoppingSubscribers = new ArrayList<>(this.subscribers.keySet());
+		stoppingSubscribers.forEach(Subscriber::stopAsync);
+
+		this.drainPhase = DrainPhase.DRAINING;
+		boolean drained = awaitSubscribers(stoppingSubscribers, deadline) && awaitInFlightMessages(deadline);
+		if (!drained) {
+			LOGGER.warn("Timed out draining Pub/Sub subscribers; " + getInFlightMessageCount()
+					+ " messages still being processed will be redelivered.");
+		}
+
+		this.drainPhase = DrainPhase.FLUSHING;
+		acknowledgementFlusher.run();
+
+		this.drainTimedOut = !drained;
+		this.drainPhase = DrainPhase.DRAINED;
+		return drained;
+	}
+
+	public DrainPhase getDrainPhase() {
+		return this.drainPhase;
+	}
+
+	/**
+	 * Return whether the last drain timed out before every message was processed.
+	 * @return true if the drain timed out
+	 */
+	public boolean isDrainTimedOut() {
+		return this.drainTimedOut;
+	}
+
+	/**
+	 * Return the number of registered subscribers that haven't terminated yet.
+	 * @return the subscriber count
+	 */
+	public int getSubscriberCount() {
+		return this.subscribers.size();
+	}
+
+	/**
+	 * Return the names of the subscriptions of the registered subscribers.
+	 * @return the subscription names
+	 */
+	public Set<String> getSubscriptions() {
+		return Collections.unmodifiableSet(new HashSet<>(this.subscribers.values()));
+	}
+
+	/**
+	 * Return the number of messages received and not acked or nacked yet.
+	 * @return the in-flight message count
+	 */
+	public int getInFlightMessageCount() {
+		synchronized (this.inFlightLock) {
+			return this.inFlightMessages;
+		}
+	}
+
+	private void inFlightMessageCompleted() {
+		synchronized (this.inFlightLock) {
+			this.inFlightMessages--;
+			if (this.inFlightMessages == 0) {
+				this.inFlightLock.notifyAll();
+			}
+		}
+	}
+
+	private boolean awaitSubscribers(List<Subscriber> stoppingSubscribers, long deadline) {
+		for (Subscriber subscriber : stoppingSubscribers) {
+			try {
+				subscriber.awaitTerminated(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException te) {
+				return false;
+			}
+			catch (IllegalStateException ise) {
+				LOGGER.warn("A Pub/Sub subscriber failed while stopping.", ise);
+			}
+		}
+		return true;
+	}
+
+	private boolean awaitInFlightMessages(long deadline) {
+		synchronized (this.inFlightLock) {
+			long remaining = deadline - System.nanoTime();
+			while (this.inFlightMessages > 0 && remaining > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this.inFlightLock, remaining);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.nanoTime();
+			}
+			return this.inFlightMessages == 0;
+		}
+	}
+
+	/**
+	 * The phases of a drain.
+	 */
+	public enum DrainPhase {
+
+		/** Subscribers are running and no drain has started. */
+		RUNNING,
+
+		/** Subscribers are told to stop pulling messages. */
+		STOPPING,
+
+		/** Waiting for subscribers to stop and received messages to be processed. */
+		DRAINING,
+
+		/** Sending pending acknowledgements to Google Cloud Pub/Sub. */
+		FLUSHING,
+
+		/** Draining is over. */
+		DRAINED
+	}
+}
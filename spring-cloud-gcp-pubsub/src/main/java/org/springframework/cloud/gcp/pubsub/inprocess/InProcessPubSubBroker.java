@@ -0,0 +1,383 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.pubsub.v1.SubscriptionAdminClient;
+import com.google.cloud.pubsub.v1.SubscriptionAdminSettings;
+import com.google.cloud.pubsub.v1.TopicAdminClient;
+import com.google.cloud.pubsub.v1.TopicAdminSettings;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.ProjectTopicName;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.Subscription;
+import com.google.pubsub.v1.Topic;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gcp.pubsub.PubSubAdmin;
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.cloud.gcp.pubsub.support.DefaultPublisherFactory;
+import org.springframework.cloud.gcp.pubsub.support.DefaultSubscriberFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * An in-memory Google Cloud Pub/Sub broker, served over an in-process gRPC channel, for tests
+ * and benchmarks that shouldn't depend on the emulator or a real project.
+ *
+ * <p>The broker implements the publisher and subscriber APIs: topics, subscriptions, publishing,
+ * pulling, streaming pull, acks, ack deadlines and their modification, and the redelivery of
+ * messages that are nacked or whose deadline expires. Messages are delivered at least once, and
+ * in publishing order except for redeliveries. Push subscriptions, snapshots, seeking and
+ * message retention aren't supported.
+ *
+ * <p>The publisher and subscriber factories created by the broker are the default factories,
+ * connected to the broker, so that {@link org.springframework.cloud.gcp.pubsub.core.PubSubTemplate},
+ * the channel adapters and the stream binder run against it unchanged, with the client
+ * library's batching, flow control and lease management.
+ */
+public class InProcessPubSubBroker implements DisposableBean {
+
+	private static final int DEFAULT_ACK_DEADLINE_SECONDS = 10;
+
+	private static final long EXPIRATION_PERIOD_MILLIS = 100;
+
+	private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+	private final Map<String, InProcessSubscription> subscriptions = new ConcurrentHashMap<>();
+
+	private final Map<String, List<InProcessSubscription>> topicSubscriptions = new ConcurrentHashMap<>();
+
+	private final AtomicLong messageIdSequence = new AtomicLong();
+
+	private final ExecutorService serverExecutor;
+
+	private final ScheduledExecutorService expirationExecutor;
+
+	private final Server server;
+
+	private final ManagedChannel channel;
+
+	/**
+	 * Start a broker.
+	 */
+	public InProcessPubSubBroker() {
+		String name = "in-process-pubsub-" + UUID.randomUUID();
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-");
+		threadFactory.setDaemon(true);
+		this.serverExecutor = Executors.newCachedThreadPool(threadFactory);
+		this.expirationExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+		try {
+			this.server = InProcessServerBuilder.forName(name)
+					.executor(this.serverExecutor)
+					.addService(new InProcessPublisherService(this))
+					.addService(new InProcessSubscriberService(this, this.serverExecutor))
+					.build()
+					.start();
+		}
+		catch (IOException ioe) {
+			this.serverExecutor.shutdownNow();
+			this.expirationExecutor.shutdownNow();
+			throw new PubSubException("The in-process Pub/Sub broker could not be started.", ioe);
+		}
+
+		this.channel = InProcessChannelBuilder.forName(name).build();
+		this.expirationExecutor.scheduleWithFixedDelay(this::expireMessages,
+				EXPIRATION_PERIOD_MILLIS, EXPIRATION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Return a provider of the channel connected to the broker, which isn't closed by the
+	 * clients using it.
+	 * @return the channel provider
+	 */
+	public TransportChannelProvider getChannelProvider() {
+		return FixedTransportChannelProvider.create(GrpcTransportChannel.create(this.channel));
+	}
+
+	/**
+	 * Return a provider of no credentials, since the broker doesn't authenticate clients.
+	 * @return the credentials provider
+	 */
+	public CredentialsProvider getCredentialsProvider() {
+		return NoCredentialsProvider.create();
+	}
+
+	/**
+	 * Create a publisher factory publishing to the topics of a project of the broker.
+	 * @param projectId the project ID
+	 * @return the publisher factory
+	 */
+	public DefaultPublisherFactory createPublisherFactory(String projectId) {
+		DefaultPublisherFactory publisherFactory = new DefaultPublisherFactory(() -> projectId);
+		publisherFactory.setChannelProvider(getChannelProvider());
+		publisherFactory.setCredentialsProvider(getCredentialsProvider());
+		return publisherFactory;
+	}
+
+	/**
+	 * Create a subscriber factory subscribing to the subscriptions of a project of the broker.
+	 * @param projectId the project ID
+	 * @return the subscriber factory
+	 */
+	public DefaultSubscriberFactory createSubscriberFactory(String projectId) {
+		DefaultSubscriberFactory subscriberFactory = new DefaultSubscriberFactory(() -> projectId);
+		subscriberFactory.setChannelProvider(getChannelProvider());
+		subscriberFactory.setCredentialsProvider(getCredentialsProvider());
+		return subscriberFactory;
+	}
+
+	/**
+	 * Create an administration client of the topics and subscriptions of a project of the
+	 * broker.
+	 * @param projectId the project ID
+	 * @return the administration client
+	 */
+	public PubSubAdmin createPubSubAdmin(String projectId) {
+		try {
+			return new PubSubAdmin(() -> projectId,
+					TopicAdminClient.create(TopicAdminSettings.newBuilder()
+							.setTransportChannelProvider(getChannelProvider())
+							.setCredentialsProvider(getCredentialsProvider())
+							.build()),
+					SubscriptionAdminClient.create(SubscriptionAdminSettings.newBuilder()
+							.setTransportChannelProvider(getChannelProvider())
+							.setCredentialsProvider(getCredentialsProvider())
+							.build()));
+		}
+		catch (IOException ioe) {
+			throw new PubSubException("The administration client could not be created.", ioe);
+		}
+	}
+
+	/**
+	 * Create a topic.
+	 * @param projectId the project ID
+	 * @param topic the name of the topic
+	 */
+	public void createTopic(String projectId, String topic) {
+		addTopic(Topic.newBuilder().setName(ProjectTopicName.of(projectId, topic).toString()).build());
+	}
+
+	/**
+	 * Create a subscription with an ack deadline of 10 seconds.
+	 * @param projectId the project ID
+	 * @param subscription the name of the subscription
+	 * @param topic the name of the topic the subscription receives the messages of
+	 */
+	public void createSubscription(String projectId, String subscription, String topic) {
+		createSubscription(projectId, subscription, topic, DEFAULT_ACK_DEADLINE_SECONDS);
+	}
+
+	/**
+	 * Create a subscription.
+	 * @param projectId the project ID
+	 * @param subscription the name of the subscription
+	 * @param topic the name of the topic the subscription receives the messages of
+	 * @param ackDeadlineSeconds the time in seconds within which delivered messages must be acked
+	 */
+	public void createSubscription(String projectId, String subscription, String topic, int ackDeadlineSeconds) {
+		addSubscription(Subscription.newBuilder()
+				.setName(ProjectSubscriptionName.of(projectId, subscription).toString())
+				.setTopic(ProjectTopicName.of(projectId, topic).toString())
+				.setAckDeadlineSeconds(ackDeadlineSeconds)
+				.build());
+	}
+
+	/**
+	 * Return the number of messages of a subscription waiting to be delivered.
+	 * @param projectId the project ID
+	 * @param subscription the name of the subscription
+	 * @return the number of undelivered messages
+	 */
+	public int getPendingMessageCount(String projectId, String subscription) {
+		return getSubscription(ProjectSubscriptionName.of(projectId, subscription).toString())
+				.getPendingMessageCount();
+	}
+
+	/**
+	 * Return the number of messages of a subscription that were delivered and haven't been acked.
+	 * @param projectId the project ID
+	 * @param subscription the name of the subscription
+	 * @return the number of unacked messages
+	 */
+	public int getOutstandingMessageCount(String projectId, String subscription) {
+		return getSubscription(ProjectSubscriptionName.of(projectId, subscription).toString())
+				.getOutstandingMessageCount();
+	}
+
+	/**
+	 * Return the number of times messages of a subscription were delivered, including
+	 * redeliveries.
+	 * @param projectId the project ID
+	 * @param subscription the name of the subscription
+	 * @return the number of deliveries
+	 */
+	public long getDeliveryCount(String projectId, String subscription) {
+		return getSubscription(ProjectSubscriptionName.of(projectId, subscription).toString())
+				.getDeliveryCount();
+	}
+
+	/**
+	 * Stop the broker and close its channel.
+	 */
+	@Override
+	public void destroy() {
+		this.expirationExecutor.shutdownNow();
+		this.channel.shutdownNow();
+		this.server.shutdownNow();
+		this.serverExecutor.shutdownNow();
+	}
+
+	void addTopic(Topic topic) {
+		this.topicSubscriptions.putIfAbsent(topic.getName(), new CopyOnWriteArrayList<>());
+		if (this.topics.putIfAbsent(topic.getName(), topic) != null) {
+			throw Status.ALREADY_EXISTS.withDescription("Topic already exists: " + topic.getName())
+					.asRuntimeException();
+		}
+	}
+
+	Topic getTopic(String name) {
+		Topic topic = this.topics.get(name);
+		if (topic == null) {
+			throw Status.NOT_FOUND.withDescription("Topic not found: " + name).asRuntimeException();
+		}
+		return topic;
+	}
+
+	List<Topic> getTopics(String project) {
+		return this.topics.values().stream()
+				.filter(topic -> topic.getName().startsWith(project + "/"))
+				.collect(Collectors.toList());
+	}
+
+	List<String> getTopicSubscriptionNames(String topic) {
+		getTopic(topic);
+		return this.topicSubscriptions.get(topic).stream()
+				.map(subscription -> subscription.getSubscription().getName())
+				.collect(Collectors.toList());
+	}
+
+	void removeTopic(String name) {
+		getTopic(name);
+		this.topicSubscriptions.remove(name);
+		this.topics.remove(name);
+	}
+
+	/**
+	 * Publish messages to all the subscriptions of a topic.
+	 * @return the IDs of the messages
+	 */
+	List<String> publish(String topic, Collection<PubsubMessage> messages) {
+		List<InProcessSubscription> subscriptions = this.topicSubscriptions.get(topic);
+		if (subscriptions == null) {
+			throw Status.NOT_FOUND.withDescription("Topic not found: " + topic).asRuntimeException();
+		}
+
+		long now = System.currentTimeMillis();
+		Timestamp publishTime = Timestamp.newBuilder()
+				.setSeconds(now / 1000)
+				.setNanos((int) (now % 1000) * 1_000_000)
+				.build();
+
+		List<String> messageIds = new ArrayList<>(messages.size());
+		for (PubsubMessage message : messages) {
+			String messageId = Long.toString(this.messageIdSequence.incrementAndGet());
+			PubsubMessage publishedMessage = message.toBuilder()
+					.setMessageId(messageId)
+					.setPublishTime(publishTime)
+					.build();
+			for (InProcessSubscription subscription : subscriptions) {
+				subscription.add(publishedMessage);
+			}
+			messageIds.add(messageId);
+		}
+		return messageIds;
+	}
+
+	Subscription addSubscription(Subscription subscription) {
+		getTopic(subscription.getTopic());
+		Subscription createdSubscription = subscription.getAckDeadlineSeconds() > 0
+				? subscription
+				: subscription.toBuilder().setAckDeadlineSeconds(DEFAULT_ACK_DEADLINE_SECONDS).build();
+
+		InProcessSubscription inProcessSubscription = new InProcessSubscription(createdSubscription);
+		if (this.subscriptions.putIfAbsent(subscription.getName(), inProcessSubscription) != null) {
+			throw Status.ALREADY_EXISTS.withDescription("Subscription already exists: " + subscription.getName())
+					.asRuntimeException();
+		}
+		this.topicSubscriptions.get(subscription.getTopic()).add(inProcessSubscription);
+		return createdSubscription;
+	}
+
+	InProcessSubscription getSubscription(String name) {
+		InProcessSubscription subscription = this.subscriptions.get(name);
+		if (subscription == null) {
+			throw Status.NOT_FOUND.withDescription("Subscription not found: " + name).asRuntimeException();
+		}
+		return subscription;
+	}
+
+	List<Subscription> getSubscriptions(String project) {
+		return this.subscriptions.values().stream()
+				.map(InProcessSubscription::getSubscription)
+				.filter(subscription -> subscription.getName().startsWith(project + "/"))
+				.collect(Collectors.toList());
+	}
+
+	void removeSubscription(String name) {
+		InProcessSubscription subscription = getSubscription(name);
+		this.subscriptions.remove(name);
+		List<InProcessSubscription> subscriptions = this.topicSubscriptions.get(subscription.getTopic());
+		if (subscriptions != null) {
+			subscriptions.remove(subscription);
+		}
+	}
+
+	private void expireMessages() {
+		long now = System.nanoTime();
+		this.subscriptions.values().forEach(subscription -> subscription.expire(now));
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.DeleteTopicRequest;
+import com.google.pubsub.v1.GetTopicRequest;
+import com.google.pubsub.v1.ListTopicSubscriptionsRequest;
+import com.google.pubsub.v1.ListTopicSubscriptionsResponse;
+import com.google.pubsub.v1.ListTopicsRequest;
+import com.google.pubsub.v1.ListTopicsResponse;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc;
+import com.google.pubsub.v1.Topic;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * The Google Cloud Pub/Sub publisher API of an {@link InProcessPubSubBroker}.
+ */
+class InProcessPublisherService extends PublisherGrpc.PublisherImplBase {
+
+	private final InProcessPubSubBroker broker;
+
+	InProcessPublisherService(InProcessPubSubBroker broker) {
+		this.broker = broker;
+	}
+
+	@Override
+	public void createTopic(Topic request, StreamObserver<Topic> responseObserver) {
+		try {
+			this.broker.addTopic(request);
+			complete(responseObserver, request);
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void getTopic(GetTopicRequest request, StreamObserver<Topic> responseObserver) {
+		try {
+			complete(responseObserver, this.broker.getTopic(request.getTopic()));
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void listTopics(ListTopicsRequest request, StreamObserver<ListTopicsResponse> responseObserver) {
+		complete(responseObserver, ListTopicsResponse.newBuilder()
+				.addAllTopics(this.broker.getTopics(request.getProject()))
+				.build());
+	}
+
+	@Override
+	public void listTopicSubscriptions(ListTopicSubscriptionsRequest request,
+			StreamObserver<ListTopicSubscriptionsResponse> responseObserver) {
+		try {
+			complete(responseObserver, ListTopicSubscriptionsResponse.newBuilder()
+					.addAllSubscriptions(this.broker.getTopicSubscriptionNames(request.getTopic()))
+					.build());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void deleteTopic(DeleteTopicRequest request, StreamObserver<Empty> responseObserver) {
+		try {
+			this.broker.removeTopic(request.getTopic());
+			complete(responseObserver, Empty.getDefaultInstance());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+		try {
+			complete(responseObserver, PublishResponse.newBuilder()
+					.addAllMessageIds(this.broker.publish(request.getTopic(), request.getMessagesList()))
+					.build());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	private static <T> void complete(StreamObserver<T> responseObserver, T response) {
+		responseObserver.onNext(response);
+		responseObserver.onCompleted();
+	}
+}
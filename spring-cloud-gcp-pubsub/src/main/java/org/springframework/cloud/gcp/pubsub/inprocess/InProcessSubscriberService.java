@@ -0,0 +1,279 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.DeleteSubscriptionRequest;
+import com.google.pubsub.v1.GetSubscriptionRequest;
+import com.google.pubsub.v1.ListSubscriptionsRequest;
+import com.google.pubsub.v1.ListSubscriptionsResponse;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.PullResponse;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.StreamingPullRequest;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.SubscriberGrpc;
+import com.google.pubsub.v1.Subscription;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The Google Cloud Pub/Sub subscriber API of an {@link InProcessPubSubBroker}.
+ */
+class InProcessSubscriberService extends SubscriberGrpc.SubscriberImplBase {
+
+	private static final Log LOGGER = LogFactory.getLog(InProcessSubscriberService.class);
+
+	private static final int MAX_MESSAGES_PER_RESPONSE = 1000;
+
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+
+	private static final long PULL_WAIT_MILLIS = 1000;
+
+	private final InProcessPubSubBroker broker;
+
+	private final Executor streamingPullExecutor;
+
+	InProcessSubscriberService(InProcessPubSubBroker broker, Executor streamingPullExecutor) {
+		this.broker = broker;
+		this.streamingPullExecutor = streamingPullExecutor;
+	}
+
+	@Override
+	public void createSubscription(Subscription request, StreamObserver<Subscription> responseObserver) {
+		try {
+			complete(responseObserver, this.broker.addSubscription(request));
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void getSubscription(GetSubscriptionRequest request, StreamObserver<Subscription> responseObserver) {
+		try {
+			complete(responseObserver, this.broker.getSubscription(request.getSubscription()).getSubscription());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void listSubscriptions(ListSubscriptionsRequest request,
+			StreamObserver<ListSubscriptionsResponse> responseObserver) {
+		complete(responseObserver, ListSubscriptionsResponse.newBuilder()
+				.addAllSubscriptions(this.broker.getSubscriptions(request.getProject()))
+				.build());
+	}
+
+	@Override
+	public void deleteSubscription(DeleteSubscriptionRequest request, StreamObserver<Empty> responseObserver) {
+		try {
+			this.broker.removeSubscription(request.getSubscription());
+			complete(responseObserver, Empty.getDefaultInstance());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void modifyAckDeadline(ModifyAckDeadlineRequest request, StreamObserver<Empty> responseObserver) {
+		try {
+			InProcessSubscription subscription = this.broker.getSubscription(request.getSubscription());
+			for (String ackId : request.getAckIdsList()) {
+				subscription.modifyAckDeadline(ackId, request.getAckDeadlineSeconds());
+			}
+			complete(responseObserver, Empty.getDefaultInstance());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void acknowledge(AcknowledgeRequest request, StreamObserver<Empty> responseObserver) {
+		try {
+			this.broker.getSubscription(request.getSubscription()).acknowledge(request.getAckIdsList());
+			complete(responseObserver, Empty.getDefaultInstance());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+	}
+
+	@Override
+	public void pull(PullRequest request, StreamObserver<PullResponse> responseObserver) {
+		try {
+			InProcessSubscription subscription = this.broker.getSubscription(request.getSubscription());
+			int maxMessages = request.getMaxMessages() > 0 ? request.getMaxMessages() : MAX_MESSAGES_PER_RESPONSE;
+			List<ReceivedMessage> messages = subscription.poll(maxMessages,
+					request.getReturnImmediately() ? 0 : PULL_WAIT_MILLIS, 0);
+			complete(responseObserver, PullResponse.newBuilder().addAllReceivedMessages(messages).build());
+		}
+		catch (StatusRuntimeException sre) {
+			responseObserver.onError(sre);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			responseObserver.onError(Status.CANCELLED.withCause(ie).asRuntimeException());
+		}
+	}
+
+	@Override
+	public StreamObserver<StreamingPullRequest> streamingPull(
+			StreamObserver<StreamingPullResponse> responseObserver) {
+		return new StreamingPullSession((ServerCallStreamObserver<StreamingPullResponse>) responseObserver);
+	}
+
+	private static <T> void complete(StreamObserver<T> responseObserver, T response) {
+		responseObserver.onNext(response);
+		responseObserver.onCompleted();
+	}
+
+	/**
+	 * A streaming pull stream, which sends messages to the client as long as the client is ready
+	 * to receive them, and applies the acks and deadline modifications the client sends.
+	 */
+	private class StreamingPullSession implements StreamObserver<StreamingPullRequest>, Runnable {
+
+		private final ServerCallStreamObserver<StreamingPullResponse> responseObserver;
+
+		private final Object readyMonitor = new Object();
+
+		private volatile InProcessSubscription subscription;
+
+		private volatile int streamAckDeadlineSeconds;
+
+		private volatile boolean closed;
+
+		StreamingPullSession(ServerCallStreamObserver<StreamingPullResponse> responseObserver) {
+			this.responseObserver = responseObserver;
+			responseObserver.setOnReadyHandler(this::signalReady);
+			responseObserver.setOnCancelHandler(() -> {
+				this.closed = true;
+				signalReady();
+			});
+		}
+
+		@Override
+		public void onNext(StreamingPullRequest request) {
+			if (this.subscription == null) {
+				try {
+					this.subscription = InProcessSubscriberService.this.broker.getSubscription(
+							request.getSubscription());
+				}
+				catch (StatusRuntimeException sre) {
+					this.closed = true;
+					this.responseObserver.onError(sre);
+					return;
+				}
+				this.streamAckDeadlineSeconds = request.getStreamAckDeadlineSeconds();
+				InProcessSubscriberService.this.streamingPullExecutor.execute(this);
+			}
+			else if (request.getStreamAckDeadlineSeconds() > 0) {
+				this.streamAckDeadlineSeconds = request.getStreamAckDeadlineSeconds();
+			}
+
+			this.subscription.acknowledge(request.getAckIdsList());
+			for (int i = 0; i < request.getModifyDeadlineAckIdsCount(); i++) {
+				this.subscription.modifyAckDeadline(
+						request.getModifyDeadlineAckIds(i), request.getModifyDeadlineSeconds(i));
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.closed = true;
+			signalReady();
+		}
+
+		@Override
+		public void onCompleted() {
+			this.closed = true;
+			signalReady();
+		}
+
+		/**
+		 * Send messages until the stream is closed.
+		 */
+		@Override
+		public void run() {
+			try {
+				while (!this.closed) {
+					if (this.responseObserver.isReady()) {
+						send();
+					}
+					else {
+						awaitReady();
+					}
+				}
+				if (!this.responseObserver.isCancelled()) {
+					this.responseObserver.onCompleted();
+				}
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			catch (RuntimeException re) {
+				LOGGER.debug("Streaming pull from " + this.subscription.getSubscription().getName()
+						+ " was closed.", re);
+			}
+		}
+
+		private void send() throws InterruptedException {
+			List<ReceivedMessage> messages = this.subscription.poll(
+					MAX_MESSAGES_PER_RESPONSE, POLL_TIMEOUT_MILLIS, this.streamAckDeadlineSeconds);
+			if (messages.isEmpty()) {
+				return;
+			}
+
+			if (this.closed) {
+				this.subscription.redeliver(messages);
+			}
+			else {
+				this.responseObserver.onNext(
+						StreamingPullResponse.newBuilder().addAllReceivedMessages(messages).build());
+			}
+		}
+
+		private void awaitReady() throws InterruptedException {
+			synchronized (this.readyMonitor) {
+				if (!this.closed && !this.responseObserver.isReady()) {
+					this.readyMonitor.wait(POLL_TIMEOUT_MILLIS);
+				}
+			}
+		}
+
+		private void signalReady() {
+			synchronized (this.readyMonitor) {
+				this.readyMonitor.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.Subscription;
+
+/**
+ * The messages of a subscription of an {@link InProcessPubSubBroker}: the messages waiting to
+ * be delivered, and the delivered messages waiting to be acked before their deadline.
+ */
+class InProcessSubscription {
+
+	private final Subscription subscription;
+
+	private final BlockingDeque<PubsubMessage> pendingMessages = new LinkedBlockingDeque<>();
+
+	/**
+	 * Delivered messages, by ack ID.
+	 */
+	private final Map<String, OutstandingMessage> outstandingMessages = new ConcurrentHashMap<>();
+
+	private final AtomicLong ackIdSequence = new AtomicLong();
+
+	private final AtomicLong deliveryCount = new AtomicLong();
+
+	InProcessSubscription(Subscription subscription) {
+		this.subscription = subscription;
+	}
+
+	Subscription getSubscription() {
+		return this.subscription;
+	}
+
+	String getTopic() {
+		return this.subscription.getTopic();
+	}
+
+	void add(PubsubMessage message) {
+		this.pendingMessages.add(message);
+	}
+
+	/**
+	 * Deliver up to a maximum number of messages, waiting for the first one up to a timeout.
+	 */
+	List<ReceivedMessage> poll(int maxMessages, long timeoutMillis, int ackDeadlineSeconds)
+			throws InterruptedException {
+		PubsubMessage first = timeoutMillis > 0
+				? this.pendingMessages.poll(timeoutMillis, TimeUnit.MILLISECONDS)
+				: this.pendingMessages.poll();
+		if (first == null) {
+			return Collections.emptyList();
+		}
+
+		List<PubsubMessage> messages = new ArrayList<>(Math.min(maxMessages, 1000));
+		messages.add(first);
+		this.pendingMessages.drainTo(messages, maxMessages - 1);
+
+		int deadlineSeconds = ackDeadlineSeconds > 0 ? ackDeadlineSeconds : this.subscription.getAckDeadlineSeconds();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(deadlineSeconds);
+		List<ReceivedMessage> receivedMessages = new ArrayList<>(messages.size());
+		for (PubsubMessage message : messages) {
+			String ackId = Long.toString(this.ackIdSequence.incrementAndGet());
+			this.outstandingMessages.put(ackId, new OutstandingMessage(message, deadline));
+			receivedMessages.add(ReceivedMessage.newBuilder().setAckId(ackId).setMessage(message).build());
+		}
+		this.deliveryCount.addAndGet(messages.size());
+		return receivedMessages;
+	}
+
+	/**
+	 * Forget acked messages. Ack IDs of messages whose deadline expired are ignored.
+	 */
+	void acknowledge(Collection<String> ackIds) {
+		for (String ackId : ackIds) {
+			this.outstandingMessages.remove(ackId);
+		}
+	}
+
+	/**
+	 * Extend the deadline of delivered messages, or redeliver them if the deadline is 0.
+	 */
+	void modifyAckDeadline(String ackId, int ackDeadlineSeconds) {
+		if (ackDeadlineSeconds <= 0) {
+			OutstandingMessage outstandingMessage = this.outstandingMessages.remove(ackId);
+			if (outstandingMessage != null) {
+				this.pendingMessages.addFirst(outstandingMessage.message);
+			}
+		}
+		else {
+			this.outstandingMessages.computeIfPresent(ackId, (key, outstandingMessage) -> new OutstandingMessage(
+					outstandingMessage.message, System.nanoTime() + TimeUnit.SECONDS.toNanos(ackDeadlineSeconds)));
+		}
+	}
+
+	/**
+	 * Redeliver messages that were taken from the subscription but not sent.
+	 */
+	void redeliver(List<ReceivedMessage> receivedMessages) {
+		for (int i = receivedMessages.size() - 1; i >= 0; i--) {
+			modifyAckDeadline(receivedMessages.get(i).getAckId(), 0);
+		}
+	}
+
+	/**
+	 * Redeliver the messages whose deadline expired.
+	 */
+	void expire(long nowNanos) {
+		for (Map.Entry<String, OutstandingMessage> entry : this.outstandingMessages.entrySet()) {
+			OutstandingMessage outstandingMessage = entry.getValue();
+			// The deadline may have been extended, or the message acked, in the meantime.
+			if (outstandingMessage.deadlineNanos - nowNanos <= 0
+					&& this.outstandingMessages.remove(entry.getKey(), outstandingMessage)) {
+				this.pendingMessages.add(outstandingMessage.message);
+			}
+		}
+	}
+
+	int getPendingMessageCount() {
+		return this.pendingMessages.size();
+	}
+
+	int getOutstandingMessageCount() {
+		return this.outstandingMessages.size();
+	}
+
+	long getDeliveryCount() {
+		return this.deliveryCount.get();
+	}
+
+	/**
+	 * A delivered message and the time by which it must be acked.
+	 */
+	private static final class OutstandingMessage {
+
+		private final PubsubMessage message;
+
+		private final long deadlineNanos;
+
+		OutstandingMessage(PubsubMessage message, long deadlineNanos) {
+			this.message = message;
+			this.deadlineNanos = deadlineNanos;
+		}
+	}
+}
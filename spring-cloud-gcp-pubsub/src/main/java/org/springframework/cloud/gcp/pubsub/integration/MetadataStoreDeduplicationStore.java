@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.integration;
+
+import java.util.function.LongSupplier;
+
+import org.springframework.cloud.gcp.pubsub.support.DeduplicationStore;
+import org.springframework.integration.metadata.ConcurrentMetadataStore;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DeduplicationStore} backed by a Spring Integration {@link ConcurrentMetadataStore},
+ * to share the keys of received messages between application instances.
+ *
+ * <p>The time at which a key was received is stored with it, and replaced with the time at
+ * which its message was acked, followed by {@code :completed}. Keys older than the time window
+ * are treated as unknown. The keys of messages whose processing was interrupted, e.g., by a
+ * crash, stay in progress until they expire, and their redeliveries are nacked until then.
+ * Since metadata stores don't expire entries, expired keys are only overwritten when received
+ * again; the store itself should be cleaned up separately.
+ */
+public class MetadataStoreDeduplicationStore implements DeduplicationStore {
+
+	private static final String DEFAULT_KEY_PREFIX = "pubsub-dedup:";
+
+	private static final String COMPLETED_SUFFIX = ":completed";
+
+	private final ConcurrentMetadataStore metadataStore;
+
+	private final long windowMillis;
+
+	private final LongSupplier clock;
+
+	private String keyPrefix = DEFAULT_KEY_PREFIX;
+
+	/**
+	 * Create a store.
+	 * @param metadataStore the metadata store holding the keys
+	 * @param windowMillis how long keys are remembered, in milliseconds
+	 */
+	public MetadataStoreDeduplicationStore(ConcurrentMetadataStore metadataStore, long windowMillis) {
+		this(metadataStore, windowMillis, System::currentTimeMillis);
+	}
+
+	MetadataStoreDeduplicationStore(ConcurrentMetadataStore metadataStore, long windowMillis,
+			LongSupplier clock) {
+		Assert.notNull(metadataStore, "The metadata store can't be null.");
+		Assert.isTrue(windowMillis > 0, "The deduplication window must be positive.");
+		this.metadataStore = metadataStore;
+		this.windowMillis = windowMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * Set the prefix of the keys in the metadata store. Defaults to {@code pubsub-dedup:}.
+	 */
+	public void setKeyPrefix(String keyPrefix) {
+		Assert.notNull(keyPrefix, "The key prefix can't be null.");
+		this.keyPrefix = keyPrefix;
+	}
+
+	@Override
+	public boolean markIfAbsent(String key) {
+		String now = Long.toString(this.clock.getAsLong());
+		String previous = this.metadataStore.putIfAbsent(this.keyPrefix + key, now);
+
+		// An expired key is only taken over by the instance that replaces it first.
+		return previous == null
+				|| (isExpired(previous) && this.metadataStore.replace(this.keyPrefix + key, previous, now));
+	}
+
+	@Override
+	public void markCompleted(String key) {
+		this.metadataStore.put(this.keyPrefix + key, this.clock.getAsLong() + COMPLETED_SUFFIX);
+	}
+
+	@Override
+	public boolean isCompleted(String key) {
+		String value = this.metadataStore.get(this.keyPrefix + key);
+		return value != null && value.endsWith(COMPLETED_SUFFIX) && !isExpired(value);
+	}
+
+	@Override
+	public void remove(String key) {
+		this.metadataStore.remove(this.keyPrefix + key);
+	}
+
+	private boolean isExpired(String value) {
+		String receivedMillis = value.endsWith(COMPLETED_SUFFIX)
+				? value.substring(0, value.length() - COMPLETED_SUFFIX.length())
+				: value;
+		try {
+			return Long.parseLong(receivedMillis) <= this.clock.getAsLong() - this.windowMillis;
+		}
+		catch (NumberFormatException nfe) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.integration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.integration.mapping.HeaderMapper;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * Maps the headers of Spring messages to the attributes of Google Cloud Pub/Sub messages, and
+ * back, by name patterns.
+ *
+ * <p>Patterns such as {@code "foo*"}, {@code "*foo"} or {@code "*"} include the matching
+ * headers, and patterns starting with {@code "!"} exclude them. The first matching pattern
+ * wins, and headers matching no pattern are not mapped. By default, all headers are mapped
+ * to attributes, except the {@code id}, {@code timestamp}, reply channel and error channel
+ * headers and the {@code gcp_} headers, which only make sense within the application; and all
+ * attributes are mapped to headers.
+ *
+ * <p>Header values are mapped to attributes with {@link Object#toString()}.
+ */
+public class PubSubHeaderMapper implements HeaderMapper<Map<String, String>> {
+
+	private static final String[] DEFAULT_OUTBOUND_HEADER_PATTERNS = {
+			"!" + MessageHeaders.ID,
+			"!" + MessageHeaders.TIMESTAMP,
+			"!" + MessageHeaders.REPLY_CHANNEL,
+			"!" + MessageHeaders.ERROR_CHANNEL,
+			"!" + GcpHeaders.PREFIX + "*",
+			"*" };
+
+	private static final String[] DEFAULT_INBOUND_HEADER_PATTERNS = { "*" };
+
+	private String[] outboundHeaderPatterns = DEFAULT_OUTBOUND_HEADER_PATTERNS;
+
+	private String[] inboundHeaderPatterns = DEFAULT_INBOUND_HEADER_PATTERNS;
+
+	/**
+	 * Set the patterns of the headers mapped to the attributes of published messages.
+	 * @param outboundHeaderPatterns the header name patterns
+	 */
+	public void setOutboundHeaderPatterns(String... outboundHeaderPatterns) {
+		Assert.notNull(outboundHeaderPatterns, "The outbound header patterns can't be null.");
+		Assert.noNullElements(outboundHeaderPatterns, "The outbound header patterns can't contain null.");
+		this.outboundHeaderPatterns = Arrays.copyOf(outboundHeaderPatterns, outboundHeaderPatterns.length);
+	}
+
+	/**
+	 * Set the patterns of the attributes of received messages mapped to headers.
+	 * @param inboundHeaderPatterns the attribute name patterns
+	 */
+	public void setInboundHeaderPatterns(String... inboundHeaderPatterns) {
+		Assert.notNull(inboundHeaderPatterns, "The inbound header patterns can't be null.");
+		Assert.noNullElements(inboundHeaderPatterns, "The inbound header patterns can't contain null.");
+		this.inboundHeaderPatterns = Arrays.copyOf(inboundHeaderPatterns, inboundHeaderPatterns.length);
+	}
+
+	@Override
+	public void fromHeaders(MessageHeaders headers, Map<String, String> pubsubAttributes) {
+		headers.forEach((name, value) -> {
+			if (value != null && matches(name, this.outboundHeaderPatterns)) {
+				pubsubAttributes.put(name, value.toString());
+			}
+		});
+	}
+
+	/**
+	 * Map the attributes of a received message to headers. When all attributes are mapped, the
+	 * returned map is a read-only view of the attributes, which the {@link MessageHeaders}
+	 * constructor copies only once.
+	 * @param pubsubAttributes the attributes of a received message
+	 * @return the headers
+	 */
+	@Override
+	public Map<String, Object> toHeaders(Map<String, String> pubsubAttributes) {
+		if (this.inboundHeaderPatterns.length == 1 && "*".equals(this.inboundHeaderPatterns[0])) {
+			return Collections.unmodifiableMap(pubsubAttributes);
+		}
+		Map<String, Object> headers = new HashMap<>();
+		pubsubAttributes.forEach((name, value) -> {
+			if (matches(name, this.inboundHeaderPatterns)) {
+				headers.put(name, value);
+			}
+		});
+		return headers;
+	}
+
+	private static boolean matches(String name, String[] patterns) {
+		for (String pattern : patterns) {
+			boolean negated = pattern.startsWith("!");
+			if (PatternMatchUtils.simpleMatch(negated ? pattern.substring(1) : pattern, name)) {
+				return !negated;
+			}
+		}
+		return false;
+	}
+}
@@ -16,22 +16,50 @@
 
 package org.springframework.cloud.gcp.pubsub.integration.inbound;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 
 import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
 import org.springframework.cloud.gcp.pubsub.integration.AckMode;
+import org.springframework.cloud.gcp.pubsub.integration.PubSubHeaderMapper;
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.support.DeduplicatingMessageReceiver;
+import org.springframework.cloud.gcp.pubsub.support.DeduplicationStore;
 import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.cloud.gcp.pubsub.support.KeyOrderedMessageReceiver;
+import org.springframework.cloud.gcp.pubsub.support.RedeliveryBackoffMessageReceiver;
+import org.springframework.cloud.gcp.pubsub.support.RedeliveryPolicy;
 import org.springframework.integration.endpoint.MessageProducerSupport;
-import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.mapping.HeaderMapper;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
 /**
@@ -42,6 +70,12 @@ import org.springframework.util.Assert;
  */
 public class PubSubInboundChannelAdapter extends MessageProducerSupport {
 
+	private static final long DEFAULT_BATCH_TIMEOUT_MILLIS = 1000;
+
+	private static final int DEFAULT_ORDERING_LANE_QUEUE_CAPACITY = 1000;
+
+	private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 10000;
+
 	private final String subscriptionName;
 
 	private final PubSubOperations pubSubTemplate;
@@ -52,6 +86,52 @@ public class PubSubInboundChannelAdapter extends MessageProducerSupport {
 
 	private MessageConverter messageConverter;
 
+	private Class<?> payloadType = byte[].class;
+
+	private Executor processingExecutor;
+
+	private Semaphore outstandingMessagePermits;
+
+	private boolean ackOnReply;
+
+	private int batchSize = 1;
+
+	private long batchMaxBytes = Long.MAX_VALUE;
+
+	private long batchTimeoutMillis = DEFAULT_BATCH_TIMEOUT_MILLIS;
+
+	private final Object batchLock = new Object();
+
+	private PendingBatch pendingBatch = new PendingBatch();
+
+	private ScheduledFuture<?> scheduledBatchFlush;
+
+	private ExecutorService batchFlushExecutor;
+
+	private String orderingKeyAttribute;
+
+	private int orderingLaneCount;
+
+	private int orderingLaneQueueCapacity = DEFAULT_ORDERING_LANE_QUEUE_CAPACITY;
+
+	private KeyOrderedMessageReceiver keyOrderedReceiver;
+
+	private long drainTimeoutMillis = DEFAULT_DRAIN_TIMEOUT_MILLIS;
+
+	private DeduplicationStore deduplicationStore;
+
+	private String deduplicationKeyAttribute;
+
+	private volatile DeduplicatingMessageReceiver deduplicatingReceiver;
+
+	private RedeliveryPolicy redeliveryPolicy;
+
+	private volatile RedeliveryBackoffMessageReceiver redeliveryReceiver;
+
+	private PubSubMetrics metrics = PubSubMetrics.NO_OP;
+
+	private HeaderMapper<Map<String, String>> headerMapper = new PubSubHeaderMapper();
+
 	public PubSubInboundChannelAdapter(PubSubOperations pubSubTemplate, String subscriptionName) {
 		this.pubSubTemplate = pubSubTemplate;
 		this.subscriptionName = subscriptionName;
@@ -65,52 +145,429 @@ public class PubSubInboundChannelAdapter extends MessageProducerSupport {
 	protected void doStart() {
 		super.doStart();
 
-		this.subscriber =
-				this.pubSubTemplate.subscribe(this.subscriptionName, this::receiveMessage);
+		if (this.batchSize > 1 && this.processingExecutor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-batch-flush-");
+			threadFactory.setDaemon(true);
+			this.batchFlushExecutor = Executors.newSingleThreadExecutor(threadFactory);
+		}
+
+		MessageReceiver receiver = this::receiveMessage;
+
+		if (this.orderingKeyAttribute != null) {
+			Assert.state(this.processingExecutor == null,
+					"A processing executor can't be used with key ordering, since it would reorder messages.");
+			this.keyOrderedReceiver = new KeyOrderedMessageReceiver(receiver, this.orderingKeyAttribute,
+					this.orderingLaneCount, this.orderingLaneQueueCapacity);
+			receiver = this.keyOrderedReceiver;
+		}
+
+		if (this.deduplicationStore != null) {
+			this.deduplicatingReceiver = new DeduplicatingMessageReceiver(
+					receiver, this.deduplicationStore, this.deduplicationKeyAttribute);
+			receiver = this.deduplicatingReceiver;
+		}
+
+		// Outside of the deduplication, so that the nacks of duplicates are backed off too, and
+		// failed messages are forgotten as soon as they fail.
+		if (this.redeliveryPolicy != null) {
+			this.redeliveryReceiver =
+					new RedeliveryBackoffMessageReceiver(receiver, this.redeliveryPolicy, this.pubSubTemplate);
+			receiver = this.redeliveryReceiver;
+		}
+
+		if (this.metrics != PubSubMetrics.NO_OP) {
+			receiver = instrument(receiver);
+		}
+
+		this.subscriber = this.pubSubTemplate.subscribe(this.subscriptionName, receiver);
 	}
 
 	private void receiveMessage(PubsubMessage pubsubMessage, AckReplyConsumer consumer) {
-		Map<String, Object> messageHeaders = new HashMap<>();
+		Semaphore permits = this.outstandingMessagePermits;
 
-		pubsubMessage.getAttributesMap().forEach(messageHeaders::put);
+		if (permits != null) {
+			try {
+				permits.acquire();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				consumer.nack();
+				return;
+			}
+		}
 
-		if (this.ackMode == AckMode.MANUAL) {
-			// Send the consumer downstream so user decides on when to ack/nack.
-			messageHeaders.put(GcpHeaders.ACKNOWLEDGEMENT, consumer);
+		PendingAcknowledgement acknowledgement = new PendingAcknowledgement(consumer, permits);
+
+		if (this.batchSize > 1) {
+			addToBatch(pubsubMessage, acknowledgement);
 		}
+		else {
+			process(() -> dispatch(() -> toMessage(pubsubMessage, acknowledgementHeaders(acknowledgement)),
+					acknowledgement), acknowledgement);
+		}
+	}
 
-		try {
-			Message<?> internalMessage =
-					this.messageConverter == null
-							? MessageBuilder.withPayload(pubsubMessage.getData().toByteArray())
-							.copyHeaders(messageHeaders)
-							.build()
-							: this.messageConverter.toMessage(pubsubMessage.getData().toStringUtf8(),
-							new MessageHeaders(messageHeaders));
+	private void addToBatch(PubsubMessage pubsubMessage, PendingAcknowledgement acknowledgement) {
+		PendingBatch fullBatch = null;
+
+		synchronized (this.batchLock) {
+			this.pendingBatch.add(pubsubMessage, acknowledgement);
+
+			if (this.pendingBatch.size() >= this.batchSize || this.pendingBatch.getBytes() >= this.batchMaxBytes) {
+				fullBatch = takePendingBatch();
+			}
+			else if (this.scheduledBatchFlush == null) {
+				TaskScheduler taskScheduler = getTaskScheduler();
+				Assert.state(taskScheduler != null, "A TaskScheduler is required to flush batches.");
+				this.scheduledBatchFlush = taskScheduler.schedule(this::flushBatchOnTimeout,
+						new Date(System.currentTimeMillis() + this.batchTimeoutMillis));
+			}
+		}
 
-			sendMessage(internalMessage);
+		if (fullBatch != null) {
+			processBatch(fullBatch);
+		}
+	}
+
+	/**
+	 * Send the messages waiting for a batch to fill up downstream.
+	 */
+	private void flushBatch() {
+		PendingBatch batch;
+		synchronized (this.batchLock) {
+			batch = takePendingBatch();
+		}
+
+		if (batch.size() > 0) {
+			processBatch(batch);
+		}
+	}
+
+	/**
+	 * Hand the batch whose timeout elapsed off the task scheduler's thread, which is shared with
+	 * other tasks, to the processing executor, or to the adapter's own thread without one.
+	 */
+	private void flushBatchOnTimeout() {
+		PendingBatch batch;
+		synchronized (this.batchLock) {
+			batch = takePendingBatch();
+		}
+
+		ExecutorService executor = this.batchFlushExecutor;
+		if (batch.size() > 0 && executor != null) {
+			try {
+				executor.execute(() -> processBatch(batch));
+			}
+			catch (RejectedExecutionException ree) {
+				// Stopping; the batch is sent on the scheduler's thread rather than lost.
+				processBatch(batch);
+			}
+		}
+		else if (batch.size() > 0) {
+			// The processing executor takes the batch over.
+			processBatch(batch);
+		}
+	}
+
+	private PendingBatch takePendingBatch() {
+		if (this.scheduledBatchFlush != null) {
+			this.scheduledBatchFlush.cancel(false);
+			this.scheduledBatchFlush = null;
+		}
+
+		PendingBatch batch = this.pendingBatch;
+		this.pendingBatch = new PendingBatch();
+		return batch;
+	}
+
+	private void processBatch(PendingBatch batch) {
+		AckReplyConsumer batchAcknowledgement = new BatchAcknowledgement(batch.getAcknowledgements());
+
+		process(() -> dispatch(() -> {
+			List<Message<?>> messages = new ArrayList<>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				// Elements carry their own acknowledgement only in MANUAL mode.
+				messages.add(toMessage(batch.getMessages().get(i), this.ackMode == AckMode.MANUAL
+						? Collections.<String, Object>singletonMap(
+								GcpHeaders.ACKNOWLEDGEMENT, batch.getAcknowledgements().get(i))
+						: Collections.<String, Object>emptyMap()));
+			}
+			return new GenericMessage<>(messages, acknowledgementHeaders(batchAcknowledgement));
+		}, batchAcknowledgement), batchAcknowledgement);
+	}
+
+	/**
+	 * Run the processing of received messages on the processing executor, if any.
+	 */
+	private void process(Runnable processing, AckReplyConsumer acknowledgement) {
+		if (this.processingExecutor == null) {
+			processing.run();
+		}
+		else {
+			try {
+				this.processingExecutor.execute(processing);
+			}
+			catch (RejectedExecutionException ree) {
+				acknowledgement.nack();
+				throw ree;
+			}
+		}
+	}
+
+	private void dispatch(Supplier<Message<?>> messageSupplier, AckReplyConsumer acknowledgement) {
+		long start = System.nanoTime();
+		try {
+			sendMessage(messageSupplier.get());
 		}
 		catch (RuntimeException re) {
+			this.metrics.messageHandled(this.subscriptionName, System.nanoTime() - start, false);
 			if (this.ackMode == AckMode.AUTO) {
-				consumer.nack();
+				acknowledgement.nack();
 			}
 			throw re;
 		}
+		this.metrics.messageHandled(this.subscriptionName, System.nanoTime() - start, true);
+
+		if (this.ackMode == AckMode.AUTO && !this.ackOnReply) {
+			acknowledgement.ack();
+		}
+	}
+
+	/**
+	 * Count the messages received from the subscription, and the acks and nacks sent back.
+	 */
+	private MessageReceiver instrument(MessageReceiver receiver) {
+		return (pubsubMessage, consumer) -> {
+			this.metrics.messageReceived(this.subscriptionName);
+			receiver.receiveMessage(pubsubMessage, new AckReplyConsumer() {
+
+				@Override
+				public void ack() {
+					PubSubInboundChannelAdapter.this.metrics.messageAcked(
+							PubSubInboundChannelAdapter.this.subscriptionName);
+					consumer.ack();
+				}
+
+				@Override
+				public void nack() {
+					PubSubInboundChannelAdapter.this.metrics.messageNacked(
+							PubSubInboundChannelAdapter.this.subscriptionName);
+					consumer.nack();
+				}
+			});
+		};
+	}
+
+	/**
+	 * Return the headers that let the flow, or the adapter, acknowledge a message.
+	 */
+	private Map<String, Object> acknowledgementHeaders(AckReplyConsumer acknowledgement) {
+		Map<String, Object> headers = new HashMap<>();
+
+		if (this.ackMode == AckMode.MANUAL) {
+			// Send the consumer downstream so user decides on when to ack/nack.
+			headers.put(GcpHeaders.ACKNOWLEDGEMENT, acknowledgement);
+		}
+		else if (this.ackOnReply) {
+			// Ack or nack when the flow replies, or reports an error, possibly asynchronously.
+			headers.put(MessageHeaders.REPLY_CHANNEL, (MessageChannel) (reply, timeout) -> {
+				acknowledgement.ack();
+				return true;
+			});
+			headers.put(MessageHeaders.ERROR_CHANNEL, (MessageChannel) (error, timeout) -> {
+				acknowledgement.nack();
+				return true;
+			});
+		}
+
+		return headers;
+	}
+
+	private void awaitSubscriberTermination(long deadline) {
+		try {
+			this.subscriber.awaitTerminated(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException te) {
+			this.logger.warn("Timed out waiting for the subscriber of " + this.subscriptionName
+					+ " to stop; messages still being processed will be redelivered.");
+		}
+		catch (IllegalStateException ise) {
+			this.logger.warn("The subscriber of " + this.subscriptionName + " failed while stopping.", ise);
+		}
+	}
+
+	private void awaitKeyOrderedReceiverTermination(long deadline) {
+		try {
+			if (!this.keyOrderedReceiver.awaitTermination(
+					Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				this.logger.warn("Timed out waiting for the ordered messages of " + this.subscriptionName
+						+ " to be processed; they will be redelivered.");
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
 
-		if (this.ackMode == AckMode.AUTO) {
-			consumer.ack();
+	private void awaitBatchFlushTermination(long deadline) {
+		this.batchFlushExecutor.shutdown();
+		try {
+			if (!this.batchFlushExecutor.awaitTermination(
+					Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				this.logger.warn("Timed out waiting for the batches of " + this.subscriptionName
+						+ " to be processed; they will be redelivered.");
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
+	private Message<?> toMessage(PubsubMessage pubsubMessage, Map<String, Object> acknowledgementHeaders) {
+		// With the default header mapper, a read-only view of the attributes, copied only once by
+		// the MessageHeaders constructor.
+		Map<String, Object> headers = this.headerMapper.toHeaders(pubsubMessage.getAttributesMap());
+
+		if (!acknowledgementHeaders.isEmpty()) {
+			headers = new HashMap<>(headers);
+			headers.putAll(acknowledgementHeaders);
+		}
+
+		MessageHeaders messageHeaders = new MessageHeaders(headers);
+
+		return this.messageConverter == null
+				? new GenericMessage<>(extractPayload(pubsubMessage.getData()), messageHeaders)
+				: this.messageConverter.toMessage(pubsubMessage.getData().toStringUtf8(), messageHeaders);
+	}
+
+	private Object extractPayload(ByteString data) {
+		if (this.payloadType == ByteString.class) {
+			return data;
+		}
+		else if (this.payloadType == ByteBuffer.class) {
+			return data.asReadOnlyByteBuffer();
+		}
+		return data.toByteArray();
+	}
+
 	@Override
 	protected void doStop() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.drainTimeoutMillis);
+
 		if (this.subscriber != null) {
 			this.subscriber.stopAsync();
 		}
 
+		if (this.redeliveryReceiver != null) {
+			// Let the messages waiting for redelivery go, instead of waiting for them.
+			this.redeliveryReceiver.shutdown();
+		}
+
+		if (this.subscriber != null) {
+			// Pending batches keep being flushed when their timeout elapses while waiting.
+			awaitSubscriberTermination(deadline);
+		}
+
+		if (this.keyOrderedReceiver != null) {
+			this.keyOrderedReceiver.shutdown();
+			awaitKeyOrderedReceiverTermination(deadline);
+			this.keyOrderedReceiver = null;
+		}
+
+		if (this.batchSize > 1) {
+			flushBatch();
+		}
+
+		if (this.batchFlushExecutor != null) {
+			awaitBatchFlushTermination(deadline);
+			this.batchFlushExecutor = null;
+		}
+
 		super.doStop();
 	}
 
+	/**
+	 * Set the maximum time in milliseconds to wait on stop for the subscriber to stop pulling
+	 * and for the messages already received to be acked or nacked. Messages still being
+	 * processed once it elapses are redelivered after their acknowledgement deadline. Defaults
+	 * to 10 seconds; 0 doesn't wait.
+	 * @param drainTimeoutMillis the drain timeout in milliseconds
+	 */
+	public void setDrainTimeout(long drainTimeoutMillis) {
+		Assert.isTrue(drainTimeoutMillis >= 0, "The drain timeout can't be negative.");
+		this.drainTimeoutMillis = drainTimeoutMillis;
+	}
+
+	/**
+	 * Delay the redelivery of messages that are nacked, or whose processing fails, with
+	 * exponential backoff, and forward messages that keep failing to a dead-letter topic.
+	 * Without a policy, failed messages are redelivered right away.
+	 * @param redeliveryPolicy the delays and the dead-letter topic
+	 * @see RedeliveryBackoffMessageReceiver
+	 */
+	public void setRedeliveryPolicy(RedeliveryPolicy redeliveryPolicy) {
+		this.redeliveryPolicy = redeliveryPolicy;
+	}
+
+	/**
+	 * Return the number of messages forwarded to the dead-letter topic since the adapter was
+	 * started.
+	 * @return the dead-letter count, 0 if no redelivery policy is set
+	 */
+	public long getDeadLetterCount() {
+		RedeliveryBackoffMessageReceiver receiver = this.redeliveryReceiver;
+		return receiver != null ? receiver.getDeadLetterCount() : 0;
+	}
+
+	/**
+	 * Set the metrics that record the messages received, the time spent sending them downstream,
+	 * and the acks and nacks. Nothing is recorded by default.
+	 * @param metrics the metrics
+	 */
+	public void setMetrics(PubSubMetrics metrics) {
+		Assert.notNull(metrics, "The metrics can't be null.");
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Filter out the messages Google Cloud Pub/Sub redelivers after they have already been
+	 * received, by remembering their keys in the given store. Duplicates are never sent
+	 * downstream: duplicates of completed messages are acked, and duplicates of messages still in
+	 * progress are held until the original is completed. Not enabled by default.
+	 * @param deduplicationStore remembers the received messages
+	 * @see DeduplicatingMessageReceiver
+	 */
+	public void setDeduplicationStore(DeduplicationStore deduplicationStore) {
+		this.deduplicationStore = deduplicationStore;
+	}
+
+	/**
+	 * Set the name of the attribute identifying a message for deduplication. Messages are
+	 * identified by their message ID by default, or when they don't have the attribute.
+	 * @param deduplicationKeyAttribute the name of the attribute
+	 */
+	public void setDeduplicationKeyAttribute(String deduplicationKeyAttribute) {
+		this.deduplicationKeyAttribute = deduplicationKeyAttribute;
+	}
+
+	/**
+	 * Return the number of messages filtered out as duplicates since the adapter was started.
+	 * @return the duplicate count, 0 if deduplication isn't enabled
+	 */
+	public long getDuplicateMessageCount() {
+		DeduplicatingMessageReceiver receiver = this.deduplicatingReceiver;
+		return receiver != null ? receiver.getDuplicateCount() : 0;
+	}
+
+	/**
+	 * Return the number of messages that weren't duplicates since the adapter was started.
+	 * @return the unique count, 0 if deduplication isn't enabled
+	 */
+	public long getUniqueMessageCount() {
+		DeduplicatingMessageReceiver receiver = this.deduplicatingReceiver;
+		return receiver != null ? receiver.getUniqueCount() : 0;
+	}
+
 	public AckMode getAckMode() {
 		return this.ackMode;
 	}
@@ -127,11 +584,261 @@ public class PubSubInboundChannelAdapter extends MessageProducerSupport {
 	/**
 	 * Sets the {@link MessageConverter} to convert the payload of the incoming message from
 	 * Pub/Sub.
-	 * If {@code messageConverter} is null, the payload of the Pub/Sub message is converted to
-	 * {@code byte[]} and returned in that form.
+	 * If {@code messageConverter} is null, the payload of the Pub/Sub message is passed
+	 * downstream as the {@link #setPayloadType(Class) payload type}.
 	 * @param messageConverter converts the payload of the incoming message from Pub/Sub
 	 */
 	public void setMessageConverter(MessageConverter messageConverter) {
 		this.messageConverter = messageConverter;
 	}
+
+	public HeaderMapper<Map<String, String>> getHeaderMapper() {
+		return this.headerMapper;
+	}
+
+	/**
+	 * Set the header mapper mapping the attributes of received messages to headers. By default,
+	 * a {@link PubSubHeaderMapper} maps all attributes.
+	 * @param headerMapper the header mapper
+	 */
+	public void setHeaderMapper(HeaderMapper<Map<String, String>> headerMapper) {
+		Assert.notNull(headerMapper, "The header mapper can't be null.");
+		this.headerMapper = headerMapper;
+	}
+
+	public Class<?> getPayloadType() {
+		return this.payloadType;
+	}
+
+	/**
+	 * Set the type of the payload of the messages sent downstream when there is no
+	 * {@link #setMessageConverter(MessageConverter) message converter}.
+	 *
+	 * <p>{@code byte[]}, the default, copies the payload of every message. {@link ByteString}
+	 * passes the payload of the Pub/Sub message as is, and {@link ByteBuffer} passes a read-only
+	 * view of it, without copying.
+	 * @param payloadType {@code byte[].class}, {@code ByteString.class} or
+	 * {@code ByteBuffer.class}
+	 */
+	public void setPayloadType(Class<?> payloadType) {
+		Assert.isTrue(payloadType == byte[].class || payloadType == ByteString.class
+				|| payloadType == ByteBuffer.class,
+				"The payload type must be byte[], ByteString or ByteBuffer.");
+		this.payloadType = payloadType;
+	}
+
+	public Executor getProcessingExecutor() {
+		return this.processingExecutor;
+	}
+
+	/**
+	 * Set the executor messages are sent downstream on. By default, messages are sent on the
+	 * threads of the subscriber's executor, which limits how many messages can be processed
+	 * concurrently.
+	 * @param processingExecutor the executor to send messages downstream on, or {@code null} to
+	 * send them on the subscriber's threads
+	 */
+	public void setProcessingExecutor(Executor processingExecutor) {
+		this.processingExecutor = processingExecutor;
+	}
+
+	/**
+	 * Set the maximum number of received messages that haven't been acknowledged yet. When the
+	 * limit is reached, the subscriber waits for outstanding messages to be acked or nacked
+	 * before sending more messages downstream. Not limited by default.
+	 * @param maxOutstandingMessages the maximum number of outstanding messages
+	 */
+	public void setMaxOutstandingMessages(int maxOutstandingMessages) {
+		Assert.isTrue(maxOutstandingMessages > 0, "The maximum number of outstanding messages must be positive.");
+		this.outstandingMessagePermits = new Semaphore(maxOutstandingMessages);
+	}
+
+	public boolean isAckOnReply() {
+		return this.ackOnReply;
+	}
+
+	/**
+	 * Set whether messages are acked when the flow replies instead of when they are sent
+	 * downstream, in {@link AckMode#AUTO} mode.
+	 *
+	 * <p>When enabled, the adapter sets the reply channel and error channel headers of every
+	 * message. The message is acked once a reply is sent to the reply channel, e.g., by a
+	 * service activator at the end of the flow, including when it completes an asynchronously
+	 * returned {@code ListenableFuture} or {@code CompletableFuture}. It is nacked when an error
+	 * is sent to the error channel. Messages that the flow never replies to are redelivered once
+	 * their acknowledgement deadline expires.
+	 * @param ackOnReply true to ack messages when the flow replies
+	 */
+	public void setAckOnReply(boolean ackOnReply) {
+		this.ackOnReply = ackOnReply;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the maximum number of messages sent downstream together, as the {@code List} payload
+	 * of a single message. Messages are sent one by one by default.
+	 *
+	 * <p>A batch is sent as soon as it reaches this size or
+	 * {@link #setBatchMaxBytes(long) maximum number of bytes}, or once the
+	 * {@link #setBatchTimeout(long) batch timeout} elapses after its first message was received.
+	 * Each element of the batch is the message that would have been sent on its own. In
+	 * {@link AckMode#AUTO} mode, the batch is acked or nacked as a unit. In
+	 * {@link AckMode#MANUAL} mode, each element carries its own acknowledgement header, and the
+	 * batch message carries one that acks or nacks all of them.
+	 * @param batchSize the maximum number of messages in a batch
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The batch size must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the total payload size in bytes that causes a batch to be sent downstream. Not
+	 * limited by default.
+	 * @param batchMaxBytes the maximum total payload size of a batch
+	 */
+	public void setBatchMaxBytes(long batchMaxBytes) {
+		Assert.isTrue(batchMaxBytes > 0, "The maximum batch size in bytes must be positive.");
+		this.batchMaxBytes = batchMaxBytes;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds a batch waits for more messages before being sent
+	 * downstream. The timeout is tracked on the adapter's {@link TaskScheduler}, but the batch
+	 * is sent on the {@link #setProcessingExecutor(Executor) processing executor}, or on a thread
+	 * of the adapter without one, so that a slow flow doesn't hold up the scheduler's other
+	 * tasks. Defaults to 1 second.
+	 * @param batchTimeoutMillis the batch timeout in milliseconds
+	 */
+	public void setBatchTimeout(long batchTimeoutMillis) {
+		Assert.isTrue(batchTimeoutMillis > 0, "The batch timeout must be positive.");
+		this.batchTimeoutMillis = batchTimeoutMillis;
+	}
+
+	/**
+	 * Process messages with the same key in the order they are received, and messages with
+	 * different keys in parallel. The key of a message is the value of one of its attributes,
+	 * which is hashed onto a number of lanes that each send their messages downstream one at a
+	 * time, on their own thread. Can't be combined with a
+	 * {@link #setProcessingExecutor(Executor) processing executor}.
+	 * @param keyAttribute the name of the attribute holding the key of a message
+	 * @param laneCount the number of lanes, i.e., the maximum number of messages processed in
+	 * parallel
+	 * @see KeyOrderedMessageReceiver
+	 */
+	public void setKeyOrdering(String keyAttribute, int laneCount) {
+		Assert.hasText(keyAttribute, "The key attribute can't be null or empty.");
+		Assert.isTrue(laneCount > 0, "The number of lanes must be positive.");
+		this.orderingKeyAttribute = keyAttribute;
+		this.orderingLaneCount = laneCount;
+	}
+
+	/**
+	 * Set the maximum number of messages waiting in each key ordering lane. When a lane is
+	 * full, the subscriber waits for room in it. Defaults to 1000.
+	 * @param laneQueueCapacity the maximum number of messages waiting in each lane
+	 */
+	public void setKeyOrderingLaneQueueCapacity(int laneQueueCapacity) {
+		Assert.isTrue(laneQueueCapacity > 0, "The lane queue capacity must be positive.");
+		this.orderingLaneQueueCapacity = laneQueueCapacity;
+	}
+
+	/**
+	 * Received messages waiting for a batch to fill up.
+	 */
+	private static class PendingBatch {
+
+		private final List<PubsubMessage> messages = new ArrayList<>();
+
+		private final List<AckReplyConsumer> acknowledgements = new ArrayList<>();
+
+		private long bytes;
+
+		void add(PubsubMessage message, AckReplyConsumer acknowledgement) {
+			this.messages.add(message);
+			this.acknowledgements.add(acknowledgement);
+			this.bytes += message.getData().size();
+		}
+
+		int size() {
+			return this.messages.size();
+		}
+
+		long getBytes() {
+			return this.bytes;
+		}
+
+		List<PubsubMessage> getMessages() {
+			return this.messages;
+		}
+
+		List<AckReplyConsumer> getAcknowledgements() {
+			return this.acknowledgements;
+		}
+	}
+
+	/**
+	 * Acks or nacks all the messages of a batch.
+	 */
+	private static class BatchAcknowledgement implements AckReplyConsumer {
+
+		private final List<AckReplyConsumer> acknowledgements;
+
+		BatchAcknowledgement(List<AckReplyConsumer> acknowledgements) {
+			this.acknowledgements = acknowledgements;
+		}
+
+		@Override
+		public void ack() {
+			this.acknowledgements.forEach(AckReplyConsumer::ack);
+		}
+
+		@Override
+		public void nack() {
+			this.acknowledgements.forEach(AckReplyConsumer::nack);
+		}
+	}
+
+	/**
+	 * Acks or nacks a received message at most once, and releases its outstanding message
+	 * permit when it does.
+	 */
+	private static class PendingAcknowledgement implements AckReplyConsumer {
+
+		private final AckReplyConsumer consumer;
+
+		private final Semaphore permits;
+
+		private final AtomicBoolean done = new AtomicBoolean();
+
+		PendingAcknowledgement(AckReplyConsumer consumer, Semaphore permits) {
+			this.consumer = consumer;
+			this.permits = permits;
+		}
+
+		@Override
+		public void ack() {
+			if (this.done.compareAndSet(false, true)) {
+				this.consumer.ack();
+				releasePermit();
+			}
+		}
+
+		@Override
+		public void nack() {
+			if (this.done.compareAndSet(false, true)) {
+				this.consumer.nack();
+				releasePermit();
+			}
+		}
+
+		private void releasePermit() {
+			if (this.permits != null) {
+				this.permits.release();
+			}
+		}
+	}
 }
@@ -0,0 +1,353 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.integration.inbound;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.integration.AckMode;
+import org.springframework.cloud.gcp.pubsub.integration.PubSubHeaderMapper;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.endpoint.AbstractMessageSource;
+import org.springframework.integration.mapping.HeaderMapper;
+import org.springframework.integration.support.AcknowledgmentCallback;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link org.springframework.integration.core.MessageSource} that pulls messages from a
+ * Google Cloud Pub/Sub subscription when polled.
+ *
+ * <p>Messages are pulled up to {@link #setMaxFetchSize(int) maxFetchSize} at a time and kept in
+ * a local buffer, which is refilled in the background once it is half empty. The
+ * acknowledgement deadline of buffered messages is extended until they are polled, so that they
+ * aren't redelivered while waiting in the buffer.
+ *
+ * <p>In {@link AckMode#AUTO} mode, the polled message carries an {@link AcknowledgmentCallback},
+ * which the polling endpoint uses to ack the message once the flow completes, or to nack it if
+ * the flow fails. When the endpoint stops, the buffered messages are nacked.
+ */
+public class PubSubMessageSource extends AbstractMessageSource<Object> implements Lifecycle, DisposableBean {
+
+	private static final Log LOGGER = LogFactory.getLog(PubSubMessageSource.class);
+
+	private static final int DEFAULT_MAX_FETCH_SIZE = 10;
+
+	private static final int DEFAULT_ACK_DEADLINE_SECONDS = 60;
+
+	private final PubSubOperations pubSubTemplate;
+
+	private final String subscriptionName;
+
+	private final BlockingQueue<AcknowledgeablePubsubMessage> buffer = new LinkedBlockingQueue<>();
+
+	private final AtomicBoolean refilling = new AtomicBoolean();
+
+	private AckMode ackMode = AckMode.AUTO;
+
+	private MessageConverter messageConverter;
+
+	private Class<?> payloadType = byte[].class;
+
+	private HeaderMapper<Map<String, String>> headerMapper = new PubSubHeaderMapper();
+
+	private int maxFetchSize = DEFAULT_MAX_FETCH_SIZE;
+
+	private int ackDeadlineSeconds = DEFAULT_ACK_DEADLINE_SECONDS;
+
+	private ScheduledExecutorService executor;
+
+	private volatile boolean running;
+
+	public PubSubMessageSource(PubSubOperations pubSubTemplate, String subscriptionName) {
+		Assert.notNull(pubSubTemplate, "The PubSubOperations can't be null.");
+		Assert.hasText(subscriptionName, "The subscription name can't be null or empty.");
+		this.pubSubTemplate = pubSubTemplate;
+		this.subscriptionName = subscriptionName;
+
+		StringMessageConverter stringMessageConverter = new StringMessageConverter();
+		stringMessageConverter.setSerializedPayloadClass(String.class);
+		this.messageConverter = stringMessageConverter;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "gcp-pubsub:message-source";
+	}
+
+	@Override
+	protected Object doReceive() {
+		AcknowledgeablePubsubMessage message = this.buffer.poll();
+
+		if (message == null && this.refilling.compareAndSet(false, true)) {
+			refill();
+			message = this.buffer.poll();
+		}
+
+		if (this.buffer.size() <= this.maxFetchSize / 2 && this.refilling.compareAndSet(false, true)) {
+			getExecutor().execute(this::refill);
+		}
+
+		return message != null ? toMessage(message) : null;
+	}
+
+	/**
+	 * Pull as many messages as there is room for in the buffer.
+	 */
+	private void refill() {
+		try {
+			int room = this.maxFetchSize - this.buffer.size();
+			if (room > 0) {
+				List<AcknowledgeablePubsubMessage> messages = this.pubSubTemplate.pullAcknowledgeable(
+						this.subscriptionName, room, true, null);
+				messages.forEach(message -> message.modifyAckDeadline(this.ackDeadlineSeconds));
+				this.buffer.addAll(messages);
+			}
+		}
+		catch (RuntimeException re) {
+			LOGGER.warn("Failed to pull messages from " + this.subscriptionName + " subscription.", re);
+		}
+		finally {
+			this.refilling.set(false);
+		}
+	}
+
+	private void extendBufferedAckDeadlines() {
+		new ArrayList<>(this.buffer).forEach(message -> message.modifyAckDeadline(this.ackDeadlineSeconds));
+	}
+
+	private Object toMessage(AcknowledgeablePubsubMessage message) {
+		// Every message carries an acknowledgement header, next to the mapped attributes.
+		Map<String, Object> headers =
+				new HashMap<>(this.headerMapper.toHeaders(message.getPubsubMessage().getAttributesMap()));
+
+		if (this.ackMode == AckMode.MANUAL) {
+			headers.put(GcpHeaders.ACKNOWLEDGEMENT, message);
+		}
+		else {
+			headers.put(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK,
+					new PubSubAcknowledgmentCallback(message));
+		}
+
+		MessageHeaders messageHeaders = new MessageHeaders(headers);
+		ByteString data = message.getPubsubMessage().getData();
+
+		return this.messageConverter == null
+				? new GenericMessage<>(extractPayload(data), messageHeaders)
+				: this.messageConverter.toMessage(data.toStringUtf8(), messageHeaders);
+	}
+
+	private Object extractPayload(ByteString data) {
+		if (this.payloadType == ByteString.class) {
+			return data;
+		}
+		else if (this.payloadType == ByteBuffer.class) {
+			return data.asReadOnlyByteBuffer();
+		}
+		return data.toByteArray();
+	}
+
+	private synchronized ScheduledExecutorService getExecutor() {
+		if (this.executor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-message-source-");
+			threadFactory.setDaemon(true);
+			this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+			long extensionPeriodMillis = TimeUnit.SECONDS.toMillis(this.ackDeadlineSeconds) / 2;
+			this.executor.scheduleWithFixedDelay(this::extendBufferedAckDeadlines,
+					extensionPeriodMillis, extensionPeriodMillis, TimeUnit.MILLISECONDS);
+		}
+		return this.executor;
+	}
+
+	@Override
+	public void start() {
+		this.running = true;
+	}
+
+	/**
+	 * Stop refilling the buffer, and make the buffered messages available for redelivery.
+	 * Called when the polling endpoint stops, and on destruction. Polling again restarts the
+	 * refills.
+	 */
+	@Override
+	public synchronized void stop() {
+		this.running = false;
+
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+		}
+
+		List<AcknowledgeablePubsubMessage> bufferedMessages = new ArrayList<>();
+		this.buffer.drainTo(bufferedMessages);
+		bufferedMessages.forEach(AcknowledgeablePubsubMessage::nack);
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+	}
+
+	public AckMode getAckMode() {
+		return this.ackMode;
+	}
+
+	/**
+	 * Set the acknowledgement mode. In {@link AckMode#AUTO} mode, messages are acked once the
+	 * flow they are polled by completes, and nacked if it fails, through the
+	 * {@link IntegrationMessageHeaderAccessor#ACKNOWLEDGMENT_CALLBACK} header. In
+	 * {@link AckMode#MANUAL} mode, the {@link AcknowledgeablePubsubMessage} is sent downstream in
+	 * the {@link GcpHeaders#ACKNOWLEDGEMENT} header.
+	 * @param ackMode the acknowledgement mode
+	 */
+	public void setAckMode(AckMode ackMode) {
+		Assert.notNull(ackMode, "The acknowledgement mode can't be null.");
+		this.ackMode = ackMode;
+	}
+
+	public MessageConverter getMessageConverter() {
+		return this.messageConverter;
+	}
+
+	/**
+	 * Set the {@link MessageConverter} to convert the payload of the pulled messages.
+	 * If {@code messageConverter} is null, the payload is returned as the
+	 * {@link #setPayloadType(Class) payload type}.
+	 * @param messageConverter converts the payload of the pulled messages
+	 */
+	public void setMessageConverter(MessageConverter messageConverter) {
+		this.messageConverter = messageConverter;
+	}
+
+	public HeaderMapper<Map<String, String>> getHeaderMapper() {
+		return this.headerMapper;
+	}
+
+	/**
+	 * Set the header mapper mapping the attributes of received messages to headers. By default,
+	 * a {@link PubSubHeaderMapper} maps all attributes.
+	 * @param headerMapper the header mapper
+	 */
+	public void setHeaderMapper(HeaderMapper<Map<String, String>> headerMapper) {
+		Assert.notNull(headerMapper, "The header mapper can't be null.");
+		this.headerMapper = headerMapper;
+	}
+
+	public Class<?> getPayloadType() {
+		return this.payloadType;
+	}
+
+	/**
+	 * Set the type of the payload when there is no message converter: {@code byte[]}, the
+	 * default, {@link ByteString} or a read-only {@link ByteBuffer}.
+	 * @param payloadType {@code byte[].class}, {@code ByteString.class} or
+	 * {@code ByteBuffer.class}
+	 */
+	public void setPayloadType(Class<?> payloadType) {
+		Assert.isTrue(payloadType == byte[].class || payloadType == ByteString.class
+				|| payloadType == ByteBuffer.class,
+				"The payload type must be byte[], ByteString or ByteBuffer.");
+		this.payloadType = payloadType;
+	}
+
+	public int getMaxFetchSize() {
+		return this.maxFetchSize;
+	}
+
+	/**
+	 * Set the maximum number of messages pulled at once, which is also the size of the local
+	 * buffer. Defaults to 10.
+	 * @param maxFetchSize the maximum number of messages pulled at once
+	 */
+	public void setMaxFetchSize(int maxFetchSize) {
+		Assert.isTrue(maxFetchSize > 0, "The maximum fetch size must be positive.");
+		this.maxFetchSize = maxFetchSize;
+	}
+
+	/**
+	 * Set the acknowledgement deadline in seconds buffered messages are given, and extended
+	 * by every half of it, until they are polled. Defaults to 60 seconds.
+	 * @param ackDeadlineSeconds the acknowledgement deadline of buffered messages
+	 */
+	public void setAckDeadlineSeconds(int ackDeadlineSeconds) {
+		Assert.isTrue(ackDeadlineSeconds > 0, "The acknowledgement deadline must be positive.");
+		this.ackDeadlineSeconds = ackDeadlineSeconds;
+	}
+
+	/**
+	 * Acks or nacks a polled message when the polling endpoint reports the outcome of its flow.
+	 * Google Cloud Pub/Sub has no notion of rejecting a message, which is nacked like a requeued
+	 * one.
+	 */
+	private static final class PubSubAcknowledgmentCallback implements AcknowledgmentCallback {
+
+		private final AcknowledgeablePubsubMessage message;
+
+		private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+		PubSubAcknowledgmentCallback(AcknowledgeablePubsubMessage message) {
+			this.message = message;
+		}
+
+		@Override
+		public void acknowledge(Status status) {
+			if (!this.acknowledged.compareAndSet(false, true)) {
+				return;
+			}
+
+			if (status == Status.ACCEPT) {
+				this.message.ack();
+			}
+			else {
+				this.message.nack();
+			}
+		}
+
+		@Override
+		public boolean isAcknowledged() {
+			return this.acknowledged.get();
+		}
+	}
+}
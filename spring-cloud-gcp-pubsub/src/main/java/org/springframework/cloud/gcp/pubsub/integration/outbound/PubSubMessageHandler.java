@@ -16,23 +16,34 @@
 
 package org.springframework.cloud.gcp.pubsub.integration.outbound;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.pubsub.v1.PubsubMessage;
 
 import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.integration.PubSubHeaderMapper;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.integration.expression.ExpressionUtils;
 import org.springframework.integration.expression.ValueExpression;
 import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.mapping.HeaderMapper;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.util.Assert;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
@@ -44,12 +55,19 @@ import org.springframework.util.concurrent.ListenableFutureCallback;
  * the {@link Message} payload into a {@link PubsubMessage} accepted by the Google Cloud Pub/Sub
  * Client Library. It supports synchronous and asynchronous sending.
  *
+ * <p>In asynchronous mode, the result of every publish can be sent to a success channel or a
+ * failure channel, and the number of publishes in flight can be bounded, without ever
+ * blocking the sending thread. Results are sent from the thread that completes the publish,
+ * unless a result executor is set.
+ *
  * @author João André Martins
  */
 public class PubSubMessageHandler extends AbstractMessageHandler {
 
 	private static final long DEFAULT_PUBLISH_TIMEOUT = 10000;
 
+	private static final long DEFAULT_SEND_TIMEOUT = 1000;
+
 	private final PubSubOperations pubSubTemplate;
 
 	private MessageConverter messageConverter = new StringMessageConverter();
@@ -64,6 +82,26 @@ public class PubSubMessageHandler extends AbstractMessageHandler {
 
 	private ListenableFutureCallback<String> publishCallback;
 
+	private boolean wrapPayloads;
+
+	private HeaderMapper<Map<String, String>> headerMapper = new PubSubHeaderMapper();
+
+	private int maxInFlightPublishes;
+
+	private Semaphore inFlightPublishPermits;
+
+	private MessageChannel successChannel;
+
+	private String successChannelName;
+
+	private MessageChannel failureChannel;
+
+	private String failureChannelName;
+
+	private long sendTimeout = DEFAULT_SEND_TIMEOUT;
+
+	private Executor resultExecutor;
+
 	public PubSubMessageHandler(PubSubOperations pubSubTemplate, String topic) {
 		this.pubSubTemplate = pubSubTemplate;
 		this.topic = topic;
@@ -71,33 +109,45 @@ public class PubSubMessageHandler extends AbstractMessageHandler {
 
 	@Override
 	protected void handleMessageInternal(Message<?> message) throws Exception {
-		Object payload = message.getPayload();
+		Semaphore permits = this.inFlightPublishPermits;
 
-		if (payload instanceof PubsubMessage) {
-			this.pubSubTemplate.publish(this.topic, (PubsubMessage) payload);
-			return;
+		if (permits != null && !permits.tryAcquire()) {
+			throw new MessageDeliveryException(message,
+					"Too many publishes to the " + this.topic + " topic are in flight.");
 		}
 
-		ByteString pubsubPayload;
-
-		if (payload instanceof byte[]) {
-			pubsubPayload = ByteString.copyFrom((byte[]) payload);
+		ListenableFuture<String> pubsubFuture;
+		try {
+			pubsubFuture = publish(message);
 		}
-		else if (payload instanceof ByteString) {
-			pubsubPayload = (ByteString) payload;
-		}
-		else {
-			pubsubPayload =	ByteString.copyFrom(
-					(String) this.messageConverter.fromMessage(message, String.class),
-					Charset.defaultCharset());
+		catch (RuntimeException ex) {
+			if (permits != null) {
+				permits.release();
+			}
+			throw ex;
 		}
 
-		Map<String, String> headers = new HashMap<>();
-		message.getHeaders().forEach(
-				(key, value) -> headers.put(key, value.toString()));
+		pubsubFuture.addCallback(new ListenableFutureCallback<String>() {
 
-		ListenableFuture<String> pubsubFuture =
-				this.pubSubTemplate.publish(this.topic, pubsubPayload, headers);
+			@Override
+			public void onSuccess(String messageId) {
+				if (permits != null) {
+					permits.release();
+				}
+				publishSucceeded(message, messageId);
+			}
+
+			@Override
+			public void onFailure(Throwable throwable) {
+				if (permits != null) {
+					permits.release();
+				}
+				// In synchronous mode, the failure is already rethrown to the sender.
+				if (!PubSubMessageHandler.this.sync) {
+					publishFailed(message, throwable);
+				}
+			}
+		});
 
 		if (this.publishCallback != null) {
 			pubsubFuture.addCallback(this.publishCallback);
@@ -115,6 +165,92 @@ public class PubSubMessageHandler extends AbstractMessageHandler {
 		}
 	}
 
+	private ListenableFuture<String> publish(Message<?> message) {
+		Object payload = message.getPayload();
+
+		if (payload instanceof PubsubMessage) {
+			return this.pubSubTemplate.publish(this.topic, (PubsubMessage) payload);
+		}
+
+		ByteString pubsubPayload;
+
+		if (payload instanceof byte[]) {
+			pubsubPayload = this.wrapPayloads
+					? UnsafeByteOperations.unsafeWrap((byte[]) payload)
+					: ByteString.copyFrom((byte[]) payload);
+		}
+		else if (payload instanceof ByteBuffer) {
+			// Duplicated so that the position of the caller's buffer doesn't change.
+			ByteBuffer buffer = ((ByteBuffer) payload).duplicate();
+			pubsubPayload = this.wrapPayloads
+					? UnsafeByteOperations.unsafeWrap(buffer)
+					: ByteString.copyFrom(buffer);
+		}
+		else if (payload instanceof ByteString) {
+			pubsubPayload = (ByteString) payload;
+		}
+		else {
+			pubsubPayload =	ByteString.copyFromUtf8(
+					(String) this.messageConverter.fromMessage(message, String.class));
+		}
+
+		Map<String, String> headers = new HashMap<>();
+		this.headerMapper.fromHeaders(message.getHeaders(), headers);
+
+		return this.pubSubTemplate.publish(this.topic, pubsubPayload, headers);
+	}
+
+	private void publishSucceeded(Message<?> message, String messageId) {
+		MessageChannel channel = resolveChannel(this.successChannel, this.successChannelName);
+		if (channel != null) {
+			send(channel, MessageBuilder.withPayload(messageId)
+					.copyHeaders(message.getHeaders())
+					.build());
+		}
+	}
+
+	private void publishFailed(Message<?> message, Throwable throwable) {
+		MessageChannel channel = resolveChannel(this.failureChannel, this.failureChannelName);
+		if (channel != null) {
+			send(channel, new ErrorMessage(new MessageHandlingException(message,
+					"Failed to publish to the " + this.topic + " topic.", throwable)));
+		}
+	}
+
+	private MessageChannel resolveChannel(MessageChannel channel, String channelName) {
+		if (channel == null && channelName != null) {
+			return getChannelResolver().resolveDestination(channelName);
+		}
+		return channel;
+	}
+
+	private void send(MessageChannel channel, Message<?> message) {
+		if (this.resultExecutor == null) {
+			doSend(channel, message);
+			return;
+		}
+
+		try {
+			this.resultExecutor.execute(() -> doSend(channel, message));
+		}
+		catch (RejectedExecutionException ree) {
+			doSend(channel, message);
+		}
+	}
+
+	private void doSend(MessageChannel channel, Message<?> message) {
+		try {
+			if (!channel.send(message, this.sendTimeout)) {
+				this.logger.warn("Timed out sending the result of a publish to the " + this.topic
+						+ " topic to " + channel + ".");
+			}
+		}
+		catch (RuntimeException ex) {
+			this.logger.warn("Failed to send the result of a publish to the " + this.topic
+					+ " topic to " + channel + ".", ex);
+		}
+	}
+
 	public MessageConverter getMessageConverter() {
 		return this.messageConverter;
 	}
@@ -185,6 +321,122 @@ public class PubSubMessageHandler extends AbstractMessageHandler {
 		this.publishCallback = publishCallback;
 	}
 
+	public boolean isWrapPayloads() {
+		return this.wrapPayloads;
+	}
+
+	/**
+	 * Set whether {@code byte[]} and {@link ByteBuffer} payloads are wrapped instead of copied.
+	 *
+	 * <p>Wrapping saves a copy of every payload, but the payload must not be modified after the
+	 * message is sent to this handler, since it is read asynchronously when the message is
+	 * published. Payloads are copied by default.
+	 * @param wrapPayloads true to wrap payloads, false to copy them
+	 */
+	public void setWrapPayloads(boolean wrapPayloads) {
+		this.wrapPayloads = wrapPayloads;
+	}
+
+	public HeaderMapper<Map<String, String>> getHeaderMapper() {
+		return this.headerMapper;
+	}
+
+	/**
+	 * Set the header mapper mapping the headers of messages to the attributes of the published
+	 * messages. By default, a {@link PubSubHeaderMapper} maps all headers except the {@code id},
+	 * {@code timestamp}, reply channel, error channel and {@code gcp_} headers.
+	 * @param headerMapper the header mapper
+	 */
+	public void setHeaderMapper(HeaderMapper<Map<String, String>> headerMapper) {
+		Assert.notNull(headerMapper, "The header mapper can't be null.");
+		this.headerMapper = headerMapper;
+	}
+
+	/**
+	 * Set the maximum number of publishes in flight, i.e., whose result isn't known yet. Once it
+	 * is reached, messages are rejected with a {@link MessageDeliveryException} instead of
+	 * blocking the sending thread. Unbounded by default.
+	 * @param maxInFlightPublishes the maximum number of publishes in flight
+	 */
+	public void setMaxInFlightPublishes(int maxInFlightPublishes) {
+		Assert.isTrue(maxInFlightPublishes > 0, "The maximum number of in-flight publishes must be positive.");
+		this.maxInFlightPublishes = maxInFlightPublishes;
+		this.inFlightPublishPermits = new Semaphore(maxInFlightPublishes);
+	}
+
+	/**
+	 * Return the number of publishes in flight, if their number is bounded.
+	 * @return the number of publishes in flight, 0 if unbounded
+	 */
+	public int getInFlightPublishCount() {
+		Semaphore permits = this.inFlightPublishPermits;
+		return permits != null ? this.maxInFlightPublishes - permits.availablePermits() : 0;
+	}
+
+	/**
+	 * Set the channel that a message is sent to once it is published, with the ID of the
+	 * published message as payload and the headers of the original message.
+	 *
+	 * <p>The message is sent from the thread that completes the publish, typically a thread of
+	 * the publisher, unless a result executor is set. Sends that block, e.g., to a full
+	 * bounded queue, hold that thread and delay the publishing of other messages.
+	 * @param successChannel the success channel
+	 */
+	public void setSuccessChannel(MessageChannel successChannel) {
+		this.successChannel = successChannel;
+	}
+
+	/**
+	 * Set the name of the channel that a message is sent to once it is published.
+	 * @param successChannelName the name of the success channel
+	 * @see #setSuccessChannel(MessageChannel)
+	 */
+	public void setSuccessChannelName(String successChannelName) {
+		this.successChannelName = successChannelName;
+	}
+
+	/**
+	 * Set the channel that an {@link ErrorMessage} is sent to when a message fails to be
+	 * published. Its payload is a {@link MessageHandlingException} with the failed message.
+	 *
+	 * <p>The message is sent from the thread that completes the publish, like for the success
+	 * channel. In synchronous mode, nothing is sent to the failure channel, since the failure is
+	 * rethrown to the sender instead.
+	 * @param failureChannel the failure channel
+	 */
+	public void setFailureChannel(MessageChannel failureChannel) {
+		this.failureChannel = failureChannel;
+	}
+
+	/**
+	 * Set the name of the channel that an {@link ErrorMessage} is sent to when a message fails
+	 * to be published.
+	 * @param failureChannelName the name of the failure channel
+	 * @see #setFailureChannel(MessageChannel)
+	 */
+	public void setFailureChannelName(String failureChannelName) {
+		this.failureChannelName = failureChannelName;
+	}
+
+	/**
+	 * Set the timeout in milliseconds for sending to the success and failure channels.
+	 * @param sendTimeoutMillis the send timeout in milliseconds
+	 */
+	public void setSendTimeout(long sendTimeoutMillis) {
+		this.sendTimeout = sendTimeoutMillis;
+	}
+
+	/**
+	 * Set the executor that sends the results of publishes to the success and failure channels,
+	 * so that slow or blocking channels don't hold the threads that complete publishes. If the
+	 * executor rejects a result, it is sent from the completing thread. By default, results are
+	 * sent from the completing thread.
+	 * @param resultExecutor the executor sending the results of publishes
+	 */
+	public void setResultExecutor(Executor resultExecutor) {
+		this.resultExecutor = resultExecutor;
+	}
+
 	@Override
 	protected void onInit() throws Exception {
 		super.onInit();
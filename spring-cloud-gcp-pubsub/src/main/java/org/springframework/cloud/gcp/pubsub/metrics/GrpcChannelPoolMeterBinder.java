@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.cloud.gcp.pubsub.support.GrpcChannelPool;
+import org.springframework.util.Assert;
+
+/**
+ * Registers the stream utilization of every channel of a {@link GrpcChannelPool}, tagged
+ * with the index of the channel.
+ */
+public class GrpcChannelPoolMeterBinder implements MeterBinder {
+
+	private final GrpcChannelPool channelPool;
+
+	public GrpcChannelPoolMeterBinder(GrpcChannelPool channelPool) {
+		Assert.notNull(channelPool, "The channel pool can't be null.");
+		this.channelPool = channelPool;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (int i = 0; i < this.channelPool.getChannelCount(); i++) {
+			int channelIndex = i;
+			String channel = String.valueOf(channelIndex);
+
+			Gauge.builder("pubsub.channel.calls.active", this.channelPool,
+					pool -> pool.getActiveCallCount(channelIndex))
+					.tag("channel", channel)
+					.description("Number of calls and streams open on a pooled channel")
+					.register(registry);
+
+			FunctionCounter.builder("pubsub.channel.calls", this.channelPool,
+					pool -> pool.getCallCount(channelIndex))
+					.tag("channel", channel)
+					.description("Number of calls started on a pooled channel")
+					.register(registry);
+		}
+	}
+}
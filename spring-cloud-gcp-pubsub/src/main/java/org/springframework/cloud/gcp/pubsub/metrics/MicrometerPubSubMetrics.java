@@ -0,0 +1,211 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link PubSubMetrics} recorded in a Micrometer {@link MeterRegistry}.
+ *
+ * <p>Meters are tagged by topic or subscription name. To bound the number of time series, only
+ * the first topics and subscriptions seen get their own tag value; the others are tagged
+ * {@code other}. The meters of a topic or subscription are registered when it is first seen,
+ * and cached, so that recording a value doesn't look them up in the registry.
+ */
+public class MicrometerPubSubMetrics implements PubSubMetrics {
+
+	static final String OTHER_TAG_VALUE = "other";
+
+	private static final int DEFAULT_MAX_TAG_VALUES = 100;
+
+	private final MeterRegistry registry;
+
+	private final int maxTagValues;
+
+	private final ConcurrentMap<String, TopicMeters> topicMeters = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, SubscriptionMeters> subscriptionMeters = new ConcurrentHashMap<>();
+
+	private final AtomicInteger topicTagValueCount = new AtomicInteger();
+
+	private final AtomicInteger subscriptionTagValueCount = new AtomicInteger();
+
+	/**
+	 * Create metrics with up to 100 distinct topic and subscription tag values.
+	 * @param registry the registry the meters are registered in
+	 */
+	public MicrometerPubSubMetrics(MeterRegistry registry) {
+		this(registry, DEFAULT_MAX_TAG_VALUES);
+	}
+
+	/**
+	 * Create metrics.
+	 * @param registry the registry the meters are registered in
+	 * @param maxTagValues the maximum number of distinct topic, and subscription, tag values
+	 */
+	public MicrometerPubSubMetrics(MeterRegistry registry, int maxTagValues) {
+		Assert.notNull(registry, "The meter registry can't be null.");
+		Assert.isTrue(maxTagValues > 0, "The maximum number of tag values must be positive.");
+		this.registry = registry;
+		this.maxTagValues = maxTagValues;
+	}
+
+	@Override
+	public void publishCompleted(String topic, long durationNanos, boolean success) {
+		TopicMeters meters = topicMeters(topic);
+		(success ? meters.publishSuccess : meters.publishFailure).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void bulkPublished(String topic, int messageCount) {
+		topicMeters(topic).bulkSize.record(messageCount);
+	}
+
+	@Override
+	public void messageReceived(String subscription) {
+		subscriptionMeters(subscription).received.increment();
+	}
+
+	@Override
+	public void messageHandled(String subscription, long durationNanos, boolean success) {
+		SubscriptionMeters meters = subscriptionMeters(subscription);
+		(success ? meters.handleSuccess : meters.handleFailure).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void messageAcked(String subscription) {
+		subscriptionMeters(subscription).acks.increment();
+	}
+
+	@Override
+	public void messageNacked(String subscription) {
+		subscriptionMeters(subscription).nacks.increment();
+	}
+
+	private TopicMeters topicMeters(String topic) {
+		return meters(this.topicMeters, this.topicTagValueCount, topic,
+				tagValue -> new TopicMeters(this.registry, tagValue));
+	}
+
+	private SubscriptionMeters subscriptionMeters(String subscription) {
+		return meters(this.subscriptionMeters, this.subscriptionTagValueCount, subscription,
+				tagValue -> new SubscriptionMeters(this.registry, tagValue));
+	}
+
+	/**
+	 * Return the cached meters of a topic or subscription, registering them if there is still
+	 * room for its tag value, or the meters tagged {@code other} otherwise.
+	 */
+	private <M> M meters(ConcurrentMap<String, M> cache, AtomicInteger tagValueCount, String name,
+			Function<String, M> factory) {
+		M meters = cache.get(name);
+		if (meters == null) {
+			meters = cache.computeIfAbsent(name,
+					key -> reserveTagValue(tagValueCount) ? factory.apply(key) : null);
+		}
+		return meters != null ? meters : cache.computeIfAbsent(OTHER_TAG_VALUE, factory);
+	}
+
+	private boolean reserveTagValue(AtomicInteger tagValueCount) {
+		return tagValueCount.getAndUpdate(count -> count < this.maxTagValues ? count + 1 : count)
+				< this.maxTagValues;
+	}
+
+	/**
+	 * The meters of a topic.
+	 */
+	private static final class TopicMeters {
+
+		private final Timer publishSuccess;
+
+		private final Timer publishFailure;
+
+		private final DistributionSummary bulkSize;
+
+		TopicMeters(MeterRegistry registry, String topic) {
+			this.publishSuccess = publishTimer(registry, topic, "success");
+			this.publishFailure = publishTimer(registry, topic, "failure");
+			this.bulkSize = DistributionSummary.builder("pubsub.publish.bulk.size")
+					.description("Number of messages published together")
+					.tag("topic", topic)
+					.register(registry);
+		}
+
+		private static Timer publishTimer(MeterRegistry registry, String topic, String result) {
+			return Timer.builder("pubsub.publish")
+					.description("Time between publishing a message and its confirmation")
+					.tag("topic", topic)
+					.tag("result", result)
+					.register(registry);
+		}
+	}
+
+	/**
+	 * The meters of a subscription.
+	 */
+	private static final class SubscriptionMeters {
+
+		private final Counter received;
+
+		private final Timer handleSuccess;
+
+		private final Timer handleFailure;
+
+		private final Counter acks;
+
+		private final Counter nacks;
+
+		SubscriptionMeters(MeterRegistry registry, String subscription) {
+			this.received = Counter.builder("pubsub.receive")
+					.description("Number of messages received")
+					.tag("subscription", subscription)
+					.register(registry);
+			this.handleSuccess = handleTimer(registry, subscription, "success");
+			this.handleFailure = handleTimer(registry, subscription, "failure");
+			this.acks = acknowledgementCounter(registry, subscription, "ack");
+			this.nacks = acknowledgementCounter(registry, subscription, "nack");
+		}
+
+		private static Timer handleTimer(MeterRegistry registry, String subscription, String result) {
+			return Timer.builder("pubsub.handle")
+					.description("Time spent processing received messages")
+					.tag("subscription", subscription)
+					.tag("result", result)
+					.register(registry);
+		}
+
+		private static Counter acknowledgementCounter(MeterRegistry registry, String subscription,
+				String type) {
+			return Counter.builder("pubsub.acknowledgement")
+					.description("Number of received messages acked or nacked")
+					.tag("subscription", subscription)
+					.tag("type", type)
+					.register(registry);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.metrics;
+
+/**
+ * Receives measurements of the publish and receive paths, to record them in a metrics system.
+ *
+ * <p>Every method does nothing by default, so that implementations only override the
+ * measurements they record. Methods are called on publishing and subscriber threads and should
+ * return quickly.
+ *
+ * @see MicrometerPubSubMetrics
+ */
+public interface PubSubMetrics {
+
+	/**
+	 * Metrics that record nothing.
+	 */
+	PubSubMetrics NO_OP = new PubSubMetrics() {
+	};
+
+	/**
+	 * Called when publishing a message completes.
+	 * @param topic the topic the message was published to
+	 * @param durationNanos the time between the publish call and its confirmation or failure
+	 * @param success whether the message was published
+	 */
+	default void publishCompleted(String topic, long durationNanos, boolean success) {
+	}
+
+	/**
+	 * Called when a number of messages are published together to a topic.
+	 * @param topic the topic the messages are published to
+	 * @param messageCount the number of messages
+	 */
+	default void bulkPublished(String topic, int messageCount) {
+	}
+
+	/**
+	 * Called when a message is received from a subscription.
+	 * @param subscription the name of the subscription
+	 */
+	default void messageReceived(String subscription) {
+	}
+
+	/**
+	 * Called when a message, or a batch of messages, has been processed.
+	 * @param subscription the name of the subscription
+	 * @param durationNanos the time the processing took
+	 * @param success whether the processing succeeded
+	 */
+	default void messageHandled(String subscription, long durationNanos, boolean success) {
+	}
+
+	/**
+	 * Called when a received message is acked.
+	 * @param subscription the name of the subscription
+	 */
+	default void messageAcked(String subscription) {
+	}
+
+	/**
+	 * Called when a received message is nacked.
+	 * @param subscription the name of the subscription
+	 */
+	default void messageNacked(String subscription) {
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Registers gauges of the messages a {@link PubSubTemplate} is publishing and receiving.
+ */
+public class PubSubTemplateMeterBinder implements MeterBinder {
+
+	private final PubSubTemplate pubSubTemplate;
+
+	public PubSubTemplateMeterBinder(PubSubTemplate pubSubTemplate) {
+		Assert.notNull(pubSubTemplate, "The Pub/Sub template can't be null.");
+		this.pubSubTemplate = pubSubTemplate;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("pubsub.publish.outstanding.messages", this.pubSubTemplate,
+				PubSubTemplate::getOutstandingMessageCount)
+				.description("Number of published messages not confirmed yet")
+				.register(registry);
+
+		Gauge.builder("pubsub.publish.outstanding.bytes", this.pubSubTemplate,
+				PubSubTemplate::getOutstandingByteCount)
+				.description("Total size of the published messages not confirmed yet")
+				.baseUnit("bytes")
+				.register(registry);
+
+		Gauge.builder("pubsub.subscribe.subscribers", this.pubSubTemplate,
+				template -> template.getSubscriberRegistry().getSubscriberCount())
+				.description("Number of running subscribers")
+				.register(registry);
+
+		Gauge.builder("pubsub.subscribe.inflight.messages", this.pubSubTemplate,
+				template -> template.getSubscriberRegistry().getInFlightMessageCount())
+				.description("Number of received messages not acked or nacked yet")
+				.register(registry);
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.reactive;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.pubsub.v1.PubsubMessage;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.util.Assert;
+
+/**
+ * A factory of Project Reactor {@link Flux} instances backed by Google Cloud Pub/Sub.
+ *
+ * <p>Messages are pulled synchronously, on demand: every {@code request(n)} from downstream
+ * results in pulls of at most {@code n} messages in total, so a slow subscriber throttles how
+ * fast messages are taken from the subscription instead of accumulating them in memory.
+ *
+ * <p>Messages are published through the cached publishers of the template, without blocking
+ * on the result of each publish call.
+ */
+public class PubSubReactiveFactory {
+
+	/**
+	 * The maximum number of messages requested by a single pull.
+	 */
+	static final int MAX_MESSAGES_PER_PULL = 1000;
+
+	/**
+	 * The default maximum number of messages being published at the same time by a single
+	 * {@link #publish(String, Publisher)} stream.
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT_PUBLISHES = 1000;
+
+	private final PubSubOperations pubSubOperations;
+
+	private final Scheduler scheduler;
+
+	/**
+	 * Create a factory that pulls messages on the {@link Schedulers#elastic()} scheduler.
+	 * @param pubSubOperations the template used to pull messages
+	 */
+	public PubSubReactiveFactory(PubSubOperations pubSubOperations) {
+		this(pubSubOperations, Schedulers.elastic());
+	}
+
+	/**
+	 * Create a factory.
+	 * @param pubSubOperations the template used to pull messages
+	 * @param scheduler the scheduler the blocking pull requests are executed on
+	 */
+	public PubSubReactiveFactory(PubSubOperations pubSubOperations, Scheduler scheduler) {
+		Assert.notNull(pubSubOperations, "The PubSubOperations can't be null.");
+		Assert.notNull(scheduler, "The scheduler can't be null.");
+		this.pubSubOperations = pubSubOperations;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Create an infinite stream of the messages of a subscription.
+	 *
+	 * <p>Messages are pulled when, and as much as, they are requested by the subscriber. When
+	 * there is outstanding demand but no message is available, the subscription is polled again
+	 * after the polling period. The messages must be acknowledged by the subscriber.
+	 * @param subscriptionName the subscription name
+	 * @param pollingPeriodMillis the time in milliseconds to wait between pulls that return no
+	 * message
+	 * @return a {@link Flux} of the subscription's messages
+	 */
+	public Flux<AcknowledgeablePubsubMessage> poll(String subscriptionName, long pollingPeriodMillis) {
+		Assert.hasText(subscriptionName, "The subscription name can't be null or empty.");
+		Assert.isTrue(pollingPeriodMillis > 0, "The polling period must be positive.");
+
+		return Flux.create(sink -> new DemandDrivenPuller(subscriptionName, pollingPeriodMillis, sink).start());
+	}
+
+	/**
+	 * Publish a stream of messages to a topic, with at most
+	 * {@value #DEFAULT_MAX_IN_FLIGHT_PUBLISHES} messages in flight at a time.
+	 * @param topic the topic name
+	 * @param messages the messages to publish
+	 * @return a {@link Flux} of the IDs of the published messages, in the order of the messages
+	 * @see #publish(String, Publisher, int)
+	 */
+	public Flux<String> publish(String topic, Publisher<PubsubMessage> messages) {
+		return publish(topic, messages, DEFAULT_MAX_IN_FLIGHT_PUBLISHES);
+	}
+
+	/**
+	 * Publish a stream of messages to a topic.
+	 *
+	 * <p>Messages are requested from the source as publish calls complete, so at most
+	 * {@code maxInFlight} messages are waiting for confirmation at any time. The IDs are emitted
+	 * in the order of the source messages, regardless of the order publish calls complete in. The
+	 * returned {@link Flux} fails as soon as a message can't be published. Any publish flow
+	 * control limits of the template apply as well.
+	 * @param topic the topic name
+	 * @param messages the messages to publish
+	 * @param maxInFlight the maximum number of messages being published at the same time
+	 * @return a {@link Flux} of the IDs of the published messages, in the order of the messages
+	 */
+	public Flux<String> publish(String topic, Publisher<PubsubMessage> messages, int maxInFlight) {
+		Assert.hasText(topic, "The topic name can't be null or empty.");
+		Assert.notNull(messages, "The messages to publish can't be null.");
+		Assert.isTrue(maxInFlight > 0, "The maximum number of in-flight publishes must be positive.");
+
+		return Flux.from(messages).flatMapSequential(message -> Mono.<String>create(sink ->
+				this.pubSubOperations.publish(topic, message).addCallback(sink::success, sink::error)),
+				maxInFlight);
+	}
+
+	/**
+	 * Pulls messages of a subscription on behalf of a single subscriber, as long as it has
+	 * outstanding demand. Pulls are serialized on a worker of the factory's scheduler.
+	 */
+	private class DemandDrivenPuller {
+
+		private final String subscriptionName;
+
+		private final long pollingPeriodMillis;
+
+		private final FluxSink<AcknowledgeablePubsubMessage> sink;
+
+		private final Scheduler.Worker worker = PubSubReactiveFactory.this.scheduler.createWorker();
+
+		private final AtomicLong demand = new AtomicLong();
+
+		DemandDrivenPuller(String subscriptionName, long pollingPeriodMillis,
+				FluxSink<AcknowledgeablePubsubMessage> sink) {
+			this.subscriptionName = subscriptionName;
+			this.pollingPeriodMillis = pollingPeriodMillis;
+			this.sink = sink;
+		}
+
+		void start() {
+			this.sink.onDispose(this.worker::dispose);
+			this.sink.onRequest(requested -> {
+				long previousDemand = this.demand.getAndUpdate(current -> addCap(current, requested));
+				if (previousDemand == 0) {
+					this.worker.schedule(this::pull);
+				}
+			});
+		}
+
+		private void pull() {
+			if (this.sink.isCancelled()) {
+				return;
+			}
+
+			List<AcknowledgeablePubsubMessage> messages;
+			try {
+				int maxMessages = (int) Math.min(this.demand.get(), MAX_MESSAGES_PER_PULL);
+				messages = PubSubReactiveFactory.this.pubSubOperations.pullAcknowledgeable(
+						this.subscriptionName, maxMessages, true, null);
+			}
+			catch (RuntimeException re) {
+				this.sink.error(re);
+				return;
+			}
+
+			messages.forEach(this.sink::next);
+
+			long remainingDemand = this.demand.updateAndGet(
+					current -> current == Long.MAX_VALUE ? current : current - messages.size());
+
+			if (remainingDemand > 0) {
+				if (messages.isEmpty()) {
+					this.worker.schedule(this::pull, this.pollingPeriodMillis, TimeUnit.MILLISECONDS);
+				}
+				else {
+					this.worker.schedule(this::pull);
+				}
+			}
+		}
+
+		private long addCap(long current, long requested) {
+			long sum = current + requested;
+			return sum < 0 ? Long.MAX_VALUE : sum;
+		}
+	}
+}
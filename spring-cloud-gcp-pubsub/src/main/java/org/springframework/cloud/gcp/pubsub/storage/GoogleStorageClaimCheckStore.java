@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.protobuf.ByteString;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheckStore;
+import org.springframework.cloud.gcp.storage.GoogleStorageResource;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ClaimCheckStore} that stores payloads as objects of a Google Cloud Storage bucket.
+ *
+ * <p>Objects are named after the topic of their message and a random UUID, under a prefix. The
+ * reference to a payload is the {@code gs://} location of its object.
+ */
+public class GoogleStorageClaimCheckStore implements ClaimCheckStore {
+
+	private static final String DEFAULT_OBJECT_NAME_PREFIX = "pubsub-claim-check/";
+
+	private static final String CONTENT_TYPE = "application/octet-stream";
+
+	private final Storage storage;
+
+	private final String bucketName;
+
+	private String objectNamePrefix = DEFAULT_OBJECT_NAME_PREFIX;
+
+	/**
+	 * Create a store.
+	 * @param storage the Google Cloud Storage client
+	 * @param bucketName the name of the bucket the payloads are stored in
+	 */
+	public GoogleStorageClaimCheckStore(Storage storage, String bucketName) {
+		Assert.notNull(storage, "The storage can't be null.");
+		Assert.hasText(bucketName, "The bucket name can't be empty.");
+		this.storage = storage;
+		this.bucketName = bucketName;
+	}
+
+	/**
+	 * Set the prefix of the names of the objects storing payloads. Defaults to
+	 * {@code pubsub-claim-check/}.
+	 * @param objectNamePrefix the prefix of the object names
+	 */
+	public void setObjectNamePrefix(String objectNamePrefix) {
+		Assert.notNull(objectNamePrefix, "The object name prefix can't be null.");
+		this.objectNamePrefix = objectNamePrefix;
+	}
+
+	@Override
+	public String store(String topic, ByteString payload) {
+		String objectName = this.objectNamePrefix + topic + "/" + UUID.randomUUID();
+		String location = "gs://" + this.bucketName + "/" + objectName;
+		BlobInfo blobInfo = BlobInfo.newBuilder(this.bucketName, objectName).setContentType(CONTENT_TYPE).build();
+
+		try (WriteChannel writer = this.storage.writer(blobInfo)) {
+			for (ByteBuffer buffer : payload.asReadOnlyByteBufferList()) {
+				while (buffer.hasRemaining()) {
+					writer.write(buffer);
+				}
+			}
+		}
+		catch (IOException | StorageException e) {
+			throw new PubSubException("The payload of a message to " + topic
+					+ " could not be stored in " + location + ".", e);
+		}
+
+		return location;
+	}
+
+	@Override
+	public InputStream retrieve(String reference) throws IOException {
+		try {
+			return new GoogleStorageResource(this.storage, reference, false).getInputStream();
+		}
+		catch (StorageException se) {
+			throw new IOException("The payload could not be read from " + reference + ".", se);
+		}
+	}
+
+	@Override
+	public void delete(String reference) {
+		GoogleStorageResource resource = new GoogleStorageResource(this.storage, reference, false);
+		this.storage.delete(BlobId.of(resource.getBucketName(), resource.getBlobName()));
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+
+/**
+ * A {@link PubsubMessage} pulled from a subscription that hasn't been acknowledged yet.
+ *
+ * <p>Calls to {@link #ack()}, {@link #nack()} and {@link #modifyAckDeadline(int)} don't
+ * necessarily result in an immediate request to Google Cloud Pub/Sub. Implementations may
+ * collect them and send them in batches.
+ */
+public interface AcknowledgeablePubsubMessage extends AckReplyConsumer {
+
+	/**
+	 * Return the pulled message.
+	 * @return the Google Cloud Pub/Sub message
+	 */
+	PubsubMessage getPubsubMessage();
+
+	/**
+	 * Return the acknowledgement ID assigned to the message by the pull request.
+	 * @return the acknowledgement ID
+	 */
+	String getAckId();
+
+	/**
+	 * Return the fully-qualified name of the subscription the message was pulled from.
+	 * @return the subscription name, in the {@code projects/<project>/subscriptions/<name>}
+	 * format
+	 */
+	String getSubscriptionName();
+
+	/**
+	 * Modify the acknowledgement deadline of the message.
+	 * @param ackDeadlineSeconds the new deadline, in seconds, relative to the time the request
+	 * is processed. A value of 0 makes the message immediately available for redelivery.
+	 */
+	void modifyAckDeadline(int ackDeadlineSeconds);
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounds and target of an {@link AdaptiveFlowController}.
+ *
+ * <p>The controller keeps the number and total size of the messages being processed between the
+ * minimum and maximum set here, and aims at processing every message within a fraction of the
+ * acknowledgement deadline of the subscription.
+ */
+public class AdaptiveFlowControlSettings {
+
+	private int minOutstandingMessages = 1;
+
+	private int maxOutstandingMessages = 1000;
+
+	private long minOutstandingBytes = 1024L * 1024L;
+
+	private long maxOutstandingBytes = 100L * 1024L * 1024L;
+
+	private int ackDeadlineSeconds = 10;
+
+	private double targetDeadlineUtilization = 0.5;
+
+	public int getMinOutstandingMessages() {
+		return this.minOutstandingMessages;
+	}
+
+	/**
+	 * Set the lowest limit on the number of messages being processed. Defaults to 1.
+	 */
+	public void setMinOutstandingMessages(int minOutstandingMessages) {
+		Assert.isTrue(minOutstandingMessages > 0, "The minimum number of outstanding messages must be positive.");
+		this.minOutstandingMessages = minOutstandingMessages;
+	}
+
+	public int getMaxOutstandingMessages() {
+		return this.maxOutstandingMessages;
+	}
+
+	/**
+	 * Set the highest limit on the number of messages being processed. Also used as the flow
+	 * control limit of the subscriber. Defaults to 1000.
+	 */
+	public void setMaxOutstandingMessages(int maxOutstandingMessages) {
+		Assert.isTrue(maxOutstandingMessages > 0, "The maximum number of outstanding messages must be positive.");
+		this.maxOutstandingMessages = maxOutstandingMessages;
+	}
+
+	public long getMinOutstandingBytes() {
+		return this.minOutstandingBytes;
+	}
+
+	/**
+	 * Set the lowest limit on the total size in bytes of the messages being processed.
+	 * Defaults to 1 MiB.
+	 */
+	public void setMinOutstandingBytes(long minOutstandingBytes) {
+		Assert.isTrue(minOutstandingBytes > 0, "The minimum number of outstanding bytes must be positive.");
+		this.minOutstandingBytes = minOutstandingBytes;
+	}
+
+	public long getMaxOutstandingBytes() {
+		return this.maxOutstandingBytes;
+	}
+
+	/**
+	 * Set the highest limit on the total size in bytes of the messages being processed. Also
+	 * used as the flow control limit of the subscriber. Defaults to 100 MiB.
+	 */
+	public void setMaxOutstandingBytes(long maxOutstandingBytes) {
+		Assert.isTrue(maxOutstandingBytes > 0, "The maximum number of outstanding bytes must be positive.");
+		this.maxOutstandingBytes = maxOutstandingBytes;
+	}
+
+	public int getAckDeadlineSeconds() {
+		return this.ackDeadlineSeconds;
+	}
+
+	/**
+	 * Set the acknowledgement deadline of the subscription. Defaults to 10 seconds, the
+	 * default of Google Cloud Pub/Sub.
+	 */
+	public void setAckDeadlineSeconds(int ackDeadlineSeconds) {
+		Assert.isTrue(ackDeadlineSeconds > 0, "The acknowledgement deadline must be positive.");
+		this.ackDeadlineSeconds = ackDeadlineSeconds;
+	}
+
+	public double getTargetDeadlineUtilization() {
+		return this.targetDeadlineUtilization;
+	}
+
+	/**
+	 * Set the fraction of the acknowledgement deadline that processing a message should take.
+	 * The limits are lowered when the processing latency exceeds it, and raised otherwise.
+	 * Defaults to 0.5.
+	 */
+	public void setTargetDeadlineUtilization(double targetDeadlineUtilization) {
+		Assert.isTrue(targetDeadlineUtilization > 0 && targetDeadlineUtilization <= 1,
+				"The target deadline utilization must be greater than 0 and at most 1.");
+		this.targetDeadlineUtilization = targetDeadlineUtilization;
+	}
+
+	long getTargetLatencyMillis() {
+		return (long) (this.ackDeadlineSeconds * 1000L * this.targetDeadlineUtilization);
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MessageReceiver} that limits the number and total size of the messages being
+ * processed, and adapts these limits to the processing latency.
+ *
+ * <p>Limits are adjusted once per round, i.e., every time as many messages as the current
+ * message limit have been acked or nacked. If the average processing latency is above the
+ * target set by {@link AdaptiveFlowControlSettings}, the limits are lowered by a quarter.
+ * Otherwise, if the limit was reached during the round, they are raised by a tenth. A message
+ * whose processing takes longer than the whole acknowledgement deadline lowers the limits
+ * right away. The byte limit follows the message limit proportionally. Limits stay within the
+ * configured bounds.
+ *
+ * <p>Messages over the limits wait in the subscriber's executor threads, while the subscriber
+ * keeps extending their acknowledgement deadline. Processing latency is measured from the
+ * moment a message is handed to the delegate receiver until it is acked or nacked.
+ */
+public class AdaptiveFlowController implements MessageReceiver {
+
+	private static final Log LOGGER = LogFactory.getLog(AdaptiveFlowController.class);
+
+	private static final double LATENCY_SMOOTHING = 0.2;
+
+	private static final double DECREASE_FACTOR = 0.75;
+
+	private static final int INCREASE_DIVISOR = 10;
+
+	private final MessageReceiver delegate;
+
+	private final AdaptiveFlowControlSettings settings;
+
+	private final LongSupplier nanoClock;
+
+	private final Object lock = new Object();
+
+	private int messageLimit;
+
+	private long byteLimit;
+
+	private int outstandingMessages;
+
+	private long outstandingBytes;
+
+	private int completedInRound;
+
+	private boolean saturatedInRound;
+
+	private long completedCount;
+
+	private double averageLatencyMillis;
+
+	private long increaseCount;
+
+	private long decreaseCount;
+
+	/**
+	 * Create a controller, starting at the minimum limits.
+	 * @param delegate the receiver that processes the messages
+	 * @param settings the bounds and target of the controller
+	 */
+	public AdaptiveFlowController(MessageReceiver delegate, AdaptiveFlowControlSettings settings) {
+		this(delegate, settings, System::nanoTime);
+	}
+
+	AdaptiveFlowController(MessageReceiver delegate, AdaptiveFlowControlSettings settings,
+			LongSupplier nanoClock) {
+		Assert.notNull(delegate, "The delegate receiver can't be null.");
+		Assert.notNull(settings, "The adaptive flow control settings can't be null.");
+		Assert.isTrue(settings.getMinOutstandingMessages() <= settings.getMaxOutstandingMessages(),
+				"The minimum number of outstanding messages can't be greater than the maximum.");
+		Assert.isTrue(settings.getMinOutstandingBytes() <= settings.getMaxOutstandingBytes(),
+				"The minimum number of outstanding bytes can't be greater than the maximum.");
+
+		this.delegate = delegate;
+		this.settings = settings;
+		this.nanoClock = nanoClock;
+		this.messageLimit = settings.getMinOutstandingMessages();
+		this.byteLimit = byteLimitFor(this.messageLimit);
+	}
+
+	@Override
+	public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+		long bytes = message.getSerializedSize();
+
+		try {
+			acquire(bytes);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			consumer.nack();
+			return;
+		}
+
+		long start = this.nanoClock.getAsLong();
+		AtomicBoolean completed = new AtomicBoolean();
+		Runnable complete = () -> {
+			if (completed.compareAndSet(false, true)) {
+				release(bytes, TimeUnit.NANOSECONDS.toMillis(this.nanoClock.getAsLong() - start));
+			}
+		};
+
+		try {
+			this.delegate.receiveMessage(message, new AckReplyConsumer() {
+
+				@Override
+				public void ack() {
+					complete.run();
+					consumer.ack();
+				}
+
+				@Override
+				public void nack() {
+					complete.run();
+					consumer.nack();
+				}
+			});
+		}
+		catch (RuntimeException re) {
+			// The subscriber nacks messages whose receiver throws.
+			complete.run();
+			throw re;
+		}
+	}
+
+	/**
+	 * Return the current limit on the number of messages being processed.
+	 * @return the message limit
+	 */
+	public int getMessageLimit() {
+		synchronized (this.lock) {
+			return this.messageLimit;
+		}
+	}
+
+	/**
+	 * Return the current limit on the total size in bytes of the messages being processed.
+	 * @return the byte limit
+	 */
+	public long getByteLimit() {
+		synchronized (this.lock) {
+			return this.byteLimit;
+		}
+	}
+
+	public int getOutstandingMessageCount() {
+		synchronized (this.lock) {
+			return this.outstandingMessages;
+		}
+	}
+
+	public long getOutstandingByteCount() {
+		synchronized (this.lock) {
+			return this.outstandingBytes;
+		}
+	}
+
+	/**
+	 * Return the exponentially weighted moving average of the processing latency.
+	 * @return the average latency in milliseconds
+	 */
+	public double getAverageLatencyMillis() {
+		synchronized (this.lock) {
+			return this.averageLatencyMillis;
+		}
+	}
+
+	/**
+	 * Return the time left before the acknowledgement deadline when processing a message takes
+	 * the average latency.
+	 * @return the headroom in milliseconds, negative if the average latency exceeds the deadline
+	 */
+	public double getDeadlineHeadroomMillis() {
+		return TimeUnit.SECONDS.toMillis(this.settings.getAckDeadlineSeconds()) - getAverageLatencyMillis();
+	}
+
+	/**
+	 * Return the number of times the limits were raised.
+	 * @return the increase count
+	 */
+	public long getIncreaseCount() {
+		synchronized (this.lock) {
+			return this.increaseCount;
+		}
+	}
+
+	/**
+	 * Return the number of times the limits were lowered.
+	 * @return the decrease count
+	 */
+	public long getDecreaseCount() {
+		synchronized (this.lock) {
+			return this.decreaseCount;
+		}
+	}
+
+	private void acquire(long bytes) throws InterruptedException {
+		synchronized (this.lock) {
+			// A message is always let through when nothing is being processed, even if it's larger
+			// than the byte limit.
+			while (this.outstandingMessages > 0 && (this.outstandingMessages >= this.messageLimit
+					|| this.outstandingBytes + bytes > this.byteLimit)) {
+				this.saturatedInRound = true;
+				this.lock.wait();
+			}
+
+			this.outstandingMessages++;
+			this.outstandingBytes += bytes;
+			if (this.outstandingMessages >= this.messageLimit) {
+				this.saturatedInRound = true;
+			}
+		}
+	}
+
+	private void release(long bytes, long latencyMillis) {
+		synchronized (this.lock) {
+			this.outstandingMessages--;
+			this.outstandingBytes -= bytes;
+
+			this.averageLatencyMillis = this.completedCount == 0
+					? latencyMillis
+					: this.averageLatencyMillis + LATENCY_SMOOTHING * (latencyMillis - this.averageLatencyMillis);
+			this.completedCount++;
+			this.completedInRound++;
+
+			if (latencyMillis >= TimeUnit.SECONDS.toMillis(this.settings.getAckDeadlineSeconds())) {
+				setMessageLimit(decreasedLimit());
+			}
+			else if (this.completedInRound >= this.messageLimit) {
+				if (this.averageLatencyMillis > this.settings.getTargetLatencyMillis()) {
+					setMessageLimit(decreasedLimit());
+				}
+				else if (this.saturatedInRound) {
+					setMessageLimit(increasedLimit());
+				}
+				else {
+					startRound();
+				}
+			}
+
+			this.lock.notifyAll();
+		}
+	}
+
+	private int decreasedLimit() {
+		return Math.max(this.settings.getMinOutstandingMessages(), (int) (this.messageLimit * DECREASE_FACTOR));
+	}
+
+	private int increasedLimit() {
+		int increment = Math.max(1, this.messageLimit / INCREASE_DIVISOR);
+		return (int) Math.min(this.settings.getMaxOutstandingMessages(), (long) this.messageLimit + increment);
+	}
+
+	private void setMessageLimit(int newLimit) {
+		if (newLimit > this.messageLimit) {
+			this.increaseCount++;
+		}
+		else if (newLimit < this.messageLimit) {
+			this.decreaseCount++;
+		}
+
+		if (newLimit != this.messageLimit && LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Changing the outstanding message limit from " + this.messageLimit + " to "
+					+ newLimit + "; average processing latency is " + (long) this.averageLatencyMillis + " ms.");
+		}
+
+		this.messageLimit = newLimit;
+		this.byteLimit = byteLimitFor(newLimit);
+		startRound();
+	}
+
+	private void startRound() {
+		this.completedInRound = 0;
+		this.saturatedInRound = false;
+	}
+
+	private long byteLimitFor(int messageLimit) {
+		long proportional = (long) ((double) this.settings.getMaxOutstandingBytes() * messageLimit
+				/ this.settings.getMaxOutstandingMessages());
+		return Math.max(this.settings.getMinOutstandingBytes(),
+				Math.min(this.settings.getMaxOutstandingBytes(), proportional));
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.util.Assert;
+
+/**
+ * Offloads the payloads of large published messages to a {@link ClaimCheckStore}, and replaces
+ * them with a reference, which is resolved when the messages are received.
+ *
+ * <p>Messages whose payload is larger than the threshold are published with an empty payload
+ * and the reference to the stored payload in the {@link #REFERENCE_ATTRIBUTE} attribute. When
+ * such a message is received, its payload is read back from the store, and the attribute is
+ * removed. Messages without it are received as is. Stored payloads can be deleted once their
+ * message is acked, and are deleted if their message could not be published.
+ */
+public class ClaimCheck {
+
+	/**
+	 * The name of the attribute holding the reference to a stored payload.
+	 */
+	public static final String REFERENCE_ATTRIBUTE = "claim-check";
+
+	private static final Log LOGGER = LogFactory.getLog(ClaimCheck.class);
+
+	private static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+	private final ClaimCheckStore store;
+
+	private int threshold = DEFAULT_THRESHOLD;
+
+	private boolean deleteAfterAck;
+
+	/**
+	 * Create a claim check offloading payloads larger than 1 MiB.
+	 * @param store the store of the offloaded payloads
+	 */
+	public ClaimCheck(ClaimCheckStore store) {
+		Assert.notNull(store, "The claim check store can't be null.");
+		this.store = store;
+	}
+
+	/**
+	 * Set the size in bytes above which payloads are offloaded to the store. Defaults to 1 MiB.
+	 * @param threshold the maximum size of payloads published as is
+	 */
+	public void setThreshold(int threshold) {
+		Assert.isTrue(threshold >= 0, "The threshold can't be negative.");
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Set whether stored payloads are deleted once their message is acked. Defaults to false,
+	 * which leaves it to the store, e.g., to the lifecycle rules of a bucket, and lets several
+	 * subscriptions of the same topic read them.
+	 * @param deleteAfterAck whether to delete stored payloads once their message is acked
+	 */
+	public void setDeleteAfterAck(boolean deleteAfterAck) {
+		this.deleteAfterAck = deleteAfterAck;
+	}
+
+	/**
+	 * Offload the payload of a message to publish to the store, if it is larger than the
+	 * threshold.
+	 * @param topic the topic the message is published to
+	 * @param message the message
+	 * @return the message with a reference to its stored payload, or the message itself
+	 * @throws PubSubException if the payload can't be stored
+	 */
+	public PubsubMessage checkIn(String topic, PubsubMessage message) {
+		if (message.getData().size() <= this.threshold || message.containsAttributes(REFERENCE_ATTRIBUTE)) {
+			return message;
+		}
+
+		String reference = this.store.store(topic, message.getData());
+		return message.toBuilder()
+				.setData(ByteString.EMPTY)
+				.putAttributes(REFERENCE_ATTRIBUTE, reference)
+				.build();
+	}
+
+	/**
+	 * Read the payload of a received message back from the store, if it has a reference. The
+	 * payload is streamed from the store, without copying it to a single array.
+	 * @param message the message
+	 * @return the message with its stored payload and without the reference attribute, or the
+	 * message itself
+	 * @throws PubSubException if the payload can't be read
+	 */
+	public PubsubMessage checkOut(PubsubMessage message) {
+		String reference = message.getAttributesOrDefault(REFERENCE_ATTRIBUTE, null);
+		if (reference == null) {
+			return message;
+		}
+
+		ByteString payload;
+		try (InputStream inputStream = this.store.retrieve(reference)) {
+			payload = ByteString.readFrom(inputStream);
+		}
+		catch (IOException ioe) {
+			throw new PubSubException("The payload of message " + message.getMessageId()
+					+ " could not be read from " + reference + ".", ioe);
+		}
+
+		return message.toBuilder()
+				.setData(payload)
+				.removeAttributes(REFERENCE_ATTRIBUTE)
+				.build();
+	}
+
+	/**
+	 * Delete the stored payload of a message that was acked, if payloads are deleted after
+	 * acks. Failures are logged, since the message is acked already.
+	 * @param message the message as it was received, with its reference attribute
+	 */
+	public void acknowledged(PubsubMessage message) {
+		String reference = message.getAttributesOrDefault(REFERENCE_ATTRIBUTE, null);
+		if (!this.deleteAfterAck || reference == null) {
+			return;
+		}
+
+		delete(message, reference);
+	}
+
+	/**
+	 * Delete the payload that {@link #checkIn(String, PubsubMessage)} stored for a message that
+	 * could not be published, since no subscriber will ever read it. Failures are logged.
+	 * @param message the message as it was given to {@code checkIn}
+	 * @param checkedIn the message returned by {@code checkIn}
+	 */
+	public void publishFailed(PubsubMessage message, PubsubMessage checkedIn) {
+		if (message.containsAttributes(REFERENCE_ATTRIBUTE)) {
+			return;
+		}
+
+		String reference = checkedIn.getAttributesOrDefault(REFERENCE_ATTRIBUTE, null);
+		if (reference != null) {
+			delete(checkedIn, reference);
+		}
+	}
+
+	private void delete(PubsubMessage message, String reference) {
+		try {
+			this.store.delete(reference);
+		}
+		catch (RuntimeException re) {
+			LOGGER.warn("The payload of message " + message.getMessageId() + " could not be deleted from "
+					+ reference + ".", re);
+		}
+	}
+
+	/**
+	 * Wrap the acknowledgement of a received message so that its stored payload is deleted
+	 * once the message is acked, if payloads are deleted after acks.
+	 * @param message the message as it was received, with its reference attribute
+	 * @param consumer the acknowledgement of the message
+	 * @return the wrapped acknowledgement, or the acknowledgement itself
+	 */
+	public AckReplyConsumer deleteOnAck(PubsubMessage message, AckReplyConsumer consumer) {
+		if (!this.deleteAfterAck || !message.containsAttributes(REFERENCE_ATTRIBUTE)) {
+			return consumer;
+		}
+
+		return new AckReplyConsumer() {
+
+			@Override
+			public void ack() {
+				consumer.ack();
+				acknowledged(message);
+			}
+
+			@Override
+			public void nack() {
+				consumer.nack();
+			}
+		};
+	}
+}
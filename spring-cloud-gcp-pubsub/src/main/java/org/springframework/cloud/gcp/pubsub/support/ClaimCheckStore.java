@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Stores the payloads of large messages outside of Google Cloud Pub/Sub, which only carries a
+ * reference to them.
+ *
+ * @see ClaimCheck
+ */
+public interface ClaimCheckStore {
+
+	/**
+	 * Store the payload of a message to publish.
+	 * @param topic the topic the message is published to
+	 * @param payload the payload
+	 * @return the reference to the stored payload
+	 * @throws org.springframework.cloud.gcp.pubsub.core.PubSubException if the payload can't be
+	 * stored
+	 */
+	String store(String topic, ByteString payload);
+
+	/**
+	 * Open a stream reading a stored payload.
+	 * @param reference the reference to the payload
+	 * @return the stream reading the payload
+	 * @throws IOException if the payload doesn't exist or can't be read
+	 */
+	InputStream retrieve(String reference) throws IOException;
+
+	/**
+	 * Delete a stored payload.
+	 * @param reference the reference to the payload
+	 */
+	void delete(String reference);
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MessageReceiver} that filters out the messages Google Cloud Pub/Sub redelivers after
+ * they have already been received.
+ *
+ * <p>Messages are identified by their message ID, or by the value of an attribute if one is
+ * configured and present. A message is in progress until the delegate receiver acks it, when
+ * it is marked completed. Duplicates are never passed to the delegate receiver:
+ * <ul>
+ * <li>duplicates of completed messages are acked;</li>
+ * <li>duplicates of messages in progress in this receiver are held without a reply, while the
+ * subscriber extends their acknowledgement deadline, and acked or nacked with the original;</li>
+ * <li>duplicates of messages in progress elsewhere, e.g., in another instance sharing the store,
+ * aren't replied to, so that they are redelivered once the subscriber stops extending their
+ * deadline, instead of being redelivered right away over and over.</li>
+ * </ul>
+ * A message that is nacked, or whose processing throws before it is acked, is forgotten so that
+ * its redelivery is processed.
+ */
+public class DeduplicatingMessageReceiver implements MessageReceiver {
+
+	private static final Log LOGGER = LogFactory.getLog(DeduplicatingMessageReceiver.class);
+
+	private final MessageReceiver delegate;
+
+	private final DeduplicationStore store;
+
+	private final String keyAttribute;
+
+	private final AtomicLong duplicateCount = new AtomicLong();
+
+	private final AtomicLong uniqueCount = new AtomicLong();
+
+	/**
+	 * Duplicates of the messages in progress in this receiver, by key.
+	 */
+	private final Map<String, List<AckReplyConsumer>> heldDuplicates = new HashMap<>();
+
+	/**
+	 * Create a receiver identifying messages by their message ID.
+	 * @param delegate the receiver that processes the messages
+	 * @param store remembers the received messages
+	 */
+	public DeduplicatingMessageReceiver(MessageReceiver delegate, DeduplicationStore store) {
+		this(delegate, store, null);
+	}
+
+	/**
+	 * Create a receiver.
+	 * @param delegate the receiver that processes the messages
+	 * @param store remembers the received messages
+	 * @param keyAttribute the name of the attribute identifying a message, or {@code null} to
+	 * use the message ID. Messages without the attribute are identified by their message ID.
+	 */
+	public DeduplicatingMessageReceiver(MessageReceiver delegate, DeduplicationStore store,
+			String keyAttribute) {
+		Assert.notNull(delegate, "The delegate receiver can't be null.");
+		Assert.notNull(store, "The deduplication store can't be null.");
+		this.delegate = delegate;
+		this.store = store;
+		this.keyAttribute = keyAttribute;
+	}
+
+	@Override
+	public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+		String key = this.keyAttribute != null
+				? message.getAttributesOrDefault(this.keyAttribute, message.getMessageId())
+				: message.getMessageId();
+
+		if (!this.store.markIfAbsent(key)) {
+			this.duplicateCount.incrementAndGet();
+			acknowledgeDuplicate(message, key, consumer);
+			return;
+		}
+
+		this.uniqueCount.incrementAndGet();
+		synchronized (this.heldDuplicates) {
+			this.heldDuplicates.put(key, new ArrayList<>());
+		}
+
+		AtomicBoolean acked = new AtomicBoolean();
+		try {
+			this.delegate.receiveMessage(message, new AckReplyConsumer() {
+
+				@Override
+				public void ack() {
+					acked.set(true);
+					try {
+						DeduplicatingMessageReceiver.this.store.markCompleted(key);
+					}
+					finally {
+						consumer.ack();
+						reply(takeHeldDuplicates(key), true);
+					}
+				}
+
+				@Override
+				public void nack() {
+					forget(key);
+					consumer.nack();
+				}
+			});
+		}
+		catch (RuntimeException re) {
+			if (!acked.get()) {
+				forget(key);
+			}
+			throw re;
+		}
+	}
+
+	/**
+	 * Ack the duplicate of a completed message, hold the duplicate of a message in progress in
+	 * this receiver until the original is completed or forgotten, and leave the duplicate of a
+	 * message in progress elsewhere without a reply.
+	 */
+	private void acknowledgeDuplicate(PubsubMessage message, String key, AckReplyConsumer consumer) {
+		boolean held;
+		synchronized (this.heldDuplicates) {
+			List<AckReplyConsumer> duplicates = this.heldDuplicates.get(key);
+			held = duplicates != null;
+			if (held) {
+				duplicates.add(consumer);
+			}
+		}
+
+		if (held) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Holding duplicate message " + message.getMessageId() + " with key " + key
+						+ " until the original is completed.");
+			}
+		}
+		else if (this.store.isCompleted(key)) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Acking duplicate message " + message.getMessageId() + " with key " + key + ".");
+			}
+			consumer.ack();
+		}
+		else if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Not replying to duplicate message " + message.getMessageId() + " with key " + key
+					+ ", which is in progress elsewhere.");
+		}
+	}
+
+	/**
+	 * Forget a message that wasn't completed, and nack its held duplicates, so that one of its
+	 * redeliveries is processed. The duplicates are taken before the key is removed, so that they
+	 * can't be held for the next delivery of the message, and nacked after it is removed, so that
+	 * their redelivery isn't mistaken for a duplicate.
+	 */
+	private void forget(String key) {
+		List<AckReplyConsumer> duplicates = takeHeldDuplicates(key);
+		this.store.remove(key);
+		reply(duplicates, false);
+	}
+
+	private List<AckReplyConsumer> takeHeldDuplicates(String key) {
+		synchronized (this.heldDuplicates) {
+			return this.heldDuplicates.remove(key);
+		}
+	}
+
+	private static void reply(List<AckReplyConsumer> duplicates, boolean completed) {
+		if (duplicates != null) {
+			for (AckReplyConsumer duplicate : duplicates) {
+				if (completed) {
+					duplicate.ack();
+				}
+				else {
+					duplicate.nack();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the number of messages filtered out as duplicates, i.e., store hits.
+	 * @return the duplicate count
+	 */
+	public long getDuplicateCount() {
+		return this.duplicateCount.get();
+	}
+
+	/**
+	 * Return the number of messages passed to the delegate receiver, i.e., store misses.
+	 * @return the unique count
+	 */
+	public long getUniqueCount() {
+		return this.uniqueCount.get();
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+/**
+ * Remembers the keys of the messages that have been received, to detect messages redelivered by
+ * Google Cloud Pub/Sub.
+ *
+ * <p>A key is in progress from the moment its message is received until the message is acked,
+ * when it is marked completed. Only redeliveries of completed messages are safe to ack.
+ *
+ * @see DeduplicatingMessageReceiver
+ */
+public interface DeduplicationStore {
+
+	/**
+	 * Remember a key as in progress, unless it is already known.
+	 * @param key the key of a received message
+	 * @return true if the key wasn't known, false if the message is a duplicate
+	 */
+	boolean markIfAbsent(String key);
+
+	/**
+	 * Mark a known key as completed, once its message was acked.
+	 * @param key the key of a received message
+	 */
+	void markCompleted(String key);
+
+	/**
+	 * Return whether a key is known and completed, as opposed to still in progress.
+	 * @param key the key of a received message
+	 * @return true if the message with the key was acked
+	 */
+	boolean isCompleted(String key);
+
+	/**
+	 * Forget a key, so that the message is processed again when redelivered.
+	 * @param key the key of a received message
+	 */
+	void remove(String key);
+}
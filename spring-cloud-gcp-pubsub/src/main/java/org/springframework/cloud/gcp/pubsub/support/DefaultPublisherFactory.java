@@ -17,8 +17,20 @@
 package org.springframework.cloud.gcp.pubsub.support;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.CredentialsProvider;
@@ -29,26 +41,58 @@ import com.google.api.gax.rpc.TransportChannelProvider;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.pubsub.v1.ProjectTopicName;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.threeten.bp.Duration;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.gcp.core.GcpProjectIdProvider;
 import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
 
 /**
  * The default {@link PublisherFactory} implementation.
  *
- * <p>Creates {@link Publisher}s for topics once, caches and reuses them.
+ * <p>Creates {@link Publisher}s for topics once, caches and reuses them. Each
+ * {@link Publisher} is built with the settings registered for its topic through
+ * {@link #setTopicSettings(String, PublisherTopicSettings)}, if any, falling back to the
+ * settings of the factory.
+ *
+ * <p>The cache can be bounded in size and evict {@link Publisher}s that haven't been used for a
+ * while. Evicted {@link Publisher}s are shut down, which publishes their outstanding messages.
+ * When the factory is destroyed, every cached {@link Publisher} is shut down, waiting up to a
+ * configurable timeout for outstanding messages to be published.
+ *
+ * <p>A {@link Publisher} can be evicted and shut down while a caller is about to publish with
+ * it; {@link org.springframework.cloud.gcp.pubsub.core.PubSubTemplate} then publishes with a
+ * new one. Other callers should do the same on an {@link IllegalStateException}.
  *
  * @author João André Martins
  */
-public class DefaultPublisherFactory implements PublisherFactory {
+public class DefaultPublisherFactory implements PublisherFactory, DisposableBean {
+
+	private static final Log LOGGER = LogFactory.getLog(DefaultPublisherFactory.class);
+
+	private static final long MIN_IDLE_EVICTION_PERIOD_MILLIS = 1000;
 
 	private final String projectId;
 
 	/**
 	 * {@link Publisher} cache, enforces only one {@link Publisher} per PubSub topic exists.
 	 */
-	private final ConcurrentHashMap<String, Publisher> publishers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CachedPublisher> publishers = new ConcurrentHashMap<>();
+
+	private int maxCachedPublishers = Integer.MAX_VALUE;
+
+	private Duration idleTimeout = Duration.ZERO;
+
+	private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+	private ScheduledExecutorService idleEvictionScheduler;
+
+	private ExecutorService shutdownExecutor;
 
 	private ExecutorProvider executorProvider;
 
@@ -62,6 +106,11 @@ public class DefaultPublisherFactory implements PublisherFactory {
 
 	private BatchingSettings batchingSettings;
 
+	/**
+	 * Per-topic settings, by topic name or topic name pattern, in registration order.
+	 */
+	private final Map<String, PublisherTopicSettings> topicSettings = new LinkedHashMap<>();
+
 	/**
 	 * Create {@link DefaultPublisherFactory} instance based on the provided {@link GcpProjectIdProvider}.
 	 *
@@ -119,48 +168,286 @@ public class DefaultPublisherFactory implements PublisherFactory {
 		this.batchingSettings = batchingSettings;
 	}
 
+	/**
+	 * Set the settings of the {@link Publisher}s of the topics matching a name or pattern,
+	 * overriding the ones of this factory.
+	 *
+	 * <p>Patterns support the simple {@code xxx*}, {@code *xxx} and {@code *xxx*} styles. A topic
+	 * name registered as is takes precedence over patterns, and patterns are matched in
+	 * registration order. Settings must be registered before the {@link Publisher}s of the
+	 * matching topics are created.
+	 * @param topicNamePattern the name of a topic, or a pattern matching topic names
+	 * @param settings the settings of the matching topics' {@link Publisher}s
+	 */
+	public void setTopicSettings(String topicNamePattern, PublisherTopicSettings settings) {
+		Assert.hasText(topicNamePattern, "The topic name pattern can't be null or empty.");
+		Assert.notNull(settings, "The publisher topic settings can't be null.");
+		synchronized (this.topicSettings) {
+			this.topicSettings.put(topicNamePattern, settings);
+		}
+	}
+
+	/**
+	 * Set the settings of the {@link Publisher}s of a number of topics.
+	 * @param topicSettings map of topic name or pattern to publisher settings
+	 * @see #setTopicSettings(String, PublisherTopicSettings)
+	 */
+	public void setTopicSettings(Map<String, PublisherTopicSettings> topicSettings) {
+		Assert.notNull(topicSettings, "The publisher topic settings can't be null.");
+		topicSettings.forEach(this::setTopicSettings);
+	}
+
+	/**
+	 * Set the maximum number of {@link Publisher}s kept in the cache. When exceeded, the least
+	 * recently used {@link Publisher} is evicted and shut down. Unbounded by default.
+	 */
+	public void setMaxCachedPublishers(int maxCachedPublishers) {
+		Assert.isTrue(maxCachedPublishers > 0, "The maximum number of cached publishers must be positive.");
+		this.maxCachedPublishers = maxCachedPublishers;
+	}
+
+	/**
+	 * Set the time after which a {@link Publisher} that hasn't been used is evicted from the
+	 * cache and shut down. Idle {@link Publisher}s are never evicted if zero, the default.
+	 */
+	public void setIdleTimeout(Duration idleTimeout) {
+		Assert.isTrue(idleTimeout != null && !idleTimeout.isNegative(),
+				"The publisher idle timeout can't be null or negative.");
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Set the maximum time to wait for the cached {@link Publisher}s to publish their
+	 * outstanding messages when the factory is destroyed. Defaults to 10 seconds.
+	 */
+	public void setShutdownTimeout(Duration shutdownTimeout) {
+		Assert.isTrue(shutdownTimeout != null && !shutdownTimeout.isNegative(),
+				"The publisher shutdown timeout can't be null or negative.");
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
 	@Override
 	public Publisher createPublisher(String topic) {
-		return this.publishers.computeIfAbsent(topic, key -> {
-			try {
-				Publisher.Builder publisherBuilder =
-						Publisher.newBuilder(ProjectTopicName.of(this.projectId, key));
+		CachedPublisher cachedPublisher = this.publishers.get(topic);
+
+		if (cachedPublisher == null) {
+			cachedPublisher = this.publishers.computeIfAbsent(topic,
+					key -> new CachedPublisher(buildPublisher(key)));
+			// Touched before evicting, so that the publisher being returned is the least likely
+			// to be evicted.
+			cachedPublisher.touch();
+			evictLeastRecentlyUsedPublishers();
+			scheduleIdleEviction();
+		}
+		else {
+			cachedPublisher.touch();
+		}
 
-				if (this.executorProvider != null) {
-					publisherBuilder.setExecutorProvider(this.executorProvider);
-				}
+		return cachedPublisher.getPublisher();
+	}
 
-				if (this.channelProvider != null) {
-					publisherBuilder.setChannelProvider(this.channelProvider);
-				}
+	/**
+	 * Shut down every cached {@link Publisher}, waiting up to the shutdown timeout for their
+	 * outstanding messages to be published.
+	 */
+	@Override
+	public void destroy() {
+		synchronized (this) {
+			if (this.idleEvictionScheduler != null) {
+				this.idleEvictionScheduler.shutdownNow();
+				this.idleEvictionScheduler = null;
+			}
+		}
 
-				if (this.credentialsProvider != null) {
-					publisherBuilder.setCredentialsProvider(this.credentialsProvider);
-				}
+		List<Publisher> publishersToShutdown = new ArrayList<>();
+		this.publishers.forEach((topic, cachedPublisher) -> {
+			if (this.publishers.remove(topic, cachedPublisher)) {
+				publishersToShutdown.add(cachedPublisher.getPublisher());
+			}
+		});
 
-				if (this.headerProvider != null) {
-					publisherBuilder.setHeaderProvider(this.headerProvider);
-				}
+		CompletableFuture<?>[] shutdowns = publishersToShutdown.stream()
+				.map(publisher -> CompletableFuture.runAsync(
+						() -> shutdownPublisher(publisher), getShutdownExecutor()))
+				.toArray(CompletableFuture<?>[]::new);
 
-				if (this.retrySettings != null) {
-					publisherBuilder.setRetrySettings(this.retrySettings);
-				}
+		try {
+			CompletableFuture.allOf(shutdowns).get(this.shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException te) {
+			LOGGER.warn("Timed out waiting for publishers to publish their outstanding messages.", te);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while waiting for publishers to publish their outstanding messages.", ie);
+		}
+		catch (ExecutionException ee) {
+			LOGGER.warn("Failed to shut down publishers.", ee);
+		}
+		finally {
+			getShutdownExecutor().shutdown();
+		}
+	}
 
-				if (this.batchingSettings != null) {
-					publisherBuilder.setBatchingSettings(this.batchingSettings);
-				}
+	private void evictLeastRecentlyUsedPublishers() {
+		while (this.publishers.size() > this.maxCachedPublishers) {
+			this.publishers.entrySet().stream()
+					.min(Comparator.comparingLong(entry -> entry.getValue().getLastAccessTime()))
+					.ifPresent(entry -> evict(entry.getKey(), entry.getValue()));
+		}
+	}
 
-				return publisherBuilder.build();
-			}
-			catch (IOException ioe) {
-				throw new PubSubException("An error creating the Google Cloud Pub/Sub publisher " +
-						"occurred.", ioe);
+	private void evictIdlePublishers() {
+		long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(this.idleTimeout.toMillis());
+
+		this.publishers.forEach((topic, cachedPublisher) -> {
+			if (cachedPublisher.getLastAccessTime() - idleSince < 0) {
+				evict(topic, cachedPublisher);
 			}
 		});
 	}
 
+	private void evict(String topic, CachedPublisher cachedPublisher) {
+		if (this.publishers.remove(topic, cachedPublisher)) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Evicting the publisher of the " + topic + " topic.");
+			}
+			getShutdownExecutor().execute(() -> shutdownPublisher(cachedPublisher.getPublisher()));
+		}
+	}
+
+	private synchronized void scheduleIdleEviction() {
+		if (this.idleEvictionScheduler == null && !this.idleTimeout.isZero()) {
+			CustomizableThreadFactory threadFactory =
+					new CustomizableThreadFactory("pubsub-publisher-idle-eviction-");
+			threadFactory.setDaemon(true);
+			this.idleEvictionScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+			long period = Math.max(this.idleTimeout.toMillis() / 2, MIN_IDLE_EVICTION_PERIOD_MILLIS);
+			this.idleEvictionScheduler.scheduleAtFixedRate(
+					this::evictIdlePublishers, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private synchronized ExecutorService getShutdownExecutor() {
+		if (this.shutdownExecutor == null || this.shutdownExecutor.isShutdown()) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-publisher-shutdown-");
+			threadFactory.setDaemon(true);
+			this.shutdownExecutor = Executors.newCachedThreadPool(threadFactory);
+		}
+		return this.shutdownExecutor;
+	}
+
+	private void shutdownPublisher(Publisher publisher) {
+		try {
+			// Publishes the outstanding messages and waits for them to be sent.
+			publisher.shutdown();
+		}
+		catch (Exception e) {
+			LOGGER.warn("Failed to shut down the publisher of the " + publisher.getTopicName() + " topic.", e);
+		}
+	}
+
+	private Publisher buildPublisher(String topic) {
+		try {
+			Publisher.Builder publisherBuilder =
+					Publisher.newBuilder(ProjectTopicName.of(this.projectId, topic));
+
+			PublisherTopicSettings settings = getTopicSettings(topic);
+
+			ExecutorProvider executorProvider = settings != null && settings.getExecutorProvider() != null
+					? settings.getExecutorProvider()
+					: this.executorProvider;
+			RetrySettings retrySettings = settings != null && settings.getRetrySettings() != null
+					? settings.getRetrySettings()
+					: this.retrySettings;
+			BatchingSettings batchingSettings = settings != null && settings.getBatchingSettings() != null
+					? settings.getBatchingSettings()
+					: this.batchingSettings;
+
+			if (executorProvider != null) {
+				publisherBuilder.setExecutorProvider(executorProvider);
+			}
+
+			if (this.channelProvider != null) {
+				publisherBuilder.setChannelProvider(this.channelProvider);
+			}
+
+			if (this.credentialsProvider != null) {
+				publisherBuilder.setCredentialsProvider(this.credentialsProvider);
+			}
+
+			if (this.headerProvider != null) {
+				publisherBuilder.setHeaderProvider(this.headerProvider);
+			}
+
+			if (retrySettings != null) {
+				publisherBuilder.setRetrySettings(retrySettings);
+			}
+
+			if (batchingSettings != null) {
+				publisherBuilder.setBatchingSettings(batchingSettings);
+			}
+
+			return publisherBuilder.build();
+		}
+		catch (IOException ioe) {
+			throw new PubSubException("An error creating the Google Cloud Pub/Sub publisher " +
+					"occurred.", ioe);
+		}
+	}
+
+	/**
+	 * Return the settings registered for a topic, either by name or by a matching pattern.
+	 * @param topic the topic name
+	 * @return the settings of the topic, or {@code null} if none are registered
+	 */
+	PublisherTopicSettings getTopicSettings(String topic) {
+		synchronized (this.topicSettings) {
+			PublisherTopicSettings settings = this.topicSettings.get(topic);
+
+			if (settings == null) {
+				settings = this.topicSettings.entrySet().stream()
+						.filter(entry -> PatternMatchUtils.simpleMatch(entry.getKey(), topic))
+						.map(Map.Entry::getValue)
+						.findFirst()
+						.orElse(null);
+			}
+
+			return settings;
+		}
+	}
+
 	@VisibleForTesting
 	Map<String, Publisher> getCache() {
-		return this.publishers;
+		Map<String, Publisher> cache = new HashMap<>();
+		this.publishers.forEach((topic, cachedPublisher) -> cache.put(topic, cachedPublisher.getPublisher()));
+		return cache;
+	}
+
+	/**
+	 * A cached {@link Publisher}, along with the last time it was used.
+	 */
+	private static class CachedPublisher {
+
+		private final Publisher publisher;
+
+		private volatile long lastAccessTime = System.nanoTime();
+
+		CachedPublisher(Publisher publisher) {
+			this.publisher = publisher;
+		}
+
+		Publisher getPublisher() {
+			return this.publisher;
+		}
+
+		long getLastAccessTime() {
+			return this.lastAccessTime;
+		}
+
+		void touch() {
+			this.lastAccessTime = System.nanoTime();
+		}
 	}
 }
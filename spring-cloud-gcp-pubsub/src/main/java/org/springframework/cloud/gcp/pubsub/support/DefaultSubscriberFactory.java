@@ -17,6 +17,12 @@
 package org.springframework.cloud.gcp.pubsub.support;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.api.core.ApiClock;
 import com.google.api.gax.batching.FlowControlSettings;
@@ -30,23 +36,38 @@ import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.cloud.pubsub.v1.stub.GrpcSubscriberStub;
 import com.google.cloud.pubsub.v1.stub.SubscriberStub;
 import com.google.cloud.pubsub.v1.stub.SubscriberStubSettings;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.pubsub.v1.ProjectSubscriptionName;
 import com.google.pubsub.v1.PullRequest;
 import org.threeten.bp.Duration;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.gcp.core.GcpProjectIdProvider;
 import org.springframework.util.Assert;
 
 /**
  * The default {@link SubscriberFactory} implementation.
  *
+ * <p>{@link SubscriberStub}s used for synchronous pulling are cached by retry settings and
+ * reused across pull requests, instead of creating a new stub and channel for every call.
+ *
  * @author João André Martins
  * @author Mike Eltsufin
  */
-public class DefaultSubscriberFactory implements SubscriberFactory {
+public class DefaultSubscriberFactory implements SubscriberFactory, DisposableBean {
+
+	private static final int DEFAULT_MAX_SUBSCRIBER_STUBS = 10;
 
 	private final String projectId;
 
+	/**
+	 * {@link SubscriberStub} cache, keyed by retry settings and kept in least recently used
+	 * order. A {@code null} key holds the stub with the default retry settings.
+	 */
+	private final Map<RetrySettings, SubscriberStub> subscriberStubs = new LinkedHashMap<>(16, 0.75f, true);
+
+	private int maxSubscriberStubs = DEFAULT_MAX_SUBSCRIBER_STUBS;
+
 	private ExecutorProvider executorProvider;
 
 	private TransportChannelProvider channelProvider;
@@ -59,6 +80,14 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 
 	private FlowControlSettings flowControlSettings;
 
+	private AdaptiveFlowControlSettings adaptiveFlowControlSettings;
+
+	/**
+	 * The {@link AdaptiveFlowController}s of the subscribers created by this factory, by
+	 * subscription name.
+	 */
+	private final Map<String, AdaptiveFlowController> adaptiveFlowControllers = new ConcurrentHashMap<>();
+
 	private Duration maxAckDurationPeriod;
 
 	private Integer parallelPullCount;
@@ -122,6 +151,27 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 		this.flowControlSettings = flowControlSettings;
 	}
 
+	/**
+	 * Make the subscribers adapt the number and size of the messages being processed to the
+	 * processing latency, within the given bounds. The maximum bounds replace the limits of the
+	 * {@link #setFlowControlSettings(FlowControlSettings) flow control settings}.
+	 * @see AdaptiveFlowController
+	 */
+	public void setAdaptiveFlowControlSettings(AdaptiveFlowControlSettings adaptiveFlowControlSettings) {
+		this.adaptiveFlowControlSettings = adaptiveFlowControlSettings;
+	}
+
+	/**
+	 * Return the {@link AdaptiveFlowController} of the latest subscriber created for a
+	 * subscription, to monitor its decisions.
+	 * @param subscriptionName the name of the subscription
+	 * @return the controller, or {@code null} if adaptive flow control isn't enabled or no
+	 * subscriber was created for the subscription
+	 */
+	public AdaptiveFlowController getAdaptiveFlowController(String subscriptionName) {
+		return this.adaptiveFlowControllers.get(subscriptionName);
+	}
+
 	/**
 	 * Set the maximum period the ack timeout is extended by.
 	 */
@@ -150,10 +200,37 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 		this.apiClock = apiClock;
 	}
 
+	/**
+	 * Set the maximum number of {@link SubscriberStub}s kept in the cache. When exceeded, the
+	 * least recently used stub is shut down. Defaults to 10.
+	 */
+	public void setMaxSubscriberStubs(int maxSubscriberStubs) {
+		Assert.isTrue(maxSubscriberStubs > 0, "The maximum number of subscriber stubs must be positive.");
+		this.maxSubscriberStubs = maxSubscriberStubs;
+	}
+
 	@Override
 	public Subscriber createSubscriber(String subscriptionName, MessageReceiver receiver) {
+		MessageReceiver subscriberReceiver = receiver;
+		FlowControlSettings subscriberFlowControlSettings = this.flowControlSettings;
+
+		if (this.adaptiveFlowControlSettings != null) {
+			AdaptiveFlowController adaptiveFlowController =
+					new AdaptiveFlowController(receiver, this.adaptiveFlowControlSettings);
+			this.adaptiveFlowControllers.put(subscriptionName, adaptiveFlowController);
+			subscriberReceiver = adaptiveFlowController;
+
+			subscriberFlowControlSettings = (this.flowControlSettings != null
+					? this.flowControlSettings.toBuilder()
+					: FlowControlSettings.newBuilder())
+					.setMaxOutstandingElementCount(
+							(long) this.adaptiveFlowControlSettings.getMaxOutstandingMessages())
+					.setMaxOutstandingRequestBytes(this.adaptiveFlowControlSettings.getMaxOutstandingBytes())
+					.build();
+		}
+
 		Subscriber.Builder subscriberBuilder = Subscriber.newBuilder(
-				ProjectSubscriptionName.of(this.projectId, subscriptionName), receiver);
+				ProjectSubscriptionName.of(this.projectId, subscriptionName), subscriberReceiver);
 
 		if (this.channelProvider != null) {
 			subscriberBuilder.setChannelProvider(this.channelProvider);
@@ -175,8 +252,8 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 			subscriberBuilder.setSystemExecutorProvider(this.systemExecutorProvider);
 		}
 
-		if (this.flowControlSettings != null) {
-			subscriberBuilder.setFlowControlSettings(this.flowControlSettings);
+		if (subscriberFlowControlSettings != null) {
+			subscriberBuilder.setFlowControlSettings(subscriberFlowControlSettings);
 		}
 
 		if (this.maxAckDurationPeriod != null) {
@@ -210,8 +287,57 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 		return pullRequestBuilder.build();
 	}
 
+	/**
+	 * Return a {@link SubscriberStub} for the given retry settings.
+	 *
+	 * <p>Stubs are cached and shared between callers. A cached stub that has been shut down is
+	 * replaced by a new one. Callers must not close the returned stub; stubs are shut down when
+	 * evicted from the cache or when this factory is destroyed.
+	 * @param retrySettings parameters for retrying pull requests when they fail, including
+	 * jitter logic, timeout, and exponential backoff
+	 * @return the cached {@link SubscriberStub} used for executing {@link PullRequest}s
+	 */
 	@Override
 	public SubscriberStub createSubscriberStub(RetrySettings retrySettings) {
+		synchronized (this.subscriberStubs) {
+			SubscriberStub subscriberStub = this.subscriberStubs.get(retrySettings);
+
+			if (subscriberStub == null || subscriberStub.isShutdown() || subscriberStub.isTerminated()) {
+				subscriberStub = buildSubscriberStub(retrySettings);
+				this.subscriberStubs.put(retrySettings, subscriberStub);
+				evictSubscriberStubs();
+			}
+
+			return subscriberStub;
+		}
+	}
+
+	/**
+	 * Shut down all cached {@link SubscriberStub}s.
+	 */
+	@Override
+	public void destroy() {
+		List<SubscriberStub> stubsToShutdown;
+
+		synchronized (this.subscriberStubs) {
+			stubsToShutdown = new ArrayList<>(this.subscriberStubs.values());
+			this.subscriberStubs.clear();
+		}
+
+		stubsToShutdown.forEach(SubscriberStub::shutdown);
+	}
+
+	private void evictSubscriberStubs() {
+		Iterator<SubscriberStub> leastRecentlyUsed = this.subscriberStubs.values().iterator();
+
+		while (this.subscriberStubs.size() > this.maxSubscriberStubs) {
+			// In-flight calls on the evicted stub's channel are allowed to complete.
+			leastRecentlyUsed.next().shutdown();
+			leastRecentlyUsed.remove();
+		}
+	}
+
+	private SubscriberStub buildSubscriberStub(RetrySettings retrySettings) {
 		SubscriberStubSettings.Builder subscriberStubSettings = SubscriberStubSettings.newBuilder();
 
 		if (this.credentialsProvider != null) {
@@ -249,4 +375,11 @@ public class DefaultSubscriberFactory implements SubscriberFactory {
 			throw new RuntimeException("Error creating the SubscriberStub", e);
 		}
 	}
+
+	@VisibleForTesting
+	int getSubscriberStubCacheSize() {
+		synchronized (this.subscriberStubs) {
+			return this.subscriberStubs.size();
+		}
+	}
 }
@@ -0,0 +1,296 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.ByteString;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link PayloadCodec} for the {@code deflate} encoding, i.e., zlib-wrapped DEFLATE.
+ *
+ * <p>Each codec keeps a bounded pool of {@link Deflater}s, {@link Inflater}s and buffers, reused
+ * by the threads compressing and decompressing messages, so that compressing a message doesn't
+ * allocate more than its compressed payload. Their native memory is allocated on first use, and
+ * released by {@link #destroy()}.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+
+	/**
+	 * The name of the encoding.
+	 */
+	public static final String ENCODING = "deflate";
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int MAX_POOLED_RESOURCES = Runtime.getRuntime().availableProcessors();
+
+	private final int level;
+
+	private final boolean nowrap;
+
+	private final BlockingQueue<Resources> pool = new ArrayBlockingQueue<>(MAX_POOLED_RESOURCES);
+
+	private volatile boolean destroyed;
+
+	/**
+	 * Create a codec compressing with the default compression level.
+	 */
+	public DeflatePayloadCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Create a codec compressing with the given compression level.
+	 * @param level the compression level, from 0 to 9, or -1 for the default level
+	 */
+	public DeflatePayloadCodec(int level) {
+		this(level, false);
+	}
+
+	/**
+	 * Create a codec compressing with the given compression level.
+	 * @param level the compression level, from 0 to 9, or -1 for the default level
+	 * @param nowrap whether to compress to raw DEFLATE data, without the zlib header and
+	 * checksum, for subclasses that wrap it in another format
+	 */
+	protected DeflatePayloadCodec(int level, boolean nowrap) {
+		Assert.isTrue(level == Deflater.DEFAULT_COMPRESSION
+				|| (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+				"The compression level must be between 0 and 9, or -1.");
+		this.level = level;
+		this.nowrap = nowrap;
+	}
+
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	@Override
+	public ByteString encode(ByteString data) {
+		Resources resources = acquire();
+		try {
+			int length = data.size();
+			byte[] input = resources.input(data);
+			byte[] chunk = resources.chunk;
+			Deflater deflater = resources.deflater(this.level, this.nowrap);
+
+			ByteString.Output output = ByteString.newOutput(Math.max(length / 2, 64));
+			writeHeader(output);
+
+			try {
+				deflater.setInput(input, 0, length);
+				deflater.finish();
+				while (!deflater.finished()) {
+					output.write(chunk, 0, deflater.deflate(chunk));
+				}
+			}
+			finally {
+				deflater.reset();
+			}
+
+			writeTrailer(output, input, length);
+			return output.toByteString();
+		}
+		finally {
+			release(resources);
+		}
+	}
+
+	@Override
+	public ByteString decode(ByteString data) {
+		return decode(data, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decompress a payload, and stop as soon as it decompresses to more than the given size, so
+	 * that a small malicious payload can't exhaust the memory.
+	 */
+	@Override
+	public ByteString decode(ByteString data, int maxDecodedSize) {
+		Resources resources = acquire();
+		try {
+			int length = data.size();
+			byte[] input = resources.input(data);
+			byte[] chunk = resources.chunk;
+			Inflater inflater = resources.inflater(this.nowrap);
+
+			int offset = readHeader(input, length);
+			ByteString.Output output = ByteString.newOutput(Math.min(length * 4, MAX_POOLED_BUFFER_SIZE));
+
+			try {
+				inflater.setInput(input, offset, length - offset);
+				while (!inflater.finished()) {
+					int inflated = inflater.inflate(chunk);
+					if (inflated == 0 && !inflater.finished()
+							&& (inflater.needsInput() || inflater.needsDictionary())) {
+						throw new PubSubException("Truncated " + getEncoding() + " payload.");
+					}
+					if ((long) output.size() + inflated > maxDecodedSize) {
+						throw new PubSubException("The " + getEncoding() + " payload decompresses to more than "
+								+ maxDecodedSize + " bytes.");
+					}
+					output.write(chunk, 0, inflated);
+				}
+				offset = length - inflater.getRemaining();
+			}
+			catch (DataFormatException dfe) {
+				throw new PubSubException("Invalid " + getEncoding() + " payload.", dfe);
+			}
+			finally {
+				inflater.reset();
+			}
+
+			ByteString decoded = output.toByteString();
+			verifyTrailer(input, offset, length, decoded);
+			return decoded;
+		}
+		finally {
+			release(resources);
+		}
+	}
+
+	/**
+	 * Release the native memory of the pooled deflaters and inflaters. The codec can still be
+	 * used afterwards, but then allocates and releases them for every payload.
+	 */
+	@Override
+	public void destroy() {
+		this.destroyed = true;
+		for (Resources resources = this.pool.poll(); resources != null; resources = this.pool.poll()) {
+			resources.end();
+		}
+	}
+
+	/**
+	 * Write the bytes preceding the DEFLATE data. Nothing is written by default.
+	 * @param output the compressed payload
+	 */
+	protected void writeHeader(ByteString.Output output) {
+	}
+
+	/**
+	 * Write the bytes following the DEFLATE data. Nothing is written by default.
+	 * @param output the compressed payload
+	 * @param input the payload, in the first {@code length} bytes of the array
+	 * @param length the size of the payload
+	 */
+	protected void writeTrailer(ByteString.Output output, byte[] input, int length) {
+	}
+
+	/**
+	 * Skip the bytes preceding the DEFLATE data.
+	 * @param input the compressed payload, in the first {@code length} bytes of the array
+	 * @param length the size of the compressed payload
+	 * @return the offset of the DEFLATE data
+	 */
+	protected int readHeader(byte[] input, int length) {
+		return 0;
+	}
+
+	/**
+	 * Check the bytes following the DEFLATE data against the decompressed payload.
+	 * @param input the compressed payload, in the first {@code length} bytes of the array
+	 * @param offset the offset of the bytes following the DEFLATE data
+	 * @param length the size of the compressed payload
+	 * @param decoded the decompressed payload
+	 */
+	protected void verifyTrailer(byte[] input, int offset, int length, ByteString decoded) {
+	}
+
+	private Resources acquire() {
+		Resources resources = this.pool.poll();
+		return resources != null ? resources : new Resources();
+	}
+
+	/**
+	 * Return resources to the pool, or release them if the pool is full or the codec destroyed,
+	 * including when it was destroyed while they were being returned.
+	 */
+	private void release(Resources resources) {
+		if (this.destroyed || !this.pool.offer(resources)) {
+			resources.end();
+		}
+		else if (this.destroyed && this.pool.remove(resources)) {
+			resources.end();
+		}
+	}
+
+	/**
+	 * The buffers, deflater and inflater used by one thread at a time.
+	 */
+	private static class Resources {
+
+		private final byte[] chunk = new byte[CHUNK_SIZE];
+
+		private byte[] input = new byte[CHUNK_SIZE];
+
+		private Deflater deflater;
+
+		private Inflater inflater;
+
+		Deflater deflater(int level, boolean nowrap) {
+			if (this.deflater == null) {
+				this.deflater = new Deflater(level, nowrap);
+			}
+			return this.deflater;
+		}
+
+		Inflater inflater(boolean nowrap) {
+			if (this.inflater == null) {
+				this.inflater = new Inflater(nowrap);
+			}
+			return this.inflater;
+		}
+
+		void end() {
+			if (this.deflater != null) {
+				this.deflater.end();
+			}
+			if (this.inflater != null) {
+				this.inflater.end();
+			}
+		}
+
+		/**
+		 * Copy data to the input buffer, which grows up to a maximum size. Larger data are
+		 * copied to a temporary array.
+		 */
+		byte[] input(ByteString data) {
+			int size = data.size();
+			if (size > this.input.length) {
+				if (size > MAX_POOLED_BUFFER_SIZE) {
+					return data.toByteArray();
+				}
+				this.input = new byte[Math.min(Math.max(size, this.input.length * 2), MAX_POOLED_BUFFER_SIZE)];
+			}
+			data.copyTo(this.input, 0);
+			return this.input;
+		}
+	}
+}
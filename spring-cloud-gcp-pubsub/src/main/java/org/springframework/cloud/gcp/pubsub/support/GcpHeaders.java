@@ -23,7 +23,7 @@ package org.springframework.cloud.gcp.pubsub.support;
  */
 public abstract class GcpHeaders {
 
-	private static final String PREFIX = "gcp_";
+	public static final String PREFIX = "gcp_";
 
 	public static final String ACKNOWLEDGEMENT = PREFIX + "pub_sub_acknowledgement";
 }
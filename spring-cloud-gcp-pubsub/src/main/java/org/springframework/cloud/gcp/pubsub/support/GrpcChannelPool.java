@@ -0,0 +1,226 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import org.springframework.util.Assert;
+
+/**
+ * A fixed number of gRPC channels shared by all the Pub/Sub clients using the
+ * {@link TransportChannelProvider} of the pool, instead of every publisher, subscriber and
+ * admin client opening its own connection.
+ *
+ * <p>Every call is made on the channel with the fewest active calls, so that long-lived
+ * streaming pulls are spread evenly. The number of active calls of each channel is exposed
+ * as its stream utilization.
+ *
+ * <p>The pool owns its channels, which are shut down with it.
+ */
+public class GrpcChannelPool extends ManagedChannel {
+
+	private final List<ManagedChannel> channels;
+
+	private final List<AtomicInteger> activeCallCounts;
+
+	private final List<AtomicLong> callCounts;
+
+	private final AtomicInteger nextIndex = new AtomicInteger();
+
+	/**
+	 * Create a pool of channels.
+	 * @param channelCount the number of channels
+	 * @param channelFactory creates every channel of the pool
+	 */
+	public GrpcChannelPool(int channelCount, Supplier<ManagedChannel> channelFactory) {
+		Assert.isTrue(channelCount > 0, "The channel count must be greater than 0.");
+		Assert.notNull(channelFactory, "The channel factory can't be null.");
+		List<ManagedChannel> channels = new ArrayList<>(channelCount);
+		List<AtomicInteger> activeCallCounts = new ArrayList<>(channelCount);
+		List<AtomicLong> callCounts = new ArrayList<>(channelCount);
+		for (int i = 0; i < channelCount; i++) {
+			ManagedChannel channel = channelFactory.get();
+			Assert.notNull(channel, "The channel factory can't create null channels.");
+			channels.add(channel);
+			activeCallCounts.add(new AtomicInteger());
+			callCounts.add(new AtomicLong());
+		}
+		this.channels = Collections.unmodifiableList(channels);
+		this.activeCallCounts = Collections.unmodifiableList(activeCallCounts);
+		this.callCounts = Collections.unmodifiableList(callCounts);
+	}
+
+	/**
+	 * Return a provider of a transport channel backed by this pool. The clients using it
+	 * don't shut the pool down when they are closed.
+	 * @return the transport channel provider
+	 */
+	public TransportChannelProvider getTransportChannelProvider() {
+		return FixedTransportChannelProvider.create(GrpcTransportChannel.create(this));
+	}
+
+	/**
+	 * Return the number of channels of the pool.
+	 * @return the number of channels
+	 */
+	public int getChannelCount() {
+		return this.channels.size();
+	}
+
+	/**
+	 * Return the number of calls, including open streams, currently active on a channel.
+	 * @param channelIndex the index of the channel, from 0 to the channel count excluded
+	 * @return the number of active calls
+	 */
+	public int getActiveCallCount(int channelIndex) {
+		return this.activeCallCounts.get(channelIndex).get();
+	}
+
+	/**
+	 * Return the total number of calls started on a channel.
+	 * @param channelIndex the index of the channel, from 0 to the channel count excluded
+	 * @return the number of started calls
+	 */
+	public long getCallCount(int channelIndex) {
+		return this.callCounts.get(channelIndex).get();
+	}
+
+	@Override
+	public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+			MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+		int index = selectChannel();
+		return new CountingClientCall<>(
+				this.channels.get(index).newCall(methodDescriptor, callOptions),
+				this.activeCallCounts.get(index), this.callCounts.get(index));
+	}
+
+	@Override
+	public String authority() {
+		return this.channels.get(0).authority();
+	}
+
+	@Override
+	public ManagedChannel shutdown() {
+		this.channels.forEach(ManagedChannel::shutdown);
+		return this;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.channels.stream().allMatch(ManagedChannel::isShutdown);
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return this.channels.stream().allMatch(ManagedChannel::isTerminated);
+	}
+
+	@Override
+	public ManagedChannel shutdownNow() {
+		this.channels.forEach(ManagedChannel::shutdownNow);
+		return this;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ManagedChannel channel : this.channels) {
+			long remaining = Math.max(deadline - System.nanoTime(), 0L);
+			if (!channel.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Select the channel with the fewest active calls, starting from a rotating index so
+	 * that ties are broken in a round-robin fashion.
+	 */
+	private int selectChannel() {
+		int channelCount = this.channels.size();
+		int start = Math.floorMod(this.nextIndex.getAndIncrement(), channelCount);
+		int selected = start;
+		int fewestActiveCalls = Integer.MAX_VALUE;
+		for (int i = 0; i < channelCount; i++) {
+			int index = (start + i) % channelCount;
+			int activeCalls = this.activeCallCounts.get(index).get();
+			if (activeCalls < fewestActiveCalls) {
+				selected = index;
+				fewestActiveCalls = activeCalls;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Counts a call as active from its start until it is closed.
+	 */
+	private static final class CountingClientCall<ReqT, RespT>
+			extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+		private final AtomicInteger activeCallCount;
+
+		private final AtomicLong callCount;
+
+		CountingClientCall(ClientCall<ReqT, RespT> delegate, AtomicInteger activeCallCount,
+				AtomicLong callCount) {
+			super(delegate);
+			this.activeCallCount = activeCallCount;
+			this.callCount = callCount;
+		}
+
+		@Override
+		public void start(Listener<RespT> responseListener, Metadata headers) {
+			this.callCount.incrementAndGet();
+			this.activeCallCount.incrementAndGet();
+			try {
+				super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+						responseListener) {
+					@Override
+					public void onClose(Status status, Metadata trailers) {
+						CountingClientCall.this.activeCallCount.decrementAndGet();
+						super.onClose(status, trailers);
+					}
+				}, headers);
+			}
+			catch (RuntimeException ex) {
+				this.activeCallCount.decrementAndGet();
+				throw ex;
+			}
+		}
+	}
+}
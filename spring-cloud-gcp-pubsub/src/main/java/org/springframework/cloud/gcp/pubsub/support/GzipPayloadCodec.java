@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.google.protobuf.ByteString;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+
+/**
+ * A {@link PayloadCodec} for the {@code gzip} encoding.
+ *
+ * <p>Like {@link DeflatePayloadCodec}, the codec pools its {@link Deflater}s,
+ * {@link java.util.zip.Inflater}s and buffers, and releases them when it is destroyed.
+ */
+public class GzipPayloadCodec extends DeflatePayloadCodec {
+
+	/**
+	 * The name of the encoding.
+	 */
+	public static final String ENCODING = "gzip";
+
+	private static final byte[] HEADER = {
+			0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private static final int TRAILER_SIZE = 8;
+
+	private static final int FLAG_HEADER_CRC = 0x02;
+
+	private static final int FLAG_EXTRA = 0x04;
+
+	private static final int FLAG_NAME = 0x08;
+
+	private static final int FLAG_COMMENT = 0x10;
+
+	/**
+	 * Create a codec compressing with the default compression level.
+	 */
+	public GzipPayloadCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Create a codec compressing with the given compression level.
+	 * @param level the compression level, from 0 to 9, or -1 for the default level
+	 */
+	public GzipPayloadCodec(int level) {
+		super(level, true);
+	}
+
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	@Override
+	protected void writeHeader(ByteString.Output output) {
+		output.write(HEADER, 0, HEADER.length);
+	}
+
+	@Override
+	protected void writeTrailer(ByteString.Output output, byte[] input, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(input, 0, length);
+		writeInt(output, (int) crc.getValue());
+		writeInt(output, length);
+	}
+
+	@Override
+	protected int readHeader(byte[] input, int length) {
+		if (length < HEADER.length + TRAILER_SIZE || input[0] != HEADER[0] || input[1] != HEADER[1]
+				|| input[2] != Deflater.DEFLATED) {
+			throw new PubSubException("Invalid gzip header.");
+		}
+
+		int flags = input[3];
+		int offset = HEADER.length;
+		if ((flags & FLAG_EXTRA) != 0) {
+			offset += 2 + ((input[offset] & 0xff) | (input[offset + 1] & 0xff) << 8);
+		}
+		if ((flags & FLAG_NAME) != 0) {
+			offset = skipZeroTerminated(input, offset, length);
+		}
+		if ((flags & FLAG_COMMENT) != 0) {
+			offset = skipZeroTerminated(input, offset, length);
+		}
+		if ((flags & FLAG_HEADER_CRC) != 0) {
+			offset += 2;
+		}
+
+		if (offset > length - TRAILER_SIZE) {
+			throw new PubSubException("Invalid gzip header.");
+		}
+		return offset;
+	}
+
+	@Override
+	protected void verifyTrailer(byte[] input, int offset, int length, ByteString decoded) {
+		if (length - offset < TRAILER_SIZE) {
+			throw new PubSubException("Truncated gzip payload.");
+		}
+
+		CRC32 crc = new CRC32();
+		for (ByteBuffer buffer : decoded.asReadOnlyByteBufferList()) {
+			crc.update(buffer);
+		}
+
+		if (readInt(input, offset) != (int) crc.getValue() || readInt(input, offset + 4) != decoded.size()) {
+			throw new PubSubException("Corrupt gzip payload.");
+		}
+	}
+
+	private static int skipZeroTerminated(byte[] input, int offset, int length) {
+		int position = offset;
+		while (position < length && input[position] != 0) {
+			position++;
+		}
+		return position + 1;
+	}
+
+	private static void writeInt(ByteString.Output output, int value) {
+		output.write(value & 0xff);
+		output.write((value >> 8) & 0xff);
+		output.write((value >> 16) & 0xff);
+		output.write((value >> 24) & 0xff);
+	}
+
+	private static int readInt(byte[] input, int offset) {
+		return (input[offset] & 0xff) | (input[offset + 1] & 0xff) << 8
+				| (input[offset + 2] & 0xff) << 16 | (input[offset + 3] & 0xff) << 24;
+	}
+}
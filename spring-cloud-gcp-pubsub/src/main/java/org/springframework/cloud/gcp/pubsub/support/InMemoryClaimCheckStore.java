@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * A {@link ClaimCheckStore} that keeps payloads in memory, for tests and for publishers and
+ * subscribers running in the same process.
+ */
+public class InMemoryClaimCheckStore implements ClaimCheckStore {
+
+	private final Map<String, ByteString> payloads = new ConcurrentHashMap<>();
+
+	@Override
+	public String store(String topic, ByteString payload) {
+		String reference = topic + "/" + UUID.randomUUID();
+		this.payloads.put(reference, payload);
+		return reference;
+	}
+
+	@Override
+	public InputStream retrieve(String reference) throws FileNotFoundException {
+		ByteString payload = this.payloads.get(reference);
+		if (payload == null) {
+			throw new FileNotFoundException("No payload is stored for " + reference + ".");
+		}
+		return payload.newInput();
+	}
+
+	@Override
+	public void delete(String reference) {
+		this.payloads.remove(reference);
+	}
+
+	/**
+	 * Return the number of stored payloads.
+	 * @return the number of stored payloads
+	 */
+	public int getPayloadCount() {
+		return this.payloads.size();
+	}
+}
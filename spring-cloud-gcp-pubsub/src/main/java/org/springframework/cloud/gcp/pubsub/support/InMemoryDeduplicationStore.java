@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DeduplicationStore} that remembers keys in memory, for a limited time and up to a
+ * maximum number of keys.
+ *
+ * <p>Keys are kept in the order they were received. Keys older than the time window, and the
+ * oldest keys beyond the maximum, are forgotten, whether completed or in progress. The window
+ * should cover the maximum time Google Cloud Pub/Sub may take to redeliver a message, i.e., the
+ * acknowledgement deadline plus the time a message can spend waiting to be processed.
+ */
+public class InMemoryDeduplicationStore implements DeduplicationStore {
+
+	private static final int DEFAULT_MAX_KEYS = 100_000;
+
+	private static final long DEFAULT_WINDOW_MILLIS = 10 * 60 * 1000;
+
+	private final int maxKeys;
+
+	private final long windowMillis;
+
+	private final LongSupplier clock;
+
+	/**
+	 * The mark of each key, in insertion order.
+	 */
+	private final LinkedHashMap<String, KeyMark> keys = new LinkedHashMap<>();
+
+	/**
+	 * Create a store remembering up to 100,000 keys for 10 minutes.
+	 */
+	public InMemoryDeduplicationStore() {
+		this(DEFAULT_MAX_KEYS, DEFAULT_WINDOW_MILLIS);
+	}
+
+	/**
+	 * Create a store.
+	 * @param maxKeys the maximum number of keys remembered
+	 * @param windowMillis how long keys are remembered, in milliseconds
+	 */
+	public InMemoryDeduplicationStore(int maxKeys, long windowMillis) {
+		this(maxKeys, windowMillis, System::currentTimeMillis);
+	}
+
+	InMemoryDeduplicationStore(int maxKeys, long windowMillis, LongSupplier clock) {
+		Assert.isTrue(maxKeys > 0, "The maximum number of keys must be positive.");
+		Assert.isTrue(windowMillis > 0, "The deduplication window must be positive.");
+		this.maxKeys = maxKeys;
+		this.windowMillis = windowMillis;
+		this.clock = clock;
+	}
+
+	@Override
+	public synchronized boolean markIfAbsent(String key) {
+		long now = this.clock.getAsLong();
+		expire(now);
+
+		if (this.keys.containsKey(key)) {
+			return false;
+		}
+
+		this.keys.put(key, new KeyMark(now));
+
+		Iterator<String> oldest = this.keys.keySet().iterator();
+		while (this.keys.size() > this.maxKeys) {
+			oldest.next();
+			oldest.remove();
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized void markCompleted(String key) {
+		KeyMark mark = this.keys.get(key);
+		if (mark != null) {
+			mark.completed = true;
+		}
+	}
+
+	@Override
+	public synchronized boolean isCompleted(String key) {
+		expire(this.clock.getAsLong());
+		KeyMark mark = this.keys.get(key);
+		return mark != null && mark.completed;
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		this.keys.remove(key);
+	}
+
+	public synchronized int size() {
+		return this.keys.size();
+	}
+
+	private void expire(long now) {
+		Iterator<Map.Entry<String, KeyMark>> oldest = this.keys.entrySet().iterator();
+		while (oldest.hasNext() && oldest.next().getValue().receivedMillis <= now - this.windowMillis) {
+			oldest.remove();
+		}
+	}
+
+	/**
+	 * The time at which a key was received, and whether its message was acked.
+	 */
+	private static final class KeyMark {
+
+		private final long receivedMillis;
+
+		private boolean completed;
+
+		KeyMark(long receivedMillis) {
+			this.receivedMillis = receivedMillis;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MessageReceiver} that processes messages with the same key in the order they are
+ * received, and messages with different keys in parallel.
+ *
+ * <p>The key of a message is the value of one of its attributes. Keys are hashed onto a fixed
+ * number of lanes, each processing its messages one at a time on its own thread. Messages
+ * without the key attribute are spread across lanes by message ID. When the queue of a lane is
+ * full, the subscriber thread delivering the message waits for room in it.
+ *
+ * <p>Ordering is only guaranteed from the moment messages are received; Google Cloud Pub/Sub
+ * itself may deliver messages out of order.
+ */
+public class KeyOrderedMessageReceiver implements MessageReceiver {
+
+	private static final Log LOGGER = LogFactory.getLog(KeyOrderedMessageReceiver.class);
+
+	private final MessageReceiver delegate;
+
+	private final String keyAttribute;
+
+	private final ThreadPoolExecutor[] lanes;
+
+	/**
+	 * Create a receiver.
+	 * @param delegate the receiver that processes the messages
+	 * @param keyAttribute the name of the attribute holding the key of a message
+	 * @param laneCount the number of lanes, i.e., the maximum number of messages processed in
+	 * parallel
+	 * @param laneQueueCapacity the maximum number of messages waiting in each lane
+	 */
+	public KeyOrderedMessageReceiver(MessageReceiver delegate, String keyAttribute, int laneCount,
+			int laneQueueCapacity) {
+		Assert.notNull(delegate, "The delegate receiver can't be null.");
+		Assert.hasText(keyAttribute, "The key attribute can't be null or empty.");
+		Assert.isTrue(laneCount > 0, "The number of lanes must be positive.");
+		Assert.isTrue(laneQueueCapacity > 0, "The lane queue capacity must be positive.");
+
+		this.delegate = delegate;
+		this.keyAttribute = keyAttribute;
+		this.lanes = new ThreadPoolExecutor[laneCount];
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-ordered-lane-");
+		threadFactory.setDaemon(true);
+
+		for (int i = 0; i < laneCount; i++) {
+			this.lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(laneQueueCapacity), threadFactory,
+					KeyOrderedMessageReceiver::waitForRoom);
+		}
+	}
+
+	@Override
+	public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+		String key = message.getAttributesOrDefault(this.keyAttribute, message.getMessageId());
+
+		try {
+			getLane(key).execute(() -> process(message, consumer));
+		}
+		catch (RejectedExecutionException ree) {
+			consumer.nack();
+		}
+	}
+
+	/**
+	 * Stop accepting messages, which are nacked from now on. Messages already in the lanes are
+	 * still processed.
+	 */
+	public void shutdown() {
+		for (ThreadPoolExecutor lane : this.lanes) {
+			lane.shutdown();
+		}
+	}
+
+	/**
+	 * Wait for the messages in the lanes to be processed after a {@link #shutdown()}.
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if all lanes are empty, false if the timeout elapsed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		for (ThreadPoolExecutor lane : this.lanes) {
+			if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the number of messages waiting to be processed, in all lanes.
+	 * @return the number of queued messages
+	 */
+	public int getQueuedMessageCount() {
+		int count = 0;
+		for (ThreadPoolExecutor lane : this.lanes) {
+			count += lane.getQueue().size();
+		}
+		return count;
+	}
+
+	public int getLaneCount() {
+		return this.lanes.length;
+	}
+
+	private ThreadPoolExecutor getLane(String key) {
+		int hash = key.hashCode();
+		// Spread the high bits, since the number of lanes is usually small.
+		return this.lanes[Math.floorMod(hash ^ (hash >>> 16), this.lanes.length)];
+	}
+
+	/**
+	 * Let the delegate process a message, and nack it if processing fails, unless the delegate
+	 * already acked or nacked it before failing.
+	 */
+	private void process(PubsubMessage message, AckReplyConsumer consumer) {
+		RespondingAckReplyConsumer respondingConsumer = new RespondingAckReplyConsumer(consumer);
+		try {
+			this.delegate.receiveMessage(message, respondingConsumer);
+		}
+		catch (RuntimeException re) {
+			LOGGER.warn("Processing message " + message.getMessageId() + " failed.", re);
+			if (!respondingConsumer.hasResponded()) {
+				consumer.nack();
+			}
+		}
+	}
+
+	/**
+	 * Make the subscriber thread wait for room in the queue of a full lane.
+	 */
+	private static void waitForRoom(Runnable task, ThreadPoolExecutor lane) {
+		if (lane.isShutdown()) {
+			throw new RejectedExecutionException("The lane has been shut down.");
+		}
+
+		try {
+			lane.getQueue().put(task);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for room in the lane.", ie);
+		}
+
+		if (lane.isShutdown() && lane.getQueue().remove(task)) {
+			throw new RejectedExecutionException("The lane has been shut down.");
+		}
+	}
+
+	/**
+	 * Remembers whether a message was acked or nacked.
+	 */
+	private static final class RespondingAckReplyConsumer implements AckReplyConsumer {
+
+		private final AckReplyConsumer consumer;
+
+		private volatile boolean responded;
+
+		RespondingAckReplyConsumer(AckReplyConsumer consumer) {
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void ack() {
+			this.responded = true;
+			this.consumer.ack();
+		}
+
+		@Override
+		public void nack() {
+			this.responded = true;
+			this.consumer.nack();
+		}
+
+		boolean hasResponded() {
+			return this.responded;
+		}
+	}
+}
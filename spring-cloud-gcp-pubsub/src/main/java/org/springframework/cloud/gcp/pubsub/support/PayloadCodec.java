@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import com.google.protobuf.ByteString;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+
+/**
+ * Compresses and decompresses the payloads of Google Cloud Pub/Sub messages.
+ *
+ * @see PayloadCompressor
+ */
+public interface PayloadCodec {
+
+	/**
+	 * Return the name of the encoding, which is stored in the
+	 * {@link PayloadCompressor#CONTENT_ENCODING_ATTRIBUTE} attribute of compressed messages.
+	 * @return the name of the encoding
+	 */
+	String getEncoding();
+
+	/**
+	 * Compress a payload.
+	 * @param data the payload
+	 * @return the compressed payload
+	 */
+	ByteString encode(ByteString data);
+
+	/**
+	 * Decompress a payload.
+	 * @param data the compressed payload
+	 * @return the payload
+	 * @throws PubSubException if the payload isn't valid for this encoding
+	 */
+	ByteString decode(ByteString data);
+
+	/**
+	 * Decompress a payload, unless it decompresses to more than the given size. By default, the
+	 * size is checked once the payload is decompressed; codecs should stop decompressing as soon
+	 * as the size is exceeded instead.
+	 * @param data the compressed payload
+	 * @param maxDecodedSize the maximum size in bytes of the payload
+	 * @return the payload
+	 * @throws PubSubException if the payload isn't valid for this encoding, or is larger than
+	 * the maximum size
+	 */
+	default ByteString decode(ByteString data, int maxDecodedSize) {
+		ByteString decoded = decode(data);
+		if (decoded.size() > maxDecodedSize) {
+			throw new PubSubException("The " + getEncoding() + " payload decompresses to more than "
+					+ maxDecodedSize + " bytes.");
+		}
+		return decoded;
+	}
+
+	/**
+	 * Release the resources held by this codec, when its owner is destroyed. Does nothing by
+	 * default.
+	 */
+	default void destroy() {
+	}
+}
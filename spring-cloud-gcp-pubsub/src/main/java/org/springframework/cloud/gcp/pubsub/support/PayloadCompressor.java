@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.util.Assert;
+
+/**
+ * Compresses the payloads of published messages with a {@link PayloadCodec}, and decompresses
+ * the payloads of received messages.
+ *
+ * <p>Compressed messages carry the name of their encoding in the
+ * {@link #CONTENT_ENCODING_ATTRIBUTE} attribute, so that compressed and uncompressed messages
+ * can be published to the same topic. Messages without it are received as is. Payloads smaller
+ * than the minimum size, or that compression wouldn't make smaller, are published uncompressed.
+ *
+ * <p>Received messages can be decompressed with the {@code gzip} and {@code deflate} encodings,
+ * the encoding of the codec compressing published messages, and the encodings of the codecs
+ * added with {@link #addCodec(PayloadCodec)}. Payloads that decompress to more than the
+ * {@link #setMaxDecodedSize(int) maximum decoded size} are rejected.
+ *
+ * <p>Destroying the compressor destroys its codecs, which releases the resources they pool.
+ */
+public class PayloadCompressor implements DisposableBean {
+
+	/**
+	 * The name of the attribute holding the encoding of a compressed payload.
+	 */
+	public static final String CONTENT_ENCODING_ATTRIBUTE = "content-encoding";
+
+	private static final int DEFAULT_MIN_SIZE = 1024;
+
+	/**
+	 * Ten times the maximum size of a Google Cloud Pub/Sub message.
+	 */
+	private static final int DEFAULT_MAX_DECODED_SIZE = 10 * 10 * 1024 * 1024;
+
+	private final PayloadCodec codec;
+
+	private final Map<String, PayloadCodec> codecs = new ConcurrentHashMap<>();
+
+	private int minSize = DEFAULT_MIN_SIZE;
+
+	private int maxDecodedSize = DEFAULT_MAX_DECODED_SIZE;
+
+	/**
+	 * Create a compressor compressing payloads with gzip.
+	 */
+	public PayloadCompressor() {
+		this(new GzipPayloadCodec());
+	}
+
+	/**
+	 * Create a compressor compressing payloads with the given codec.
+	 * @param codec the codec compressing the payloads of published messages
+	 */
+	public PayloadCompressor(PayloadCodec codec) {
+		Assert.notNull(codec, "The codec can't be null.");
+		this.codec = codec;
+		addCodec(new GzipPayloadCodec());
+		addCodec(new DeflatePayloadCodec());
+		addCodec(codec);
+	}
+
+	/**
+	 * Set the size in bytes below which payloads are published uncompressed. Defaults to 1024.
+	 * @param minSize the minimum size of compressed payloads
+	 */
+	public void setMinSize(int minSize) {
+		Assert.isTrue(minSize >= 0, "The minimum size can't be negative.");
+		this.minSize = minSize;
+	}
+
+	/**
+	 * Set the size in bytes above which decompressed payloads are rejected, to protect against
+	 * payloads crafted to decompress to an excessive size. Defaults to 100 MiB, i.e., ten times
+	 * the maximum size of a Google Cloud Pub/Sub message.
+	 * @param maxDecodedSize the maximum size of decompressed payloads
+	 */
+	public void setMaxDecodedSize(int maxDecodedSize) {
+		Assert.isTrue(maxDecodedSize > 0, "The maximum decoded size must be positive.");
+		this.maxDecodedSize = maxDecodedSize;
+	}
+
+	/**
+	 * Add a codec used to decompress the payloads of received messages, replacing the codec
+	 * with the same encoding if any.
+	 * @param codec the codec
+	 */
+	public void addCodec(PayloadCodec codec) {
+		Assert.notNull(codec, "The codec can't be null.");
+		this.codecs.put(codec.getEncoding(), codec);
+	}
+
+	/**
+	 * Destroy the codec compressing published messages and the codecs decompressing received
+	 * messages.
+	 */
+	@Override
+	public void destroy() {
+		this.codec.destroy();
+		this.codecs.values().forEach(PayloadCodec::destroy);
+	}
+
+	/**
+	 * Compress the payload of a message to publish, unless it is too small, already
+	 * compressed, or wouldn't get smaller.
+	 * @param message the message
+	 * @return the message with a compressed payload, or the message itself
+	 */
+	public PubsubMessage compress(PubsubMessage message) {
+		ByteString data = message.getData();
+		if (data.size() < this.minSize || message.containsAttributes(CONTENT_ENCODING_ATTRIBUTE)) {
+			return message;
+		}
+
+		ByteString encoded = this.codec.encode(data);
+		if (encoded.size() >= data.size()) {
+			return message;
+		}
+
+		return message.toBuilder()
+				.setData(encoded)
+				.putAttributes(CONTENT_ENCODING_ATTRIBUTE, this.codec.getEncoding())
+				.build();
+	}
+
+	/**
+	 * Decompress the payload of a received message, if it has an encoding.
+	 * @param message the message
+	 * @return the message with a decompressed payload and without the encoding attribute, or
+	 * the message itself
+	 * @throws PubSubException if the encoding is unknown, or the payload is invalid or
+	 * decompresses to more than the maximum size
+	 */
+	public PubsubMessage decompress(PubsubMessage message) {
+		String encoding = message.getAttributesOrDefault(CONTENT_ENCODING_ATTRIBUTE, null);
+		if (encoding == null) {
+			return message;
+		}
+
+		PayloadCodec decoder = this.codecs.get(encoding);
+		if (decoder == null) {
+			throw new PubSubException("Unknown content encoding " + encoding + " of message "
+					+ message.getMessageId() + ".");
+		}
+
+		return message.toBuilder()
+				.setData(decoder.decode(message.getData(), this.maxDecodedSize))
+				.removeAttributes(CONTENT_ENCODING_ATTRIBUTE)
+				.build();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.core.ExecutorProvider;
+import com.google.api.gax.retrying.RetrySettings;
+
+/**
+ * Settings of the {@link com.google.cloud.pubsub.v1.Publisher}s of specific topics, which
+ * override the ones set on {@link DefaultPublisherFactory} for every topic.
+ *
+ * <p>Settings left {@code null} fall back to the ones of the factory.
+ */
+public class PublisherTopicSettings {
+
+	private ExecutorProvider executorProvider;
+
+	private RetrySettings retrySettings;
+
+	private BatchingSettings batchingSettings;
+
+	public ExecutorProvider getExecutorProvider() {
+		return this.executorProvider;
+	}
+
+	/**
+	 * Set the provider for the executor that will be used by the publisher.
+	 */
+	public void setExecutorProvider(ExecutorProvider executorProvider) {
+		this.executorProvider = executorProvider;
+	}
+
+	public RetrySettings getRetrySettings() {
+		return this.retrySettings;
+	}
+
+	/**
+	 * Set the API call retry configuration.
+	 */
+	public void setRetrySettings(RetrySettings retrySettings) {
+		this.retrySettings = retrySettings;
+	}
+
+	public BatchingSettings getBatchingSettings() {
+		return this.batchingSettings;
+	}
+
+	/**
+	 * Set the API call batching configuration.
+	 */
+	public void setBatchingSettings(BatchingSettings batchingSettings) {
+		this.batchingSettings = batchingSettings;
+	}
+}
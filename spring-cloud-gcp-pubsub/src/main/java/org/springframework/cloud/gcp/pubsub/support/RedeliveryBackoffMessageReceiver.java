@@ -0,0 +1,216 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link MessageReceiver} that delays the redelivery of failed messages with exponential
+ * backoff, and forwards messages that keep failing to a dead-letter topic.
+ *
+ * <p>When the delegate receiver nacks a message, or throws, the message is held for the delay
+ * given by the {@link RedeliveryPolicy} before being nacked, while the subscriber keeps
+ * extending its acknowledgement deadline. The number of times each message failed is
+ * remembered locally by message ID. Once a message has failed the maximum number of attempts,
+ * it is published to the dead-letter topic and acked; if publishing fails, it is redelivered
+ * with the maximum delay.
+ */
+public class RedeliveryBackoffMessageReceiver implements MessageReceiver {
+
+	private static final Log LOGGER = LogFactory.getLog(RedeliveryBackoffMessageReceiver.class);
+
+	private final MessageReceiver delegate;
+
+	private final RedeliveryPolicy policy;
+
+	private final PubSubOperations pubSubOperations;
+
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Number of failed attempts, by message ID, in least recently failed order.
+	 */
+	private final Map<String, Integer> failedAttempts;
+
+	private final AtomicLong delayedNackCount = new AtomicLong();
+
+	private final AtomicLong deadLetterCount = new AtomicLong();
+
+	/**
+	 * Create a receiver.
+	 * @param delegate the receiver that processes the messages
+	 * @param policy the delays and the dead-letter topic
+	 * @param pubSubOperations publishes to the dead-letter topic; can be {@code null} if the
+	 * policy doesn't have one
+	 */
+	public RedeliveryBackoffMessageReceiver(MessageReceiver delegate, RedeliveryPolicy policy,
+			PubSubOperations pubSubOperations) {
+		Assert.notNull(delegate, "The delegate receiver can't be null.");
+		Assert.notNull(policy, "The redelivery policy can't be null.");
+		Assert.isTrue(policy.getDeadLetterTopic() == null || pubSubOperations != null,
+				"Pub/Sub operations are required to publish to the dead-letter topic.");
+
+		this.delegate = delegate;
+		this.policy = policy;
+		this.pubSubOperations = pubSubOperations;
+		this.failedAttempts = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > policy.getMaxTrackedMessages();
+			}
+		};
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pubsub-redelivery-");
+		threadFactory.setDaemon(true);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+	}
+
+	@Override
+	public void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+		AtomicBoolean done = new AtomicBoolean();
+		AckReplyConsumer backoffConsumer = new AckReplyConsumer() {
+
+			@Override
+			public void ack() {
+				if (done.compareAndSet(false, true)) {
+					forgetFailures(message.getMessageId());
+					consumer.ack();
+				}
+			}
+
+			@Override
+			public void nack() {
+				if (done.compareAndSet(false, true)) {
+					failed(message, consumer);
+				}
+			}
+		};
+
+		try {
+			this.delegate.receiveMessage(message, backoffConsumer);
+		}
+		catch (RuntimeException re) {
+			// Not rethrown, since the subscriber would nack the message right away. The delegate
+			// may have nacked it already.
+			LOGGER.warn("Processing message " + message.getMessageId() + " failed.", re);
+			backoffConsumer.nack();
+		}
+	}
+
+	/**
+	 * Nack the messages waiting for their redelivery delay to elapse, and nack failed messages
+	 * right away from now on.
+	 */
+	public void shutdown() {
+		List<Runnable> delayedNacks = this.scheduler.shutdownNow();
+		delayedNacks.forEach(Runnable::run);
+	}
+
+	/**
+	 * Return the number of failed messages whose redelivery was delayed.
+	 * @return the delayed nack count
+	 */
+	public long getDelayedNackCount() {
+		return this.delayedNackCount.get();
+	}
+
+	/**
+	 * Return the number of messages forwarded to the dead-letter topic.
+	 * @return the dead-letter count
+	 */
+	public long getDeadLetterCount() {
+		return this.deadLetterCount.get();
+	}
+
+	/**
+	 * Return the number of times a message failed, as far as this receiver remembers.
+	 * @param messageId the ID of the message
+	 * @return the number of failed attempts
+	 */
+	public int getFailedAttempts(String messageId) {
+		synchronized (this.failedAttempts) {
+			return this.failedAttempts.getOrDefault(messageId, 0);
+		}
+	}
+
+	private void failed(PubsubMessage message, AckReplyConsumer consumer) {
+		int attempts;
+		synchronized (this.failedAttempts) {
+			attempts = this.failedAttempts.merge(message.getMessageId(), 1, Integer::sum);
+		}
+
+		if (this.policy.getDeadLetterTopic() != null && attempts >= this.policy.getMaxAttempts()) {
+			publishToDeadLetterTopic(message, consumer, attempts);
+		}
+		else {
+			nackLater(consumer, this.policy.getDelayMillis(attempts));
+		}
+	}
+
+	private void publishToDeadLetterTopic(PubsubMessage message, AckReplyConsumer consumer, int attempts) {
+		String deadLetterTopic = this.policy.getDeadLetterTopic();
+
+		this.pubSubOperations.publish(deadLetterTopic, message).addCallback(
+				messageId -> {
+					LOGGER.warn("Message " + message.getMessageId() + " failed " + attempts
+							+ " times and was forwarded to " + deadLetterTopic + ".");
+					this.deadLetterCount.incrementAndGet();
+					forgetFailures(message.getMessageId());
+					consumer.ack();
+				},
+				ex -> {
+					LOGGER.warn("Failed to forward message " + message.getMessageId() + " to "
+							+ deadLetterTopic + ".", ex);
+					nackLater(consumer, this.policy.getMaxDelayMillis());
+				});
+	}
+
+	private void nackLater(AckReplyConsumer consumer, long delayMillis) {
+		try {
+			this.scheduler.schedule(consumer::nack, delayMillis, TimeUnit.MILLISECONDS);
+			this.delayedNackCount.incrementAndGet();
+		}
+		catch (RejectedExecutionException ree) {
+			// Shut down.
+			consumer.nack();
+		}
+	}
+
+	private void forgetFailures(String messageId) {
+		synchronized (this.failedAttempts) {
+			this.failedAttempts.remove(messageId);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import org.springframework.util.Assert;
+
+/**
+ * How long to wait before letting Google Cloud Pub/Sub redeliver a failed message, and when to
+ * give up and forward it to a dead-letter topic instead.
+ *
+ * <p>The delay grows exponentially with the number of times the message failed, starting at
+ * the initial delay and up to the maximum delay.
+ *
+ * @see RedeliveryBackoffMessageReceiver
+ */
+public class RedeliveryPolicy {
+
+	private long initialDelayMillis = 1000;
+
+	private double multiplier = 2.0;
+
+	private long maxDelayMillis = 60_000;
+
+	private int maxAttempts = 5;
+
+	private String deadLetterTopic;
+
+	private int maxTrackedMessages = 10_000;
+
+	public long getInitialDelayMillis() {
+		return this.initialDelayMillis;
+	}
+
+	/**
+	 * Set the delay before the first redelivery of a failed message. Defaults to 1 second.
+	 */
+	public void setInitialDelayMillis(long initialDelayMillis) {
+		Assert.isTrue(initialDelayMillis >= 0, "The initial delay can't be negative.");
+		this.initialDelayMillis = initialDelayMillis;
+	}
+
+	public double getMultiplier() {
+		return this.multiplier;
+	}
+
+	/**
+	 * Set the factor the delay is multiplied by after every failure. Defaults to 2.
+	 */
+	public void setMultiplier(double multiplier) {
+		Assert.isTrue(multiplier >= 1, "The multiplier must be at least 1.");
+		this.multiplier = multiplier;
+	}
+
+	public long getMaxDelayMillis() {
+		return this.maxDelayMillis;
+	}
+
+	/**
+	 * Set the maximum delay before redelivering a failed message. It should stay below the
+	 * maximum acknowledgement extension period of the subscriber. Defaults to 1 minute.
+	 */
+	public void setMaxDelayMillis(long maxDelayMillis) {
+		Assert.isTrue(maxDelayMillis >= 0, "The maximum delay can't be negative.");
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	/**
+	 * Set the number of times a message is processed before being forwarded to the dead-letter
+	 * topic, if any. Defaults to 5.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "The maximum number of attempts must be positive.");
+		this.maxAttempts = maxAttempts;
+	}
+
+	public String getDeadLetterTopic() {
+		return this.deadLetterTopic;
+	}
+
+	/**
+	 * Set the topic that messages are published to, and then acked, once they failed the
+	 * maximum number of attempts. If not set, they keep being redelivered with the maximum
+	 * delay.
+	 */
+	public void setDeadLetterTopic(String deadLetterTopic) {
+		this.deadLetterTopic = deadLetterTopic;
+	}
+
+	public int getMaxTrackedMessages() {
+		return this.maxTrackedMessages;
+	}
+
+	/**
+	 * Set the maximum number of failed messages whose number of attempts is remembered. When
+	 * exceeded, the attempts of the least recently failed messages are forgotten. Defaults to
+	 * 10,000.
+	 */
+	public void setMaxTrackedMessages(int maxTrackedMessages) {
+		Assert.isTrue(maxTrackedMessages > 0, "The maximum number of tracked messages must be positive.");
+		this.maxTrackedMessages = maxTrackedMessages;
+	}
+
+	/**
+	 * Return the delay before redelivering a message that failed a number of times.
+	 * @param failedAttempts the number of times the message failed, at least 1
+	 * @return the delay in milliseconds
+	 */
+	public long getDelayMillis(int failedAttempts) {
+		double delay = this.initialDelayMillis * Math.pow(this.multiplier, Math.max(0, failedAttempts - 1));
+		return (long) Math.min(delay, this.maxDelayMillis);
+	}
+}
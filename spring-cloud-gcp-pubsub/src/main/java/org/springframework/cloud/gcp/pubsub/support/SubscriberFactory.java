@@ -53,6 +53,9 @@ public interface SubscriberFactory {
 
 	/**
 	 * Create a {@link SubscriberStub} that is needed to execute {@link PullRequest}s.
+	 *
+	 * <p>Implementations may cache and share the returned stub, in which case it shouldn't be
+	 * closed by the caller.
 	 * @param retrySettings parameters for retrying pull requests when they fail, including
 	 * jitter logic, timeout, and exponential backoff
 	 * @return the {@link SubscriberStub} used for executing {@link PullRequest}s
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.pubsub.v1.stub.SubscriberStub;
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.springframework.cloud.gcp.pubsub.support.SubscriberFactory;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link AcknowledgementBatcher} unit tests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AcknowledgementBatcherTests {
+
+	@Mock
+	private SubscriberFactory subscriberFactory;
+
+	@Mock
+	private SubscriberStub subscriberStub;
+
+	@Mock
+	private UnaryCallable<AcknowledgeRequest, Empty> acknowledgeCallable;
+
+	private AcknowledgementBatcher batcher;
+
+	@Before
+	public void setUp() {
+		when(this.subscriberFactory.createSubscriberStub(any())).thenReturn(this.subscriberStub);
+		when(this.subscriberStub.acknowledgeCallable()).thenReturn(this.acknowledgeCallable);
+		this.batcher = new AcknowledgementBatcher(this.subscriberFactory);
+		this.batcher.setFlushIntervalMillis(60_000);
+	}
+
+	@Test
+	public void testDestroy_flushesPendingAcks() {
+		this.batcher.acknowledge("subscription", "ack1");
+		verify(this.acknowledgeCallable, never()).call(any());
+
+		this.batcher.destroy();
+
+		verify(this.acknowledgeCallable).call(request("ack1"));
+	}
+
+	@Test
+	public void testAcknowledgeAfterDestroy_flushesSynchronously() {
+		this.batcher.destroy();
+
+		this.batcher.acknowledge("subscription", "ack1");
+
+		verify(this.acknowledgeCallable).call(request("ack1"));
+	}
+
+	private AcknowledgeRequest request(String ackId) {
+		return AcknowledgeRequest.newBuilder()
+				.setSubscription("subscription")
+				.addAckIds(ackId)
+				.build();
+	}
+}
@@ -16,30 +16,61 @@
 
 package org.springframework.cloud.gcp.pubsub.core;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import com.google.api.core.ApiService;
 import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
 import com.google.cloud.pubsub.v1.MessageReceiver;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.cloud.pubsub.v1.stub.SubscriberStub;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
 import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.PullRequest;
+import com.google.pubsub.v1.PullResponse;
+import com.google.pubsub.v1.ReceivedMessage;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import org.springframework.cloud.gcp.pubsub.metrics.PubSubMetrics;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheck;
+import org.springframework.cloud.gcp.pubsub.support.ClaimCheckStore;
+import org.springframework.cloud.gcp.pubsub.support.InMemoryClaimCheckStore;
+import org.springframework.cloud.gcp.pubsub.support.PayloadCompressor;
 import org.springframework.cloud.gcp.pubsub.support.PublisherFactory;
 import org.springframework.cloud.gcp.pubsub.support.SubscriberFactory;
 import org.springframework.util.concurrent.ListenableFuture;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -62,6 +93,18 @@ public class PubSubTemplateTests {
 	@Mock
 	private Subscriber mockSubscriber;
 
+	@Mock
+	private SubscriberStub mockSubscriberStub;
+
+	@Mock
+	private UnaryCallable<PullRequest, PullResponse> mockPullCallable;
+
+	@Mock
+	private UnaryCallable<AcknowledgeRequest, Empty> mockAcknowledgeCallable;
+
+	@Mock
+	private UnaryCallable<ModifyAckDeadlineRequest, Empty> mockModifyAckDeadlineCallable;
+
 	private PubSubTemplate pubSubTemplate;
 
 	private PubsubMessage pubsubMessage;
@@ -96,6 +139,108 @@ public class PubSubTemplateTests {
 		assertEquals("result", future.get());
 	}
 
+	@Test
+	public void testPublish_retriesWhenPublisherWasShutDown() throws Exception {
+		Publisher shutDownPublisher = mock(Publisher.class);
+		when(shutDownPublisher.publish(isA(PubsubMessage.class)))
+				.thenThrow(new IllegalStateException("Cannot publish on a shut-down publisher."));
+		when(this.mockPublisherFactory.createPublisher("testTopic"))
+				.thenReturn(shutDownPublisher, this.mockPublisher);
+		this.settableApiFuture.set("result");
+
+		ListenableFuture<String> future = this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		assertEquals("result", future.get());
+		verify(this.mockPublisher).publish(this.pubsubMessage);
+	}
+
+	@Test
+	public void testPublish_shutDownPublisherNotReplaced() {
+		when(this.mockPublisher.publish(isA(PubsubMessage.class)))
+				.thenThrow(new IllegalStateException("Cannot publish on a shut-down publisher."));
+
+		try {
+			this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+			fail("Expected the publish to fail.");
+		}
+		catch (IllegalStateException ise) {
+			verify(this.mockPublisherFactory, times(2)).createPublisher("testTopic");
+		}
+	}
+
+	@Test
+	public void testPublish_recordsMetrics() {
+		PubSubMetrics metrics = mock(PubSubMetrics.class);
+		this.pubSubTemplate.setMetrics(metrics);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+		verify(metrics, never()).publishCompleted(eq("testTopic"), anyLong(), anyBoolean());
+
+		this.settableApiFuture.set("result");
+		verify(metrics).publishCompleted(eq("testTopic"), anyLong(), eq(true));
+	}
+
+	@Test
+	public void testPublish_compressesPayload() {
+		PayloadCompressor compressor = new PayloadCompressor();
+		this.pubSubTemplate.setPayloadCompressor(compressor);
+		PubsubMessage message = PubsubMessage.newBuilder()
+				.setData(ByteString.copyFromUtf8(new String(new char[2048]).replace("\0", "a")))
+				.build();
+
+		this.pubSubTemplate.publish("testTopic", message);
+
+		verify(this.mockPublisher).publish(argThat(published -> "gzip".equals(
+				published.getAttributesOrDefault(PayloadCompressor.CONTENT_ENCODING_ATTRIBUTE, null))
+				&& compressor.decompress(published).equals(message)));
+	}
+
+	@Test
+	public void testPublish_offloadsLargePayload() {
+		InMemoryClaimCheckStore store = new InMemoryClaimCheckStore();
+		ClaimCheck claimCheck = new ClaimCheck(store);
+		claimCheck.setThreshold(4);
+		this.pubSubTemplate.setClaimCheck(claimCheck);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		assertEquals(1, store.getPayloadCount());
+		verify(this.mockPublisher).publish(argThat(published -> published.getData().isEmpty()
+				&& claimCheck.checkOut(published).equals(this.pubsubMessage)));
+	}
+
+	@Test
+	public void testPublish_failedPublishDeletesOffloadedPayload() {
+		InMemoryClaimCheckStore store = new InMemoryClaimCheckStore();
+		ClaimCheck claimCheck = new ClaimCheck(store);
+		claimCheck.setThreshold(4);
+		this.pubSubTemplate.setClaimCheck(claimCheck);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+		assertEquals(1, store.getPayloadCount());
+
+		this.settableApiFuture.setException(new Exception("publish failed."));
+		assertEquals(0, store.getPayloadCount());
+	}
+
+	@Test
+	public void testPublish_flowControlCheckedBeforeOffloadingPayload() {
+		InMemoryClaimCheckStore store = new InMemoryClaimCheckStore();
+		ClaimCheck claimCheck = new ClaimCheck(store);
+		claimCheck.setThreshold(4);
+		this.pubSubTemplate.setClaimCheck(claimCheck);
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingMessages(1L);
+		flowControl.setLimitExceededBehavior(PublishFlowControl.LimitExceededBehavior.DROP);
+		this.pubSubTemplate.setPublishFlowControl(flowControl);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		assertEquals(1, store.getPayloadCount());
+		verify(this.mockPublisher, times(1)).publish(isA(PubsubMessage.class));
+	}
+
 	@Test
 	public void testPublish_String() {
 		this.pubSubTemplate.publish("testTopic", "testPayload", null);
@@ -138,6 +283,175 @@ public class PubSubTemplateTests {
 		}
 	}
 
+	@Test
+	public void testPublishAll() throws ExecutionException, InterruptedException {
+		SettableApiFuture<String> failedFuture = SettableApiFuture.create();
+		when(this.mockPublisher.publish(isA(PubsubMessage.class)))
+				.thenReturn(this.settableApiFuture, failedFuture);
+
+		ListenableFuture<BulkPublishResult> future = this.pubSubTemplate.publishAll("testTopic",
+				Arrays.asList(this.pubsubMessage, this.pubsubMessage));
+		assertFalse(future.isDone());
+
+		this.settableApiFuture.set("result");
+		assertFalse(future.isDone());
+		failedFuture.setException(new Exception("publish failed."));
+
+		BulkPublishResult result = future.get();
+		assertEquals("testTopic", result.getTopic());
+		assertEquals("result", result.getMessageIds().get(0));
+		assertNull(result.getMessageIds().get(1));
+		assertTrue(result.hasFailures());
+		assertEquals("publish failed.", result.getFailures().get(1).getMessage());
+	}
+
+	@Test
+	public void testPublishAll_multipleTopics() throws ExecutionException, InterruptedException {
+		Publisher otherPublisher = mock(Publisher.class);
+		when(this.mockPublisherFactory.createPublisher("otherTopic")).thenReturn(otherPublisher);
+		when(otherPublisher.publish(isA(PubsubMessage.class))).thenReturn(this.settableApiFuture);
+		this.settableApiFuture.set("result");
+
+		Map<String, List<PubsubMessage>> messages = new HashMap<>();
+		messages.put("testTopic", Collections.singletonList(this.pubsubMessage));
+		messages.put("otherTopic", Collections.singletonList(this.pubsubMessage));
+
+		Map<String, BulkPublishResult> results = this.pubSubTemplate.publishAll(messages).get();
+
+		assertEquals(2, results.size());
+		assertEquals("result", results.get("testTopic").getMessageIds().get(0));
+		assertEquals("result", results.get("otherTopic").getMessageIds().get(0));
+		assertFalse(results.get("otherTopic").hasFailures());
+	}
+
+	@Test
+	public void testPublishAll_publisherCreationFailureRecordedPerMessage() throws Exception {
+		when(this.mockPublisherFactory.createPublisher("otherTopic"))
+				.thenThrow(new PubSubException("Error creating the Publisher."));
+		this.settableApiFuture.set("result");
+
+		Map<String, List<PubsubMessage>> messages = new LinkedHashMap<>();
+		messages.put("testTopic", Collections.singletonList(this.pubsubMessage));
+		messages.put("otherTopic", Arrays.asList(this.pubsubMessage, this.pubsubMessage));
+
+		Map<String, BulkPublishResult> results = this.pubSubTemplate.publishAll(messages).get();
+
+		assertEquals("result", results.get("testTopic").getMessageIds().get(0));
+		assertFalse(results.get("testTopic").hasFailures());
+		BulkPublishResult otherResult = results.get("otherTopic");
+		assertEquals(2, otherResult.getFailures().size());
+		assertTrue(otherResult.getFailures().get(0) instanceof PubSubException);
+		assertTrue(otherResult.getFailures().get(1) instanceof PubSubException);
+	}
+
+	@Test
+	public void testPublishAll_empty() throws ExecutionException, InterruptedException {
+		BulkPublishResult result =
+				this.pubSubTemplate.publishAll("testTopic", Collections.emptyList()).get();
+
+		assertTrue(result.getMessageIds().isEmpty());
+		assertFalse(result.hasFailures());
+	}
+
+	@Test
+	public void testPublish_flowControlTracksOutstandingMessages() {
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		assertEquals(2, this.pubSubTemplate.getOutstandingMessageCount());
+		assertEquals(2, this.pubSubTemplate.getOutstandingMessageCount("testTopic"));
+		assertEquals(2L * this.pubsubMessage.getSerializedSize(),
+				this.pubSubTemplate.getOutstandingByteCount("testTopic"));
+		assertEquals(0, this.pubSubTemplate.getOutstandingMessageCount("otherTopic"));
+
+		this.settableApiFuture.set("result");
+
+		assertEquals(0, this.pubSubTemplate.getOutstandingMessageCount());
+		assertEquals(0, this.pubSubTemplate.getOutstandingByteCount());
+	}
+
+	@Test
+	public void testPublish_flowControlFailFast() {
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingMessages(1L);
+		flowControl.setLimitExceededBehavior(PublishFlowControl.LimitExceededBehavior.FAIL_FAST);
+		this.pubSubTemplate.setPublishFlowControl("test*", flowControl);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		try {
+			this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+			fail("Publishing should fail when exceeding the flow control limits.");
+		}
+		catch (PubSubException pse) {
+			assertEquals(1, this.pubSubTemplate.getOutstandingMessageCount("testTopic"));
+			assertEquals(1, this.pubSubTemplate.getOutstandingMessageCount());
+		}
+
+		this.settableApiFuture.set("result");
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		verify(this.mockPublisher, times(2)).publish(isA(PubsubMessage.class));
+	}
+
+	@Test
+	public void testPublish_flowControlDrop() throws InterruptedException {
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingBytes(1L);
+		flowControl.setLimitExceededBehavior(PublishFlowControl.LimitExceededBehavior.DROP);
+		this.pubSubTemplate.setPublishFlowControl(flowControl);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+		ListenableFuture<String> dropped = this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		try {
+			dropped.get();
+			fail("The dropped message's future should fail.");
+		}
+		catch (ExecutionException ee) {
+			assertTrue(ee.getCause() instanceof PubSubException);
+		}
+		verify(this.mockPublisher, times(1)).publish(isA(PubsubMessage.class));
+		assertEquals(1, this.pubSubTemplate.getOutstandingMessageCount("testTopic"));
+	}
+
+	@Test
+	public void testPublish_flowControlBlock() throws InterruptedException {
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingMessages(1L);
+		this.pubSubTemplate.setPublishFlowControl(flowControl);
+
+		this.pubSubTemplate.publish("testTopic", this.pubsubMessage);
+
+		Thread publishingThread = new Thread(() -> this.pubSubTemplate.publish("testTopic", this.pubsubMessage));
+		publishingThread.start();
+		publishingThread.join(100);
+		assertTrue(publishingThread.isAlive());
+
+		this.settableApiFuture.set("result");
+		publishingThread.join(5000);
+
+		assertFalse(publishingThread.isAlive());
+		verify(this.mockPublisher, times(2)).publish(isA(PubsubMessage.class));
+	}
+
+	@Test
+	public void testPublishAll_flowControlReportsRejectedMessages()
+			throws ExecutionException, InterruptedException {
+		PublishFlowControl flowControl = new PublishFlowControl();
+		flowControl.setMaxOutstandingMessages(1L);
+		flowControl.setLimitExceededBehavior(PublishFlowControl.LimitExceededBehavior.FAIL_FAST);
+		this.pubSubTemplate.setPublishFlowControl("testTopic", flowControl);
+
+		ListenableFuture<BulkPublishResult> future = this.pubSubTemplate.publishAll("testTopic",
+				Arrays.asList(this.pubsubMessage, this.pubsubMessage));
+		this.settableApiFuture.set("result");
+
+		BulkPublishResult result = future.get();
+		assertEquals("result", result.getMessageIds().get(0));
+		assertTrue(result.getFailures().get(1) instanceof PubSubException);
+	}
+
 	@Test
 	public void testSubscribe() {
 		Subscriber subscriber = this.pubSubTemplate.subscribe("testSubscription",
@@ -145,4 +459,189 @@ public class PubSubTemplateTests {
 		assertEquals(this.mockSubscriber, subscriber);
 		verify(this.mockSubscriber, times(1)).startAsync();
 	}
+
+	@Test
+	public void testDestroy_drainsSubscribers() {
+		this.pubSubTemplate.subscribe("testSubscription", (message, consumer) -> { });
+		assertEquals(1, this.pubSubTemplate.getSubscriberRegistry().getSubscriberCount());
+
+		this.pubSubTemplate.destroy();
+
+		verify(this.mockSubscriber).stopAsync();
+		assertEquals(SubscriberRegistry.DrainPhase.DRAINED,
+				this.pubSubTemplate.getSubscriberRegistry().getDrainPhase());
+	}
+
+	@Test
+	public void testPull_acknowledgesImmediately() {
+		PullRequest pullRequest = setUpPull();
+		when(this.mockSubscriberStub.acknowledgeCallable()).thenReturn(this.mockAcknowledgeCallable);
+
+		List<PubsubMessage> messages = this.pubSubTemplate.pull("testSubscription", 2, true, null);
+
+		assertEquals(2, messages.size());
+		verify(this.mockAcknowledgeCallable).call(AcknowledgeRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.addAckIds("ack1")
+				.addAckIds("ack2")
+				.build());
+	}
+
+	@Test
+	public void testPullAcknowledgeable_batchesAcks() {
+		PullRequest pullRequest = setUpPull();
+		when(this.mockSubscriberStub.acknowledgeCallable()).thenReturn(this.mockAcknowledgeCallable);
+		this.pubSubTemplate.setAckBatchSize(2);
+
+		List<AcknowledgeablePubsubMessage> messages =
+				this.pubSubTemplate.pullAcknowledgeable("testSubscription", 2, true, null);
+
+		assertEquals(2, messages.size());
+		assertEquals("ack1", messages.get(0).getAckId());
+		assertEquals(pullRequest.getSubscription(), messages.get(0).getSubscriptionName());
+		assertEquals(this.pubsubMessage, messages.get(0).getPubsubMessage());
+
+		messages.get(0).ack();
+		verify(this.mockAcknowledgeCallable, never()).call(any());
+
+		messages.get(1).ack();
+		verify(this.mockAcknowledgeCallable, times(1)).call(AcknowledgeRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.addAckIds("ack1")
+				.addAckIds("ack2")
+				.build());
+
+		this.pubSubTemplate.destroy();
+	}
+
+	@Test
+	public void testPullAcknowledgeable_nackOnFlush() {
+		PullRequest pullRequest = setUpPull();
+		when(this.mockSubscriberStub.modifyAckDeadlineCallable())
+				.thenReturn(this.mockModifyAckDeadlineCallable);
+
+		List<AcknowledgeablePubsubMessage> messages =
+				this.pubSubTemplate.pullAcknowledgeable("testSubscription", 2, true, null);
+		messages.forEach(AcknowledgeablePubsubMessage::nack);
+		this.pubSubTemplate.flushAcknowledgements();
+
+		verify(this.mockModifyAckDeadlineCallable, times(1)).call(ModifyAckDeadlineRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.setAckDeadlineSeconds(0)
+				.addAckIds("ack1")
+				.addAckIds("ack2")
+				.build());
+
+		this.pubSubTemplate.destroy();
+	}
+
+	@Test
+	public void testSubscribe_unresolvablePayloadNacked() throws IOException {
+		this.pubSubTemplate.setClaimCheck(new ClaimCheck(failingClaimCheckStore()));
+		MessageReceiver handler = mock(MessageReceiver.class);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		this.pubSubTemplate.subscribe("testSubscription", handler);
+		ArgumentCaptor<MessageReceiver> receiverCaptor = ArgumentCaptor.forClass(MessageReceiver.class);
+		verify(this.mockSubscriberFactory).createSubscriber(eq("testSubscription"), receiverCaptor.capture());
+		receiverCaptor.getValue().receiveMessage(offloadedMessage(), consumer);
+
+		verify(consumer).nack();
+		verify(handler, never()).receiveMessage(any(), any());
+	}
+
+	@Test
+	public void testPull_unresolvablePayloadNackedBeforeAck() throws IOException {
+		PullRequest pullRequest = setUpUnresolvablePull();
+		when(this.mockSubscriberStub.acknowledgeCallable()).thenReturn(this.mockAcknowledgeCallable);
+
+		List<PubsubMessage> messages = this.pubSubTemplate.pull("testSubscription", 2, true, null);
+		this.pubSubTemplate.flushAcknowledgements();
+
+		assertEquals(Collections.singletonList(this.pubsubMessage), messages);
+		verify(this.mockAcknowledgeCallable).call(AcknowledgeRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.addAckIds("ack1")
+				.build());
+		verify(this.mockModifyAckDeadlineCallable).call(ModifyAckDeadlineRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.setAckDeadlineSeconds(0)
+				.addAckIds("ack2")
+				.build());
+
+		this.pubSubTemplate.destroy();
+	}
+
+	@Test
+	public void testPullAcknowledgeable_unresolvablePayloadNacked() throws IOException {
+		PullRequest pullRequest = setUpUnresolvablePull();
+
+		List<AcknowledgeablePubsubMessage> messages =
+				this.pubSubTemplate.pullAcknowledgeable("testSubscription", 2, true, null);
+		this.pubSubTemplate.flushAcknowledgements();
+
+		assertEquals(1, messages.size());
+		assertEquals("ack1", messages.get(0).getAckId());
+		verify(this.mockModifyAckDeadlineCallable).call(ModifyAckDeadlineRequest.newBuilder()
+				.setSubscription(pullRequest.getSubscription())
+				.setAckDeadlineSeconds(0)
+				.addAckIds("ack2")
+				.build());
+
+		this.pubSubTemplate.destroy();
+	}
+
+	/**
+	 * Pull a message as is, followed by a message whose offloaded payload can't be read back.
+	 */
+	private PullRequest setUpUnresolvablePull() throws IOException {
+		PullRequest pullRequest = setUpPull();
+		this.pubSubTemplate.setClaimCheck(new ClaimCheck(failingClaimCheckStore()));
+		when(this.mockSubscriberStub.modifyAckDeadlineCallable())
+				.thenReturn(this.mockModifyAckDeadlineCallable);
+		when(this.mockPullCallable.call(pullRequest)).thenReturn(PullResponse.newBuilder()
+				.addReceivedMessages(ReceivedMessage.newBuilder()
+						.setAckId("ack1")
+						.setMessage(this.pubsubMessage))
+				.addReceivedMessages(ReceivedMessage.newBuilder()
+						.setAckId("ack2")
+						.setMessage(offloadedMessage()))
+				.build());
+		return pullRequest;
+	}
+
+	private static ClaimCheckStore failingClaimCheckStore() throws IOException {
+		ClaimCheckStore store = mock(ClaimCheckStore.class);
+		when(store.retrieve("reference")).thenThrow(new IOException("The store is unavailable."));
+		return store;
+	}
+
+	private static PubsubMessage offloadedMessage() {
+		return PubsubMessage.newBuilder()
+				.setMessageId("offloaded")
+				.putAttributes(ClaimCheck.REFERENCE_ATTRIBUTE, "reference")
+				.build();
+	}
+
+	private PullRequest setUpPull() {
+		PullRequest pullRequest = PullRequest.newBuilder()
+				.setSubscription("projects/testProject/subscriptions/testSubscription")
+				.setMaxMessages(2)
+				.setReturnImmediately(true)
+				.build();
+		when(this.mockSubscriberFactory.createPullRequest("testSubscription", 2, true))
+				.thenReturn(pullRequest);
+		when(this.mockSubscriberFactory.createSubscriberStub(null)).thenReturn(this.mockSubscriberStub);
+		when(this.mockSubscriberStub.pullCallable()).thenReturn(this.mockPullCallable);
+		when(this.mockPullCallable.call(pullRequest)).thenReturn(PullResponse.newBuilder()
+				.addReceivedMessages(ReceivedMessage.newBuilder()
+						.setAckId("ack1")
+						.setMessage(this.pubsubMessage))
+				.addReceivedMessages(ReceivedMessage.newBuilder()
+						.setAckId("ack2")
+						.setMessage(this.pubsubMessage))
+				.build());
+
+		return pullRequest;
+	}
 }
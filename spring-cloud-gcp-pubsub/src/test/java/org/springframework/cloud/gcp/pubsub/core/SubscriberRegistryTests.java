@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.api.core.ApiService;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link SubscriberRegistry} unit tests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SubscriberRegistryTests {
+
+	@Mock
+	private Subscriber mockSubscriber;
+
+	@Mock
+	private AckReplyConsumer mockConsumer;
+
+	private final SubscriberRegistry registry = new SubscriberRegistry();
+
+	@Test
+	public void testTrackInFlightMessages() {
+		AckReplyConsumer[] received = new AckReplyConsumer[1];
+		MessageReceiver receiver = this.registry.trackInFlightMessages(
+				(message, consumer) -> received[0] = consumer);
+
+		receiver.receiveMessage(PubsubMessage.getDefaultInstance(), this.mockConsumer);
+		assertEquals(1, this.registry.getInFlightMessageCount());
+
+		received[0].ack();
+		received[0].ack();
+		assertEquals(0, this.registry.getInFlightMessageCount());
+		verify(this.mockConsumer, times(2)).ack();
+	}
+
+	@Test
+	public void testTrackInFlightMessages_receiverThrows() {
+		MessageReceiver receiver = this.registry.trackInFlightMessages((message, consumer) -> {
+			throw new IllegalStateException("boom");
+		});
+
+		try {
+			receiver.receiveMessage(PubsubMessage.getDefaultInstance(), this.mockConsumer);
+			fail("The exception should be rethrown.");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals(0, this.registry.getInFlightMessageCount());
+		}
+	}
+
+	@Test
+	public void testRegister_unregisteredOnTermination() {
+		this.registry.register("sub", this.mockSubscriber);
+		assertEquals(1, this.registry.getSubscriberCount());
+		assertTrue(this.registry.getSubscriptions().contains("sub"));
+
+		ArgumentCaptor<ApiService.Listener> listener = ArgumentCaptor.forClass(ApiService.Listener.class);
+		verify(this.mockSubscriber).addListener(listener.capture(), any());
+		listener.getValue().terminated(ApiService.State.STOPPING);
+
+		assertEquals(0, this.registry.getSubscriberCount());
+	}
+
+	@Test
+	public void testDrain() throws TimeoutException {
+		this.registry.register("sub", this.mockSubscriber);
+		AtomicBoolean flushed = new AtomicBoolean();
+
+		assertTrue(this.registry.drain(1000, () -> flushed.set(true)));
+
+		verify(this.mockSubscriber).stopAsync();
+		verify(this.mockSubscriber).awaitTerminated(anyLong(), eq(TimeUnit.NANOSECONDS));
+		assertTrue(flushed.get());
+		assertEquals(SubscriberRegistry.DrainPhase.DRAINED, this.registry.getDrainPhase());
+		assertFalse(this.registry.isDrainTimedOut());
+	}
+
+	@Test
+	public void testDrain_timesOutWithInFlightMessages() {
+		MessageReceiver receiver = this.registry.trackInFlightMessages((message, consumer) -> { });
+		receiver.receiveMessage(PubsubMessage.getDefaultInstance(), this.mockConsumer);
+		AtomicBoolean flushed = new AtomicBoolean();
+
+		assertFalse(this.registry.drain(50, () -> flushed.set(true)));
+
+		assertTrue(flushed.get());
+		assertTrue(this.registry.isDrainTimedOut());
+		assertEquals(1, this.registry.getInFlightMessageCount());
+	}
+
+	@Test
+	public void testDrain_subscriberDoesNotStopInTime() throws TimeoutException {
+		doThrow(new TimeoutException()).when(this.mockSubscriber).awaitTerminated(anyLong(), any());
+		this.registry.register("sub", this.mockSubscriber);
+
+		assertFalse(this.registry.drain(50, () -> { }));
+		assertTrue(this.registry.isDrainTimedOut());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRegister_afterDrain() {
+		this.registry.drain(0, () -> { });
+
+		this.registry.register("sub", mock(Subscriber.class));
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.google.cloud.pubsub.v1.Subscriber;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.gcp.pubsub.PubSubAdmin;
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.cloud.gcp.pubsub.support.DefaultPublisherFactory;
+import org.springframework.cloud.gcp.pubsub.support.DefaultSubscriberFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link PubSubTemplate} and {@link PubSubAdmin} against an
+ * {@link InProcessPubSubBroker}.
+ */
+public class InProcessPubSubBrokerTests {
+
+	private static final String PROJECT = "test-project";
+
+	private InProcessPubSubBroker broker;
+
+	private DefaultPublisherFactory publisherFactory;
+
+	private DefaultSubscriberFactory subscriberFactory;
+
+	private PubSubTemplate pubSubTemplate;
+
+	@Before
+	public void setUp() {
+		this.broker = new InProcessPubSubBroker();
+		this.broker.createTopic(PROJECT, "topic");
+		this.broker.createSubscription(PROJECT, "subscription", "topic");
+
+		this.publisherFactory = this.broker.createPublisherFactory(PROJECT);
+		this.subscriberFactory = this.broker.createSubscriberFactory(PROJECT);
+		this.pubSubTemplate = new PubSubTemplate(this.publisherFactory, this.subscriberFactory);
+	}
+
+	@After
+	public void tearDown() {
+		this.pubSubTemplate.destroy();
+		this.publisherFactory.destroy();
+		this.subscriberFactory.destroy();
+		this.broker.destroy();
+	}
+
+	@Test
+	public void testPublishAndSubscribe() throws Exception {
+		int messageCount = 1000;
+		Set<String> payloads = ConcurrentHashMap.newKeySet();
+		CountDownLatch received = new CountDownLatch(messageCount);
+
+		Subscriber subscriber = this.pubSubTemplate.subscribe("subscription", (message, consumer) -> {
+			payloads.add(message.getData().toStringUtf8());
+			consumer.ack();
+			received.countDown();
+		});
+
+		for (int i = 0; i < messageCount; i++) {
+			this.pubSubTemplate.publish("topic", "message " + i, null);
+		}
+
+		assertTrue(received.await(10, TimeUnit.SECONDS));
+		assertEquals(messageCount, payloads.size());
+		awaitCondition(() -> this.broker.getOutstandingMessageCount(PROJECT, "subscription") == 0);
+		subscriber.stopAsync().awaitTerminated();
+	}
+
+	@Test
+	public void testPublish_concurrentPublisherEviction() throws Exception {
+		this.broker.createTopic(PROJECT, "other-topic");
+		this.publisherFactory.setMaxCachedPublishers(1);
+		int messageCount = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<List<ListenableFuture<String>>>> publishers = new ArrayList<>();
+			for (String topic : new String[] { "topic", "other-topic" }) {
+				publishers.add(executor.submit(() -> {
+					List<ListenableFuture<String>> futures = new ArrayList<>();
+					for (int i = 0; i < messageCount; i++) {
+						futures.add(this.pubSubTemplate.publish(topic, "message " + i, null));
+					}
+					return futures;
+				}));
+			}
+
+			for (Future<List<ListenableFuture<String>>> publisher : publishers) {
+				for (ListenableFuture<String> future : publisher.get(10, TimeUnit.SECONDS)) {
+					assertNotNull(future.get(10, TimeUnit.SECONDS));
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		awaitCondition(() -> this.broker.getPendingMessageCount(PROJECT, "subscription") == messageCount);
+	}
+
+	@Test
+	public void testSubscribe_nackRedelivers() throws Exception {
+		CountDownLatch redelivered = new CountDownLatch(1);
+		Set<String> messageIds = ConcurrentHashMap.newKeySet();
+
+		Subscriber subscriber = this.pubSubTemplate.subscribe("subscription", (message, consumer) -> {
+			if (messageIds.add(message.getMessageId())) {
+				consumer.nack();
+			}
+			else {
+				consumer.ack();
+				redelivered.countDown();
+			}
+		});
+
+		this.pubSubTemplate.publish("topic", "message", null).get();
+
+		assertTrue(redelivered.await(10, TimeUnit.SECONDS));
+		subscriber.stopAsync().awaitTerminated();
+	}
+
+	@Test
+	public void testPull() throws Exception {
+		this.pubSubTemplate.publish("topic", "message 1", null).get();
+		this.pubSubTemplate.publish("topic", "message 2", null).get();
+
+		List<AcknowledgeablePubsubMessage> messages =
+				this.pubSubTemplate.pullAcknowledgeable("subscription", 10, true, null);
+		assertEquals(2, messages.size());
+		assertEquals("message 1", messages.get(0).getPubsubMessage().getData().toStringUtf8());
+
+		messages.get(0).ack();
+		messages.get(1).nack();
+		this.pubSubTemplate.flushAcknowledgements();
+
+		awaitCondition(() -> this.broker.getPendingMessageCount(PROJECT, "subscription") == 1
+				&& this.broker.getOutstandingMessageCount(PROJECT, "subscription") == 0);
+		assertEquals("message 2", this.pubSubTemplate.pullNext("subscription").getData().toStringUtf8());
+		assertEquals(0, this.broker.getOutstandingMessageCount(PROJECT, "subscription"));
+	}
+
+	@Test
+	public void testPull_expiredDeadlineRedelivers() throws Exception {
+		this.broker.createSubscription(PROJECT, "short-deadline", "topic", 1);
+		this.pubSubTemplate.publish("topic", "message", null).get();
+
+		String messageId = this.pubSubTemplate.pullAcknowledgeable("short-deadline", 10, true, null)
+				.get(0).getPubsubMessage().getMessageId();
+		assertEquals(1, this.broker.getOutstandingMessageCount(PROJECT, "short-deadline"));
+
+		awaitCondition(() -> this.broker.getPendingMessageCount(PROJECT, "short-deadline") == 1);
+		assertEquals(messageId, this.pubSubTemplate.pullAcknowledgeable("short-deadline", 10, true, null)
+				.get(0).getPubsubMessage().getMessageId());
+		assertEquals(2, this.broker.getDeliveryCount(PROJECT, "short-deadline"));
+	}
+
+	@Test
+	public void testAdmin() throws Exception {
+		PubSubAdmin pubSubAdmin = this.broker.createPubSubAdmin(PROJECT);
+
+		pubSubAdmin.createTopic("other-topic");
+		pubSubAdmin.createSubscription("other-subscription", "other-topic");
+
+		assertEquals(2, pubSubAdmin.listTopics().size());
+		assertEquals(2, pubSubAdmin.listSubscriptions().size());
+		assertEquals("projects/test-project/topics/other-topic",
+				pubSubAdmin.getSubscription("other-subscription").getTopic());
+		assertNull(pubSubAdmin.getTopic("missing-topic"));
+
+		pubSubAdmin.deleteSubscription("other-subscription");
+		pubSubAdmin.deleteTopic("other-topic");
+
+		assertEquals(1, pubSubAdmin.listTopics().size());
+		assertEquals(1, pubSubAdmin.listSubscriptions().size());
+	}
+
+	private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out waiting for the condition.", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
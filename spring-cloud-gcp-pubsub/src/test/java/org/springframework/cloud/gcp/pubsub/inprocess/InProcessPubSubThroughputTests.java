@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.inprocess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubTemplate;
+import org.springframework.cloud.gcp.pubsub.support.DefaultPublisherFactory;
+import org.springframework.cloud.gcp.pubsub.support.DefaultSubscriberFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the publish and receive throughput of {@link PubSubTemplate} against an
+ * {@link InProcessPubSubBroker}, which leaves out the network and the service, so that the
+ * overhead of the library and the client library can be compared between changes.
+ *
+ * <p>Only runs if the {@code pubsub.throughput.messages} system property is set to the number
+ * of messages to publish and receive, e.g.,
+ * {@code -Dpubsub.throughput.messages=1000000 -Dpubsub.throughput.payload-size=100}.
+ */
+public class InProcessPubSubThroughputTests {
+
+	private static final String PROJECT = "throughput-project";
+
+	private int messageCount;
+
+	private ByteString payload;
+
+	private InProcessPubSubBroker broker;
+
+	private DefaultPublisherFactory publisherFactory;
+
+	private DefaultSubscriberFactory subscriberFactory;
+
+	private PubSubTemplate pubSubTemplate;
+
+	@Before
+	public void setUp() {
+		String messages = System.getProperty("pubsub.throughput.messages");
+		assumeTrue(messages != null);
+		this.messageCount = Integer.parseInt(messages);
+		this.payload = ByteString.copyFrom(new byte[Integer.getInteger("pubsub.throughput.payload-size", 100)]);
+
+		this.broker = new InProcessPubSubBroker();
+		this.broker.createTopic(PROJECT, "topic");
+		this.broker.createSubscription(PROJECT, "subscription", "topic");
+
+		this.publisherFactory = this.broker.createPublisherFactory(PROJECT);
+		this.subscriberFactory = this.broker.createSubscriberFactory(PROJECT);
+		this.pubSubTemplate = new PubSubTemplate(this.publisherFactory, this.subscriberFactory);
+	}
+
+	@After
+	public void tearDown() {
+		if (this.broker != null) {
+			this.pubSubTemplate.destroy();
+			this.publisherFactory.destroy();
+			this.subscriberFactory.destroy();
+			this.broker.destroy();
+		}
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		long publishStart = System.nanoTime();
+		List<ListenableFuture<String>> futures = new ArrayList<>(this.messageCount);
+		for (int i = 0; i < this.messageCount; i++) {
+			futures.add(this.pubSubTemplate.publish("topic", this.payload, null));
+		}
+		for (ListenableFuture<String> future : futures) {
+			future.get();
+		}
+		report("Published", System.nanoTime() - publishStart);
+
+		CountDownLatch received = new CountDownLatch(this.messageCount);
+		long receiveStart = System.nanoTime();
+		Subscriber subscriber = this.pubSubTemplate.subscribe("subscription", (message, consumer) -> {
+			consumer.ack();
+			received.countDown();
+		});
+		assertTrue(received.await(10, TimeUnit.MINUTES));
+		report("Received", System.nanoTime() - receiveStart);
+
+		subscriber.stopAsync().awaitTerminated();
+	}
+
+	private void report(String operation, long durationNanos) {
+		double seconds = durationNanos / 1e9;
+		System.out.printf("%s %d messages of %d bytes in %.2f s: %.0f messages/s%n", operation,
+				this.messageCount, this.payload.size(), seconds, this.messageCount / seconds);
+	}
+}
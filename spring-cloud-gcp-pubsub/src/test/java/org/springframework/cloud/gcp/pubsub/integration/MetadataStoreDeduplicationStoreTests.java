@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.integration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import org.springframework.integration.metadata.SimpleMetadataStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link MetadataStoreDeduplicationStore} unit tests.
+ */
+public class MetadataStoreDeduplicationStoreTests {
+
+	private final SimpleMetadataStore metadataStore = new SimpleMetadataStore();
+
+	private final AtomicLong now = new AtomicLong(1000);
+
+	private final MetadataStoreDeduplicationStore store =
+			new MetadataStoreDeduplicationStore(this.metadataStore, 1000, this.now::get);
+
+	@Test
+	public void testMarkIfAbsent() {
+		assertTrue(this.store.markIfAbsent("id"));
+		assertFalse(this.store.markIfAbsent("id"));
+		assertEquals("1000", this.metadataStore.get("pubsub-dedup:id"));
+	}
+
+	@Test
+	public void testMarkIfAbsent_expiredKey() {
+		assertTrue(this.store.markIfAbsent("id"));
+
+		this.now.set(2000);
+
+		assertTrue(this.store.markIfAbsent("id"));
+		assertFalse(this.store.markIfAbsent("id"));
+		assertEquals("2000", this.metadataStore.get("pubsub-dedup:id"));
+	}
+
+	@Test
+	public void testMarkCompleted() {
+		assertTrue(this.store.markIfAbsent("id"));
+		assertFalse(this.store.isCompleted("id"));
+
+		this.now.set(1500);
+		this.store.markCompleted("id");
+
+		assertTrue(this.store.isCompleted("id"));
+		assertFalse(this.store.markIfAbsent("id"));
+		assertEquals("1500:completed", this.metadataStore.get("pubsub-dedup:id"));
+	}
+
+	@Test
+	public void testMarkCompleted_expiredKey() {
+		this.store.markIfAbsent("id");
+		this.store.markCompleted("id");
+
+		this.now.set(2000);
+
+		assertFalse(this.store.isCompleted("id"));
+		assertTrue(this.store.markIfAbsent("id"));
+		assertEquals("2000", this.metadataStore.get("pubsub-dedup:id"));
+	}
+
+	@Test
+	public void testRemove() {
+		this.store.setKeyPrefix("prefix-");
+		this.store.markIfAbsent("id");
+
+		this.store.remove("id");
+
+		assertNull(this.metadataStore.get("prefix-id"));
+		assertTrue(this.store.markIfAbsent("id"));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.integration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.messaging.MessageHeaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link PubSubHeaderMapper} unit tests.
+ */
+public class PubSubHeaderMapperTests {
+
+	private final PubSubHeaderMapper mapper = new PubSubHeaderMapper();
+
+	@Test
+	public void testFromHeaders_excludesInternalHeaders() {
+		Map<String, Object> headerValues = new HashMap<>();
+		headerValues.put("key", "value");
+		headerValues.put("count", 3);
+		headerValues.put(MessageHeaders.REPLY_CHANNEL, "replyChannel");
+		headerValues.put(MessageHeaders.ERROR_CHANNEL, "errorChannel");
+		headerValues.put(GcpHeaders.ACKNOWLEDGEMENT, new Object());
+
+		assertEquals(ImmutableMap.of("key", "value", "count", "3"), fromHeaders(headerValues));
+	}
+
+	@Test
+	public void testFromHeaders_patterns() {
+		this.mapper.setOutboundHeaderPatterns("!trace-internal", "trace-*", "tenant");
+
+		Map<String, Object> headerValues = new HashMap<>();
+		headerValues.put("trace-id", "1");
+		headerValues.put("trace-internal", "2");
+		headerValues.put("tenant", "acme");
+		headerValues.put("other", "value");
+
+		assertEquals(ImmutableMap.of("trace-id", "1", "tenant", "acme"), fromHeaders(headerValues));
+	}
+
+	@Test
+	public void testFromHeaders_nothingMapped() {
+		this.mapper.setOutboundHeaderPatterns();
+
+		assertTrue(fromHeaders(ImmutableMap.of("key", "value")).isEmpty());
+	}
+
+	@Test
+	public void testToHeaders_allAttributes() {
+		Map<String, String> attributes = ImmutableMap.of("key1", "value1", "key2", "value2");
+
+		Map<String, Object> headers = this.mapper.toHeaders(attributes);
+
+		assertEquals(attributes, headers);
+		assertSame(attributes.get("key1"), headers.get("key1"));
+	}
+
+	@Test
+	public void testToHeaders_patterns() {
+		this.mapper.setInboundHeaderPatterns("!internal-*", "*");
+
+		Map<String, Object> headers = this.mapper.toHeaders(ImmutableMap.of("key", "value", "internal-id", "1"));
+
+		assertEquals(ImmutableMap.of("key", "value"), headers);
+	}
+
+	private Map<String, String> fromHeaders(Map<String, Object> headerValues) {
+		Map<String, String> attributes = new HashMap<>();
+		this.mapper.fromHeaders(new MessageHeaders(headerValues), attributes);
+		return attributes;
+	}
+}
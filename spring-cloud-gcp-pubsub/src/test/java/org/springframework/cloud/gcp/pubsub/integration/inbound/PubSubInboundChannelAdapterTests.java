@@ -16,12 +16,55 @@
 
 package org.springframework.cloud.gcp.pubsub.integration.inbound;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.integration.AckMode;
+import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.cloud.gcp.pubsub.support.InMemoryDeduplicationStore;
+import org.springframework.cloud.gcp.pubsub.support.RedeliveryPolicy;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * {@link PubSubInboundChannelAdapter} unit tests.
@@ -34,10 +77,290 @@ public class PubSubInboundChannelAdapterTests {
 	@Mock
 	private PubSubOperations pubSubTemplate;
 
+	@Mock
+	private AckReplyConsumer mockConsumer;
+
+	private PubSubInboundChannelAdapter adapter;
+
+	private QueueChannel outputChannel;
+
+	private PubsubMessage pubsubMessage;
+
+	@Before
+	public void setUp() {
+		this.adapter = new PubSubInboundChannelAdapter(this.pubSubTemplate, "testSubscription");
+		this.adapter.setMessageConverter(null);
+		this.outputChannel = new QueueChannel();
+		this.adapter.setOutputChannel(this.outputChannel);
+		this.pubsubMessage = PubsubMessage.newBuilder()
+				.setData(ByteString.copyFromUtf8("payload"))
+				.putAttributes("attribute", "value")
+				.build();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testNonNullAckMode() {
 		PubSubInboundChannelAdapter adapter = new PubSubInboundChannelAdapter(
 				this.pubSubTemplate, "testSubscription");
 		adapter.setAckMode(null);
 	}
+
+	@Test
+	public void testReceive_byteArrayPayloadByDefault() {
+		Message<?> message = receive();
+
+		assertArrayEquals("payload".getBytes(), (byte[]) message.getPayload());
+		assertEquals("value", message.getHeaders().get("attribute"));
+		verify(this.mockConsumer).ack();
+	}
+
+	@Test
+	public void testReceive_byteStringPayload() {
+		this.adapter.setPayloadType(ByteString.class);
+
+		Message<?> message = receive();
+
+		assertSame(this.pubsubMessage.getData(), message.getPayload());
+	}
+
+	@Test
+	public void testReceive_readOnlyByteBufferPayload() {
+		this.adapter.setPayloadType(ByteBuffer.class);
+
+		Message<?> message = receive();
+
+		ByteBuffer payload = (ByteBuffer) message.getPayload();
+		assertTrue(payload.isReadOnly());
+		assertEquals(this.pubsubMessage.getData(), ByteString.copyFrom(payload));
+	}
+
+	@Test
+	public void testReceive_manualAckMode() {
+		this.adapter.setAckMode(AckMode.MANUAL);
+
+		Message<?> message = receive();
+
+		AckReplyConsumer acknowledgement =
+				message.getHeaders().get(GcpHeaders.ACKNOWLEDGEMENT, AckReplyConsumer.class);
+		assertEquals("value", message.getHeaders().get("attribute"));
+		verify(this.mockConsumer, never()).ack();
+
+		acknowledgement.ack();
+		verify(this.mockConsumer).ack();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedPayloadType() {
+		this.adapter.setPayloadType(String.class);
+	}
+
+	@Test
+	public void testReceive_processingExecutor() {
+		List<Runnable> tasks = new ArrayList<>();
+		this.adapter.setProcessingExecutor(tasks::add);
+
+		assertNull(receive());
+		verify(this.mockConsumer, never()).ack();
+
+		tasks.forEach(Runnable::run);
+
+		assertNotNull(this.outputChannel.receive(0));
+		verify(this.mockConsumer).ack();
+	}
+
+	@Test
+	public void testReceive_ackOnReply() {
+		this.adapter.setAckOnReply(true);
+
+		Message<?> message = receive();
+		verify(this.mockConsumer, never()).ack();
+
+		MessageChannel replyChannel = (MessageChannel) message.getHeaders().getReplyChannel();
+		replyChannel.send(new GenericMessage<>("reply"));
+		replyChannel.send(new GenericMessage<>("reply"));
+
+		verify(this.mockConsumer, times(1)).ack();
+		verify(this.mockConsumer, never()).nack();
+	}
+
+	@Test
+	public void testReceive_nackOnErrorReply() {
+		this.adapter.setAckOnReply(true);
+
+		Message<?> message = receive();
+
+		MessageChannel errorChannel = (MessageChannel) message.getHeaders().getErrorChannel();
+		errorChannel.send(new ErrorMessage(new RuntimeException("processing failed.")));
+
+		verify(this.mockConsumer).nack();
+		verify(this.mockConsumer, never()).ack();
+	}
+
+	@Test
+	public void testReceive_maxOutstandingMessages() throws InterruptedException {
+		this.adapter.setAckMode(AckMode.MANUAL);
+		this.adapter.setMaxOutstandingMessages(1);
+		MessageReceiver receiver = startAdapter();
+
+		receiver.receiveMessage(this.pubsubMessage, this.mockConsumer);
+		Thread receivingThread = new Thread(() -> receiver.receiveMessage(this.pubsubMessage, this.mockConsumer));
+		receivingThread.start();
+		receivingThread.join(100);
+		assertTrue(receivingThread.isAlive());
+
+		Message<?> message = this.outputChannel.receive(0);
+		message.getHeaders().get(GcpHeaders.ACKNOWLEDGEMENT, AckReplyConsumer.class).ack();
+		receivingThread.join(5000);
+
+		assertFalse(receivingThread.isAlive());
+		assertNotNull(this.outputChannel.receive(0));
+	}
+
+	@Test
+	public void testReceive_batchFlushedBySize() {
+		this.adapter.setBatchSize(2);
+		MessageReceiver receiver = startAdapter();
+
+		receiver.receiveMessage(this.pubsubMessage, this.mockConsumer);
+		assertNull(this.outputChannel.receive(0));
+		receiver.receiveMessage(this.pubsubMessage, this.mockConsumer);
+
+		List<?> batch = (List<?>) this.outputChannel.receive(0).getPayload();
+		assertEquals(2, batch.size());
+		assertEquals("value", ((Message<?>) batch.get(0)).getHeaders().get("attribute"));
+		verify(this.mockConsumer, times(2)).ack();
+	}
+
+	@Test
+	public void testReceive_batchFlushedByBytes() {
+		this.adapter.setBatchSize(10);
+		this.adapter.setBatchMaxBytes(this.pubsubMessage.getData().size());
+
+		Message<?> message = receive();
+
+		assertEquals(1, ((List<?>) message.getPayload()).size());
+	}
+
+	@Test
+	public void testReceive_batchFlushedByTimeout() {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.initialize();
+		this.adapter.setTaskScheduler(taskScheduler);
+		this.adapter.setBatchSize(10);
+		this.adapter.setBatchTimeout(50);
+
+		startAdapter().receiveMessage(this.pubsubMessage, this.mockConsumer);
+
+		Message<?> message = this.outputChannel.receive(5000);
+		assertEquals(1, ((List<?>) message.getPayload()).size());
+		verify(this.mockConsumer).ack();
+
+		taskScheduler.shutdown();
+	}
+
+	@Test
+	public void testReceive_batchFlushedByTimeoutOffSchedulerThread() throws InterruptedException {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.setThreadNamePrefix("test-scheduler-");
+		taskScheduler.initialize();
+		this.adapter.setTaskScheduler(taskScheduler);
+		this.adapter.setBatchSize(10);
+		this.adapter.setBatchTimeout(50);
+		AtomicReference<String> sendingThread = new AtomicReference<>();
+		CountDownLatch sent = new CountDownLatch(1);
+		this.adapter.setOutputChannel((message, timeout) -> {
+			sendingThread.set(Thread.currentThread().getName());
+			sent.countDown();
+			return true;
+		});
+
+		startAdapter().receiveMessage(this.pubsubMessage, this.mockConsumer);
+
+		assertTrue(sent.await(5, TimeUnit.SECONDS));
+		assertFalse(sendingThread.get().startsWith("test-scheduler-"));
+
+		taskScheduler.shutdown();
+	}
+
+	@Test
+	public void testReceive_keyOrderedFailureNackedOnce() {
+		this.adapter.setKeyOrdering("attribute", 1);
+		this.adapter.setOutputChannel((message, timeout) -> {
+			throw new IllegalStateException("boom");
+		});
+
+		startAdapter().receiveMessage(this.pubsubMessage, this.mockConsumer);
+		this.adapter.stop();
+
+		verify(this.mockConsumer, times(1)).nack();
+		verify(this.mockConsumer, never()).ack();
+	}
+
+	@Test
+	public void testReceive_deduplicationInsideRedeliveryBackoff() {
+		RedeliveryPolicy redeliveryPolicy = new RedeliveryPolicy();
+		redeliveryPolicy.setInitialDelayMillis(60_000);
+		this.adapter.setRedeliveryPolicy(redeliveryPolicy);
+		this.adapter.setDeduplicationStore(new InMemoryDeduplicationStore(10, 60_000));
+		this.adapter.setOutputChannel((message, timeout) -> {
+			throw new IllegalStateException("boom");
+		});
+		PubsubMessage message = this.pubsubMessage.toBuilder().setMessageId("id").build();
+
+		MessageReceiver receiver = startAdapter();
+		receiver.receiveMessage(message, this.mockConsumer);
+		receiver.receiveMessage(message, this.mockConsumer);
+
+		// The failed message is forgotten right away, while its nack is backed off.
+		assertEquals(2, this.adapter.getUniqueMessageCount());
+		assertEquals(0, this.adapter.getDuplicateMessageCount());
+		verify(this.mockConsumer, never()).nack();
+
+		this.adapter.stop();
+	}
+
+	@Test
+	public void testReceive_batchManualAckMode() {
+		this.adapter.setAckMode(AckMode.MANUAL);
+		this.adapter.setBatchSize(2);
+		AckReplyConsumer otherConsumer = mock(AckReplyConsumer.class);
+		MessageReceiver receiver = startAdapter();
+
+		receiver.receiveMessage(this.pubsubMessage, this.mockConsumer);
+		receiver.receiveMessage(this.pubsubMessage, otherConsumer);
+
+		List<?> batch = (List<?>) this.outputChannel.receive(0).getPayload();
+		((Message<?>) batch.get(1)).getHeaders().get(GcpHeaders.ACKNOWLEDGEMENT, AckReplyConsumer.class).nack();
+
+		verify(otherConsumer).nack();
+		verify(this.mockConsumer, never()).ack();
+		verify(this.mockConsumer, never()).nack();
+	}
+
+	@Test
+	public void testStop_drainsSubscriber() throws TimeoutException {
+		Subscriber subscriber = mock(Subscriber.class);
+		when(this.pubSubTemplate.subscribe(eq("testSubscription"), any())).thenReturn(subscriber);
+		this.adapter.setDrainTimeout(5000);
+		this.adapter.start();
+
+		this.adapter.stop();
+
+		InOrder inOrder = inOrder(subscriber);
+		inOrder.verify(subscriber).stopAsync();
+		inOrder.verify(subscriber).awaitTerminated(anyLong(), eq(TimeUnit.NANOSECONDS));
+	}
+
+	private Message<?> receive() {
+		startAdapter().receiveMessage(this.pubsubMessage, this.mockConsumer);
+		return this.outputChannel.receive(0);
+	}
+
+	private MessageReceiver startAdapter() {
+		this.adapter.start();
+
+		ArgumentCaptor<MessageReceiver> receiverCaptor = ArgumentCaptor.forClass(MessageReceiver.class);
+		verify(this.pubSubTemplate).subscribe(eq("testSubscription"), receiverCaptor.capture());
+		return receiverCaptor.getValue();
+	}
 }
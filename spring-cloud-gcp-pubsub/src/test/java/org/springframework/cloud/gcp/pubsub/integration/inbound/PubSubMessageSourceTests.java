@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.integration.inbound;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.integration.AckMode;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.cloud.gcp.pubsub.support.GcpHeaders;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.support.AcknowledgmentCallback;
+import org.springframework.messaging.Message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link PubSubMessageSource} unit tests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PubSubMessageSourceTests {
+
+	@Mock
+	private PubSubOperations mockPubSubTemplate;
+
+	private PubSubMessageSource messageSource;
+
+	private AcknowledgeablePubsubMessage message1;
+
+	private AcknowledgeablePubsubMessage message2;
+
+	@Before
+	public void setUp() {
+		this.messageSource = new PubSubMessageSource(this.mockPubSubTemplate, "sub");
+		this.message1 = mockMessage("payload1");
+		this.message2 = mockMessage("payload2");
+	}
+
+	@After
+	public void tearDown() {
+		this.messageSource.destroy();
+	}
+
+	@Test
+	public void testReceive_buffersPulledMessages() {
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Arrays.asList(this.message1, this.message2), Collections.emptyList());
+
+		assertEquals("payload1", this.messageSource.receive().getPayload());
+		assertEquals("payload2", this.messageSource.receive().getPayload());
+
+		verify(this.message1).modifyAckDeadline(60);
+		verify(this.message2).modifyAckDeadline(60);
+	}
+
+	@Test
+	public void testReceive_autoAckModeAcksOnceFlowCompletes() {
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Collections.singletonList(this.message1), Collections.emptyList());
+
+		Message<?> message = this.messageSource.receive();
+		verify(this.message1, never()).ack();
+
+		AcknowledgmentCallback callback = message.getHeaders().get(
+				IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, AcknowledgmentCallback.class);
+		assertTrue(callback.isAutoAck());
+		callback.acknowledge(AcknowledgmentCallback.Status.ACCEPT);
+		callback.acknowledge(AcknowledgmentCallback.Status.REQUEUE);
+
+		assertTrue(callback.isAcknowledged());
+		verify(this.message1).ack();
+		verify(this.message1, never()).nack();
+	}
+
+	@Test
+	public void testReceive_autoAckModeNacksWhenFlowFails() {
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Collections.singletonList(this.message1), Collections.emptyList());
+
+		Message<?> message = this.messageSource.receive();
+		message.getHeaders().get(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK, AcknowledgmentCallback.class)
+				.acknowledge(AcknowledgmentCallback.Status.REQUEUE);
+
+		verify(this.message1).nack();
+		verify(this.message1, never()).ack();
+	}
+
+	@Test
+	public void testReceive_maxFetchSize() {
+		this.messageSource.setMaxFetchSize(1);
+		when(this.mockPubSubTemplate.pullAcknowledgeable("sub", 1, true, null))
+				.thenReturn(Collections.singletonList(this.message1));
+
+		assertEquals("payload1", this.messageSource.receive().getPayload());
+	}
+
+	@Test
+	public void testReceive_noMessages() {
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Collections.emptyList());
+
+		assertNull(this.messageSource.receive());
+	}
+
+	@Test
+	public void testReceive_manualAckMode() {
+		this.messageSource.setAckMode(AckMode.MANUAL);
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Collections.singletonList(this.message1), Collections.emptyList());
+
+		Message<?> message = this.messageSource.receive();
+
+		assertSame(this.message1, message.getHeaders().get(GcpHeaders.ACKNOWLEDGEMENT));
+		assertEquals("value", message.getHeaders().get("attribute"));
+		assertNull(message.getHeaders().get(IntegrationMessageHeaderAccessor.ACKNOWLEDGMENT_CALLBACK));
+		verify(this.message1, never()).ack();
+	}
+
+	@Test
+	public void testStop_nacksBufferedMessages() {
+		this.messageSource.setMaxFetchSize(4);
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Arrays.asList(this.message1, this.message2), Collections.emptyList());
+
+		this.messageSource.start();
+		this.messageSource.receive();
+		this.messageSource.stop();
+
+		assertFalse(this.messageSource.isRunning());
+		verify(this.message2).nack();
+		verify(this.message1, never()).nack();
+	}
+
+	@Test
+	public void testDestroy_nacksBufferedMessages() {
+		this.messageSource.setMaxFetchSize(4);
+		when(this.mockPubSubTemplate.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenReturn(Arrays.asList(this.message1, this.message2), Collections.emptyList());
+
+		this.messageSource.receive();
+		this.messageSource.destroy();
+
+		verify(this.message2).nack();
+		verify(this.message1, never()).nack();
+	}
+
+	private AcknowledgeablePubsubMessage mockMessage(String payload) {
+		AcknowledgeablePubsubMessage message = mock(AcknowledgeablePubsubMessage.class);
+		when(message.getPubsubMessage()).thenReturn(PubsubMessage.newBuilder()
+				.setData(ByteString.copyFromUtf8(payload))
+				.putAttributes("attribute", "value")
+				.build());
+		return message;
+	}
+}
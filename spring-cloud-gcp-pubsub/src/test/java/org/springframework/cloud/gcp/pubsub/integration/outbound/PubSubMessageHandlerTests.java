@@ -16,7 +16,9 @@
 
 package org.springframework.cloud.gcp.pubsub.integration.outbound;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
@@ -24,16 +26,25 @@ import com.google.protobuf.ByteString;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
 import org.springframework.expression.Expression;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.util.concurrent.SettableListenableFuture;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.spy;
@@ -61,7 +72,7 @@ public class PubSubMessageHandlerTests {
 		SettableListenableFuture<String> future = new SettableListenableFuture<>();
 		future.set("benfica");
 		when(this.pubSubTemplate.publish(eq("testTopic"),
-				eq(ByteString.copyFrom("testPayload", Charset.defaultCharset())),
+				eq(ByteString.copyFromUtf8("testPayload")),
 				isA(Map.class)))
 				.thenReturn(future);
 		this.adapter = new PubSubMessageHandler(this.pubSubTemplate, "testTopic");
@@ -73,7 +84,7 @@ public class PubSubMessageHandlerTests {
 		this.adapter.handleMessage(this.message);
 		verify(this.pubSubTemplate, times(1))
 				.publish(eq("testTopic"),
-						eq(ByteString.copyFrom("testPayload", Charset.defaultCharset())),
+						eq(ByteString.copyFromUtf8("testPayload")),
 						isA(Map.class));
 	}
 
@@ -108,4 +119,155 @@ public class PubSubMessageHandlerTests {
 
 		verify(callbackSpy, times(1)).onSuccess(eq("benfica"));
 	}
+
+	@Test
+	public void testPublish_byteArrayCopied() {
+		byte[] payload = "testPayload".getBytes();
+		this.adapter.handleMessage(new GenericMessage<>(payload));
+		payload[0] = 'T';
+
+		assertEquals(ByteString.copyFromUtf8("testPayload"), publishedPayload());
+	}
+
+	@Test
+	public void testPublish_byteArrayWrapped() {
+		this.adapter.setWrapPayloads(true);
+		byte[] payload = "testPayload".getBytes();
+		this.adapter.handleMessage(new GenericMessage<>(payload));
+		payload[0] = 'T';
+
+		assertEquals(ByteString.copyFromUtf8("TestPayload"), publishedPayload());
+	}
+
+	@Test
+	public void testPublish_byteBuffer() {
+		ByteBuffer payload = ByteBuffer.allocateDirect(11);
+		payload.put("testPayload".getBytes()).flip();
+		this.adapter.handleMessage(new GenericMessage<>(payload));
+
+		assertEquals(ByteString.copyFromUtf8("testPayload"), publishedPayload());
+		assertEquals(0, payload.position());
+	}
+
+	@Test
+	public void testPublish_byteBufferWrapped() {
+		this.adapter.setWrapPayloads(true);
+		ByteBuffer payload = ByteBuffer.wrap("testPayload".getBytes());
+		this.adapter.handleMessage(new GenericMessage<>(payload));
+
+		assertEquals(ByteString.copyFromUtf8("testPayload"), publishedPayload());
+		assertEquals(0, payload.position());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPublish_internalHeadersNotMapped() {
+		this.adapter.handleMessage(this.message);
+
+		ArgumentCaptor<Map<String, String>> headersCaptor = ArgumentCaptor.forClass(Map.class);
+		verify(this.pubSubTemplate).publish(eq("testTopic"), isA(ByteString.class), headersCaptor.capture());
+		assertEquals(ImmutableMap.of("key1", "value1", "key2", "value2"), headersCaptor.getValue());
+	}
+
+	@Test
+	public void testPublish_successChannel() {
+		QueueChannel successChannel = new QueueChannel();
+		this.adapter.setSuccessChannel(successChannel);
+
+		this.adapter.handleMessage(this.message);
+
+		Message<?> success = successChannel.receive(0);
+		assertEquals("benfica", success.getPayload());
+		assertEquals("value1", success.getHeaders().get("key1"));
+	}
+
+	@Test
+	public void testPublish_failureChannel() {
+		SettableListenableFuture<String> future = new SettableListenableFuture<>();
+		future.setException(new IllegalStateException("boom"));
+		when(this.pubSubTemplate.publish(eq("testTopic"),
+				eq(ByteString.copyFromUtf8("testPayload")),
+				isA(Map.class)))
+				.thenReturn(future);
+		QueueChannel failureChannel = new QueueChannel();
+		this.adapter.setFailureChannel(failureChannel);
+
+		this.adapter.handleMessage(this.message);
+
+		MessageHandlingException exception = (MessageHandlingException) failureChannel.receive(0).getPayload();
+		assertSame(this.message, exception.getFailedMessage());
+		assertTrue(exception.getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testPublish_syncFailureNotSentToFailureChannel() {
+		SettableListenableFuture<String> future = new SettableListenableFuture<>();
+		future.setException(new IllegalStateException("boom"));
+		when(this.pubSubTemplate.publish(eq("testTopic"),
+				eq(ByteString.copyFromUtf8("testPayload")),
+				isA(Map.class)))
+				.thenReturn(future);
+		QueueChannel failureChannel = new QueueChannel();
+		this.adapter.setFailureChannel(failureChannel);
+		this.adapter.setSync(true);
+
+		try {
+			this.adapter.handleMessage(this.message);
+			fail("Expected the publish failure to be rethrown.");
+		}
+		catch (MessageHandlingException mhe) {
+			assertSame(this.message, mhe.getFailedMessage());
+		}
+
+		assertNull(failureChannel.receive(0));
+	}
+
+	@Test
+	public void testPublish_resultSentByResultExecutor() {
+		List<Runnable> tasks = new ArrayList<>();
+		QueueChannel successChannel = new QueueChannel();
+		this.adapter.setSuccessChannel(successChannel);
+		this.adapter.setResultExecutor(tasks::add);
+
+		this.adapter.handleMessage(this.message);
+		assertNull(successChannel.receive(0));
+
+		assertEquals(1, tasks.size());
+		tasks.get(0).run();
+		assertEquals("benfica", successChannel.receive(0).getPayload());
+	}
+
+	@Test
+	public void testPublish_maxInFlightPublishes() {
+		SettableListenableFuture<String> future = new SettableListenableFuture<>();
+		when(this.pubSubTemplate.publish(eq("testTopic"),
+				eq(ByteString.copyFromUtf8("testPayload")),
+				isA(Map.class)))
+				.thenReturn(future);
+		this.adapter.setMaxInFlightPublishes(1);
+
+		this.adapter.handleMessage(this.message);
+		assertEquals(1, this.adapter.getInFlightPublishCount());
+
+		try {
+			this.adapter.handleMessage(this.message);
+			fail("Expected the publish to be rejected.");
+		}
+		catch (MessageDeliveryException mde) {
+			assertSame(this.message, mde.getFailedMessage());
+		}
+
+		future.set("benfica");
+		assertEquals(0, this.adapter.getInFlightPublishCount());
+
+		this.adapter.handleMessage(this.message);
+		verify(this.pubSubTemplate, times(2))
+				.publish(eq("testTopic"), eq(ByteString.copyFromUtf8("testPayload")), isA(Map.class));
+	}
+
+	private ByteString publishedPayload() {
+		ArgumentCaptor<ByteString> payloadCaptor = ArgumentCaptor.forClass(ByteString.class);
+		verify(this.pubSubTemplate).publish(eq("testTopic"), payloadCaptor.capture(), isA(Map.class));
+		return payloadCaptor.getValue();
+	}
 }
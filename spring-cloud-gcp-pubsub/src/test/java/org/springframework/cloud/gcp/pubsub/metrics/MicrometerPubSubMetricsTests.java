@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link MicrometerPubSubMetrics} unit tests.
+ */
+public class MicrometerPubSubMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MicrometerPubSubMetrics metrics = new MicrometerPubSubMetrics(this.registry, 2);
+
+	@Test
+	public void testPublishCompleted() {
+		this.metrics.publishCompleted("topic", TimeUnit.MILLISECONDS.toNanos(5), true);
+		this.metrics.publishCompleted("topic", TimeUnit.MILLISECONDS.toNanos(5), true);
+		this.metrics.publishCompleted("topic", TimeUnit.MILLISECONDS.toNanos(5), false);
+
+		assertEquals(2, this.registry.get("pubsub.publish").tags("topic", "topic", "result", "success")
+				.timer().count());
+		assertEquals(1, this.registry.get("pubsub.publish").tags("topic", "topic", "result", "failure")
+				.timer().count());
+	}
+
+	@Test
+	public void testBulkPublished() {
+		this.metrics.bulkPublished("topic", 10);
+
+		assertEquals(10, this.registry.get("pubsub.publish.bulk.size").tag("topic", "topic")
+				.summary().totalAmount(), 0);
+	}
+
+	@Test
+	public void testReceiveSide() {
+		this.metrics.messageReceived("sub");
+		this.metrics.messageHandled("sub", 1000, true);
+		this.metrics.messageAcked("sub");
+		this.metrics.messageNacked("sub");
+
+		assertEquals(1, this.registry.get("pubsub.receive").tag("subscription", "sub").counter().count(), 0);
+		assertEquals(1, this.registry.get("pubsub.handle").tags("subscription", "sub", "result", "success")
+				.timer().count());
+		assertEquals(0, this.registry.get("pubsub.handle").tags("subscription", "sub", "result", "failure")
+				.timer().count());
+		assertEquals(1, this.registry.get("pubsub.acknowledgement").tags("subscription", "sub", "type", "ack")
+				.counter().count(), 0);
+		assertEquals(1, this.registry.get("pubsub.acknowledgement").tags("subscription", "sub", "type", "nack")
+				.counter().count(), 0);
+	}
+
+	@Test
+	public void testTagValuesBounded() {
+		this.metrics.messageReceived("sub1");
+		this.metrics.messageReceived("sub2");
+		this.metrics.messageReceived("sub3");
+		this.metrics.messageReceived("sub4");
+
+		assertNull(this.registry.find("pubsub.receive").tag("subscription", "sub3").counter());
+		assertEquals(2, this.registry.get("pubsub.receive").tag("subscription", "other").counter().count(), 0);
+		assertEquals(1, this.registry.get("pubsub.receive").tag("subscription", "sub2").counter().count(), 0);
+	}
+
+	@Test
+	public void testMetersRegisteredOnce() {
+		this.metrics.publishCompleted("topic", 1000, true);
+		int meterCount = this.registry.getMeters().size();
+
+		this.metrics.publishCompleted("topic", 1000, false);
+		this.metrics.bulkPublished("topic", 10);
+		this.metrics.publishCompleted("topic", 1000, true);
+
+		assertEquals(meterCount, this.registry.getMeters().size());
+		assertEquals(2, this.registry.get("pubsub.publish").tags("topic", "topic", "result", "success")
+				.timer().count());
+	}
+}
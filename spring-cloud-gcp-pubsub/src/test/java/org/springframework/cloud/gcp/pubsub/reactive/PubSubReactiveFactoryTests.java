@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.reactive;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.cloud.gcp.pubsub.support.AcknowledgeablePubsubMessage;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PubSubReactiveFactoryTests {
+
+	@Mock
+	private PubSubOperations mockPubSubOperations;
+
+	private PubSubReactiveFactory factory;
+
+	@Before
+	public void setUp() {
+		this.factory = new PubSubReactiveFactory(this.mockPubSubOperations);
+	}
+
+	@Test
+	public void testPoll_pullsOnlyWhatIsRequested() {
+		AcknowledgeablePubsubMessage message1 = mock(AcknowledgeablePubsubMessage.class);
+		AcknowledgeablePubsubMessage message2 = mock(AcknowledgeablePubsubMessage.class);
+		when(this.mockPubSubOperations.pullAcknowledgeable("sub", 2, true, null))
+				.thenReturn(Arrays.asList(message1, message2));
+
+		StepVerifier.create(this.factory.poll("sub", 10), 0)
+				.expectSubscription()
+				.expectNoEvent(Duration.ofMillis(50))
+				.thenRequest(2)
+				.expectNext(message1, message2)
+				.thenCancel()
+				.verify();
+
+		verify(this.mockPubSubOperations, never())
+				.pullAcknowledgeable(eq("sub"), eq(1), eq(true), isNull());
+	}
+
+	@Test
+	public void testPoll_pollsAgainWhenNoMessageIsAvailable() {
+		AcknowledgeablePubsubMessage message = mock(AcknowledgeablePubsubMessage.class);
+		when(this.mockPubSubOperations.pullAcknowledgeable("sub", 1, true, null))
+				.thenReturn(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(message));
+
+		StepVerifier.create(this.factory.poll("sub", 10), 1)
+				.expectNext(message)
+				.thenCancel()
+				.verify(Duration.ofSeconds(5));
+
+		verify(this.mockPubSubOperations, timeout(1000).times(3))
+				.pullAcknowledgeable("sub", 1, true, null);
+	}
+
+	@Test
+	public void testPoll_pullErrorTerminatesFlux() {
+		when(this.mockPubSubOperations.pullAcknowledgeable(eq("sub"), anyInt(), eq(true), isNull()))
+				.thenThrow(new PubSubException("pull failed."));
+
+		StepVerifier.create(this.factory.poll("sub", 10))
+				.expectErrorMessage("pull failed.")
+				.verify(Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void testPublish_preservesOrder() {
+		PubsubMessage message1 = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("1")).build();
+		PubsubMessage message2 = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("2")).build();
+		SettableListenableFuture<String> future1 = new SettableListenableFuture<>();
+		SettableListenableFuture<String> future2 = new SettableListenableFuture<>();
+		when(this.mockPubSubOperations.publish("topic", message1)).thenReturn(future1);
+		when(this.mockPubSubOperations.publish("topic", message2)).thenReturn(future2);
+
+		StepVerifier.create(this.factory.publish("topic", Flux.just(message1, message2)))
+				.then(() -> future2.set("id2"))
+				.expectNoEvent(Duration.ofMillis(50))
+				.then(() -> future1.set("id1"))
+				.expectNext("id1", "id2")
+				.verifyComplete();
+	}
+
+	@Test
+	public void testPublish_limitsInFlightMessages() {
+		PubsubMessage message1 = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("1")).build();
+		PubsubMessage message2 = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("2")).build();
+		SettableListenableFuture<String> future1 = new SettableListenableFuture<>();
+		SettableListenableFuture<String> future2 = new SettableListenableFuture<>();
+		future2.set("id2");
+		when(this.mockPubSubOperations.publish("topic", message1)).thenReturn(future1);
+		when(this.mockPubSubOperations.publish("topic", message2)).thenReturn(future2);
+
+		StepVerifier.create(this.factory.publish("topic", Flux.just(message1, message2), 1))
+				.then(() -> verify(this.mockPubSubOperations, never()).publish("topic", message2))
+				.then(() -> future1.set("id1"))
+				.expectNext("id1", "id2")
+				.verifyComplete();
+
+		verify(this.mockPubSubOperations, times(1)).publish("topic", message2);
+	}
+
+	@Test
+	public void testPublish_failure() {
+		PubsubMessage message = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("1")).build();
+		SettableListenableFuture<String> future = new SettableListenableFuture<>();
+		future.setException(new PubSubException("publish failed."));
+		when(this.mockPubSubOperations.publish("topic", message)).thenReturn(future);
+
+		StepVerifier.create(this.factory.publish("topic", Flux.just(message)))
+				.expectErrorMessage("publish failed.")
+				.verify();
+	}
+}
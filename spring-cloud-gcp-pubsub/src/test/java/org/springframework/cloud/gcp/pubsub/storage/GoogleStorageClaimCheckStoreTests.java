@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link GoogleStorageClaimCheckStore} unit tests, against a {@link Storage} keeping objects in
+ * memory.
+ */
+public class GoogleStorageClaimCheckStoreTests {
+
+	private static final ByteString PAYLOAD = ByteString.copyFromUtf8("large payload");
+
+	private final Map<BlobId, ByteString> objects = new ConcurrentHashMap<>();
+
+	private Storage storage;
+
+	@Before
+	public void setUp() throws Exception {
+		this.storage = mock(Storage.class);
+
+		when(this.storage.writer(any(BlobInfo.class))).thenAnswer(invocation -> {
+			BlobId blobId = invocation.<BlobInfo>getArgument(0).getBlobId();
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			WriteChannel writer = mock(WriteChannel.class);
+			when(writer.write(any(ByteBuffer.class))).thenAnswer(write -> {
+				ByteBuffer buffer = write.getArgument(0);
+				int size = buffer.remaining();
+				byte[] bytes = new byte[size];
+				buffer.get(bytes);
+				content.write(bytes);
+				return size;
+			});
+			doAnswer(close -> this.objects.put(blobId, ByteString.copyFrom(content.toByteArray())))
+					.when(writer).close();
+			return writer;
+		});
+
+		when(this.storage.get(any(BlobId.class))).thenAnswer(invocation -> {
+			ByteString content = this.objects.get(invocation.<BlobId>getArgument(0));
+			return content != null ? blob(content) : null;
+		});
+
+		when(this.storage.delete(any(BlobId.class)))
+				.thenAnswer(invocation -> this.objects.remove(invocation.<BlobId>getArgument(0)) != null);
+	}
+
+	@Test
+	public void testStore() throws Exception {
+		GoogleStorageClaimCheckStore store = new GoogleStorageClaimCheckStore(this.storage, "bucket");
+		store.setObjectNamePrefix("offloaded/");
+
+		String reference = store.store("topic", PAYLOAD);
+
+		assertTrue(reference.startsWith("gs://bucket/offloaded/topic/"));
+		assertEquals(1, this.objects.size());
+		try (InputStream inputStream = store.retrieve(reference)) {
+			assertEquals(PAYLOAD, ByteString.readFrom(inputStream));
+		}
+
+		store.delete(reference);
+
+		assertTrue(this.objects.isEmpty());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testRetrieve_missing() throws Exception {
+		new GoogleStorageClaimCheckStore(this.storage, "bucket").retrieve("gs://bucket/missing");
+	}
+
+	private static Blob blob(ByteString content) throws Exception {
+		ByteBuffer source = content.asReadOnlyByteBuffer();
+		ReadChannel reader = mock(ReadChannel.class);
+		when(reader.isOpen()).thenReturn(true);
+		when(reader.read(any(ByteBuffer.class))).thenAnswer(read -> {
+			ByteBuffer target = read.getArgument(0);
+			int size = Math.min(source.remaining(), target.remaining());
+			ByteBuffer slice = source.slice();
+			slice.limit(size);
+			target.put(slice);
+			source.position(source.position() + size);
+			return (size == 0 && target.hasRemaining()) ? -1 : size;
+		});
+
+		Blob blob = mock(Blob.class);
+		when(blob.reader()).thenReturn(reader);
+		return blob;
+	}
+}
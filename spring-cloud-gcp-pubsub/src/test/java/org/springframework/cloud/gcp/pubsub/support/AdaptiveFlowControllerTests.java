@@ -0,0 +1,186 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link AdaptiveFlowController} unit tests.
+ */
+public class AdaptiveFlowControllerTests {
+
+	private final AtomicLong nanoTime = new AtomicLong();
+
+	private final List<AckReplyConsumer> pendingConsumers = new ArrayList<>();
+
+	private AdaptiveFlowControlSettings settings;
+
+	@Before
+	public void setUp() {
+		this.settings = new AdaptiveFlowControlSettings();
+		this.settings.setMinOutstandingMessages(10);
+		this.settings.setMaxOutstandingMessages(100);
+		this.settings.setMinOutstandingBytes(1000);
+		this.settings.setMaxOutstandingBytes(100_000);
+		this.settings.setAckDeadlineSeconds(10);
+	}
+
+	@Test
+	public void testStartsAtMinimumLimits() {
+		AdaptiveFlowController controller = controller();
+
+		assertEquals(10, controller.getMessageLimit());
+		assertEquals(10_000, controller.getByteLimit());
+	}
+
+	@Test
+	public void testIncreaseWhenSaturatedAndFast() {
+		AdaptiveFlowController controller = controller();
+
+		receive(controller, 10);
+		completeAll(100);
+
+		assertEquals(11, controller.getMessageLimit());
+		assertEquals(11_000, controller.getByteLimit());
+		assertEquals(1, controller.getIncreaseCount());
+		assertEquals(0, controller.getOutstandingMessageCount());
+	}
+
+	@Test
+	public void testNoIncreaseWhenNotSaturated() {
+		AdaptiveFlowController controller = controller();
+
+		for (int i = 0; i < 10; i++) {
+			receive(controller, 1);
+			completeAll(100);
+		}
+
+		assertEquals(10, controller.getMessageLimit());
+		assertEquals(0, controller.getIncreaseCount());
+	}
+
+	@Test
+	public void testDecreaseWhenSlow() {
+		this.settings.setMinOutstandingMessages(1);
+		AdaptiveFlowController controller = controller();
+		for (int i = 0; i < 30; i++) {
+			receive(controller, controller.getMessageLimit());
+			completeAll(100);
+		}
+		int limit = controller.getMessageLimit();
+		assertTrue(limit > 1);
+
+		// Well over the 5 second target, but within the deadline.
+		receive(controller, limit);
+		completeAll(8000);
+
+		assertEquals((int) (limit * 0.75), controller.getMessageLimit());
+		assertEquals(1, controller.getDecreaseCount());
+		assertTrue(controller.getAverageLatencyMillis() > 5000);
+	}
+
+	@Test
+	public void testDecreaseRightAwayWhenDeadlineExceeded() {
+		this.settings.setMinOutstandingMessages(1);
+		AdaptiveFlowController controller = controller();
+		for (int i = 0; i < 15; i++) {
+			receive(controller, controller.getMessageLimit());
+			completeAll(100);
+		}
+		assertEquals(16, controller.getMessageLimit());
+
+		// A single message over the 10 second deadline, long before the end of the round.
+		receive(controller, 1);
+		completeAll(11_000);
+
+		assertEquals(12, controller.getMessageLimit());
+		assertEquals(1, controller.getDecreaseCount());
+		assertTrue(controller.getDeadlineHeadroomMillis() < 10_000);
+	}
+
+	@Test
+	public void testNoDecreaseBelowMinimum() {
+		AdaptiveFlowController controller = controller();
+
+		receive(controller, 1);
+		completeAll(11_000);
+
+		assertEquals(10, controller.getMessageLimit());
+		assertEquals(0, controller.getDecreaseCount());
+	}
+
+	@Test
+	public void testStaysWithinMaximum() {
+		AdaptiveFlowController controller = controller();
+
+		for (int i = 0; i < 100; i++) {
+			receive(controller, controller.getMessageLimit());
+			completeAll(10);
+		}
+
+		assertEquals(100, controller.getMessageLimit());
+		assertEquals(100_000, controller.getByteLimit());
+	}
+
+	@Test
+	public void testAcksAndNacksAreForwarded() {
+		AdaptiveFlowController controller = controller();
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		controller.receiveMessage(message(), consumer);
+		this.pendingConsumers.remove(0).nack();
+
+		verify(consumer).nack();
+		assertEquals(0, controller.getOutstandingMessageCount());
+		assertEquals(0, controller.getOutstandingByteCount());
+	}
+
+	private AdaptiveFlowController controller() {
+		return new AdaptiveFlowController(
+				(message, consumer) -> this.pendingConsumers.add(consumer), this.settings, this.nanoTime::get);
+	}
+
+	private void receive(AdaptiveFlowController controller, int count) {
+		for (int i = 0; i < count; i++) {
+			controller.receiveMessage(message(), mock(AckReplyConsumer.class));
+		}
+	}
+
+	private void completeAll(long latencyMillis) {
+		this.nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+		this.pendingConsumers.forEach(AckReplyConsumer::ack);
+		this.pendingConsumers.clear();
+	}
+
+	private static PubsubMessage message() {
+		return PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("payload")).build();
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link ClaimCheck} unit tests.
+ */
+public class ClaimCheckTests {
+
+	private static final ByteString PAYLOAD = ByteString.copyFromUtf8("large payload");
+
+	private InMemoryClaimCheckStore store;
+
+	private ClaimCheck claimCheck;
+
+	@Before
+	public void setUp() {
+		this.store = new InMemoryClaimCheckStore();
+		this.claimCheck = new ClaimCheck(this.store);
+		this.claimCheck.setThreshold(PAYLOAD.size() - 1);
+	}
+
+	@Test
+	public void testCheckIn_offloadsLargePayload() {
+		PubsubMessage checkedIn = this.claimCheck.checkIn("topic", message(PAYLOAD));
+
+		assertTrue(checkedIn.getData().isEmpty());
+		assertTrue(checkedIn.getAttributesOrThrow(ClaimCheck.REFERENCE_ATTRIBUTE).startsWith("topic/"));
+		assertEquals("value", checkedIn.getAttributesOrThrow("key"));
+		assertEquals(1, this.store.getPayloadCount());
+
+		PubsubMessage checkedOut = this.claimCheck.checkOut(checkedIn);
+
+		assertEquals(PAYLOAD, checkedOut.getData());
+		assertFalse(checkedOut.containsAttributes(ClaimCheck.REFERENCE_ATTRIBUTE));
+		assertEquals("value", checkedOut.getAttributesOrThrow("key"));
+	}
+
+	@Test
+	public void testCheckIn_smallPayload() {
+		this.claimCheck.setThreshold(PAYLOAD.size());
+		PubsubMessage message = message(PAYLOAD);
+
+		assertSame(message, this.claimCheck.checkIn("topic", message));
+		assertEquals(0, this.store.getPayloadCount());
+	}
+
+	@Test
+	public void testCheckOut_noReference() {
+		PubsubMessage message = message(PAYLOAD);
+
+		assertSame(message, this.claimCheck.checkOut(message));
+	}
+
+	@Test(expected = PubSubException.class)
+	public void testCheckOut_missingPayload() {
+		this.claimCheck.checkOut(message(ByteString.EMPTY).toBuilder()
+				.putAttributes(ClaimCheck.REFERENCE_ATTRIBUTE, "topic/missing")
+				.build());
+	}
+
+	@Test
+	public void testDeleteOnAck() {
+		this.claimCheck.setDeleteAfterAck(true);
+		PubsubMessage checkedIn = this.claimCheck.checkIn("topic", message(PAYLOAD));
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		AckReplyConsumer deletingConsumer = this.claimCheck.deleteOnAck(checkedIn, consumer);
+		deletingConsumer.nack();
+
+		verify(consumer).nack();
+		assertEquals(1, this.store.getPayloadCount());
+
+		deletingConsumer.ack();
+
+		verify(consumer).ack();
+		assertEquals(0, this.store.getPayloadCount());
+	}
+
+	@Test
+	public void testDeleteOnAck_disabled() {
+		PubsubMessage checkedIn = this.claimCheck.checkIn("topic", message(PAYLOAD));
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		assertSame(consumer, this.claimCheck.deleteOnAck(checkedIn, consumer));
+		this.claimCheck.acknowledged(checkedIn);
+
+		assertEquals(1, this.store.getPayloadCount());
+	}
+
+	private static PubsubMessage message(ByteString data) {
+		return PubsubMessage.newBuilder().setData(data).putAttributes("key", "value").build();
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link DeduplicatingMessageReceiver} and {@link InMemoryDeduplicationStore} unit tests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DeduplicatingMessageReceiverTests {
+
+	@Mock
+	private MessageReceiver delegate;
+
+	private final AtomicLong now = new AtomicLong();
+
+	private InMemoryDeduplicationStore store;
+
+	@Before
+	public void setUp() {
+		this.store = new InMemoryDeduplicationStore(3, 1000, this.now::get);
+	}
+
+	@Test
+	public void testReceiveMessage_duplicateOfCompletedMessageAcked() {
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(this.delegate, this.store);
+		AckReplyConsumer duplicateConsumer = mock(AckReplyConsumer.class);
+		doAnswer(invocation -> {
+			((AckReplyConsumer) invocation.getArgument(1)).ack();
+			return null;
+		}).when(this.delegate).receiveMessage(any(), any());
+
+		receiver.receiveMessage(message("id", "key", "k1"), mock(AckReplyConsumer.class));
+		receiver.receiveMessage(message("id", "key", "k2"), duplicateConsumer);
+
+		verify(this.delegate).receiveMessage(any(), any());
+		verify(duplicateConsumer).ack();
+		verify(duplicateConsumer, never()).nack();
+		assertEquals(1, receiver.getDuplicateCount());
+		assertEquals(1, receiver.getUniqueCount());
+	}
+
+	@Test
+	public void testReceiveMessage_redeliveryWhileFirstInFlightHeldUntilAcked() {
+		List<AckReplyConsumer> inFlight = new ArrayList<>();
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(
+				(message, consumer) -> inFlight.add(consumer), this.store);
+		AckReplyConsumer firstConsumer = mock(AckReplyConsumer.class);
+		AckReplyConsumer redeliveryConsumer = mock(AckReplyConsumer.class);
+		AckReplyConsumer lateRedeliveryConsumer = mock(AckReplyConsumer.class);
+
+		receiver.receiveMessage(message("id", "key", "k"), firstConsumer);
+		receiver.receiveMessage(message("id", "key", "k"), redeliveryConsumer);
+
+		assertEquals(1, inFlight.size());
+		verify(redeliveryConsumer, never()).ack();
+		verify(redeliveryConsumer, never()).nack();
+
+		inFlight.get(0).ack();
+		verify(firstConsumer).ack();
+		verify(redeliveryConsumer).ack();
+
+		receiver.receiveMessage(message("id", "key", "k"), lateRedeliveryConsumer);
+
+		assertEquals(1, inFlight.size());
+		verify(lateRedeliveryConsumer).ack();
+		assertEquals(2, receiver.getDuplicateCount());
+	}
+
+	@Test
+	public void testReceiveMessage_heldRedeliveryNackedWhenFirstFails() {
+		List<AckReplyConsumer> inFlight = new ArrayList<>();
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(
+				(message, consumer) -> inFlight.add(consumer), this.store);
+		AckReplyConsumer redeliveryConsumer = mock(AckReplyConsumer.class);
+
+		receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+		receiver.receiveMessage(message("id", "key", "k"), redeliveryConsumer);
+		inFlight.get(0).nack();
+
+		verify(redeliveryConsumer).nack();
+		verify(redeliveryConsumer, never()).ack();
+
+		receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+		assertEquals(2, inFlight.size());
+	}
+
+	@Test
+	public void testReceiveMessage_duplicateOfMessageInProgressElsewhereNotReplied() {
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(this.delegate, this.store);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+		this.store.markIfAbsent("id");
+
+		receiver.receiveMessage(message("id", "key", "k"), consumer);
+
+		verify(this.delegate, never()).receiveMessage(any(), any());
+		verify(consumer, never()).ack();
+		verify(consumer, never()).nack();
+		assertEquals(1, receiver.getDuplicateCount());
+	}
+
+	@Test
+	public void testReceiveMessage_firstDeliveryNackedRedeliveryProcessed() {
+		List<AckReplyConsumer> delivered = new ArrayList<>();
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(
+				(message, consumer) -> delivered.add(consumer), this.store);
+
+		receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+		delivered.get(0).nack();
+		receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+		delivered.get(1).ack();
+
+		assertEquals(2, delivered.size());
+		assertEquals(0, receiver.getDuplicateCount());
+		assertTrue(this.store.isCompleted("id"));
+	}
+
+	@Test
+	public void testReceiveMessage_failureAfterAckKeepsCompletedKey() {
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver((message, consumer) -> {
+			consumer.ack();
+			throw new IllegalStateException("boom");
+		}, this.store);
+
+		try {
+			receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+			fail("The exception should be rethrown.");
+		}
+		catch (IllegalStateException ise) {
+			assertTrue(this.store.isCompleted("id"));
+		}
+	}
+
+	@Test
+	public void testReceiveMessage_keyAttribute() {
+		DeduplicatingMessageReceiver receiver =
+				new DeduplicatingMessageReceiver(this.delegate, this.store, "key");
+
+		receiver.receiveMessage(message("id1", "key", "k"), mock(AckReplyConsumer.class));
+		receiver.receiveMessage(message("id2", "key", "k"), mock(AckReplyConsumer.class));
+		receiver.receiveMessage(message("id3", "other", "k"), mock(AckReplyConsumer.class));
+
+		verify(this.delegate, times(2)).receiveMessage(any(), any());
+		assertEquals(1, receiver.getDuplicateCount());
+	}
+
+	@Test
+	public void testReceiveMessage_nackedMessageProcessedAgain() {
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(
+				(message, consumer) -> consumer.nack(), this.store);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		receiver.receiveMessage(message("id", "key", "k"), consumer);
+		receiver.receiveMessage(message("id", "key", "k"), consumer);
+
+		verify(consumer, times(2)).nack();
+		assertEquals(0, receiver.getDuplicateCount());
+	}
+
+	@Test
+	public void testReceiveMessage_failedMessageProcessedAgain() {
+		doThrow(new IllegalStateException("boom")).when(this.delegate).receiveMessage(any(), any());
+		DeduplicatingMessageReceiver receiver = new DeduplicatingMessageReceiver(this.delegate, this.store);
+
+		try {
+			receiver.receiveMessage(message("id", "key", "k"), mock(AckReplyConsumer.class));
+			fail("The exception should be rethrown.");
+		}
+		catch (IllegalStateException ise) {
+			assertTrue(this.store.markIfAbsent("id"));
+		}
+	}
+
+	@Test
+	public void testInMemoryStore_forgetsExpiredKeys() {
+		assertTrue(this.store.markIfAbsent("a"));
+		this.now.set(500);
+		assertFalse(this.store.markIfAbsent("a"));
+
+		this.now.set(1000);
+		assertTrue(this.store.markIfAbsent("a"));
+	}
+
+	@Test
+	public void testInMemoryStore_completedKeys() {
+		assertTrue(this.store.markIfAbsent("a"));
+		assertFalse(this.store.isCompleted("a"));
+
+		this.store.markCompleted("a");
+		assertTrue(this.store.isCompleted("a"));
+		assertFalse(this.store.isCompleted("b"));
+
+		this.now.set(1000);
+		assertFalse(this.store.isCompleted("a"));
+	}
+
+	@Test
+	public void testInMemoryStore_forgetsOldestKeysBeyondMaximum() {
+		assertTrue(this.store.markIfAbsent("a"));
+		assertTrue(this.store.markIfAbsent("b"));
+		assertTrue(this.store.markIfAbsent("c"));
+		assertTrue(this.store.markIfAbsent("d"));
+
+		assertEquals(3, this.store.size());
+		assertFalse(this.store.markIfAbsent("d"));
+		assertTrue(this.store.markIfAbsent("a"));
+	}
+
+	private static PubsubMessage message(String messageId, String attribute, String value) {
+		return PubsubMessage.newBuilder()
+				.setMessageId(messageId)
+				.putAttributes(attribute, value)
+				.build();
+	}
+}
@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.gcp.pubsub.support;
 
+import com.google.api.gax.batching.BatchingSettings;
 import com.google.api.gax.core.CredentialsProvider;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.pubsub.v1.ProjectTopicName;
@@ -23,8 +24,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.threeten.bp.Duration;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author João André Martins
@@ -47,6 +54,74 @@ public class DefaultPublisherFactoryTests {
 		assertEquals("projectId", ((ProjectTopicName) publisher.getTopicName()).getProject());
 	}
 
+	@Test
+	public void testGetPublisher_topicSettings() {
+		DefaultPublisherFactory factory = new DefaultPublisherFactory(() -> "projectId");
+		factory.setCredentialsProvider(this.credentialsProvider);
+
+		BatchingSettings latencyBatchingSettings = BatchingSettings.newBuilder()
+				.setElementCountThreshold(1L)
+				.setRequestByteThreshold(1L)
+				.setDelayThreshold(Duration.ofMillis(1))
+				.build();
+		PublisherTopicSettings latencySettings = new PublisherTopicSettings();
+		latencySettings.setBatchingSettings(latencyBatchingSettings);
+		factory.setTopicSettings("latency", latencySettings);
+
+		BatchingSettings bulkBatchingSettings = BatchingSettings.newBuilder()
+				.setElementCountThreshold(1000L)
+				.setRequestByteThreshold(10_000_000L)
+				.setDelayThreshold(Duration.ofMillis(100))
+				.build();
+		PublisherTopicSettings bulkSettings = new PublisherTopicSettings();
+		bulkSettings.setBatchingSettings(bulkBatchingSettings);
+		factory.setTopicSettings("telemetry-*", bulkSettings);
+
+		assertSame(latencyBatchingSettings, factory.createPublisher("latency").getBatchingSettings());
+		assertSame(bulkBatchingSettings, factory.createPublisher("telemetry-cpu").getBatchingSettings());
+		assertSame(latencySettings, factory.getTopicSettings("latency"));
+		assertSame(bulkSettings, factory.getTopicSettings("telemetry-memory"));
+		assertNull(factory.getTopicSettings("other"));
+	}
+
+	@Test
+	public void testGetPublisher_evictsLeastRecentlyUsed() {
+		DefaultPublisherFactory factory = new DefaultPublisherFactory(() -> "projectId");
+		factory.setCredentialsProvider(this.credentialsProvider);
+		factory.setMaxCachedPublishers(2);
+
+		Publisher firstPublisher = factory.createPublisher("first");
+		factory.createPublisher("second");
+		factory.createPublisher("first");
+		factory.createPublisher("third");
+
+		assertEquals(2, factory.getCache().size());
+		assertTrue(factory.getCache().containsKey("first"));
+		assertFalse(factory.getCache().containsKey("second"));
+		assertSame(firstPublisher, factory.createPublisher("first"));
+
+		factory.destroy();
+		assertTrue(factory.getCache().isEmpty());
+	}
+
+	@Test
+	public void testGetPublisher_evictsIdlePublishers() throws InterruptedException {
+		DefaultPublisherFactory factory = new DefaultPublisherFactory(() -> "projectId");
+		factory.setCredentialsProvider(this.credentialsProvider);
+		factory.setIdleTimeout(Duration.ofMillis(100));
+
+		Publisher publisher = factory.createPublisher("testTopic");
+
+		for (int i = 0; i < 50 && !factory.getCache().isEmpty(); i++) {
+			Thread.sleep(100);
+		}
+
+		assertTrue(factory.getCache().isEmpty());
+		assertNotSame(publisher, factory.createPublisher("testTopic"));
+
+		factory.destroy();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testNewDefaultPublisherFactory_nullProjectIdProvider() {
 		new DefaultPublisherFactory(null);
@@ -17,13 +17,19 @@
 package org.springframework.cloud.gcp.pubsub.support;
 
 import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.retrying.RetrySettings;
 import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.cloud.pubsub.v1.stub.SubscriberStub;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.threeten.bp.Duration;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author João André Martins
@@ -45,6 +51,61 @@ public class DefaultSubscriberFactoryTests {
 		assertEquals("angeldust", subscriber.getSubscriptionName().getProject());
 	}
 
+	@Test
+	public void testCreateSubscriberStub_cached() {
+		DefaultSubscriberFactory factory = new DefaultSubscriberFactory(() -> "angeldust");
+		factory.setCredentialsProvider(this.credentialsProvider);
+		RetrySettings retrySettings = RetrySettings.newBuilder()
+				.setTotalTimeout(Duration.ofSeconds(10))
+				.build();
+
+		SubscriberStub defaultStub = factory.createSubscriberStub(null);
+		SubscriberStub retryStub = factory.createSubscriberStub(retrySettings);
+
+		assertSame(defaultStub, factory.createSubscriberStub(null));
+		assertSame(retryStub, factory.createSubscriberStub(retrySettings));
+		assertNotSame(defaultStub, retryStub);
+		assertEquals(2, factory.getSubscriberStubCacheSize());
+
+		factory.destroy();
+
+		assertTrue(defaultStub.isShutdown());
+		assertTrue(retryStub.isShutdown());
+		assertEquals(0, factory.getSubscriberStubCacheSize());
+	}
+
+	@Test
+	public void testCreateSubscriberStub_evictsLeastRecentlyUsed() {
+		DefaultSubscriberFactory factory = new DefaultSubscriberFactory(() -> "angeldust");
+		factory.setCredentialsProvider(this.credentialsProvider);
+		factory.setMaxSubscriberStubs(1);
+
+		SubscriberStub defaultStub = factory.createSubscriberStub(null);
+		SubscriberStub retryStub = factory.createSubscriberStub(RetrySettings.newBuilder()
+				.setTotalTimeout(Duration.ofSeconds(10))
+				.build());
+
+		assertTrue(defaultStub.isShutdown());
+		assertEquals(1, factory.getSubscriberStubCacheSize());
+		assertNotSame(defaultStub, factory.createSubscriberStub(null));
+
+		factory.destroy();
+		assertTrue(retryStub.isShutdown());
+	}
+
+	@Test
+	public void testCreateSubscriberStub_replacesShutdownStub() {
+		DefaultSubscriberFactory factory = new DefaultSubscriberFactory(() -> "angeldust");
+		factory.setCredentialsProvider(this.credentialsProvider);
+
+		SubscriberStub subscriberStub = factory.createSubscriberStub(null);
+		subscriberStub.shutdown();
+
+		assertNotSame(subscriberStub, factory.createSubscriberStub(null));
+
+		factory.destroy();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testNewDefaultSubscriberFactory_nullProjectProvider() {
 		new DefaultSubscriberFactory(null);
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link GrpcChannelPool} unit tests.
+ */
+public class GrpcChannelPoolTests {
+
+	private static final int CHANNEL_COUNT = 3;
+
+	@SuppressWarnings("unchecked")
+	private static final MethodDescriptor<Object, Object> METHOD = MethodDescriptor.<Object, Object>newBuilder()
+			.setType(MethodDescriptor.MethodType.UNARY)
+			.setFullMethodName("test.Service/Method")
+			.setRequestMarshaller(mock(MethodDescriptor.Marshaller.class))
+			.setResponseMarshaller(mock(MethodDescriptor.Marshaller.class))
+			.build();
+
+	private final Deque<ClientCall.Listener<Object>> startedCalls = new ArrayDeque<>();
+
+	private final Deque<ManagedChannel> channels = new ArrayDeque<>();
+
+	private GrpcChannelPool pool;
+
+	@Before
+	public void setUp() {
+		this.pool = new GrpcChannelPool(CHANNEL_COUNT, this::createChannel);
+	}
+
+	@Test
+	public void testCallsSpreadOverChannels() {
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			startCall();
+		}
+
+		assertEquals(CHANNEL_COUNT, this.pool.getChannelCount());
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			assertEquals(1, this.pool.getActiveCallCount(i));
+			assertEquals(1, this.pool.getCallCount(i));
+		}
+	}
+
+	@Test
+	public void testCallOnLeastUtilizedChannel() {
+		ClientCall.Listener<Object> first = startCall();
+		for (int i = 1; i < CHANNEL_COUNT * 2; i++) {
+			startCall();
+		}
+		first.onClose(Status.OK, new Metadata());
+
+		assertEquals(CHANNEL_COUNT * 2 - 1, activeCallCount());
+		startCall();
+
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			assertEquals(2, this.pool.getActiveCallCount(i));
+		}
+		assertEquals(CHANNEL_COUNT * 2 + 1, callCount());
+	}
+
+	@Test
+	public void testClosedCallsAreNotActive() {
+		startCall().onClose(Status.CANCELLED, new Metadata());
+		startCall().onClose(Status.OK, new Metadata());
+
+		assertEquals(0, activeCallCount());
+		assertEquals(2, callCount());
+	}
+
+	@Test
+	public void testShutdown() {
+		this.channels.forEach(channel -> when(channel.isShutdown()).thenReturn(true));
+
+		this.pool.shutdown();
+
+		this.channels.forEach(channel -> verify(channel).shutdown());
+		assertTrue(this.pool.isShutdown());
+	}
+
+	@SuppressWarnings("unchecked")
+	private ClientCall.Listener<Object> startCall() {
+		this.pool.newCall(METHOD, CallOptions.DEFAULT).start(mock(ClientCall.Listener.class), new Metadata());
+		return this.startedCalls.removeLast();
+	}
+
+	private int activeCallCount() {
+		int activeCalls = 0;
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			activeCalls += this.pool.getActiveCallCount(i);
+		}
+		return activeCalls;
+	}
+
+	private long callCount() {
+		long calls = 0;
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			calls += this.pool.getCallCount(i);
+		}
+		return calls;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ManagedChannel createChannel() {
+		ManagedChannel channel = mock(ManagedChannel.class);
+		when(channel.newCall(any(), any())).thenAnswer(invocation -> {
+			ClientCall<Object, Object> call = mock(ClientCall.class);
+			doAnswer(start -> this.startedCalls.add(start.getArgument(0)))
+					.when(call).start(any(), any());
+			return call;
+		});
+		this.channels.add(channel);
+		return channel;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link KeyOrderedMessageReceiver} unit tests.
+ */
+public class KeyOrderedMessageReceiverTests {
+
+	private KeyOrderedMessageReceiver receiver;
+
+	@After
+	public void tearDown() {
+		if (this.receiver != null) {
+			this.receiver.shutdown();
+		}
+	}
+
+	@Test
+	public void testReceiveMessage_sameKeyInOrder() throws InterruptedException {
+		List<String> processed = Collections.synchronizedList(new ArrayList<>());
+		this.receiver = new KeyOrderedMessageReceiver(
+				(message, consumer) -> processed.add(message.getMessageId()), "key", 4, 100);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			expected.add("id" + i);
+			this.receiver.receiveMessage(message("id" + i, "key", "k"), mock(AckReplyConsumer.class));
+		}
+
+		this.receiver.shutdown();
+		assertTrue(this.receiver.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(expected, processed);
+	}
+
+	@Test
+	public void testReceiveMessage_differentKeysInParallel() throws InterruptedException {
+		CountDownLatch bothProcessing = new CountDownLatch(2);
+		this.receiver = new KeyOrderedMessageReceiver((message, consumer) -> {
+			bothProcessing.countDown();
+			try {
+				bothProcessing.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			consumer.ack();
+		}, "key", 2, 10);
+
+		// With two lanes, keys whose hashes have different parities end up in different lanes.
+		AckReplyConsumer consumer1 = mock(AckReplyConsumer.class);
+		AckReplyConsumer consumer2 = mock(AckReplyConsumer.class);
+		this.receiver.receiveMessage(message("id1", "key", "a"), consumer1);
+		this.receiver.receiveMessage(message("id2", "key", "b"), consumer2);
+
+		verify(consumer1, timeout(5000)).ack();
+		verify(consumer2, timeout(5000)).ack();
+		assertEquals(0, bothProcessing.getCount());
+	}
+
+	@Test
+	public void testReceiveMessage_withoutKeyAttribute() {
+		this.receiver = new KeyOrderedMessageReceiver((message, consumer) -> consumer.ack(), "key", 2, 10);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		this.receiver.receiveMessage(message("id", "other", "value"), consumer);
+
+		verify(consumer, timeout(5000)).ack();
+	}
+
+	@Test
+	public void testReceiveMessage_nackOnFailure() {
+		this.receiver = new KeyOrderedMessageReceiver((message, consumer) -> {
+			throw new IllegalStateException("boom");
+		}, "key", 1, 10);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		this.receiver.receiveMessage(message("id", "key", "k"), consumer);
+
+		verify(consumer, timeout(5000)).nack();
+	}
+
+	@Test
+	public void testReceiveMessage_failureAfterNackNotNackedAgain() throws InterruptedException {
+		this.receiver = new KeyOrderedMessageReceiver((message, consumer) -> {
+			consumer.nack();
+			throw new IllegalStateException("boom");
+		}, "key", 1, 10);
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		this.receiver.receiveMessage(message("id", "key", "k"), consumer);
+		this.receiver.shutdown();
+		assertTrue(this.receiver.awaitTermination(10, TimeUnit.SECONDS));
+
+		verify(consumer, times(1)).nack();
+	}
+
+	@Test
+	public void testReceiveMessage_nackAfterShutdown() {
+		AtomicInteger processed = new AtomicInteger();
+		this.receiver = new KeyOrderedMessageReceiver(
+				(message, consumer) -> processed.incrementAndGet(), "key", 1, 10);
+		this.receiver.shutdown();
+		AckReplyConsumer consumer = mock(AckReplyConsumer.class);
+
+		this.receiver.receiveMessage(message("id", "key", "k"), consumer);
+
+		verify(consumer).nack();
+		verify(consumer, never()).ack();
+		assertEquals(0, processed.get());
+	}
+
+	private static PubsubMessage message(String messageId, String attribute, String value) {
+		return PubsubMessage.newBuilder()
+				.setMessageId(messageId)
+				.putAttributes(attribute, value)
+				.build();
+	}
+}
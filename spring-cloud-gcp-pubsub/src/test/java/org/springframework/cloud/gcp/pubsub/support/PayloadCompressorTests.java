@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Test;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link PayloadCompressor}, {@link GzipPayloadCodec} and {@link DeflatePayloadCodec} unit tests.
+ */
+public class PayloadCompressorTests {
+
+	private static final ByteString PAYLOAD = ByteString.copyFromUtf8(
+			new String(new char[2000]).replace("\0", "{\"key\":\"value\"}"));
+
+	@Test
+	public void testCompress_gzip() {
+		PayloadCompressor compressor = new PayloadCompressor();
+
+		PubsubMessage compressed = compressor.compress(message(PAYLOAD));
+
+		assertEquals("gzip", compressed.getAttributesOrThrow(PayloadCompressor.CONTENT_ENCODING_ATTRIBUTE));
+		assertEquals("value", compressed.getAttributesOrThrow("key"));
+		assertTrue(compressed.getData().size() < PAYLOAD.size() / 10);
+
+		PubsubMessage decompressed = compressor.decompress(compressed);
+
+		assertEquals(PAYLOAD, decompressed.getData());
+		assertFalse(decompressed.containsAttributes(PayloadCompressor.CONTENT_ENCODING_ATTRIBUTE));
+		assertEquals("value", decompressed.getAttributesOrThrow("key"));
+	}
+
+	@Test
+	public void testCompress_deflate() {
+		PayloadCompressor compressor = new PayloadCompressor(new DeflatePayloadCodec());
+
+		PubsubMessage compressed = compressor.compress(message(PAYLOAD));
+
+		assertEquals("deflate", compressed.getAttributesOrThrow(PayloadCompressor.CONTENT_ENCODING_ATTRIBUTE));
+		assertEquals(PAYLOAD, compressor.decompress(compressed).getData());
+	}
+
+	@Test
+	public void testCompress_belowMinSize() {
+		PayloadCompressor compressor = new PayloadCompressor();
+		compressor.setMinSize(PAYLOAD.size() + 1);
+		PubsubMessage message = message(PAYLOAD);
+
+		assertSame(message, compressor.compress(message));
+	}
+
+	@Test
+	public void testCompress_incompressible() {
+		byte[] random = new byte[4096];
+		new Random(0).nextBytes(random);
+		PubsubMessage message = message(ByteString.copyFrom(random));
+
+		assertSame(message, new PayloadCompressor().compress(message));
+	}
+
+	@Test
+	public void testDecompress_uncompressed() {
+		PubsubMessage message = message(PAYLOAD);
+
+		assertSame(message, new PayloadCompressor().decompress(message));
+	}
+
+	@Test
+	public void testDecompress_otherEncoding() {
+		PayloadCompressor compressor = new PayloadCompressor();
+		PubsubMessage compressed = new PayloadCompressor(new DeflatePayloadCodec(9)).compress(message(PAYLOAD));
+
+		assertEquals(PAYLOAD, compressor.decompress(compressed).getData());
+	}
+
+	@Test(expected = PubSubException.class)
+	public void testDecompress_unknownEncoding() {
+		new PayloadCompressor().decompress(message(PAYLOAD).toBuilder()
+				.putAttributes(PayloadCompressor.CONTENT_ENCODING_ATTRIBUTE, "br")
+				.build());
+	}
+
+	@Test(expected = PubSubException.class)
+	public void testDecompress_corrupt() {
+		ByteString compressed = new GzipPayloadCodec().encode(PAYLOAD);
+		byte[] corrupt = compressed.toByteArray();
+		corrupt[corrupt.length - 6]++;
+
+		new GzipPayloadCodec().decode(ByteString.copyFrom(corrupt));
+	}
+
+	@Test
+	public void testDecompress_exceedsMaxDecodedSize() {
+		PayloadCompressor compressor = new PayloadCompressor();
+		PubsubMessage compressed = compressor.compress(message(PAYLOAD));
+
+		compressor.setMaxDecodedSize(PAYLOAD.size());
+		assertEquals(PAYLOAD, compressor.decompress(compressed).getData());
+
+		compressor.setMaxDecodedSize(PAYLOAD.size() - 1);
+		try {
+			compressor.decompress(compressed);
+			fail("Decompressing a payload larger than the maximum should fail.");
+		}
+		catch (PubSubException pse) {
+			assertTrue(pse.getMessage().contains("more than " + (PAYLOAD.size() - 1) + " bytes"));
+		}
+	}
+
+	@Test
+	public void testCodecs_poolResourcesUntilDestroyed() {
+		DeflatePayloadCodec codec = new DeflatePayloadCodec(Deflater.BEST_SPEED);
+		Collection<?> pool = (Collection<?>) ReflectionTestUtils.getField(codec, "pool");
+
+		ByteString deflated = codec.encode(PAYLOAD);
+		assertEquals(PAYLOAD, codec.decode(deflated));
+		assertEquals(deflated, codec.encode(PAYLOAD));
+		assertEquals(1, pool.size());
+
+		PayloadCompressor compressor = new PayloadCompressor(codec);
+		compressor.destroy();
+		assertTrue(pool.isEmpty());
+
+		assertEquals(deflated, codec.encode(PAYLOAD));
+		assertEquals(PAYLOAD, codec.decode(deflated));
+		assertTrue(pool.isEmpty());
+	}
+
+	@Test
+	public void testGzip_interoperability() throws IOException {
+		GzipPayloadCodec codec = new GzipPayloadCodec();
+
+		byte[] decoded = StreamUtils.copyToByteArray(
+				new GZIPInputStream(new ByteArrayInputStream(codec.encode(PAYLOAD).toByteArray())));
+		assertEquals(PAYLOAD, ByteString.copyFrom(decoded));
+
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(encoded)) {
+			PAYLOAD.writeTo(gzip);
+		}
+		assertEquals(PAYLOAD, codec.decode(ByteString.copyFrom(encoded.toByteArray())));
+	}
+
+	private static PubsubMessage message(ByteString data) {
+		return PubsubMessage.newBuilder().setData(data).putAttributes("key", "value").build();
+	}
+}
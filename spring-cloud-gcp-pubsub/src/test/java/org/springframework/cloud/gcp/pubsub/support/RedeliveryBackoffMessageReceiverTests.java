@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2018 original author or authors.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.springframework.cloud.gcp.pubsub.support;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.springframework.cloud.gcp.pubsub.core.PubSubOperations;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link RedeliveryBackoffMessageReceiver} and {@link RedeliveryPolicy} unit tests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RedeliveryBackoffMessageReceiverTests {
+
+	@Mock
+	private AckReplyConsumer mockConsumer;
+
+	@Mock
+	private PubSubOperations mockPubSubOperations;
+
+	private final PubsubMessage message = PubsubMessage.newBuilder().setMessageId("id").build();
+
+	private RedeliveryPolicy policy;
+
+	private RedeliveryBackoffMessageReceiver receiver;
+
+	@Before
+	public void setUp() {
+		this.policy = new RedeliveryPolicy();
+		this.policy.setInitialDelayMillis(200);
+	}
+
+	@After
+	public void tearDown() {
+		if (this.receiver != null) {
+			this.receiver.shutdown();
+		}
+	}
+
+	@Test
+	public void testNack_delayed() {
+		this.receiver = new RedeliveryBackoffMessageReceiver(
+				(message, consumer) -> consumer.nack(), this.policy, null);
+
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+
+		verify(this.mockConsumer, never()).nack();
+		verify(this.mockConsumer, timeout(5000)).nack();
+		assertEquals(1, this.receiver.getDelayedNackCount());
+		assertEquals(1, this.receiver.getFailedAttempts("id"));
+	}
+
+	@Test
+	public void testException_delayedNackAndNotRethrown() {
+		this.receiver = new RedeliveryBackoffMessageReceiver((message, consumer) -> {
+			consumer.nack();
+			throw new IllegalStateException("boom");
+		}, this.policy, null);
+
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+
+		verify(this.mockConsumer, timeout(5000)).nack();
+		assertEquals(1, this.receiver.getFailedAttempts("id"));
+	}
+
+	@Test
+	public void testAck_forgetsFailures() {
+		this.policy.setInitialDelayMillis(0);
+		boolean[] fail = { true };
+		this.receiver = new RedeliveryBackoffMessageReceiver((message, consumer) -> {
+			if (fail[0]) {
+				consumer.nack();
+			}
+			else {
+				consumer.ack();
+			}
+		}, this.policy, null);
+
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+		fail[0] = false;
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+
+		verify(this.mockConsumer).ack();
+		assertEquals(0, this.receiver.getFailedAttempts("id"));
+	}
+
+	@Test
+	public void testDeadLetterAfterMaxAttempts() {
+		this.policy.setInitialDelayMillis(0);
+		this.policy.setMaxAttempts(2);
+		this.policy.setDeadLetterTopic("dead-letters");
+		SettableListenableFuture<String> future = new SettableListenableFuture<>();
+		future.set("dead-letter-id");
+		when(this.mockPubSubOperations.publish(eq("dead-letters"), any(PubsubMessage.class))).thenReturn(future);
+		this.receiver = new RedeliveryBackoffMessageReceiver(
+				(message, consumer) -> consumer.nack(), this.policy, this.mockPubSubOperations);
+
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+		verify(this.mockConsumer, timeout(5000)).nack();
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+
+		verify(this.mockPubSubOperations).publish("dead-letters", this.message);
+		verify(this.mockConsumer).ack();
+		assertEquals(1, this.receiver.getDeadLetterCount());
+		assertEquals(0, this.receiver.getFailedAttempts("id"));
+	}
+
+	@Test
+	public void testShutdown_nacksWaitingMessages() {
+		this.policy.setInitialDelayMillis(60_000);
+		this.receiver = new RedeliveryBackoffMessageReceiver(
+				(message, consumer) -> consumer.nack(), this.policy, null);
+		this.receiver.receiveMessage(this.message, this.mockConsumer);
+
+		this.receiver.shutdown();
+
+		verify(this.mockConsumer).nack();
+	}
+
+	@Test
+	public void testPolicy_exponentialDelay() {
+		RedeliveryPolicy policy = new RedeliveryPolicy();
+
+		assertEquals(1000, policy.getDelayMillis(1));
+		assertEquals(2000, policy.getDelayMillis(2));
+		assertEquals(4000, policy.getDelayMillis(3));
+		assertEquals(60_000, policy.getDelayMillis(20));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeadLetterTopicRequiresOperations() {
+		this.policy.setDeadLetterTopic("dead-letters");
+
+		new RedeliveryBackoffMessageReceiver((message, consumer) -> { }, this.policy, null);
+	}
+}